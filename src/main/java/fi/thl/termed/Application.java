@@ -4,16 +4,26 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.eventbus.EventBus;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import fi.thl.termed.domain.event.ApplicationReadyEvent;
+import fi.thl.termed.domain.event.ApplicationShutdownEvent;
+import fi.thl.termed.domain.event.InvalidateCachesEvent;
+import fi.thl.termed.domain.event.NodeEvent;
+import fi.thl.termed.domain.event.WebhooksChangedEvent;
+import fi.thl.termed.util.dao.SystemDaoCaches;
+import fi.thl.termed.util.event.AsyncCapableEventBus;
 import fi.thl.termed.util.json.FastUUIDTypeAdapter;
 import fi.thl.termed.util.json.ImmutableListDeserializer;
 import fi.thl.termed.util.json.ImmutableMultimapTypeAdapterFactory;
 import fi.thl.termed.util.json.LocalDateTimeAsZonedTypeAdapter;
 import fi.thl.termed.util.json.MultimapTypeAdapterFactory;
 import fi.thl.termed.util.json.StreamTypeAdapterFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.context.properties.ConfigurationProperties;
@@ -39,9 +49,36 @@ public class Application extends SpringBootServletInitializer {
         .create();
   }
 
+  /**
+   * Async subscribers get node events partitioned by graph. Sync node events and application
+   * lifecycle events are awaited before post returns. Cache and webhook invalidations are
+   * delivered to all lanes, so node events posted after an invalidation are handled after it
+   * regardless of their graph. Async lanes are drained before application shutdown event is
+   * posted (see {@link ApplicationBootstrap#destroy()}).
+   */
   @Bean
-  public EventBus eventBus() {
-    return new EventBus();
+  public EventBus eventBus(MeterRegistry meterRegistry,
+      @Value("${fi.thl.termed.events.asyncByDefault:false}") boolean asyncByDefault) {
+    return new AsyncCapableEventBus(asyncByDefault,
+        e -> e instanceof NodeEvent && !((NodeEvent) e).getNodes().isEmpty()
+            ? ((NodeEvent) e).getNodes().get(0).getTypeGraphId()
+            : null,
+        e -> e instanceof NodeEvent && ((NodeEvent) e).isSync() ||
+            e instanceof ApplicationReadyEvent ||
+            e instanceof ApplicationShutdownEvent,
+        e -> e instanceof InvalidateCachesEvent ||
+            e instanceof WebhooksChangedEvent,
+        meterRegistry);
+  }
+
+  /**
+   * Caches for graph, type, user etc. DAOs. Cached values older than refresh interval are
+   * reloaded in background, zero interval disables refreshing.
+   */
+  @Bean
+  public SystemDaoCaches systemDaoCaches(EventBus eventBus,
+      @Value("${fi.thl.termed.daoCache.refreshSeconds:0}") long refreshSeconds) {
+    return new SystemDaoCaches(eventBus, Duration.ofSeconds(refreshSeconds));
   }
 
   @Bean
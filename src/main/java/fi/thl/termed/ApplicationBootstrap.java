@@ -14,6 +14,7 @@ import fi.thl.termed.domain.User;
 import fi.thl.termed.domain.event.ApplicationReadyEvent;
 import fi.thl.termed.domain.event.ApplicationShutdownEvent;
 import fi.thl.termed.util.collect.StreamUtils;
+import fi.thl.termed.util.event.AsyncCapableEventBus;
 import fi.thl.termed.util.service.Service;
 import java.lang.reflect.Type;
 import java.util.List;
@@ -97,6 +98,10 @@ public class ApplicationBootstrap implements ApplicationListener<ContextRefreshe
 
   @PreDestroy
   public void destroy() {
+    // deliver queued async events before subscribers close their resources
+    if (eventBus instanceof AsyncCapableEventBus) {
+      ((AsyncCapableEventBus) eventBus).shutdown();
+    }
     eventBus.post(new ApplicationShutdownEvent());
   }
 
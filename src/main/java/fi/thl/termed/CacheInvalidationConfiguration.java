@@ -0,0 +1,53 @@
+package fi.thl.termed;
+
+import static fi.thl.termed.util.EventBusUtils.register;
+
+import com.google.common.eventbus.EventBus;
+import fi.thl.termed.util.invalidation.CacheInvalidationRelay;
+import fi.thl.termed.util.invalidation.InvalidationBroadcaster;
+import fi.thl.termed.util.invalidation.LoopbackInvalidationBroadcaster;
+import fi.thl.termed.util.invalidation.PollingInvalidationBroadcaster;
+import fi.thl.termed.util.invalidation.PostgresInvalidationBroadcaster;
+import java.time.Duration;
+import javax.sql.DataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Broadcasts cache invalidations between instances sharing a database. Enabled by setting
+ * fi.thl.termed.cacheInvalidation.broadcaster to postgresql (LISTEN/NOTIFY), polling (polls
+ * cache_invalidation table, works with any database) or loopback (in-process only).
+ */
+@Configuration
+@ConditionalOnExpression(
+    "'${fi.thl.termed.cacheInvalidation.broadcaster:none}' != 'none'")
+public class CacheInvalidationConfiguration {
+
+  @Bean
+  public InvalidationBroadcaster invalidationBroadcaster(DataSource dataSource,
+      @Value("${fi.thl.termed.cacheInvalidation.broadcaster}") String broadcaster,
+      @Value("${fi.thl.termed.cacheInvalidation.pollSeconds:5}") long pollSeconds,
+      @Value("${fi.thl.termed.cacheInvalidation.expiryDays:7}") long expiryDays) {
+    switch (broadcaster) {
+      case "postgresql":
+        return new PostgresInvalidationBroadcaster(dataSource);
+      case "polling":
+        return new PollingInvalidationBroadcaster(dataSource, Duration.ofSeconds(pollSeconds),
+            Duration.ofDays(expiryDays));
+      case "loopback":
+        return new LoopbackInvalidationBroadcaster();
+      default:
+        throw new IllegalArgumentException("Unknown cache invalidation broadcaster: " +
+            broadcaster);
+    }
+  }
+
+  @Bean
+  public CacheInvalidationRelay cacheInvalidationRelay(EventBus eventBus,
+      InvalidationBroadcaster invalidationBroadcaster) {
+    return register(eventBus, new CacheInvalidationRelay(eventBus, invalidationBroadcaster));
+  }
+
+}
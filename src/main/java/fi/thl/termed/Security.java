@@ -2,10 +2,16 @@ package fi.thl.termed;
 
 import static fi.thl.termed.domain.AppRole.SUPERUSER;
 import static fi.thl.termed.domain.User.newSuperuser;
+import static fi.thl.termed.util.EventBusUtils.register;
 
+import com.google.common.collect.ImmutableSet;
+import com.google.common.eventbus.EventBus;
 import fi.thl.termed.domain.User;
 import fi.thl.termed.util.service.Service;
+import fi.thl.termed.util.spring.security.CachingAuthenticationProvider;
 import fi.thl.termed.util.spring.security.CachingPasswordEncoder;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
 import java.util.Optional;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -17,11 +23,12 @@ import org.springframework.boot.actuate.autoconfigure.security.servlet.EndpointR
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.event.EventListener;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
 import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
-import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
@@ -40,6 +47,33 @@ public class Security {
     return useCachingPasswordEncoder ? new CachingPasswordEncoder(encoder) : encoder;
   }
 
+  /**
+   * Authenticates users by username and password, verified results are cached unless disabled.
+   */
+  @Bean
+  public AuthenticationProvider authenticationProvider(
+      Service<String, User> userService,
+      PasswordEncoder passwordEncoder,
+      EventBus eventBus,
+      MeterRegistry meterRegistry,
+      @Value("${fi.thl.termed.authenticationCache.enabled:true}") boolean cacheEnabled,
+      @Value("${fi.thl.termed.authenticationCache.ttlSeconds:300}") long cacheTtlSeconds,
+      @Value("${fi.thl.termed.authenticationCache.maxSize:10000}") long cacheMaxSize) {
+
+    DaoAuthenticationProvider provider = new DaoAuthenticationProvider();
+    provider.setUserDetailsService(username -> {
+      Optional<User> user = userService.get(username, newSuperuser("authenticator", ""));
+      return user.orElseThrow(() -> new UsernameNotFoundException(""));
+    });
+    provider.setPasswordEncoder(passwordEncoder);
+
+    return cacheEnabled
+        ? register(eventBus, new CachingAuthenticationProvider(provider,
+        ImmutableSet.of("users", "userGraphRoles"),
+        Duration.ofSeconds(cacheTtlSeconds), cacheMaxSize, meterRegistry))
+        : provider;
+  }
+
   @EventListener
   public void logAuditEvents(AuditApplicationEvent event) {
     AuditEvent auditEvent = event.getAuditEvent();
@@ -50,10 +84,7 @@ public class Security {
   public static class WebSecurityConfiguration extends WebSecurityConfigurerAdapter {
 
     @Autowired
-    private Service<String, User> userService;
-
-    @Autowired
-    private PasswordEncoder passwordEncoder;
+    private AuthenticationProvider authenticationProvider;
 
     @Override
     protected void configure(HttpSecurity http) throws Exception {
@@ -69,12 +100,7 @@ public class Security {
 
     @Override
     public void configure(AuthenticationManagerBuilder auth) throws Exception {
-      UserDetailsService userDetailsService = username -> {
-        Optional<User> user = userService.get(username, newSuperuser("authenticator", ""));
-        return user.orElseThrow(() -> new UsernameNotFoundException(""));
-      };
-
-      auth.userDetailsService(userDetailsService).passwordEncoder(passwordEncoder);
+      auth.authenticationProvider(authenticationProvider);
     }
 
   }
@@ -0,0 +1,18 @@
+package fi.thl.termed.domain.event;
+
+/**
+ * Event to signal that data behind a named cache has been written by this instance.
+ */
+public class CachedDataChangedEvent {
+
+  private final String cache;
+
+  public CachedDataChangedEvent(String cache) {
+    this.cache = cache;
+  }
+
+  public String getCache() {
+    return cache;
+  }
+
+}
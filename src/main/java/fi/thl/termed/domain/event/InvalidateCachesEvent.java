@@ -1,5 +1,36 @@
 package fi.thl.termed.domain.event;
 
+import com.google.common.collect.ImmutableSet;
+import java.util.Set;
+
+/**
+ * Event to request invalidation of caches. Event without cache names invalidates all caches.
+ * Remote events originate from other instances and are not broadcast again.
+ */
 public class InvalidateCachesEvent {
 
+  private final Set<String> caches;
+  private final boolean remote;
+
+  public InvalidateCachesEvent() {
+    this(ImmutableSet.of(), false);
+  }
+
+  public InvalidateCachesEvent(Set<String> caches, boolean remote) {
+    this.caches = ImmutableSet.copyOf(caches);
+    this.remote = remote;
+  }
+
+  public Set<String> getCaches() {
+    return caches;
+  }
+
+  public boolean isRemote() {
+    return remote;
+  }
+
+  public boolean invalidates(String cache) {
+    return caches.isEmpty() || caches.contains(cache);
+  }
+
 }
@@ -0,0 +1,21 @@
+package fi.thl.termed.domain.event;
+
+import com.google.common.collect.ImmutableList;
+import java.util.List;
+
+/**
+ * Event to signal that users (e.g. passwords or roles) have been added, updated or removed.
+ */
+public class UsersChangedEvent {
+
+  private final List<String> usernames;
+
+  public UsersChangedEvent(List<String> usernames) {
+    this.usernames = ImmutableList.copyOf(usernames);
+  }
+
+  public List<String> getUsernames() {
+    return usernames;
+  }
+
+}
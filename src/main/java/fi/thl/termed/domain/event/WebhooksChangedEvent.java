@@ -0,0 +1,8 @@
+package fi.thl.termed.domain.event;
+
+/**
+ * Event to signal that webhooks have been added, updated or removed.
+ */
+public class WebhooksChangedEvent {
+
+}
@@ -0,0 +1,441 @@
+package fi.thl.termed.service.dump.util;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.Streams;
+import com.google.gson.Gson;
+import fi.thl.termed.domain.Dump;
+import fi.thl.termed.domain.Graph;
+import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.domain.StrictLangValue;
+import fi.thl.termed.domain.Type;
+import fi.thl.termed.domain.TypeId;
+import fi.thl.termed.util.spring.exception.BadRequestException;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Compact binary dump. Nodes are written field by field with UUIDs as 16 bytes and with attribute
+ * ids, languages, type ids and user names interned, i.e. written once per dump and then referred
+ * to by index. Graphs and types are few and are written as length prefixed JSON.
+ *
+ * <p>Layout: magic bytes and version followed by records, each starting with a tag byte
+ * (graph, type, node or end).
+ */
+public class BinaryDumpCodec implements DumpCodec {
+
+  private static final byte[] MAGIC = {'T', 'D', 'M', 'P'};
+  private static final int VERSION = 1;
+
+  private static final int END = 0;
+  private static final int GRAPH = 1;
+  private static final int TYPE = 2;
+  private static final int NODE = 3;
+
+  // presence flags for optional node fields
+  private static final int CODE = 1;
+  private static final int URI = 1 << 1;
+  private static final int NUMBER = 1 << 2;
+  private static final int CREATED_DATE = 1 << 3;
+  private static final int LAST_MODIFIED_DATE = 1 << 4;
+
+  // upper bound for declared string lengths, longer strings are read in chunks
+  private static final int MAX_STRING_LENGTH = 64 * 1024 * 1024;
+  private static final int STRING_CHUNK_LENGTH = 64 * 1024;
+
+  private final Gson gson;
+
+  public BinaryDumpCodec(Gson gson) {
+    this.gson = gson;
+  }
+
+  @Override
+  public void write(Dump dump, OutputStream out) throws IOException {
+    Encoder encoder = new Encoder(new DataOutputStream(new BufferedOutputStream(out)));
+
+    encoder.out.write(MAGIC);
+    encoder.out.writeByte(VERSION);
+
+    Iterator<Graph> graphs = dump.getGraphs().iterator();
+    while (graphs.hasNext()) {
+      encoder.out.writeByte(GRAPH);
+      encoder.writeString(gson.toJson(graphs.next(), Graph.class));
+    }
+    Iterator<Type> types = dump.getTypes().iterator();
+    while (types.hasNext()) {
+      encoder.out.writeByte(TYPE);
+      encoder.writeString(gson.toJson(types.next(), Type.class));
+    }
+    Iterator<Node> nodes = dump.getNodes().iterator();
+    while (nodes.hasNext()) {
+      encoder.out.writeByte(NODE);
+      encoder.writeNode(nodes.next());
+    }
+
+    encoder.out.writeByte(END);
+    encoder.out.flush();
+  }
+
+  @Override
+  public Dump read(InputStream in) throws IOException {
+    Decoder decoder = new Decoder(new DataInputStream(new BufferedInputStream(in)));
+
+    byte[] magic = new byte[MAGIC.length];
+    decoder.in.readFully(magic);
+    if (!Arrays.equals(magic, MAGIC)) {
+      throw new BadRequestException("Not a binary dump");
+    }
+    int version = decoder.in.readUnsignedByte();
+    if (version != VERSION) {
+      throw new BadRequestException("Unsupported binary dump version: " + version);
+    }
+
+    List<Graph> graphs = new ArrayList<>();
+    List<Type> types = new ArrayList<>();
+
+    while (true) {
+      int tag = decoder.in.readUnsignedByte();
+
+      switch (tag) {
+        case GRAPH:
+          graphs.add(gson.fromJson(decoder.readString(), Graph.class));
+          break;
+        case TYPE:
+          types.add(gson.fromJson(decoder.readString(), Type.class));
+          break;
+        case NODE:
+          // tag of the first node is consumed, rest of the records are read lazily
+          return new Dump(graphs.stream(), types.stream(), readNodes(decoder));
+        case END:
+          return new Dump(graphs.stream(), types.stream(), Stream.empty());
+        default:
+          throw new BadRequestException("Unknown binary dump record: " + tag);
+      }
+    }
+  }
+
+  private Stream<Node> readNodes(Decoder decoder) {
+    return Streams.stream(new Iterator<Node>() {
+      // true if the tag of next node is consumed
+      private boolean positioned = true;
+      private boolean ended = false;
+
+      @Override
+      public boolean hasNext() {
+        if (positioned) {
+          return true;
+        }
+        if (ended) {
+          return false;
+        }
+        try {
+          int tag = decoder.in.readUnsignedByte();
+          if (tag == END) {
+            ended = true;
+            return false;
+          }
+          if (tag != NODE) {
+            throw new BadRequestException("Dump graphs and types are expected before nodes");
+          }
+          positioned = true;
+          return true;
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+
+      @Override
+      public Node next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        try {
+          Node node = decoder.readNode();
+          positioned = false;
+          return node;
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+    });
+  }
+
+  private static class Encoder {
+
+    private final DataOutputStream out;
+    private final Map<Object, Integer> interned = new HashMap<>();
+
+    Encoder(DataOutputStream out) {
+      this.out = out;
+    }
+
+    void writeNode(Node node) throws IOException {
+      writeUUID(node.getId());
+      writeTypeId(node.getType());
+
+      int flags = (node.getCode().isPresent() ? CODE : 0)
+          | (node.getUri().isPresent() ? URI : 0)
+          | (node.getNumber() != null ? NUMBER : 0)
+          | (node.getCreatedDate() != null ? CREATED_DATE : 0)
+          | (node.getLastModifiedDate() != null ? LAST_MODIFIED_DATE : 0);
+      out.writeByte(flags);
+
+      if (node.getCode().isPresent()) {
+        writeString(node.getCode().get());
+      }
+      if (node.getUri().isPresent()) {
+        writeString(node.getUri().get());
+      }
+      if (node.getNumber() != null) {
+        writeVarLong(node.getNumber());
+      }
+
+      writeInternedString(node.getCreatedBy());
+      if (node.getCreatedDate() != null) {
+        writeDateTime(node.getCreatedDate());
+      }
+      writeInternedString(node.getLastModifiedBy());
+      if (node.getLastModifiedDate() != null) {
+        writeDateTime(node.getLastModifiedDate());
+      }
+
+      writeVarLong(node.getProperties().size());
+      for (Map.Entry<String, StrictLangValue> e : node.getProperties().entries()) {
+        StrictLangValue value = e.getValue();
+        writeInternedString(e.getKey());
+        writeInternedString(value.getLang());
+        writeString(value.getValue());
+        writeInternedString(value.getRegex());
+      }
+
+      writeReferences(node.getReferences());
+      writeReferences(node.getReferrers());
+    }
+
+    private void writeReferences(ImmutableMultimap<String, NodeId> references)
+        throws IOException {
+      writeVarLong(references.size());
+      for (Map.Entry<String, NodeId> e : references.entries()) {
+        writeInternedString(e.getKey());
+        writeUUID(e.getValue().getId());
+        writeTypeId(e.getValue().getType());
+      }
+    }
+
+    private void writeTypeId(TypeId typeId) throws IOException {
+      if (writeInternedIndex(typeId)) {
+        writeUUID(typeId.getGraphId());
+        writeString(typeId.getId());
+      }
+    }
+
+    private void writeInternedString(String value) throws IOException {
+      if (writeInternedIndex(value)) {
+        writeString(value);
+      }
+    }
+
+    // writes 0 for null, 1 for a new value and index + 2 for a known value, returns true if
+    // value is new and should be written after the index
+    private boolean writeInternedIndex(Object value) throws IOException {
+      if (value == null) {
+        writeVarLong(0);
+        return false;
+      }
+      Integer index = interned.get(value);
+      if (index != null) {
+        writeVarLong(index + 2L);
+        return false;
+      }
+      interned.put(value, interned.size());
+      writeVarLong(1);
+      return true;
+    }
+
+    private void writeUUID(UUID uuid) throws IOException {
+      out.writeLong(uuid.getMostSignificantBits());
+      out.writeLong(uuid.getLeastSignificantBits());
+    }
+
+    private void writeDateTime(LocalDateTime dateTime) throws IOException {
+      writeVarLong(dateTime.toEpochSecond(ZoneOffset.UTC));
+      writeVarLong(dateTime.getNano());
+    }
+
+    void writeString(String value) throws IOException {
+      byte[] bytes = value.getBytes(UTF_8);
+      writeVarLong(bytes.length);
+      out.write(bytes);
+    }
+
+    // unsigned LEB128, negative values (not expected for numbers or dates) take ten bytes
+    private void writeVarLong(long value) throws IOException {
+      while ((value & ~0x7FL) != 0) {
+        out.writeByte((int) ((value & 0x7F) | 0x80));
+        value >>>= 7;
+      }
+      out.writeByte((int) value);
+    }
+
+  }
+
+  private static class Decoder {
+
+    private final DataInputStream in;
+    private final List<Object> interned = new ArrayList<>();
+
+    Decoder(DataInputStream in) {
+      this.in = in;
+    }
+
+    Node readNode() throws IOException {
+      UUID id = readUUID();
+      TypeId type = readTypeId();
+
+      int flags = in.readUnsignedByte();
+
+      String code = (flags & CODE) != 0 ? readString() : null;
+      String uri = (flags & URI) != 0 ? readString() : null;
+      Long number = (flags & NUMBER) != 0 ? readVarLong() : null;
+
+      String createdBy = readInternedString();
+      LocalDateTime createdDate = (flags & CREATED_DATE) != 0 ? readDateTime() : null;
+      String lastModifiedBy = readInternedString();
+      LocalDateTime lastModifiedDate = (flags & LAST_MODIFIED_DATE) != 0 ? readDateTime() : null;
+
+      ImmutableListMultimap.Builder<String, StrictLangValue> properties =
+          ImmutableListMultimap.builder();
+      for (long i = 0, n = readVarLong(); i < n; i++) {
+        String attributeId = readInternedString();
+        String lang = readInternedString();
+        String value = readString();
+        String regex = readInternedString();
+        properties.put(attributeId, new StrictLangValue(lang, value, regex));
+      }
+
+      return new Node(id, type, code, uri, number,
+          createdBy, createdDate, lastModifiedBy, lastModifiedDate,
+          emptyToNull(properties.build()), readReferences(), readReferences());
+    }
+
+    private ImmutableListMultimap<String, NodeId> readReferences() throws IOException {
+      ImmutableListMultimap.Builder<String, NodeId> references = ImmutableListMultimap.builder();
+      for (long i = 0, n = readVarLong(); i < n; i++) {
+        String attributeId = readInternedString();
+        UUID id = readUUID();
+        references.put(attributeId, new NodeId(id, readTypeId()));
+      }
+      return emptyToNull(references.build());
+    }
+
+    // absent and empty values are not distinguished, empty ones are read as absent (null)
+    private <K, V> ImmutableListMultimap<K, V> emptyToNull(ImmutableListMultimap<K, V> values) {
+      return values.isEmpty() ? null : values;
+    }
+
+    private TypeId readTypeId() throws IOException {
+      return readInterned(TypeId.class, () -> {
+        UUID graphId = readUUID();
+        return new TypeId(readString(), graphId);
+      });
+    }
+
+    private String readInternedString() throws IOException {
+      return readInterned(String.class, this::readString);
+    }
+
+    private <T> T readInterned(Class<T> valueType, IOSupplier<T> newValue) throws IOException {
+      long index = readVarLong();
+      if (index == 0) {
+        return null;
+      }
+      if (index == 1) {
+        T value = newValue.get();
+        interned.add(value);
+        return value;
+      }
+      if (index - 2 >= interned.size()) {
+        throw new BadRequestException("Malformed binary dump");
+      }
+      Object value = interned.get((int) (index - 2));
+      if (!valueType.isInstance(value)) {
+        throw new BadRequestException("Malformed binary dump");
+      }
+      return valueType.cast(value);
+    }
+
+    private UUID readUUID() throws IOException {
+      return new UUID(in.readLong(), in.readLong());
+    }
+
+    private LocalDateTime readDateTime() throws IOException {
+      long epochSecond = readVarLong();
+      return LocalDateTime.ofEpochSecond(epochSecond, (int) readVarLong(), ZoneOffset.UTC);
+    }
+
+    // declared length is not trusted for allocation, buffer grows only as bytes are read
+    String readString() throws IOException {
+      long length = readVarLong();
+      if (length < 0 || length > MAX_STRING_LENGTH) {
+        throw new BadRequestException("Malformed binary dump: string length " + length);
+      }
+      if (length <= STRING_CHUNK_LENGTH) {
+        byte[] bytes = new byte[(int) length];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+      }
+
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream(STRING_CHUNK_LENGTH);
+      byte[] chunk = new byte[STRING_CHUNK_LENGTH];
+      for (long remaining = length; remaining > 0; ) {
+        int n = (int) Math.min(remaining, chunk.length);
+        in.readFully(chunk, 0, n);
+        bytes.write(chunk, 0, n);
+        remaining -= n;
+      }
+      return new String(bytes.toByteArray(), UTF_8);
+    }
+
+    private long readVarLong() throws IOException {
+      long value = 0;
+      for (int shift = 0; shift < 64; shift += 7) {
+        int b = in.readUnsignedByte();
+        value |= (long) (b & 0x7F) << shift;
+        if ((b & 0x80) == 0) {
+          return value;
+        }
+      }
+      throw new BadRequestException("Malformed binary dump");
+    }
+
+  }
+
+  @FunctionalInterface
+  private interface IOSupplier<T> {
+
+    T get() throws IOException;
+
+  }
+
+}
@@ -0,0 +1,25 @@
+package fi.thl.termed.service.dump.util;
+
+import fi.thl.termed.domain.Dump;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Streaming serialization of dumps. Graphs and types are written before nodes so that a reader can
+ * return a dump with lazily read nodes.
+ */
+public interface DumpCodec {
+
+  /**
+   * Writes given dump to output stream. Consumes but does not close the node stream of the dump.
+   */
+  void write(Dump dump, OutputStream out) throws IOException;
+
+  /**
+   * Reads graphs and types from input stream and returns a dump with a lazily read node stream.
+   * Input is read while nodes are consumed, so stream must be consumed before input is closed.
+   */
+  Dump read(InputStream in) throws IOException;
+
+}
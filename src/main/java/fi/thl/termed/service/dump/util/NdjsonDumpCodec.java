@@ -0,0 +1,154 @@
+package fi.thl.termed.service.dump.util;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.Streams;
+import com.google.gson.Gson;
+import com.google.gson.JsonIOException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import fi.thl.termed.domain.Dump;
+import fi.thl.termed.domain.Graph;
+import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.Type;
+import fi.thl.termed.util.spring.exception.BadRequestException;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.stream.Stream;
+
+/**
+ * Newline delimited JSON dump. Each line is one record of form <code>{"graph":{...}}</code>,
+ * <code>{"type":{...}}</code> or <code>{"node":{...}}</code>. Graphs and types precede nodes.
+ */
+public class NdjsonDumpCodec implements DumpCodec {
+
+  private static final String GRAPH = "graph";
+  private static final String TYPE = "type";
+  private static final String NODE = "node";
+
+  private final Gson gson;
+
+  public NdjsonDumpCodec(Gson gson) {
+    this.gson = gson;
+  }
+
+  @Override
+  public void write(Dump dump, OutputStream out) throws IOException {
+    Writer writer = new BufferedWriter(new OutputStreamWriter(out, UTF_8));
+
+    // records are written as separate top-level values which requires lenient writer
+    JsonWriter jsonWriter = new JsonWriter(writer);
+    jsonWriter.setLenient(true);
+
+    Iterator<Graph> graphs = dump.getGraphs().iterator();
+    while (graphs.hasNext()) {
+      writeRecord(writer, jsonWriter, GRAPH, graphs.next(), Graph.class);
+    }
+    Iterator<Type> types = dump.getTypes().iterator();
+    while (types.hasNext()) {
+      writeRecord(writer, jsonWriter, TYPE, types.next(), Type.class);
+    }
+    Iterator<Node> nodes = dump.getNodes().iterator();
+    while (nodes.hasNext()) {
+      writeRecord(writer, jsonWriter, NODE, nodes.next(), Node.class);
+    }
+
+    jsonWriter.flush();
+  }
+
+  private <T> void writeRecord(Writer writer, JsonWriter jsonWriter, String name, T value,
+      Class<T> valueType) throws IOException {
+    jsonWriter.beginObject();
+    jsonWriter.name(name);
+    gson.toJson(value, valueType, jsonWriter);
+    jsonWriter.endObject();
+    writer.write('\n');
+  }
+
+  @Override
+  public Dump read(InputStream in) throws IOException {
+    JsonReader reader = new JsonReader(new BufferedReader(new InputStreamReader(in, UTF_8)));
+    reader.setLenient(true);
+
+    List<Graph> graphs = new ArrayList<>();
+    List<Type> types = new ArrayList<>();
+
+    while (reader.peek() != JsonToken.END_DOCUMENT) {
+      reader.beginObject();
+      String name = reader.nextName();
+
+      switch (name) {
+        case GRAPH:
+          graphs.add(gson.fromJson(reader, Graph.class));
+          reader.endObject();
+          break;
+        case TYPE:
+          types.add(gson.fromJson(reader, Type.class));
+          reader.endObject();
+          break;
+        case NODE:
+          // reader is now positioned at first node, rest of the records are read lazily
+          return new Dump(graphs.stream(), types.stream(), readNodes(reader));
+        default:
+          throw new BadRequestException("Unknown dump record: " + name);
+      }
+    }
+
+    return new Dump(graphs.stream(), types.stream(), Stream.empty());
+  }
+
+  private Stream<Node> readNodes(JsonReader reader) {
+    return Streams.stream(new Iterator<Node>() {
+      // true if reader is positioned at the value of a node record
+      private boolean positioned = true;
+
+      @Override
+      public boolean hasNext() {
+        try {
+          if (positioned) {
+            return true;
+          }
+          if (reader.peek() == JsonToken.END_DOCUMENT) {
+            return false;
+          }
+          reader.beginObject();
+          String name = reader.nextName();
+          if (!name.equals(NODE)) {
+            throw new BadRequestException("Dump graphs and types are expected before nodes");
+          }
+          positioned = true;
+          return true;
+        } catch (IOException e) {
+          throw new JsonIOException(e);
+        }
+      }
+
+      @Override
+      public Node next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        try {
+          Node node = gson.fromJson(reader, Node.class);
+          reader.endObject();
+          positioned = false;
+          return node;
+        } catch (IOException e) {
+          throw new JsonIOException(e);
+        }
+      }
+    });
+  }
+
+}
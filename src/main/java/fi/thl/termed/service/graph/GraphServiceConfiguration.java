@@ -1,7 +1,6 @@
 package fi.thl.termed.service.graph;
 
 import static fi.thl.termed.util.EventBusUtils.register;
-import static fi.thl.termed.util.dao.CachedSystemDao.cache;
 
 import com.google.common.eventbus.EventBus;
 import fi.thl.termed.domain.AppRole;
@@ -22,12 +21,13 @@ import fi.thl.termed.service.graph.internal.JdbcGraphRoleDao;
 import fi.thl.termed.util.dao.AuthorizedDao;
 import fi.thl.termed.util.dao.Dao;
 import fi.thl.termed.util.dao.SystemDao;
+import fi.thl.termed.util.dao.SystemDaoCaches;
 import fi.thl.termed.util.permission.DaoPermissionEvaluator;
 import fi.thl.termed.util.permission.DisjunctionPermissionEvaluator;
 import fi.thl.termed.util.permission.PermissionEvaluator;
 import fi.thl.termed.util.service.ProfilingService;
-import fi.thl.termed.util.service.ReadWriteSynchronizedService;
 import fi.thl.termed.util.service.Service;
+import fi.thl.termed.util.service.SnapshotReadService;
 import fi.thl.termed.util.service.TransactionalService;
 import fi.thl.termed.util.service.WriteLoggingService;
 import javax.sql.DataSource;
@@ -48,6 +48,9 @@ public class GraphServiceConfiguration {
   @Autowired
   private EventBus eventBus;
 
+  @Autowired
+  private SystemDaoCaches daoCaches;
+
   private SystemDao<ObjectRolePermission<GraphId>, GrantedPermission> graphPermissionSystemDao;
 
   @Bean
@@ -60,7 +63,7 @@ public class GraphServiceConfiguration {
     service = new ProfilingService<>(service,
         getClass().getPackage().getName() + ".ProfilingService", 500);
     service = new InitializingGraphService(service);
-    service = new ReadWriteSynchronizedService<>(service);
+    service = register(eventBus, new SnapshotReadService<>(service, Graph::identifier));
 
     return service;
   }
@@ -97,23 +100,24 @@ public class GraphServiceConfiguration {
   }
 
   private SystemDao<GraphId, Graph> graphSystemDao() {
-    return register(eventBus, cache(new JdbcGraphDao(dataSource)));
+    return daoCaches.cache("graphs", new JdbcGraphDao(dataSource));
   }
 
   private SystemDao<GraphRole, Empty> graphRoleSystemDao() {
-    return register(eventBus, cache(new JdbcGraphRoleDao(dataSource)));
+    return daoCaches.cache("graphRoles", new JdbcGraphRoleDao(dataSource));
   }
 
   // this instance is shared internally between other DAOs and evaluators
   private SystemDao<ObjectRolePermission<GraphId>, GrantedPermission> graphPermissionSystemDao() {
     if (graphPermissionSystemDao == null) {
-      graphPermissionSystemDao = register(eventBus, cache(new JdbcGraphPermissionsDao(dataSource)));
+      graphPermissionSystemDao = daoCaches.cache("graphPermissions",
+          new JdbcGraphPermissionsDao(dataSource));
     }
     return graphPermissionSystemDao;
   }
 
   private SystemDao<PropertyValueId<GraphId>, LangValue> graphPropertySystemDao() {
-    return register(eventBus, cache(new JdbcGraphPropertyDao(dataSource)));
+    return daoCaches.cache("graphProperties", new JdbcGraphPropertyDao(dataSource));
   }
 
   /**
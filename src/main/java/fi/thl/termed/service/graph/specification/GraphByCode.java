@@ -16,7 +16,7 @@ public class GraphByCode extends AbstractSqlSpecification<GraphId, Graph> {
 
   @Override
   public boolean test(GraphId key, Graph value) {
-    return Objects.equals(value.getCode(), code);
+    return Objects.equals(value.getCode().orElse(null), code);
   }
 
   @Override
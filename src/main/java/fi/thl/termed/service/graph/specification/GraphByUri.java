@@ -16,7 +16,7 @@ public class GraphByUri extends AbstractSqlSpecification<GraphId, Graph> {
 
   @Override
   public boolean test(GraphId key, Graph value) {
-    return Objects.equals(value.getCode(), uri);
+    return Objects.equals(value.getUri().orElse(null), uri);
   }
 
   @Override
@@ -0,0 +1,153 @@
+package fi.thl.termed.service.metamodel;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
+import fi.thl.termed.domain.Graph;
+import fi.thl.termed.domain.GraphId;
+import fi.thl.termed.domain.ReferenceAttribute;
+import fi.thl.termed.domain.ReferenceAttributeId;
+import fi.thl.termed.domain.TextAttribute;
+import fi.thl.termed.domain.TextAttributeId;
+import fi.thl.termed.domain.Type;
+import fi.thl.termed.domain.TypeId;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Immutable, indexed collection of graphs and types (typically those readable by a user).
+ */
+public final class Metamodel {
+
+  private final long version;
+
+  private final ImmutableList<Graph> graphs;
+  private final ImmutableList<Type> types;
+
+  private final ImmutableMap<GraphId, Graph> graphsById;
+  private final ImmutableListMultimap<String, Graph> graphsByCode;
+  private final ImmutableListMultimap<String, Graph> graphsByUri;
+
+  private final ImmutableMap<TypeId, Type> typesById;
+  private final ImmutableListMultimap<GraphId, Type> typesByGraphId;
+  private final ImmutableListMultimap<String, Type> typesByUri;
+
+  private final ImmutableMap<TextAttributeId, TextAttribute> textAttributesById;
+  private final ImmutableMap<ReferenceAttributeId, ReferenceAttribute> referenceAttributesById;
+  private final ImmutableListMultimap<TypeId, ReferenceAttribute> referenceAttributesByRange;
+
+  private Metamodel(long version, List<Graph> graphs, List<Type> types) {
+    this.version = version;
+    this.graphs = ImmutableList.copyOf(graphs);
+    this.types = ImmutableList.copyOf(types);
+
+    ImmutableMap.Builder<GraphId, Graph> graphsById = ImmutableMap.builder();
+    ImmutableListMultimap.Builder<String, Graph> graphsByCode = ImmutableListMultimap.builder();
+    ImmutableListMultimap.Builder<String, Graph> graphsByUri = ImmutableListMultimap.builder();
+
+    for (Graph graph : graphs) {
+      graphsById.put(graph.identifier(), graph);
+      graph.getCode().ifPresent(code -> graphsByCode.put(code, graph));
+      graph.getUri().ifPresent(uri -> graphsByUri.put(uri, graph));
+    }
+
+    ImmutableMap.Builder<TypeId, Type> typesById = ImmutableMap.builder();
+    ImmutableListMultimap.Builder<GraphId, Type> typesByGraphId = ImmutableListMultimap.builder();
+    ImmutableListMultimap.Builder<String, Type> typesByUri = ImmutableListMultimap.builder();
+    ImmutableMap.Builder<TextAttributeId, TextAttribute> textAttributesById =
+        ImmutableMap.builder();
+    ImmutableMap.Builder<ReferenceAttributeId, ReferenceAttribute> referenceAttributesById =
+        ImmutableMap.builder();
+    ImmutableListMultimap.Builder<TypeId, ReferenceAttribute> referenceAttributesByRange =
+        ImmutableListMultimap.builder();
+
+    for (Type type : types) {
+      typesById.put(type.identifier(), type);
+      typesByGraphId.put(type.getGraph(), type);
+      type.getUri().ifPresent(uri -> typesByUri.put(uri, type));
+      type.getTextAttributes().forEach(a -> textAttributesById.put(a.identifier(), a));
+      type.getReferenceAttributes().forEach(a -> {
+        referenceAttributesById.put(a.identifier(), a);
+        referenceAttributesByRange.put(a.getRange(), a);
+      });
+    }
+
+    this.graphsById = graphsById.build();
+    this.graphsByCode = graphsByCode.build();
+    this.graphsByUri = graphsByUri.build();
+    this.typesById = typesById.build();
+    this.typesByGraphId = typesByGraphId.build();
+    this.typesByUri = typesByUri.build();
+    this.textAttributesById = textAttributesById.build();
+    this.referenceAttributesById = referenceAttributesById.build();
+    this.referenceAttributesByRange = referenceAttributesByRange.build();
+  }
+
+  public static Metamodel of(List<Graph> graphs, List<Type> types) {
+    return new Metamodel(0, graphs, types);
+  }
+
+  public static Metamodel of(long version, List<Graph> graphs, List<Type> types) {
+    return new Metamodel(version, graphs, types);
+  }
+
+  /**
+   * Version of graphs and types this metamodel was built from, grows on each graph and type write.
+   */
+  public long getVersion() {
+    return version;
+  }
+
+  public ImmutableList<Graph> getGraphs() {
+    return graphs;
+  }
+
+  public Optional<Graph> getGraph(GraphId id) {
+    return Optional.ofNullable(graphsById.get(id));
+  }
+
+  public boolean containsGraph(GraphId id) {
+    return graphsById.containsKey(id);
+  }
+
+  public ImmutableList<Graph> getGraphsByCode(String code) {
+    return graphsByCode.get(code);
+  }
+
+  public ImmutableList<Graph> getGraphsByUri(String uri) {
+    return graphsByUri.get(uri);
+  }
+
+  public ImmutableList<Type> getTypes() {
+    return types;
+  }
+
+  public ImmutableList<Type> getTypes(GraphId graphId) {
+    return typesByGraphId.get(graphId);
+  }
+
+  public Optional<Type> getType(TypeId id) {
+    return Optional.ofNullable(typesById.get(id));
+  }
+
+  public boolean containsType(TypeId id) {
+    return typesById.containsKey(id);
+  }
+
+  public ImmutableList<Type> getTypesByUri(String uri) {
+    return typesByUri.get(uri);
+  }
+
+  public Optional<TextAttribute> getTextAttribute(TextAttributeId id) {
+    return Optional.ofNullable(textAttributesById.get(id));
+  }
+
+  public Optional<ReferenceAttribute> getReferenceAttribute(ReferenceAttributeId id) {
+    return Optional.ofNullable(referenceAttributesById.get(id));
+  }
+
+  public ImmutableList<ReferenceAttribute> getReferenceAttributesByRange(TypeId range) {
+    return referenceAttributesByRange.get(range);
+  }
+
+}
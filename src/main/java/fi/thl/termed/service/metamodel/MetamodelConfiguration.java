@@ -0,0 +1,20 @@
+package fi.thl.termed.service.metamodel;
+
+import fi.thl.termed.domain.Graph;
+import fi.thl.termed.domain.GraphId;
+import fi.thl.termed.domain.Type;
+import fi.thl.termed.domain.TypeId;
+import fi.thl.termed.util.service.Service;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class MetamodelConfiguration {
+
+  @Bean
+  public MetamodelSnapshot metamodelSnapshot(
+      Service<GraphId, Graph> graphService, Service<TypeId, Type> typeService) {
+    return new MetamodelSnapshot(graphService, typeService);
+  }
+
+}
@@ -0,0 +1,77 @@
+package fi.thl.termed.service.metamodel;
+
+import static fi.thl.termed.util.collect.StreamUtils.toListAndClose;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import fi.thl.termed.domain.AppRole;
+import fi.thl.termed.domain.Graph;
+import fi.thl.termed.domain.GraphId;
+import fi.thl.termed.domain.GraphRole;
+import fi.thl.termed.domain.Type;
+import fi.thl.termed.domain.TypeId;
+import fi.thl.termed.domain.User;
+import fi.thl.termed.util.collect.Tuple;
+import fi.thl.termed.util.collect.Tuple2;
+import fi.thl.termed.util.query.Queries;
+import fi.thl.termed.util.service.Service;
+import fi.thl.termed.util.service.SnapshotReadService;
+import java.util.List;
+
+/**
+ * Provides indexed metamodel (graphs and types) readable by a user.
+ *
+ * <p>If graph and type services are {@link SnapshotReadService}s, metamodel is built once for each
+ * distinct combination of app role and graph roles and rebuilt only after graphs or types have
+ * been written. Otherwise metamodel is built on each request.
+ */
+public class MetamodelSnapshot {
+
+  private static final int MAX_VIEWS = 10_000;
+
+  private final Service<GraphId, Graph> graphService;
+  private final Service<TypeId, Type> typeService;
+
+  private final Cache<Tuple2<AppRole, List<GraphRole>>, Metamodel> views =
+      CacheBuilder.newBuilder().maximumSize(MAX_VIEWS).build();
+
+  public MetamodelSnapshot(Service<GraphId, Graph> graphService,
+      Service<TypeId, Type> typeService) {
+    this.graphService = graphService;
+    this.typeService = typeService;
+  }
+
+  /**
+   * Returns graphs and types readable by given user.
+   */
+  public Metamodel get(User user) {
+    if (!(graphService instanceof SnapshotReadService) ||
+        !(typeService instanceof SnapshotReadService)) {
+      return build(0, user);
+    }
+
+    // both versions grow on each write so their sum does too
+    long version = ((SnapshotReadService<?, ?>) graphService).getVersion() +
+        ((SnapshotReadService<?, ?>) typeService).getVersion();
+
+    Tuple2<AppRole, List<GraphRole>> key =
+        Tuple.of(user.getAppRole(), ImmutableList.copyOf(user.getGraphRoles()));
+    Metamodel metamodel = views.getIfPresent(key);
+
+    // version is read before metamodel is built, so a concurrent write only causes a rebuild
+    if (metamodel == null || metamodel.getVersion() != version) {
+      metamodel = build(version, user);
+      views.put(key, metamodel);
+    }
+
+    return metamodel;
+  }
+
+  private Metamodel build(long version, User user) {
+    return Metamodel.of(version,
+        toListAndClose(graphService.values(Queries.matchAll(), user)),
+        toListAndClose(typeService.values(Queries.matchAll(), user)));
+  }
+
+}
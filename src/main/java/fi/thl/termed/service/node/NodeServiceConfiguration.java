@@ -7,6 +7,7 @@ import static fi.thl.termed.util.spring.jdbc.SpringJdbcUtils.getDatabaseProductN
 
 import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
+import com.zaxxer.hikari.HikariDataSource;
 import fi.thl.termed.domain.AppRole;
 import fi.thl.termed.domain.Empty;
 import fi.thl.termed.domain.Graph;
@@ -23,6 +24,7 @@ import fi.thl.termed.domain.StrictLangValue;
 import fi.thl.termed.domain.TextAttributeId;
 import fi.thl.termed.domain.Type;
 import fi.thl.termed.domain.TypeId;
+import fi.thl.termed.domain.User;
 import fi.thl.termed.domain.event.ApplicationShutdownEvent;
 import fi.thl.termed.service.node.internal.AttributeValueInitializingNodeService;
 import fi.thl.termed.service.node.internal.NodeMetadataInitializingService;
@@ -30,12 +32,14 @@ import fi.thl.termed.service.node.internal.DocumentToNode;
 import fi.thl.termed.service.node.internal.IdInitializingNodeService;
 import fi.thl.termed.service.node.internal.IndexedNodeService;
 import fi.thl.termed.service.node.internal.JdbcNodeDao;
+import fi.thl.termed.service.node.internal.JdbcNodeGraphCopyDao;
 import fi.thl.termed.service.node.internal.JdbcNodeIndexingQueueDao;
 import fi.thl.termed.service.node.internal.JdbcNodeIndexingQueueItemDao;
 import fi.thl.termed.service.node.internal.JdbcNodeReferenceAttributeValueDao;
 import fi.thl.termed.service.node.internal.JdbcNodeReferenceAttributeValueRevisionDao;
 import fi.thl.termed.service.node.internal.JdbcNodeRevisionDao;
-import fi.thl.termed.service.node.internal.JdbcNodeSequenceDao;
+import fi.thl.termed.service.node.internal.JdbcNodeSequenceService;
+import fi.thl.termed.service.node.internal.JdbcNodeTextAttributeLangDao;
 import fi.thl.termed.service.node.internal.JdbcNodeTextAttributeValueDao;
 import fi.thl.termed.service.node.internal.JdbcNodeTextAttributeValueRevisionDao;
 import fi.thl.termed.service.node.internal.JdbcPostgresNodeDao;
@@ -60,23 +64,27 @@ import fi.thl.termed.util.index.Index;
 import fi.thl.termed.util.index.lucene.LuceneIndex;
 import fi.thl.termed.util.permission.DisjunctionPermissionEvaluator;
 import fi.thl.termed.util.permission.PermissionEvaluator;
-import fi.thl.termed.util.service.CachedNamedSequenceService;
-import fi.thl.termed.util.service.DaoNamedSequenceService;
+import fi.thl.termed.util.query.Queries;
+import fi.thl.termed.util.service.AuthorizedNamedSequenceService;
+import fi.thl.termed.util.service.BlockAllocatingNamedSequenceService;
+import fi.thl.termed.util.service.FallbackNamedSequenceService;
 import fi.thl.termed.util.service.ForwardingNamedSequenceService;
 import fi.thl.termed.util.service.NamedSequenceService;
 import fi.thl.termed.util.service.ProfilingService;
 import fi.thl.termed.util.service.SequenceService;
 import fi.thl.termed.util.service.Service;
-import fi.thl.termed.util.service.SynchronizedNamedSequenceService;
 import fi.thl.termed.util.service.TransactionalNamedSequenceService;
 import fi.thl.termed.util.service.TransactionalService;
 import fi.thl.termed.util.service.WriteLoggingService;
 import javax.sql.DataSource;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
 import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
 
 @Configuration
 public class NodeServiceConfiguration {
@@ -84,6 +92,8 @@ public class NodeServiceConfiguration {
   @Autowired
   private DataSource dataSource;
   @Autowired
+  private DataSourceProperties dataSourceProperties;
+  @Autowired
   private PlatformTransactionManager transactionManager;
 
   @Autowired
@@ -112,6 +122,8 @@ public class NodeServiceConfiguration {
 
   private String packageName = getClass().getPackage().getName();
 
+  private User typeReader = new User("nodeReadAuthorizer", "", AppRole.ADMIN);
+
   @Bean
   public Service<NodeId, Node> nodeService() {
     Service<NodeId, Node> service = nodeRepository();
@@ -121,14 +133,16 @@ public class NodeServiceConfiguration {
         nodeIndex(),
         nodeIndexingQueueSequenceDao(),
         nodeIndexingQueueDao(),
-        nodeIndexingQueueItemDao());
+        nodeIndexingQueueItemDao(),
+        transactionManager);
     eventBus.register(service);
 
     service = new ReadAuthorizedNodeService(service,
-        typeEvaluator, textAttributeEvaluator, referenceAttributeEvaluator);
+        typeEvaluator, textAttributeEvaluator, referenceAttributeEvaluator,
+        () -> typeService.keys(Queries.matchAll(), typeReader));
 
     service = new WriteLoggingService<>(service, packageName + ".WriteLoggingService");
-    service = new NodeWriteEventPostingService(service, nodeRevisionService(), eventBus);
+    service = new NodeWriteEventPostingService(service, eventBus, transactionManager);
     service = new RevisionInitializingNodeService(service, revisionSeqService, revisionService);
 
     service = new NodeMetadataInitializingService(service, nodeSequenceService(),
@@ -141,6 +155,16 @@ public class NodeServiceConfiguration {
     return service;
   }
 
+  @Bean
+  public JdbcNodeGraphCopyDao nodeGraphCopyDao() {
+    return new JdbcNodeGraphCopyDao(dataSource);
+  }
+
+  @Bean
+  public JdbcNodeTextAttributeLangDao nodeTextAttributeLangDao() {
+    return new JdbcNodeTextAttributeLangDao(dataSource);
+  }
+
   @Bean
   public Service<RevisionId<NodeId>, Tuple2<RevisionType, Node>> nodeRevisionService() {
     Service<RevisionId<NodeId>, Tuple2<RevisionType, Node>> service = nodeRevisionRepository();
@@ -168,22 +192,38 @@ public class NodeServiceConfiguration {
   }
 
   private NamedSequenceService<TypeId> nodeSequenceService() {
-    NamedSequenceService<TypeId> sequenceService =
-        new DaoNamedSequenceService<>(
-            new AuthorizedDao<>(nodeSequenceSystemDao(), nodeSequenceEvaluator()));
+    boolean postgresql = getDatabaseProductName(dataSource).equalsIgnoreCase("postgresql");
+
+    // blocks are reserved on connections of their own, so that reserving never waits for a
+    // connection held by node writes and reserved blocks are committed independent of the writes
+    HikariDataSource blockDataSource = dataSourceProperties.initializeDataSourceBuilder()
+        .type(HikariDataSource.class).build();
+    blockDataSource.setPoolName("node-sequence-blocks");
+    blockDataSource.setMaximumPoolSize(2);
+
+    NamedSequenceService<TypeId> blockService = new TransactionalNamedSequenceService<>(
+        new JdbcNodeSequenceService(blockDataSource, postgresql),
+        new DataSourceTransactionManager(blockDataSource), new DefaultTransactionDefinition());
+    blockService = new BlockAllocatingNamedSequenceService<>(blockService);
+
+    // sequences of types not yet committed (e.g. types and nodes saved in one transaction) are
+    // advanced in writer's transaction
+    NamedSequenceService<TypeId> sequenceService = new FallbackNamedSequenceService<>(
+        blockService,
+        new TransactionalNamedSequenceService<>(
+            new JdbcNodeSequenceService(dataSource, postgresql),
+            transactionManager, new DefaultTransactionDefinition()));
 
-    sequenceService = new CachedNamedSequenceService<>(sequenceService);
     sequenceService = new ForwardingNamedSequenceService<TypeId>(sequenceService) {
       @Subscribe
-      public void discardCachesOn(ApplicationShutdownEvent e) {
+      public void releaseBlocksOn(ApplicationShutdownEvent e) {
         close();
+        blockDataSource.close();
       }
     };
     eventBus.register(sequenceService);
-    sequenceService = new TransactionalNamedSequenceService<>(sequenceService, transactionManager);
-    sequenceService = new SynchronizedNamedSequenceService<>(sequenceService);
 
-    return sequenceService;
+    return new AuthorizedNamedSequenceService<>(sequenceService, nodeSequenceEvaluator());
   }
 
   private Service<RevisionId<NodeId>, Tuple2<RevisionType, Node>> nodeRevisionRepository() {
@@ -237,10 +277,6 @@ public class NodeServiceConfiguration {
     });
   }
 
-  private SystemDao<TypeId, Long> nodeSequenceSystemDao() {
-    return new JdbcNodeSequenceDao(dataSource);
-  }
-
   private SystemDao<NodeId, Node> nodeSystemDao() {
     SystemDao<NodeId, Node> nodeDao = new JdbcNodeDao(dataSource);
     return new JdbcPostgresNodeDao(nodeDao, dataSource);
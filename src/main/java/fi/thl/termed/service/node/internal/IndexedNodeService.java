@@ -1,6 +1,7 @@
 package fi.thl.termed.service.node.internal;
 
 import static com.google.common.collect.ImmutableList.toImmutableList;
+import static fi.thl.termed.util.spring.transaction.TransactionUtils.runAfterCommit;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
@@ -24,6 +25,7 @@ import fi.thl.termed.util.collect.StreamUtils;
 import fi.thl.termed.util.collect.Tuple;
 import fi.thl.termed.util.dao.SystemDao;
 import fi.thl.termed.util.dao.SystemSequenceDao;
+import fi.thl.termed.util.event.SyncSubscriber;
 import fi.thl.termed.util.index.Index;
 import fi.thl.termed.util.index.lucene.LuceneIndex;
 import fi.thl.termed.util.query.AndSpecification;
@@ -52,7 +54,9 @@ import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.transaction.PlatformTransactionManager;
 
+@SyncSubscriber
 public class IndexedNodeService extends ForwardingService<NodeId, Node> {
 
   private Logger log = LoggerFactory.getLogger(getClass());
@@ -62,6 +66,7 @@ public class IndexedNodeService extends ForwardingService<NodeId, Node> {
   private SystemSequenceDao nodeIndexingQueueSequenceDao;
   private SystemDao<Long, Empty> nodeIndexingQueueDao;
   private SystemDao<IndexingQueueItemId<NodeId>, Empty> nodeIndexingQueueItemDao;
+  private PlatformTransactionManager transactionManager;
 
   private User indexer = new User("indexer", "", AppRole.ADMIN);
 
@@ -70,12 +75,14 @@ public class IndexedNodeService extends ForwardingService<NodeId, Node> {
       Index<NodeId, Node> index,
       SystemSequenceDao nodeIndexingQueueSequenceDao,
       SystemDao<Long, Empty> nodeIndexingQueueDao,
-      SystemDao<IndexingQueueItemId<NodeId>, Empty> nodeIndexingQueueItemDao) {
+      SystemDao<IndexingQueueItemId<NodeId>, Empty> nodeIndexingQueueItemDao,
+      PlatformTransactionManager transactionManager) {
     super(delegate);
     this.index = index;
     this.nodeIndexingQueueSequenceDao = nodeIndexingQueueSequenceDao;
     this.nodeIndexingQueueDao = nodeIndexingQueueDao;
     this.nodeIndexingQueueItemDao = nodeIndexingQueueItemDao;
+    this.transactionManager = transactionManager;
   }
 
   @Subscribe
@@ -94,7 +101,7 @@ public class IndexedNodeService extends ForwardingService<NodeId, Node> {
     try (Stream<NodeId> ids = super.keys(Queries.matchAll(), indexer)) {
       enqueue(queueId, ids);
     } finally {
-      index(queueId);
+      indexAfterCommit(queueId);
     }
   }
 
@@ -117,6 +124,7 @@ public class IndexedNodeService extends ForwardingService<NodeId, Node> {
   public void reindexOn(ReindexEvent<NodeId> e) {
     log.info("Indexing");
     index(e.getKeyStreamSupplier().get());
+    waitLuceneIndexRefresh();
     log.info("Done");
   }
 
@@ -127,7 +135,7 @@ public class IndexedNodeService extends ForwardingService<NodeId, Node> {
     try {
       super.save(nodes.peek(node -> enqueue(queueId, node.identifier())), mode, opts, user);
     } finally {
-      index(queueId);
+      indexAfterCommit(queueId);
     }
   }
 
@@ -139,7 +147,7 @@ public class IndexedNodeService extends ForwardingService<NodeId, Node> {
     try {
       return super.save(node, mode, opts, user);
     } finally {
-      index(queueId);
+      indexAfterCommit(queueId);
     }
   }
 
@@ -150,7 +158,7 @@ public class IndexedNodeService extends ForwardingService<NodeId, Node> {
     try {
       super.delete(idStream.peek(id -> enqueue(queueId, id)), opts, user);
     } finally {
-      index(queueId);
+      indexAfterCommit(queueId);
     }
   }
 
@@ -162,7 +170,7 @@ public class IndexedNodeService extends ForwardingService<NodeId, Node> {
     try {
       super.delete(id, opts, user);
     } finally {
-      index(queueId);
+      indexAfterCommit(queueId);
     }
   }
 
@@ -177,10 +185,15 @@ public class IndexedNodeService extends ForwardingService<NodeId, Node> {
           deletes.peek(id -> enqueue(queueId, id)),
           mode, opts, user);
     } finally {
-      index(queueId);
+      indexAfterCommit(queueId);
     }
   }
 
+  // if written in caller's transaction, index is updated only if and when it commits
+  private void indexAfterCommit(Long queueId) {
+    runAfterCommit(transactionManager, () -> index(queueId));
+  }
+
   private Long initQueue() {
     Long queueId = nodeIndexingQueueSequenceDao.getAndAdvance();
     nodeIndexingQueueDao.insert(queueId, Empty.INSTANCE);
@@ -0,0 +1,84 @@
+package fi.thl.termed.service.node.internal;
+
+import fi.thl.termed.domain.RevisionType;
+import java.time.LocalDateTime;
+import java.util.UUID;
+import javax.sql.DataSource;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Copies all nodes of a graph to another graph with set based INSERT ... SELECT statements. Node
+ * ids are kept and graph id is remapped, also in references to nodes in the source graph. Target
+ * graph and its types (with same ids as in the source graph) are expected to exist.
+ *
+ * <p>Copy bypasses permission checks, events and indexing of the node service. Callers are
+ * expected to check permissions, run copy in a transaction and reindex the target graph.
+ */
+public class JdbcNodeGraphCopyDao {
+
+  private final JdbcTemplate jdbcTemplate;
+
+  public JdbcNodeGraphCopyDao(DataSource dataSource) {
+    this.jdbcTemplate = new JdbcTemplate(dataSource);
+  }
+
+  /**
+   * Copies nodes, node attribute values and node sequences of source graph to target graph. All
+   * copied nodes are recorded as inserted in given revision.
+   *
+   * @return number of copied nodes
+   */
+  public int copy(UUID sourceGraphId, UUID targetGraphId, Long revision, String username,
+      LocalDateTime date) {
+
+    jdbcTemplate.update(
+        "insert into node_sequence (graph_id, type_id, value) "
+            + "select ?, type_id, value from node_sequence where graph_id = ?",
+        targetGraphId, sourceGraphId);
+
+    int nodeCount = jdbcTemplate.update(
+        "insert into node (graph_id, type_id, id, code, uri, number, created_by, created_date, last_modified_by, last_modified_date) "
+            + "select ?, type_id, id, code, uri, number, ?, ?, ?, ? from node where graph_id = ?",
+        targetGraphId, username, date, username, date, sourceGraphId);
+
+    jdbcTemplate.update(
+        "insert into node_text_attribute_value (node_graph_id, node_type_id, node_id, attribute_id, index, lang, value, regex) "
+            + "select ?, node_type_id, node_id, attribute_id, index, lang, value, regex "
+            + "from node_text_attribute_value where node_graph_id = ?",
+        targetGraphId, sourceGraphId);
+
+    jdbcTemplate.update(
+        "insert into node_reference_attribute_value (node_graph_id, node_type_id, node_id, attribute_id, index, value_graph_id, value_type_id, value_id) "
+            + "select ?, node_type_id, node_id, attribute_id, index, "
+            + "case when value_graph_id = ? then ? else value_graph_id end, value_type_id, value_id "
+            + "from node_reference_attribute_value where node_graph_id = ?",
+        targetGraphId, sourceGraphId, targetGraphId, sourceGraphId);
+
+    insertRevisions(targetGraphId, revision);
+
+    return nodeCount;
+  }
+
+  private void insertRevisions(UUID graphId, Long revision) {
+    String revisionType = RevisionType.INSERT.toString();
+
+    jdbcTemplate.update(
+        "insert into node_aud (graph_id, type_id, id, revision, code, uri, number, created_by, created_date, last_modified_by, last_modified_date, revision_type) "
+            + "select graph_id, type_id, id, ?, code, uri, number, created_by, created_date, last_modified_by, last_modified_date, ? "
+            + "from node where graph_id = ?",
+        revision, revisionType, graphId);
+
+    jdbcTemplate.update(
+        "insert into node_text_attribute_value_aud (node_graph_id, node_type_id, node_id, revision, attribute_id, index, lang, value, regex, revision_type) "
+            + "select node_graph_id, node_type_id, node_id, ?, attribute_id, index, lang, value, regex, ? "
+            + "from node_text_attribute_value where node_graph_id = ?",
+        revision, revisionType, graphId);
+
+    jdbcTemplate.update(
+        "insert into node_reference_attribute_value_aud (node_graph_id, node_type_id, node_id, revision, attribute_id, index, value_graph_id, value_type_id, value_id, revision_type) "
+            + "select node_graph_id, node_type_id, node_id, ?, attribute_id, index, value_graph_id, value_type_id, value_id, ? "
+            + "from node_reference_attribute_value where node_graph_id = ?",
+        revision, revisionType, graphId);
+  }
+
+}
@@ -0,0 +1,125 @@
+package fi.thl.termed.service.node.internal;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import fi.thl.termed.domain.TypeId;
+import fi.thl.termed.domain.User;
+import fi.thl.termed.util.service.NamedSequenceService;
+import java.util.Collections;
+import java.util.List;
+import javax.sql.DataSource;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Node number sequences stored in node_sequence table, one row per type. Sequence is advanced
+ * with a single update, on PostgreSQL new value is returned by the same statement. Other
+ * databases read the value with a separate select, so advancing should run in a transaction.
+ *
+ * <p>Does not check user permissions.
+ */
+public class JdbcNodeSequenceService implements NamedSequenceService<TypeId> {
+
+  private final JdbcTemplate jdbcTemplate;
+  private final boolean postgresql;
+
+  public JdbcNodeSequenceService(DataSource dataSource, boolean postgresql) {
+    this.jdbcTemplate = new JdbcTemplate(dataSource);
+    this.postgresql = postgresql;
+  }
+
+  @Override
+  public Long get(TypeId typeId, User user) {
+    return jdbcTemplate.queryForList(
+        "select value from node_sequence where graph_id = ? and type_id = ?",
+        Long.class,
+        typeId.getGraphId(),
+        typeId.getId()).stream().findFirst().orElse(0L);
+  }
+
+  @Override
+  public Long getAndAdvance(TypeId typeId, User user) {
+    return getAndAdvance(typeId, 1L, user);
+  }
+
+  @Override
+  public Long getAndAdvance(TypeId typeId, Long count, User user) {
+    checkArgument(count > 0);
+
+    List<Long> advanced = advance(typeId, count);
+
+    if (advanced.isEmpty()) {
+      insertIfMissing(typeId);
+      advanced = advance(typeId, count);
+    }
+
+    return advanced.stream().findFirst().orElseThrow(IllegalStateException::new) - count;
+  }
+
+  // returns advanced value or empty list if sequence does not exist yet
+  private List<Long> advance(TypeId typeId, long count) {
+    if (postgresql) {
+      return jdbcTemplate.queryForList(
+          "update node_sequence set value = value + ? " +
+              "where graph_id = ? and type_id = ? returning value",
+          Long.class,
+          count,
+          typeId.getGraphId(),
+          typeId.getId());
+    }
+
+    int updated = jdbcTemplate.update(
+        "update node_sequence set value = value + ? where graph_id = ? and type_id = ?",
+        count,
+        typeId.getGraphId(),
+        typeId.getId());
+
+    return updated > 0
+        ? jdbcTemplate.queryForList(
+        "select value from node_sequence where graph_id = ? and type_id = ?",
+        Long.class,
+        typeId.getGraphId(),
+        typeId.getId())
+        : Collections.emptyList();
+  }
+
+  private void insertIfMissing(TypeId typeId) {
+    try {
+      jdbcTemplate.update(
+          "insert into node_sequence (graph_id, type_id, value) values (?, ?, 0)" +
+              (postgresql ? " on conflict do nothing" : ""),
+          typeId.getGraphId(),
+          typeId.getId());
+    } catch (DuplicateKeyException e) {
+      // inserted concurrently by someone else, fine as long as the row exists
+    }
+  }
+
+  @Override
+  public void set(TypeId typeId, Long value, User user) {
+    int updated = jdbcTemplate.update(
+        "update node_sequence set value = ? where graph_id = ? and type_id = ?",
+        value,
+        typeId.getGraphId(),
+        typeId.getId());
+
+    if (updated == 0) {
+      jdbcTemplate.update(
+          "insert into node_sequence (graph_id, type_id, value) values (?, ?, ?)",
+          typeId.getGraphId(),
+          typeId.getId(),
+          value);
+    }
+  }
+
+  @Override
+  public boolean compareAndSet(TypeId typeId, Long expected, Long value, User user) {
+    return jdbcTemplate.update(
+        "update node_sequence set value = ? where graph_id = ? and type_id = ? and value = ?",
+        value,
+        typeId.getGraphId(),
+        typeId.getId(),
+        expected) > 0;
+  }
+
+}
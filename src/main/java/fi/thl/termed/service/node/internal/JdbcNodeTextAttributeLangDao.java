@@ -0,0 +1,42 @@
+package fi.thl.termed.service.node.internal;
+
+import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.Multimap;
+import fi.thl.termed.domain.TypeId;
+import javax.sql.DataSource;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Reads languages used in text attribute values of a type without reading the values. Used e.g.
+ * to derive language qualified CSV columns before exporting nodes.
+ *
+ * <p>Bypasses permission checks of the node service. Callers are expected to ask only for
+ * attributes the user can read.
+ */
+public class JdbcNodeTextAttributeLangDao {
+
+  private final JdbcTemplate jdbcTemplate;
+
+  public JdbcNodeTextAttributeLangDao(DataSource dataSource) {
+    this.jdbcTemplate = new JdbcTemplate(dataSource);
+  }
+
+  /**
+   * @return languages of text attribute values of given type by attribute id, sorted by language
+   * with empty language first
+   */
+  public Multimap<String, String> getLangs(TypeId typeId) {
+    Multimap<String, String> langs = LinkedHashMultimap.create();
+
+    jdbcTemplate.query(
+        "select distinct attribute_id, lang from node_text_attribute_value "
+            + "where node_graph_id = ? and node_type_id = ? order by attribute_id, lang",
+        rs -> {
+          langs.put(rs.getString("attribute_id"), rs.getString("lang"));
+        },
+        typeId.getGraphId(), typeId.getId());
+
+    return langs;
+  }
+
+}
@@ -0,0 +1,136 @@
+package fi.thl.termed.service.node.internal;
+
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.domain.TypeId;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Append-only buffer of node ids. First ids are kept in memory, rest are spilled into a temporary
+ * file as fixed size records (uuid + type index) so that buffering ids of very large writes does
+ * not need a large heap. Ids are read back in insertion order.
+ */
+class NodeIdBuffer implements AutoCloseable {
+
+  private static final int DEFAULT_MAX_IN_MEMORY = 100_000;
+
+  private final int maxInMemory;
+  private final List<NodeId> inMemory = new ArrayList<>();
+
+  private final Map<TypeId, Integer> typeIndices = new HashMap<>();
+  private final List<TypeId> types = new ArrayList<>();
+
+  private Path spillFile;
+  private DataOutputStream spillOut;
+  private long spilledCount;
+
+  NodeIdBuffer() {
+    this(DEFAULT_MAX_IN_MEMORY);
+  }
+
+  NodeIdBuffer(int maxInMemory) {
+    this.maxInMemory = maxInMemory;
+  }
+
+  synchronized void add(NodeId id) {
+    if (inMemory.size() < maxInMemory) {
+      inMemory.add(id);
+      return;
+    }
+
+    try {
+      if (spillOut == null) {
+        spillFile = Files.createTempFile("termed-node-ids-", ".bin");
+        spillOut = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(spillFile)));
+      }
+
+      int typeIndex = typeIndices.computeIfAbsent(id.getType(), t -> {
+        types.add(t);
+        return types.size() - 1;
+      });
+
+      spillOut.writeLong(id.getId().getMostSignificantBits());
+      spillOut.writeLong(id.getId().getLeastSignificantBits());
+      spillOut.writeInt(typeIndex);
+      spilledCount++;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  synchronized long size() {
+    return inMemory.size() + spilledCount;
+  }
+
+  /**
+   * Passes buffered ids to consumer in insertion order in lists of at most given size.
+   */
+  synchronized void forEachBatch(int batchSize, Consumer<List<NodeId>> consumer) {
+    List<NodeId> batch = new ArrayList<>(batchSize);
+
+    for (NodeId id : inMemory) {
+      batch = addToBatch(batch, id, batchSize, consumer);
+    }
+
+    if (spillOut != null) {
+      try {
+        spillOut.flush();
+        try (DataInputStream in = new DataInputStream(
+            new BufferedInputStream(Files.newInputStream(spillFile)))) {
+          for (long i = 0; i < spilledCount; i++) {
+            UUID uuid = new UUID(in.readLong(), in.readLong());
+            batch = addToBatch(batch, new NodeId(uuid, types.get(in.readInt())), batchSize,
+                consumer);
+          }
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    if (!batch.isEmpty()) {
+      consumer.accept(batch);
+    }
+  }
+
+  private List<NodeId> addToBatch(List<NodeId> batch, NodeId id, int batchSize,
+      Consumer<List<NodeId>> consumer) {
+    batch.add(id);
+    if (batch.size() == batchSize) {
+      consumer.accept(batch);
+      return new ArrayList<>(batchSize);
+    }
+    return batch;
+  }
+
+  @Override
+  public synchronized void close() {
+    inMemory.clear();
+
+    if (spillOut != null) {
+      try {
+        spillOut.close();
+        Files.deleteIfExists(spillFile);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      } finally {
+        spillOut = null;
+        spillFile = null;
+        spilledCount = 0;
+      }
+    }
+  }
+
+}
@@ -3,6 +3,8 @@ package fi.thl.termed.service.node.internal;
 import static fi.thl.termed.util.collect.FunctionUtils.memoize;
 import static fi.thl.termed.util.query.AndSpecification.and;
 import static java.util.Optional.ofNullable;
+import static java.util.stream.Collectors.counting;
+import static java.util.stream.Collectors.groupingBy;
 
 import fi.thl.termed.domain.Graph;
 import fi.thl.termed.domain.GraphId;
@@ -15,11 +17,15 @@ import fi.thl.termed.service.node.specification.NodesByCode;
 import fi.thl.termed.service.node.specification.NodesByGraphId;
 import fi.thl.termed.service.node.specification.NodesByTypeId;
 import fi.thl.termed.service.node.specification.NodesByUri;
+import fi.thl.termed.util.collect.StreamUtils;
 import fi.thl.termed.util.collect.Tuple2;
 import fi.thl.termed.util.service.NamedSequenceService;
 import fi.thl.termed.util.service.Service;
 import fi.thl.termed.util.service.WriteOptions;
 import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Optional;
 import java.util.function.BiFunction;
 import java.util.function.Function;
@@ -28,6 +34,9 @@ import java.util.stream.Stream;
 
 public class NodeMetadataInitializingService extends PreSaveNodeInitializingService {
 
+  // number of nodes for which numbers are allocated at once
+  private static final int NUMBER_BATCH_SIZE = 1000;
+
   private NamedSequenceService<TypeId> nodeSequenceService;
   private BiFunction<TypeId, User, Type> types;
   private BiFunction<GraphId, User, Graph> graphs;
@@ -55,24 +64,11 @@ public class NodeMetadataInitializingService extends PreSaveNodeInitializingServ
     BiFunction<TypeId, Long, String> codeGenerator = codeGenerator(user);
     BiFunction<GraphId, String, String> uriGenerator = uriGenerator(opts.getUriNamespace(), user);
 
-    return newNodes.map(node -> {
-      Long number = nodeSequenceService.getAndAdvance(node.getType(), user);
-
-      // generate code once (and only once) if needed
-      Supplier<String> codeGen = memoize(() -> codeGenerator.apply(node.getType(), number));
-      String code = node.getCode().orElseGet(() -> opts.isGenerateCodes() ? codeGen.get() : null);
-      String uri = node.getUri().orElseGet(() -> opts.isGenerateUris() ?
-          uriGenerator.apply(node.getTypeGraph(), ofNullable(code).orElseGet(codeGen)) : null);
-
-      return Node.builderFromCopyOf(node)
-          .number(number)
-          .code(code)
-          .uri(uri)
-          .createdBy(user.getUsername())
-          .createdDate(now)
-          .lastModifiedBy(user.getUsername())
-          .lastModifiedDate(now)
-          .build();
+    return StreamUtils.partitionedMap(newNodes, NUMBER_BATCH_SIZE, batch -> {
+      Function<TypeId, Long> numbers = allocateNumbers(batch.stream().map(Node::getType), user);
+
+      return batch.stream().map(node -> initNew(node, numbers.apply(node.getType()), now,
+          codeGenerator, uriGenerator, opts, user));
     });
   }
 
@@ -85,13 +81,7 @@ public class NodeMetadataInitializingService extends PreSaveNodeInitializingServ
       Node oldNode = oldAndNewNode._1;
       Node newNode = oldAndNewNode._2;
 
-      return Node.builderFromCopyOf(newNode)
-          .number(oldNode.getNumber())
-          .createdBy(oldNode.getCreatedBy())
-          .createdDate(oldNode.getCreatedDate())
-          .lastModifiedBy(user.getUsername())
-          .lastModifiedDate(now)
-          .build();
+      return initExisting(oldNode, newNode, now, user);
     });
   }
 
@@ -104,41 +94,68 @@ public class NodeMetadataInitializingService extends PreSaveNodeInitializingServ
     BiFunction<TypeId, Long, String> codeGenerator = codeGenerator(user);
     BiFunction<GraphId, String, String> uriGenerator = uriGenerator(opts.getUriNamespace(), user);
 
-    return oldAndNewNodes.map(oldAndNewNode -> {
-      Optional<Node> optionalOldNode = oldAndNewNode._1;
-      Node node = oldAndNewNode._2;
-
-      if (optionalOldNode.isPresent()) {
-        Node oldNode = optionalOldNode.get();
-
-        return Node.builderFromCopyOf(node)
-            .number(oldNode.getNumber())
-            .createdBy(oldNode.getCreatedBy())
-            .createdDate(oldNode.getCreatedDate())
-            .lastModifiedBy(user.getUsername())
-            .lastModifiedDate(now)
-            .build();
-      } else {
-        Long number = nodeSequenceService.getAndAdvance(node.getType(), user);
-
-        Supplier<String> codeGen = memoize(() -> codeGenerator.apply(node.getType(), number));
-        String code = node.getCode().orElseGet(() -> opts.isGenerateCodes() ? codeGen.get() : null);
-        String uri = node.getUri().orElseGet(() -> opts.isGenerateUris() ?
-            uriGenerator.apply(node.getTypeGraph(), ofNullable(code).orElseGet(codeGen)) : null);
-
-        return Node.builderFromCopyOf(node)
-            .number(number)
-            .code(code)
-            .uri(uri)
-            .createdBy(user.getUsername())
-            .createdDate(now)
-            .lastModifiedBy(user.getUsername())
-            .lastModifiedDate(now)
-            .build();
-      }
+    return StreamUtils.partitionedMap(oldAndNewNodes, NUMBER_BATCH_SIZE, batch -> {
+      Function<TypeId, Long> numbers = allocateNumbers(batch.stream()
+          .filter(oldAndNewNode -> !oldAndNewNode._1.isPresent())
+          .map(oldAndNewNode -> oldAndNewNode._2.getType()), user);
+
+      return batch.stream().map(oldAndNewNode -> {
+        Optional<Node> optionalOldNode = oldAndNewNode._1;
+        Node node = oldAndNewNode._2;
+
+        return optionalOldNode.isPresent()
+            ? initExisting(optionalOldNode.get(), node, now, user)
+            : initNew(node, numbers.apply(node.getType()), now,
+                codeGenerator, uriGenerator, opts, user);
+      });
     });
   }
 
+  /**
+   * Allocates numbers for given types with one sequence call per type. Returned function gives
+   * allocated numbers of a type in order.
+   */
+  private Function<TypeId, Long> allocateNumbers(Stream<TypeId> typeIds, User user) {
+    Map<TypeId, Long> counts = typeIds.collect(groupingBy(t -> t, LinkedHashMap::new, counting()));
+
+    Map<TypeId, Long> nextNumbers = new HashMap<>();
+    counts.forEach((typeId, count) ->
+        nextNumbers.put(typeId, nodeSequenceService.getAndAdvance(typeId, count, user)));
+
+    return typeId -> nextNumbers.compute(typeId, (t, number) -> number + 1) - 1;
+  }
+
+  private Node initNew(Node node, Long number, LocalDateTime now,
+      BiFunction<TypeId, Long, String> codeGenerator,
+      BiFunction<GraphId, String, String> uriGenerator, WriteOptions opts, User user) {
+
+    // generate code once (and only once) if needed
+    Supplier<String> codeGen = memoize(() -> codeGenerator.apply(node.getType(), number));
+    String code = node.getCode().orElseGet(() -> opts.isGenerateCodes() ? codeGen.get() : null);
+    String uri = node.getUri().orElseGet(() -> opts.isGenerateUris() ?
+        uriGenerator.apply(node.getTypeGraph(), ofNullable(code).orElseGet(codeGen)) : null);
+
+    return Node.builderFromCopyOf(node)
+        .number(number)
+        .code(code)
+        .uri(uri)
+        .createdBy(user.getUsername())
+        .createdDate(now)
+        .lastModifiedBy(user.getUsername())
+        .lastModifiedDate(now)
+        .build();
+  }
+
+  private Node initExisting(Node oldNode, Node newNode, LocalDateTime now, User user) {
+    return Node.builderFromCopyOf(newNode)
+        .number(oldNode.getNumber())
+        .createdBy(oldNode.getCreatedBy())
+        .createdDate(oldNode.getCreatedDate())
+        .lastModifiedBy(user.getUsername())
+        .lastModifiedDate(now)
+        .build();
+  }
+
   private BiFunction<TypeId, Long, String> codeGenerator(User user) {
     Function<TypeId, String> nodeCodePrefixes = memoize(
         typeId ->
@@ -1,25 +1,14 @@
 package fi.thl.termed.service.node.internal;
 
-import static fi.thl.termed.domain.RevisionType.DELETE;
-import static fi.thl.termed.domain.RevisionType.INSERT;
-import static fi.thl.termed.domain.RevisionType.UPDATE;
-import static fi.thl.termed.util.query.AndSpecification.and;
-import static fi.thl.termed.util.query.OrSpecification.or;
-import static fi.thl.termed.util.query.Queries.query;
+import static fi.thl.termed.util.spring.transaction.TransactionUtils.runAfterCommit;
 import static java.util.Collections.singletonList;
 
-import com.google.common.collect.Iterators;
 import com.google.common.eventbus.EventBus;
 import fi.thl.termed.domain.Node;
 import fi.thl.termed.domain.NodeId;
-import fi.thl.termed.domain.RevisionId;
-import fi.thl.termed.domain.RevisionType;
 import fi.thl.termed.domain.User;
 import fi.thl.termed.domain.event.NodeDeletedEvent;
 import fi.thl.termed.domain.event.NodeSavedEvent;
-import fi.thl.termed.service.node.specification.NodeRevisionsByRevisionNumber;
-import fi.thl.termed.service.node.specification.NodeRevisionsByRevisionType;
-import fi.thl.termed.util.collect.Tuple2;
 import fi.thl.termed.util.query.Query;
 import fi.thl.termed.util.query.Select;
 import fi.thl.termed.util.query.Specification;
@@ -30,23 +19,26 @@ import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.Stream;
+import org.springframework.transaction.PlatformTransactionManager;
 
 /**
- * Posts events to event bus for each node save and delete request.
+ * Posts events to event bus for each node save and delete request. Ids of written nodes are
+ * collected while the write streams are consumed and posted in batches once the write has
+ * completed. If the write runs in caller's transaction, events are posted only after it commits.
  */
 public class NodeWriteEventPostingService implements Service<NodeId, Node> {
 
+  private static final int BATCH_SIZE = 1000;
+
   private Service<NodeId, Node> delegate;
-  private Service<RevisionId<NodeId>, Tuple2<RevisionType, Node>> nodeRevisionService;
   private EventBus eventBus;
+  private PlatformTransactionManager transactionManager;
 
-  public NodeWriteEventPostingService(
-      Service<NodeId, Node> delegate,
-      Service<RevisionId<NodeId>, Tuple2<RevisionType, Node>> nodeRevisionService,
-      EventBus eventBus) {
+  public NodeWriteEventPostingService(Service<NodeId, Node> delegate, EventBus eventBus,
+      PlatformTransactionManager transactionManager) {
     this.delegate = delegate;
-    this.nodeRevisionService = nodeRevisionService;
     this.eventBus = eventBus;
+    this.transactionManager = transactionManager;
   }
 
   private void fireSaveEvents(List<NodeId> ids, String user, boolean sync) {
@@ -67,78 +59,81 @@ public class NodeWriteEventPostingService implements Service<NodeId, Node> {
 
   @Override
   public void save(Stream<Node> values, SaveMode mode, WriteOptions opts, User user) {
-    delegate.save(values, mode, opts, user);
-
-    Long revisionNumber = opts.getRevision()
-        .orElseThrow(() -> new IllegalStateException("Revision not initialized"));
-
-    try (Stream<NodeId> idsInRevision = nodeRevisionService
-        .keys(query(NodeRevisionsByRevisionNumber.of(revisionNumber)), user)
-        .map(RevisionId::getId)) {
+    NodeIdBuffer savedIds = new NodeIdBuffer();
 
-      Iterators.partition(idsInRevision.iterator(), 1000).forEachRemaining(
-          ids -> fireSaveEvents(ids, user.getUsername(), opts.isSync()));
+    try {
+      delegate.save(values.peek(node -> savedIds.add(node.identifier())), mode, opts, user);
+    } catch (RuntimeException | Error e) {
+      savedIds.close();
+      throw e;
     }
+
+    runAfterCommit(transactionManager,
+        () -> savedIds.forEachBatch(BATCH_SIZE,
+            ids -> fireSaveEvents(ids, user.getUsername(), opts.isSync())),
+        savedIds::close);
   }
 
   @Override
   public NodeId save(Node value, SaveMode mode, WriteOptions opts, User user) {
     NodeId id = delegate.save(value, mode, opts, user);
-    fireSaveEvent(id, user.getUsername(), opts.isSync());
+    runAfterCommit(transactionManager,
+        () -> fireSaveEvent(id, user.getUsername(), opts.isSync()));
     return id;
   }
 
   @Override
   public void delete(Stream<NodeId> ids, WriteOptions opts, User user) {
-    delegate.delete(ids, opts, user);
-
-    Long revisionNumber = opts.getRevision()
-        .orElseThrow(() -> new IllegalStateException("Revision not initialized"));
-
-    try (Stream<NodeId> idsInRevision = nodeRevisionService
-        .keys(query(NodeRevisionsByRevisionNumber.of(revisionNumber)), user)
-        .map(RevisionId::getId)) {
+    NodeIdBuffer deletedIds = new NodeIdBuffer();
 
-      Iterators.partition(idsInRevision.iterator(), 1000).forEachRemaining(
-          batch -> fireDeleteEvents(batch, user.getUsername(), opts.isSync()));
+    try {
+      delegate.delete(ids.peek(deletedIds::add), opts, user);
+    } catch (RuntimeException | Error e) {
+      deletedIds.close();
+      throw e;
     }
+
+    runAfterCommit(transactionManager,
+        () -> deletedIds.forEachBatch(BATCH_SIZE,
+            batch -> fireDeleteEvents(batch, user.getUsername(), opts.isSync())),
+        deletedIds::close);
   }
 
   @Override
   public void delete(NodeId id, WriteOptions opts, User user) {
     delegate.delete(id, opts, user);
-    fireDeleteEvent(id, user.getUsername(), opts.isSync());
+    runAfterCommit(transactionManager,
+        () -> fireDeleteEvent(id, user.getUsername(), opts.isSync()));
   }
 
   @Override
   public void saveAndDelete(Stream<Node> saves, Stream<NodeId> deletes, SaveMode mode,
       WriteOptions opts, User user) {
-    delegate.saveAndDelete(saves, deletes, mode, opts, user);
-
-    Long revisionNumber = opts.getRevision()
-        .orElseThrow(() -> new IllegalStateException("Revision not initialized"));
-
-    try (Stream<NodeId> savedIdsInRevision = nodeRevisionService
-        .keys(query(and(
-            NodeRevisionsByRevisionNumber.of(revisionNumber),
-            or(
-                NodeRevisionsByRevisionType.of(INSERT),
-                NodeRevisionsByRevisionType.of(UPDATE)))), user)
-        .map(RevisionId::getId)) {
-
-      Iterators.partition(savedIdsInRevision.iterator(), 1000).forEachRemaining(
-          batch -> fireSaveEvents(batch, user.getUsername(), opts.isSync()));
+    NodeIdBuffer savedIds = new NodeIdBuffer();
+    NodeIdBuffer deletedIds = new NodeIdBuffer();
+
+    try {
+      delegate.saveAndDelete(
+          saves.peek(node -> savedIds.add(node.identifier())),
+          deletes.peek(deletedIds::add),
+          mode, opts, user);
+    } catch (RuntimeException | Error e) {
+      savedIds.close();
+      deletedIds.close();
+      throw e;
     }
 
-    try (Stream<NodeId> deletedIdsInRevision = nodeRevisionService
-        .keys(query(and(
-            NodeRevisionsByRevisionNumber.of(revisionNumber),
-            NodeRevisionsByRevisionType.of(DELETE))), user)
-        .map(RevisionId::getId)) {
-
-      Iterators.partition(deletedIdsInRevision.iterator(), 1000).forEachRemaining(
-          batch -> fireDeleteEvents(batch, user.getUsername(), opts.isSync()));
-    }
+    runAfterCommit(transactionManager,
+        () -> {
+          savedIds.forEachBatch(BATCH_SIZE,
+              batch -> fireSaveEvents(batch, user.getUsername(), opts.isSync()));
+          deletedIds.forEachBatch(BATCH_SIZE,
+              batch -> fireDeleteEvents(batch, user.getUsername(), opts.isSync()));
+        },
+        () -> {
+          savedIds.close();
+          deletedIds.close();
+        });
   }
 
   @Override
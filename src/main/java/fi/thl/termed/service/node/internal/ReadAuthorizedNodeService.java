@@ -1,46 +1,71 @@
 package fi.thl.termed.service.node.internal;
 
-import com.google.common.base.Predicate;
-import com.google.common.collect.Multimaps;
+import static fi.thl.termed.util.collect.StreamUtils.toListAndClose;
+import static java.util.stream.Collectors.toList;
+
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.Multimap;
 import fi.thl.termed.domain.Node;
 import fi.thl.termed.domain.NodeId;
 import fi.thl.termed.domain.Permission;
 import fi.thl.termed.domain.ReferenceAttributeId;
+import fi.thl.termed.domain.StrictLangValue;
 import fi.thl.termed.domain.TextAttributeId;
 import fi.thl.termed.domain.TypeId;
 import fi.thl.termed.domain.User;
+import fi.thl.termed.service.node.specification.NodesByTypeIds;
 import fi.thl.termed.util.permission.PermissionEvaluator;
+import fi.thl.termed.util.query.FilteredSpecification;
+import fi.thl.termed.util.query.LuceneSpecification;
 import fi.thl.termed.util.query.Query;
 import fi.thl.termed.util.query.Select;
 import fi.thl.termed.util.query.Specification;
 import fi.thl.termed.util.service.SaveMode;
 import fi.thl.termed.util.service.Service;
 import fi.thl.termed.util.service.WriteOptions;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
 
 /**
  * For filtering node service read operations. Useful to put in front of an index.
+ *
+ * <p>For Lucene queries, node level read authorization is added to the query as a filter of
+ * readable types, so that max results and counts are correct and unreadable nodes are not loaded.
+ * Other queries are filtered after loading. Attribute level permissions are always applied after
+ * loading, nodes with all attribute values permitted are returned without copying.
  */
 public class ReadAuthorizedNodeService implements Service<NodeId, Node> {
 
   private Service<NodeId, Node> delegate;
 
+  private PermissionEvaluator<TypeId> typeEvaluator;
   private PermissionEvaluator<NodeId> nodeEvaluator;
   private PermissionEvaluator<TextAttributeId> textAttrEvaluator;
   private PermissionEvaluator<ReferenceAttributeId> refAttrEvaluator;
 
+  private Supplier<Stream<TypeId>> typeIds;
+
+  /**
+   * @param typeIds supplies ids of all types, used to resolve types readable by a user
+   */
   public ReadAuthorizedNodeService(
       Service<NodeId, Node> delegate,
       PermissionEvaluator<TypeId> typeEvaluator,
       PermissionEvaluator<TextAttributeId> textAttrEvaluator,
-      PermissionEvaluator<ReferenceAttributeId> refAttrEvaluator) {
+      PermissionEvaluator<ReferenceAttributeId> refAttrEvaluator,
+      Supplier<Stream<TypeId>> typeIds) {
     this.delegate = delegate;
+    this.typeEvaluator = typeEvaluator;
     this.nodeEvaluator = (u, r, p) -> typeEvaluator.hasPermission(u, r.getType(), p);
     this.textAttrEvaluator = textAttrEvaluator;
     this.refAttrEvaluator = refAttrEvaluator;
+    this.typeIds = typeIds;
   }
 
   @Override
@@ -71,16 +96,26 @@ public class ReadAuthorizedNodeService implements Service<NodeId, Node> {
 
   @Override
   public Stream<Node> values(Query<NodeId, Node> query, User user) {
+    if (query.getWhere() instanceof LuceneSpecification) {
+      return delegate.values(readableQuery(query, user), user)
+          .map(new AttributePermissionFilter(user, Permission.READ));
+    }
     return filterValues(delegate.values(query, user), user);
   }
 
   @Override
   public Stream<NodeId> keys(Query<NodeId, Node> query, User user) {
+    if (query.getWhere() instanceof LuceneSpecification) {
+      return delegate.keys(readableQuery(query, user), user);
+    }
     return filterKeys(delegate.keys(query, user), user);
   }
 
   @Override
   public long count(Specification<NodeId, Node> spec, User user) {
+    if (spec instanceof LuceneSpecification) {
+      return delegate.count(readableSpecification(spec, user), user);
+    }
     return delegate.count(spec, user);
   }
 
@@ -100,6 +135,24 @@ public class ReadAuthorizedNodeService implements Service<NodeId, Node> {
         .map(new AttributePermissionFilter(user, Permission.READ));
   }
 
+  private Query<NodeId, Node> readableQuery(Query<NodeId, Node> query, User user) {
+    Specification<NodeId, Node> where = readableSpecification(query.getWhere(), user);
+    return where == query.getWhere() ? query
+        : new Query<>(query.getSelect(), where, query.getSort(), query.getMax());
+  }
+
+  // adds filter of readable types, if user can't read all types
+  private Specification<NodeId, Node> readableSpecification(
+      Specification<NodeId, Node> spec, User user) {
+    List<TypeId> allTypes = toListAndClose(typeIds.get());
+    List<TypeId> readableTypes = allTypes.stream()
+        .filter(t -> typeEvaluator.hasPermission(user, t, Permission.READ))
+        .collect(toList());
+
+    return readableTypes.size() == allTypes.size() ? spec
+        : FilteredSpecification.filter(spec, NodesByTypeIds.of(readableTypes));
+  }
+
   private Stream<NodeId> filterKeys(Stream<NodeId> keys, User user) {
     return keys.filter(id -> nodeEvaluator.hasPermission(user, id, Permission.READ));
   }
@@ -109,10 +162,21 @@ public class ReadAuthorizedNodeService implements Service<NodeId, Node> {
         .map(new AttributePermissionFilter(user, Permission.READ));
   }
 
+  /**
+   * Filters node attribute values by attribute and value (node) level permissions. Permission
+   * decisions are memoized for the lifetime of the filter (typically a single query). If all
+   * attribute values of a node are permitted, the node is returned as is. Otherwise node is copied
+   * with filtered values materialized once into immutable multimaps.
+   */
   private class AttributePermissionFilter implements Function<Node, Node> {
 
-    private User user;
-    private Permission permission;
+    private final User user;
+    private final Permission permission;
+
+    // filter may be applied in a parallel stream
+    private final Map<TextAttributeId, Boolean> textAttrs = new ConcurrentHashMap<>();
+    private final Map<ReferenceAttributeId, Boolean> refAttrs = new ConcurrentHashMap<>();
+    private final Map<TypeId, Boolean> types = new ConcurrentHashMap<>();
 
     AttributePermissionFilter(User user, Permission permission) {
       this.user = user;
@@ -122,74 +186,123 @@ public class ReadAuthorizedNodeService implements Service<NodeId, Node> {
     @Override
     public Node apply(Node node) {
       TypeId typeId = node.getType();
-      return Node.builderFromCopyOf(node)
-          .properties(Multimaps.filterKeys(
-              node.getProperties(), new AcceptPropertyPredicate(typeId)))
-          .references(Multimaps.filterEntries(
-              node.getReferences(), new AcceptReferenceEntryPredicate(typeId)))
-          .referrers(Multimaps.filterEntries(
-              node.getReferrers(), new AcceptReferrerEntryPredicate()))
-          .build();
-    }
-
-    /**
-     * Accept a node text attribute value if attribute is permitted
-     */
-    private class AcceptPropertyPredicate implements Predicate<String> {
 
-      private TypeId typeId;
+      boolean allProperties = allPropertiesPermitted(typeId, node.getProperties());
+      boolean allReferences = allReferencesPermitted(typeId, node.getReferences());
+      boolean allReferrers = allReferrersPermitted(node.getReferrers());
 
-      AcceptPropertyPredicate(TypeId typeId) {
-        this.typeId = typeId;
+      if (allProperties && allReferences && allReferrers) {
+        return node;
       }
 
-      @Override
-      public boolean apply(String attributeId) {
-        TextAttributeId textAttrId = new TextAttributeId(typeId, attributeId);
-        return textAttrEvaluator.hasPermission(user, textAttrId, permission);
+      Node.Builder builder = Node.builderFromCopyOf(node);
+      if (!allProperties) {
+        builder.properties(filterProperties(typeId, node.getProperties()));
+      }
+      if (!allReferences) {
+        builder.references(filterReferences(typeId, node.getReferences()));
+      }
+      if (!allReferrers) {
+        builder.referrers(filterReferrers(node.getReferrers()));
       }
+      return builder.build();
     }
 
-    /**
-     * Accepts a node reference entry in the reference multimap if 1) reference attribute is
-     * permitted and 2) value is permitted
-     */
-    private class AcceptReferenceEntryPredicate implements Predicate<Map.Entry<String, NodeId>> {
+    private boolean allPropertiesPermitted(TypeId typeId,
+        Multimap<String, StrictLangValue> properties) {
+      for (String attributeId : properties.keySet()) {
+        if (!acceptProperty(typeId, attributeId)) {
+          return false;
+        }
+      }
+      return true;
+    }
 
-      private TypeId typeId;
+    private boolean allReferencesPermitted(TypeId typeId, Multimap<String, NodeId> references) {
+      for (Map.Entry<String, NodeId> entry : references.entries()) {
+        if (!acceptReference(typeId, entry.getKey(), entry.getValue())) {
+          return false;
+        }
+      }
+      return true;
+    }
 
-      AcceptReferenceEntryPredicate(TypeId typeId) {
-        this.typeId = typeId;
+    private boolean allReferrersPermitted(Multimap<String, NodeId> referrers) {
+      for (Map.Entry<String, NodeId> entry : referrers.entries()) {
+        if (!acceptReferrer(entry.getKey(), entry.getValue())) {
+          return false;
+        }
       }
+      return true;
+    }
 
-      @Override
-      public boolean apply(Map.Entry<String, NodeId> entry) {
-        String attributeId = entry.getKey();
-        NodeId reference = entry.getValue();
+    private ImmutableMultimap<String, StrictLangValue> filterProperties(TypeId typeId,
+        Multimap<String, StrictLangValue> properties) {
+      ImmutableListMultimap.Builder<String, StrictLangValue> filtered =
+          ImmutableListMultimap.builder();
+      properties.asMap().forEach((attributeId, values) -> {
+        if (acceptProperty(typeId, attributeId)) {
+          filtered.putAll(attributeId, values);
+        }
+      });
+      return filtered.build();
+    }
 
-        ReferenceAttributeId refAttrId = new ReferenceAttributeId(typeId, attributeId);
+    private ImmutableMultimap<String, NodeId> filterReferences(TypeId typeId,
+        Multimap<String, NodeId> references) {
+      ImmutableListMultimap.Builder<String, NodeId> filtered = ImmutableListMultimap.builder();
+      references.entries().forEach(e -> {
+        if (acceptReference(typeId, e.getKey(), e.getValue())) {
+          filtered.put(e);
+        }
+      });
+      return filtered.build();
+    }
 
-        return refAttrEvaluator.hasPermission(user, refAttrId, permission) &&
-            nodeEvaluator.hasPermission(user, reference, permission);
-      }
+    private ImmutableMultimap<String, NodeId> filterReferrers(Multimap<String, NodeId> referrers) {
+      ImmutableListMultimap.Builder<String, NodeId> filtered = ImmutableListMultimap.builder();
+      referrers.entries().forEach(e -> {
+        if (acceptReferrer(e.getKey(), e.getValue())) {
+          filtered.put(e);
+        }
+      });
+      return filtered.build();
     }
 
     /**
-     * Accepts a node referrer entry in the referrers multimap if 1) reference attribute is
-     * permitted and 2) value is permitted
+     * Accept a node text attribute value if attribute is permitted
      */
-    private class AcceptReferrerEntryPredicate implements Predicate<Map.Entry<String, NodeId>> {
+    private boolean acceptProperty(TypeId typeId, String attributeId) {
+      return textAttrs.computeIfAbsent(new TextAttributeId(typeId, attributeId),
+          id -> textAttrEvaluator.hasPermission(user, id, permission));
+    }
 
-      @Override
-      public boolean apply(Map.Entry<String, NodeId> entry) {
-        String attributeId = entry.getKey();
-        NodeId referrer = entry.getValue();
+    /**
+     * Accepts a node reference entry if 1) reference attribute is permitted and 2) value is
+     * permitted
+     */
+    private boolean acceptReference(TypeId typeId, String attributeId, NodeId reference) {
+      return acceptReferenceAttribute(new ReferenceAttributeId(typeId, attributeId)) &&
+          acceptType(reference.getType());
+    }
 
-        ReferenceAttributeId refAttrId = new ReferenceAttributeId(referrer.getType(), attributeId);
+    /**
+     * Accepts a node referrer entry if 1) reference attribute (of referrer type) is permitted and
+     * 2) referrer is permitted
+     */
+    private boolean acceptReferrer(String attributeId, NodeId referrer) {
+      return acceptReferenceAttribute(new ReferenceAttributeId(referrer.getType(), attributeId)) &&
+          acceptType(referrer.getType());
+    }
 
-        return refAttrEvaluator.hasPermission(user, refAttrId, permission) &&
-            nodeEvaluator.hasPermission(user, referrer, permission);
-      }
+    private boolean acceptReferenceAttribute(ReferenceAttributeId refAttrId) {
+      return refAttrs.computeIfAbsent(refAttrId,
+          id -> refAttrEvaluator.hasPermission(user, id, permission));
+    }
+
+    private boolean acceptType(TypeId typeId) {
+      return types.computeIfAbsent(typeId,
+          id -> typeEvaluator.hasPermission(user, id, permission));
     }
 
   }
@@ -1,20 +1,18 @@
 package fi.thl.termed.service.node.select;
 
-import static com.google.common.collect.ImmutableList.of;
 import static com.google.common.collect.Sets.union;
 import static fi.thl.termed.util.UUIDs.lenientFromString;
-import static java.util.stream.Collectors.groupingBy;
-import static java.util.stream.Collectors.toMap;
 import static java.util.stream.Collectors.toSet;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import fi.thl.termed.domain.Attribute;
 import fi.thl.termed.domain.ReferenceAttribute;
 import fi.thl.termed.domain.ReferenceAttributeId;
 import fi.thl.termed.domain.TextAttribute;
 import fi.thl.termed.domain.Type;
-import fi.thl.termed.domain.TypeId;
+import fi.thl.termed.service.metamodel.Metamodel;
 import fi.thl.termed.util.collect.Tuple;
 import fi.thl.termed.util.collect.Tuple2;
 import fi.thl.termed.util.query.AbstractSelectQualified;
@@ -22,8 +20,8 @@ import fi.thl.termed.util.query.Select;
 import fi.thl.termed.util.query.SelectAll;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
 import java.util.function.BiFunction;
 import java.util.function.Predicate;
@@ -36,14 +34,14 @@ import java.util.stream.Stream;
  */
 public class NodeSelectQualifier implements BiFunction<Set<Type>, Set<Select>, Set<Select>> {
 
-  private final Map<TypeId, Type> allTypesById;
-  private final Map<TypeId, List<ReferenceAttribute>> allReferenceAttributesByRange;
+  private final Metamodel metamodel;
 
   NodeSelectQualifier(List<Type> allTypes) {
-    this.allTypesById = allTypes.stream().collect(toMap(Type::identifier, t -> t));
-    this.allReferenceAttributesByRange = allTypes.stream()
-        .flatMap(t -> t.getReferenceAttributes().stream())
-        .collect(groupingBy(ReferenceAttribute::getRange));
+    this(Metamodel.of(ImmutableList.of(), allTypes));
+  }
+
+  NodeSelectQualifier(Metamodel metamodel) {
+    this.metamodel = metamodel;
   }
 
   @Override
@@ -328,19 +326,23 @@ public class NodeSelectQualifier implements BiFunction<Set<Type>, Set<Select>, S
   private Stream<ReferenceAttribute> referringAttributes(Stream<Type> types) {
     return types
         .map(Type::identifier)
-        .flatMap(id -> allReferenceAttributesByRange.getOrDefault(id, of()).stream());
+        .flatMap(id -> metamodel.getReferenceAttributesByRange(id).stream());
   }
 
   private Stream<Type> attributeRangeTypes(Stream<ReferenceAttribute> refAttrs) {
     return refAttrs
         .map(ReferenceAttribute::getRange)
-        .map(allTypesById::get);
+        .map(metamodel::getType)
+        .filter(Optional::isPresent)
+        .map(Optional::get);
   }
 
   private Stream<Type> attributeDomainTypes(Stream<ReferenceAttribute> refAttrs) {
     return refAttrs
         .map(ReferenceAttribute::getDomain)
-        .map(allTypesById::get);
+        .map(metamodel::getType)
+        .filter(Optional::isPresent)
+        .map(Optional::get);
   }
 
 }
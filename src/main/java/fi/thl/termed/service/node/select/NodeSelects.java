@@ -7,6 +7,7 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import fi.thl.termed.domain.Type;
 import fi.thl.termed.domain.TypeId;
+import fi.thl.termed.service.metamodel.Metamodel;
 import fi.thl.termed.util.collect.Tuple;
 import fi.thl.termed.util.collect.Tuple2;
 import fi.thl.termed.util.query.Select;
@@ -36,8 +37,13 @@ public final class NodeSelects {
 
   public static List<Select> qualify(List<Type> allTypes, List<Type> domainTypes,
       List<Select> selects) {
+    return qualify(Metamodel.of(ImmutableList.of(), allTypes), domainTypes, selects);
+  }
+
+  public static List<Select> qualify(Metamodel metamodel, List<Type> domainTypes,
+      List<Select> selects) {
     return ImmutableList.copyOf(
-        new NodeSelectQualifier(allTypes).apply(
+        new NodeSelectQualifier(metamodel).apply(
             ImmutableSet.copyOf(domainTypes),
             ImmutableSet.copyOf(selects)));
   }
@@ -1,19 +1,16 @@
 package fi.thl.termed.service.node.specification;
 
-import static java.util.Collections.emptyList;
-import static java.util.stream.Collectors.groupingBy;
-
 import fi.thl.termed.domain.Graph;
 import fi.thl.termed.domain.Node;
 import fi.thl.termed.domain.NodeId;
 import fi.thl.termed.domain.Type;
+import fi.thl.termed.service.metamodel.Metamodel;
 import fi.thl.termed.util.query.AndSpecification;
 import fi.thl.termed.util.query.NotSpecification;
 import fi.thl.termed.util.query.OrSpecification;
 import fi.thl.termed.util.query.Specification;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.function.Function;
 
 /**
@@ -22,23 +19,20 @@ import java.util.function.Function;
 public class NodeGraphAndTypeSpecificationResolver implements
     Function<Specification<NodeId, Node>, Specification<NodeId, Node>> {
 
-  private Map<String, List<Graph>> graphsByUri;
-  private Map<String, List<Graph>> graphsByCode;
-  private Map<String, List<Type>> typesByUri;
+  private Metamodel metamodel;
 
   /**
    * @param types list of readable types
    */
   public NodeGraphAndTypeSpecificationResolver(List<Graph> graphs, List<Type> types) {
-    this.graphsByUri = graphs.stream()
-        .filter(g -> g.getUri().isPresent())
-        .collect(groupingBy(g -> g.getUri().orElse(null)));
-    this.graphsByCode = graphs.stream()
-        .filter(g -> g.getCode().isPresent())
-        .collect(groupingBy(g -> g.getCode().orElse(null)));
-    this.typesByUri = types.stream()
-        .filter(t -> t.getUri().isPresent())
-        .collect(groupingBy(t -> t.getUri().orElse(null)));
+    this(Metamodel.of(graphs, types));
+  }
+
+  /**
+   * @param metamodel readable graphs and types
+   */
+  public NodeGraphAndTypeSpecificationResolver(Metamodel metamodel) {
+    this.metamodel = metamodel;
   }
 
   @Override
@@ -47,21 +41,21 @@ public class NodeGraphAndTypeSpecificationResolver implements
     if (specification instanceof NodesByGraphUri) {
       String graphUri = ((NodesByGraphUri) specification).getGraphUri();
       List<Specification<NodeId, Node>> graphsById = new ArrayList<>();
-      graphsByUri.getOrDefault(graphUri, emptyList())
+      metamodel.getGraphsByUri(graphUri)
           .forEach(g -> graphsById.add(new NodesByGraphId(g.getId())));
       return OrSpecification.or(graphsById);
     }
     if (specification instanceof NodesByGraphCode) {
       String graphCode = ((NodesByGraphCode) specification).getGraphCode();
       List<Specification<NodeId, Node>> graphsById = new ArrayList<>();
-      graphsByCode.getOrDefault(graphCode, emptyList())
+      metamodel.getGraphsByCode(graphCode)
           .forEach(g -> graphsById.add(new NodesByGraphId(g.getId())));
       return OrSpecification.or(graphsById);
     }
     if (specification instanceof NodesByTypeUri) {
       String typeUri = ((NodesByTypeUri) specification).getTypeUri();
       List<Specification<NodeId, Node>> typesById = new ArrayList<>();
-      typesByUri.getOrDefault(typeUri, emptyList())
+      metamodel.getTypesByUri(typeUri)
           .forEach(g -> typesById.add(new NodesByTypeId(g.getId())));
       return OrSpecification.or(typesById);
     }
@@ -9,7 +9,9 @@ import fi.thl.termed.domain.Graph;
 import fi.thl.termed.domain.Node;
 import fi.thl.termed.domain.NodeId;
 import fi.thl.termed.domain.Type;
+import fi.thl.termed.service.metamodel.Metamodel;
 import fi.thl.termed.util.query.AndSpecification;
+import fi.thl.termed.util.query.MatchNone;
 import fi.thl.termed.util.query.OrSpecification;
 import fi.thl.termed.util.query.Specification;
 import fi.thl.termed.util.query.SpecificationUtils;
@@ -31,22 +33,42 @@ public final class NodeSpecifications {
 
   public static Specification<NodeId, Node> specifyByQuery(
       List<Graph> graphs, List<Type> types, List<Type> anyDomain, List<String> allQueries) {
-    return specifyByQuery(graphs, types, anyDomain, join(" AND ", allQueries));
+    return specifyByQuery(Metamodel.of(graphs, types), anyDomain, allQueries);
   }
 
   public static Specification<NodeId, Node> specifyByQuery(
       List<Graph> graphs, List<Type> types, List<Type> anyDomain, String query) {
-    return SpecificationUtils.simplify(OrSpecification.or(
-        anyDomain.stream().map(d -> specifyByQuery(graphs, types, d, query)).collect(toList())));
+    return specifyByQuery(Metamodel.of(graphs, types), anyDomain, query);
   }
 
   public static Specification<NodeId, Node> specifyByQuery(
       List<Graph> graphs, List<Type> types, Type domain, List<String> allQueries) {
-    return specifyByQuery(graphs, types, domain, join(" AND ", allQueries));
+    return specifyByQuery(Metamodel.of(graphs, types), domain, allQueries);
   }
 
   public static Specification<NodeId, Node> specifyByQuery(
       List<Graph> graphs, List<Type> types, Type domain, String query) {
+    return specifyByQuery(Metamodel.of(graphs, types), domain, query);
+  }
+
+  public static Specification<NodeId, Node> specifyByQuery(
+      Metamodel metamodel, List<Type> anyDomain, List<String> allQueries) {
+    return specifyByQuery(metamodel, anyDomain, join(" AND ", allQueries));
+  }
+
+  public static Specification<NodeId, Node> specifyByQuery(
+      Metamodel metamodel, List<Type> anyDomain, String query) {
+    return SpecificationUtils.simplify(OrSpecification.or(
+        anyDomain.stream().map(d -> specifyByQuery(metamodel, d, query)).collect(toList())));
+  }
+
+  public static Specification<NodeId, Node> specifyByQuery(
+      Metamodel metamodel, Type domain, List<String> allQueries) {
+    return specifyByQuery(metamodel, domain, join(" AND ", allQueries));
+  }
+
+  public static Specification<NodeId, Node> specifyByQuery(
+      Metamodel metamodel, Type domain, String query) {
 
     List<Specification<NodeId, Node>> clauses = new ArrayList<>();
 
@@ -57,11 +79,11 @@ public final class NodeSpecifications {
       Specification<NodeId, Node> rawSpec = queryParser.apply(query);
 
       Specification<NodeId, Node> resolvedSpec =
-          new NodeGraphAndTypeSpecificationResolver(graphs, types)
+          new NodeGraphAndTypeSpecificationResolver(metamodel)
               .apply(rawSpec);
 
       Specification<NodeId, Node> resolvedFilteredSpec =
-          new TypeBasedNodeSpecificationFilter(types)
+          new TypeBasedNodeSpecificationFilter(metamodel)
               .apply(domain, resolvedSpec);
 
       clauses.add(resolvedFilteredSpec);
@@ -70,6 +92,19 @@ public final class NodeSpecifications {
     return SpecificationUtils.simplify(AndSpecification.and(clauses));
   }
 
+  /**
+   * Returns domains that nodes matching given query can belong to, i.e. domains for which the query
+   * does not resolve to MatchNone.
+   */
+  public static List<Type> filterDomainsByQuery(
+      List<Graph> graphs, List<Type> types, List<Type> anyDomain, List<String> allQueries) {
+    Metamodel metamodel = Metamodel.of(graphs, types);
+    String query = join(" AND ", allQueries);
+    return anyDomain.stream()
+        .filter(d -> !(specifyByQuery(metamodel, d, query) instanceof MatchNone))
+        .collect(toList());
+  }
+
   public static Specification<NodeId, Node> specifyByAnyPropertyPrefix(Type type, String query) {
     List<Specification<NodeId, Node>> clauses = new ArrayList<>();
 
@@ -0,0 +1,99 @@
+package fi.thl.termed.service.node.specification;
+
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.util.UUIDs;
+import fi.thl.termed.util.query.LuceneSpecification;
+import fi.thl.termed.util.query.ParametrizedSqlQuery;
+import fi.thl.termed.util.query.SqlSpecification;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermInSetQuery;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * Accepts nodes (regardless of type) with id, code or URI matching any of given values. Intended
+ * for bulk lookups, matched with one term set query instead of a boolean query per value.
+ */
+public final class NodesByFieldValues<T>
+    implements LuceneSpecification<NodeId, Node>, SqlSpecification<NodeId, Node> {
+
+  private final String field;
+  private final Set<T> values;
+  private final Function<Node, Optional<T>> fieldValue;
+  private final Function<T, String> toTerm;
+
+  private NodesByFieldValues(String field, Collection<T> values,
+      Function<Node, Optional<T>> fieldValue, Function<T, String> toTerm) {
+    this.field = field;
+    this.values = ImmutableSet.copyOf(values);
+    this.fieldValue = fieldValue;
+    this.toTerm = toTerm;
+  }
+
+  public static NodesByFieldValues<UUID> ids(Collection<UUID> ids) {
+    return new NodesByFieldValues<>("id", ids, node -> Optional.of(node.getId()), UUIDs::toString);
+  }
+
+  public static NodesByFieldValues<String> codes(Collection<String> codes) {
+    return new NodesByFieldValues<>("code", codes, Node::getCode, code -> code);
+  }
+
+  public static NodesByFieldValues<String> uris(Collection<String> uris) {
+    return new NodesByFieldValues<>("uri", uris, Node::getUri, uri -> uri);
+  }
+
+  @Override
+  public boolean test(NodeId nodeId, Node node) {
+    Preconditions.checkArgument(Objects.equals(nodeId, new NodeId(node)));
+    return fieldValue.apply(node).map(values::contains).orElse(false);
+  }
+
+  @Override
+  public Query luceneQuery() {
+    return new TermInSetQuery(field, values.stream()
+        .map(value -> new BytesRef(toTerm.apply(value)))
+        .collect(toList()));
+  }
+
+  @Override
+  public ParametrizedSqlQuery sql() {
+    return values.isEmpty() ? ParametrizedSqlQuery.of("1 = 0") : ParametrizedSqlQuery.of(
+        field + " IN (" + values.stream().map(v -> "?").collect(joining(", ")) + ")",
+        values.toArray());
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    NodesByFieldValues<?> that = (NodesByFieldValues<?>) o;
+    return Objects.equals(field, that.field) &&
+        Objects.equals(values, that.values);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(field, values);
+  }
+
+  @Override
+  public String toString() {
+    return field + " IN " + values;
+  }
+
+}
@@ -0,0 +1,87 @@
+package fi.thl.termed.service.node.specification;
+
+import static com.google.common.base.Strings.nullToEmpty;
+import static fi.thl.termed.util.RegularExpressions.CODE;
+import static fi.thl.termed.util.RegularExpressions.IETF_LANGUAGE_TAG;
+import static java.util.stream.Collectors.toList;
+import static org.assertj.core.util.Strings.isNullOrEmpty;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.util.query.LuceneSpecification;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.Set;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermInSetQuery;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * Accepts nodes with property string matching any of given values. Bulk version of {@link
+ * NodesByPropertyString}.
+ */
+public class NodesByPropertyStrings implements LuceneSpecification<NodeId, Node> {
+
+  private final String attributeId;
+  private final String lang;
+  private final Set<String> values;
+
+  public NodesByPropertyStrings(String attributeId, Collection<String> values) {
+    this(attributeId, "", values);
+  }
+
+  public NodesByPropertyStrings(String attributeId, String lang, Collection<String> values) {
+    Preconditions.checkArgument(attributeId.matches(CODE));
+    Preconditions.checkArgument(isNullOrEmpty(lang) || lang.matches(IETF_LANGUAGE_TAG));
+    this.attributeId = attributeId;
+    this.lang = nullToEmpty(lang);
+    this.values = ImmutableSet.copyOf(values);
+  }
+
+  public String getAttributeId() {
+    return attributeId;
+  }
+
+  @Override
+  public boolean test(NodeId nodeId, Node node) {
+    Preconditions.checkArgument(Objects.equals(nodeId, new NodeId(node)));
+    return node.getProperties().get(attributeId)
+        .stream()
+        .filter(v -> lang.isEmpty() || v.getLang().equals(lang))
+        .anyMatch(v -> values.contains(v.getValue()));
+  }
+
+  @Override
+  public Query luceneQuery() {
+    String fieldName = "properties." + attributeId + (lang.isEmpty() ? "" : "." + lang) + ".string";
+    return new TermInSetQuery(fieldName, values.stream().map(BytesRef::new).collect(toList()));
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    NodesByPropertyStrings that = (NodesByPropertyStrings) o;
+    return Objects.equals(attributeId, that.attributeId) &&
+        Objects.equals(lang, that.lang) &&
+        Objects.equals(values, that.values);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(attributeId, lang, values);
+  }
+
+  @Override
+  public String toString() {
+    return "properties." + attributeId + (lang.isEmpty() ? "" : "." + lang) + ".string IN "
+        + values;
+  }
+
+}
@@ -0,0 +1,128 @@
+package fi.thl.termed.service.node.specification;
+
+import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.mapping;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.domain.TypeId;
+import fi.thl.termed.util.UUIDs;
+import fi.thl.termed.util.query.LuceneSpecification;
+import fi.thl.termed.util.query.ParametrizedSqlQuery;
+import fi.thl.termed.util.query.SqlSpecification;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.MatchNoDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermInSetQuery;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * Accepts nodes of any of given (graph qualified) types. Intended for filtering, e.g. to restrict
+ * results to readable types.
+ */
+public class NodesByTypeIds
+    implements LuceneSpecification<NodeId, Node>, SqlSpecification<NodeId, Node> {
+
+  private final Set<TypeId> typeIds;
+
+  public NodesByTypeIds(Collection<TypeId> typeIds) {
+    this.typeIds = ImmutableSet.copyOf(typeIds);
+  }
+
+  public static NodesByTypeIds of(Collection<TypeId> typeIds) {
+    return new NodesByTypeIds(typeIds);
+  }
+
+  public Set<TypeId> getTypeIds() {
+    return typeIds;
+  }
+
+  @Override
+  public boolean test(NodeId nodeId, Node node) {
+    Preconditions.checkArgument(Objects.equals(nodeId, new NodeId(node)));
+    return typeIds.contains(nodeId.getType());
+  }
+
+  @Override
+  public Query luceneQuery() {
+    if (typeIds.isEmpty()) {
+      return new MatchNoDocsQuery();
+    }
+
+    BooleanQuery.Builder query = new BooleanQuery.Builder();
+
+    byGraphId().forEach((graphId, types) -> query.add(new BooleanQuery.Builder()
+        .add(new TermQuery(new Term("type.graph.id", UUIDs.toString(graphId))),
+            BooleanClause.Occur.FILTER)
+        .add(new TermInSetQuery("type.id", types.stream()
+            .map(BytesRef::new)
+            .collect(toList())), BooleanClause.Occur.FILTER)
+        .build(), BooleanClause.Occur.SHOULD));
+
+    return query.build();
+  }
+
+  @Override
+  public ParametrizedSqlQuery sql() {
+    if (typeIds.isEmpty()) {
+      return ParametrizedSqlQuery.of("1 = 0");
+    }
+
+    List<Object> params = new ArrayList<>();
+
+    String template = byGraphId().entrySet().stream()
+        .map(e -> {
+          params.add(e.getKey());
+          params.addAll(e.getValue());
+          return "(graph_id = ? AND type_id IN (" +
+              e.getValue().stream().map(t -> "?").collect(joining(", ")) + "))";
+        })
+        .collect(joining(" OR "));
+
+    return ParametrizedSqlQuery.of(template, params.toArray());
+  }
+
+  private Map<UUID, Set<String>> byGraphId() {
+    return typeIds.stream().collect(
+        groupingBy(TypeId::getGraphId, LinkedHashMap::new, mapping(TypeId::getId, toSet())));
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    NodesByTypeIds that = (NodesByTypeIds) o;
+    return Objects.equals(typeIds, that.typeIds);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(typeIds);
+  }
+
+  @Override
+  public String toString() {
+    return "type IN " + typeIds;
+  }
+
+}
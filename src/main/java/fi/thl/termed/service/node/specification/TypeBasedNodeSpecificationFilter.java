@@ -1,14 +1,14 @@
 package fi.thl.termed.service.node.specification;
 
-import static java.util.stream.Collectors.toMap;
-
-import fi.thl.termed.domain.Attribute;
+import com.google.common.collect.ImmutableList;
 import fi.thl.termed.domain.Node;
 import fi.thl.termed.domain.NodeId;
 import fi.thl.termed.domain.ReferenceAttribute;
-import fi.thl.termed.domain.TextAttribute;
+import fi.thl.termed.domain.ReferenceAttributeId;
+import fi.thl.termed.domain.TextAttributeId;
 import fi.thl.termed.domain.Type;
 import fi.thl.termed.domain.TypeId;
+import fi.thl.termed.service.metamodel.Metamodel;
 import fi.thl.termed.util.query.AndSpecification;
 import fi.thl.termed.util.query.BoostSpecification;
 import fi.thl.termed.util.query.MatchNone;
@@ -17,11 +17,11 @@ import fi.thl.termed.util.query.OrSpecification;
 import fi.thl.termed.util.query.Specification;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
-import java.util.Set;
+import java.util.Optional;
 import java.util.function.BiFunction;
-import java.util.stream.Collectors;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
 /**
  * Filters specification so that only attributes present in given domain type are searched. Useful
@@ -30,29 +30,37 @@ import java.util.stream.Collectors;
 public class TypeBasedNodeSpecificationFilter implements
     BiFunction<Type, Specification<NodeId, Node>, Specification<NodeId, Node>> {
 
-  private Map<TypeId, Type> readPermittedTypes;
+  private Metamodel metamodel;
 
   /**
    * @param types list of readable types
    */
   public TypeBasedNodeSpecificationFilter(List<Type> types) {
-    this.readPermittedTypes = types.stream().collect(toMap(Type::identifier, t -> t));
+    this(Metamodel.of(ImmutableList.of(), types));
+  }
+
+  /**
+   * @param metamodel readable types
+   */
+  public TypeBasedNodeSpecificationFilter(Metamodel metamodel) {
+    this.metamodel = metamodel;
   }
 
   @Override
   public Specification<NodeId, Node> apply(Type domain, Specification<NodeId, Node> specification) {
-    if (!readPermittedTypes.containsKey(domain.identifier())) {
+    if (!metamodel.containsType(domain.identifier())) {
       return new MatchNone<>();
     }
 
-    Set<String> textAttrIds = domain.getTextAttributes().stream()
-        .map(TextAttribute::getId).collect(Collectors.toSet());
-    Map<String, ReferenceAttribute> refAttrs = domain.getReferenceAttributes().stream()
-        .collect(toMap(Attribute::getId, r -> r));
+    TypeId domainId = domain.identifier();
+    Predicate<String> textAttrs = attributeId ->
+        metamodel.getTextAttribute(new TextAttributeId(domainId, attributeId)).isPresent();
+    Function<String, Optional<ReferenceAttribute>> refAttrs = attributeId ->
+        metamodel.getReferenceAttribute(new ReferenceAttributeId(domainId, attributeId));
 
     if (isAcceptedIdentifierSpecification(specification) ||
         isAcceptedAuditSpecification(specification) ||
-        isAcceptedTextAttributeSpecification(specification, textAttrIds) ||
+        isAcceptedTextAttributeSpecification(specification, textAttrs) ||
         isAcceptedReferenceAttributeSpecification(specification, refAttrs)) {
       return specification;
     }
@@ -64,13 +72,15 @@ public class TypeBasedNodeSpecificationFilter implements
         Objects.equals(domain.getId(), ((NodesByTypeId) specification).getTypeId())) {
       return specification;
     }
-    if (specification instanceof NodesByReferencePath &&
-        refAttrs.containsKey(((NodesByReferencePath) specification).getAttributeId())) {
+    if (specification instanceof NodesByReferencePath) {
       NodesByReferencePath nodesByRefSpec = (NodesByReferencePath) specification;
-      ReferenceAttribute refAttr = refAttrs.get(nodesByRefSpec.getAttributeId());
       // apply filter recursively for nested "sub" specification
-      return new NodesByReferencePath(nodesByRefSpec.getAttributeId(), apply(
-          readPermittedTypes.get(refAttr.getRange()), nodesByRefSpec.getValueSpecification()));
+      return refAttrs.apply(nodesByRefSpec.getAttributeId())
+          .flatMap(refAttr -> metamodel.getType(refAttr.getRange()))
+          .<Specification<NodeId, Node>>map(range -> new NodesByReferencePath(
+              nodesByRefSpec.getAttributeId(),
+              apply(range, nodesByRefSpec.getValueSpecification())))
+          .orElseGet(MatchNone::new);
     }
     if (specification instanceof AndSpecification) {
       return filterAndSpecification(domain, (AndSpecification<NodeId, Node>) specification);
@@ -98,23 +108,23 @@ public class TypeBasedNodeSpecificationFilter implements
   }
 
   private boolean isAcceptedTextAttributeSpecification(Specification<NodeId, Node> s,
-      Set<String> acceptedTextAttrs) {
+      Predicate<String> acceptedTextAttrs) {
     return (s instanceof NodesByPropertyString && acceptedTextAttrs
-        .contains(((NodesByPropertyString) s).getAttributeId()))
+        .test(((NodesByPropertyString) s).getAttributeId()))
         || (s instanceof NodesByPropertyStringPrefix && acceptedTextAttrs
-        .contains(((NodesByPropertyStringPrefix) s).getAttributeId()))
+        .test(((NodesByPropertyStringPrefix) s).getAttributeId()))
         || (s instanceof NodesByPropertyStringRange && acceptedTextAttrs
-        .contains(((NodesByPropertyStringRange) s).getAttributeId()))
+        .test(((NodesByPropertyStringRange) s).getAttributeId()))
         || (s instanceof NodesByProperty && acceptedTextAttrs
-        .contains(((NodesByProperty) s).getAttributeId()))
+        .test(((NodesByProperty) s).getAttributeId()))
         || (s instanceof NodesByPropertyPrefix && acceptedTextAttrs
-        .contains(((NodesByPropertyPrefix) s).getAttributeId()))
+        .test(((NodesByPropertyPrefix) s).getAttributeId()))
         || (s instanceof NodesByPropertyPhrase && acceptedTextAttrs
-        .contains(((NodesByPropertyPhrase) s).getAttributeId()));
+        .test(((NodesByPropertyPhrase) s).getAttributeId()));
   }
 
   private boolean isAcceptedReferenceAttributeSpecification(Specification<NodeId, Node> s,
-      Map<String, ReferenceAttribute> acceptedReferenceAttrs) {
+      Function<String, Optional<ReferenceAttribute>> acceptedReferenceAttrs) {
     String attributeId = null;
     if (s instanceof NodesByReference) {
       attributeId = ((NodesByReference) s).getAttributeId();
@@ -122,9 +132,9 @@ public class TypeBasedNodeSpecificationFilter implements
     if (s instanceof NodesWithoutReferences) {
       attributeId = ((NodesWithoutReferences) s).getAttributeId();
     }
-    return attributeId != null &&
-        acceptedReferenceAttrs.containsKey(attributeId) &&
-        readPermittedTypes.containsKey(acceptedReferenceAttrs.get(attributeId).getRange());
+    return attributeId != null && acceptedReferenceAttrs.apply(attributeId)
+        .map(refAttr -> metamodel.containsType(refAttr.getRange()))
+        .orElse(false);
   }
 
   private AndSpecification<NodeId, Node> filterAndSpecification(Type domain,
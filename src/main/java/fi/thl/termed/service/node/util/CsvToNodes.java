@@ -6,14 +6,25 @@ import static fi.thl.termed.util.RegularExpressions.CODE;
 import static fi.thl.termed.util.RegularExpressions.IETF_LANGUAGE_TAG;
 import static fi.thl.termed.util.UUIDs.fromString;
 import static fi.thl.termed.util.UUIDs.nilUuid;
+import static fi.thl.termed.util.collect.StreamUtils.forEachAndClose;
 import static fi.thl.termed.util.query.AndSpecification.and;
 import static java.util.Collections.emptyList;
 import static java.util.Collections.emptyMap;
+import static java.util.Collections.singletonList;
 import static java.util.Objects.requireNonNull;
 import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.mapping;
+import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toMap;
+import static java.util.stream.Collectors.toSet;
 
 import com.google.common.base.MoreObjects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Streams;
 import com.opencsv.CSVParserBuilder;
 import com.opencsv.CSVReader;
 import com.opencsv.CSVReaderBuilder;
@@ -22,32 +33,56 @@ import fi.thl.termed.domain.Node;
 import fi.thl.termed.domain.NodeId;
 import fi.thl.termed.domain.ReferenceAttribute;
 import fi.thl.termed.domain.StrictLangValue;
+import fi.thl.termed.domain.TextAttributeId;
 import fi.thl.termed.domain.Type;
 import fi.thl.termed.domain.TypeId;
+import fi.thl.termed.service.node.select.SelectTypeQualifiedProperty;
+import fi.thl.termed.service.node.specification.NodesByFieldValues;
 import fi.thl.termed.service.node.specification.NodesByGraphId;
-import fi.thl.termed.service.node.specification.NodesByPropertyString;
+import fi.thl.termed.service.node.specification.NodesByPropertyStrings;
 import fi.thl.termed.service.node.specification.NodesByTypeId;
 import fi.thl.termed.util.TableUtils;
 import fi.thl.termed.util.UUIDs;
 import fi.thl.termed.util.csv.CsvOptions;
 import fi.thl.termed.util.csv.CsvUtils;
+import fi.thl.termed.util.query.Query;
+import fi.thl.termed.util.query.Select;
+import fi.thl.termed.util.query.Selects;
 import fi.thl.termed.util.query.Specification;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Stream;
 import org.apache.jena.atlas.RuntimeIOException;
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
 
 /**
- * Import nodes from CSV
+ * Import nodes from CSV.
+ *
+ * Rows are converted in chunks. Reference columns that identify the referenced node by a code
+ * (r.attr.code), a URI (r.attr.uri) or a property value (r.attr.p.prop) are resolved for the whole
+ * chunk at once with one term set query per key kind, results are cached for the lifetime of this
+ * object (i.e. one import). References to nodes defined on earlier rows of the same file are
+ * resolved without querying. Keys of imported rows are registered for all key kinds that header
+ * columns may refer to, first keys are kept in memory and rest in a temporary file.
  */
 public final class CsvToNodes {
 
@@ -55,82 +90,183 @@ public final class CsvToNodes {
       "^(properties|p)\\.(" + CODE + ")(\\.(" + IETF_LANGUAGE_TAG + "))?$");
   private static final Pattern REFERENCE_KEY = Pattern.compile(
       "^(references|r)\\.(" + CODE + ")(\\.id)?$");
+  private static final Pattern REFERENCE_CODE_OR_URI_KEY = Pattern.compile(
+      "^(references|r)\\.(" + CODE + ")\\.(code|uri)$");
   private static final Pattern REFERENCE_PROPERTY_KEY = Pattern.compile(
       "^(references|r)\\.(" + CODE + ")\\."
           + "(properties|p)\\.(" + CODE + ")(\\.(" + IETF_LANGUAGE_TAG + "))?$");
 
+  private static final int SPILL_CACHE_SIZE_MB = 4;
+
   private static final TypeId unknownTypeId = TypeId.of("", nilUuid());
 
   private Map<TypeId, Map<String, TypeId>> typeReferenceAttributeRangeIndex;
-  private Function<Specification<NodeId, Node>, Optional<NodeId>> referenceIdResolver;
+  private Function<Query<NodeId, Node>, Stream<Node>> nodeProvider;
+  private int batchSize;
+  private int maxImportedKeysInMemory;
+
+  // resolved reference keys, empty if key did not match any node
+  private Cache<ReferenceKey, Optional<NodeId>> referenceCache;
 
   public CsvToNodes() {
-    this(emptyList(), (s) -> Optional.empty());
+    this(emptyList(), q -> Stream.empty());
   }
 
   public CsvToNodes(
       List<Type> types,
-      Function<Specification<NodeId, Node>, Optional<NodeId>> referenceIdResolver) {
+      Function<Query<NodeId, Node>, Stream<Node>> nodeProvider) {
+    this(types, nodeProvider, 1000, 100_000);
+  }
+
+  public CsvToNodes(
+      List<Type> types,
+      Function<Query<NodeId, Node>, Stream<Node>> nodeProvider,
+      int batchSize, int cacheSize) {
+    this(types, nodeProvider, batchSize, cacheSize, 100_000);
+  }
+
+  public CsvToNodes(
+      List<Type> types,
+      Function<Query<NodeId, Node>, Stream<Node>> nodeProvider,
+      int batchSize, int cacheSize, int maxImportedKeysInMemory) {
     this.typeReferenceAttributeRangeIndex = types.stream()
         .flatMap(t -> t.getReferenceAttributes().stream())
         .collect(
             groupingBy(ReferenceAttribute::getDomain,
                 toMap(ReferenceAttribute::getId, ReferenceAttribute::getRange)));
-    this.referenceIdResolver = referenceIdResolver;
+    this.nodeProvider = nodeProvider;
+    this.batchSize = batchSize;
+    this.maxImportedKeysInMemory = maxImportedKeysInMemory;
+    this.referenceCache = CacheBuilder.newBuilder().maximumSize(cacheSize).build();
   }
 
   public Stream<Node> parseNodesFromCsv(GraphId graphId, CsvOptions csvOpts, InputStream in) {
-    return TableUtils.toMapped(CsvUtils.readCsv(csvOpts, in)).map(row -> mapToNode(graphId, row));
+    return parseNodesFromCsv(csvOpts, in, row -> NodeId.of(
+        MoreObjects.firstNonNull(UUIDs.fromString(row.get("id")), UUID.randomUUID()),
+        requireNonNull(row.get("type.id")),
+        graphId.getId()));
   }
 
   public Stream<Node> parseNodesFromCsv(TypeId typeId, CsvOptions csvOpts, InputStream in) {
-    return TableUtils.toMapped(CsvUtils.readCsv(csvOpts, in)).map(row -> mapToNode(typeId, row));
+    return parseNodesFromCsv(csvOpts, in, row -> NodeId.of(
+        MoreObjects.firstNonNull(UUIDs.fromString(row.get("id")), UUID.randomUUID()),
+        typeId));
   }
 
   public Stream<Node> parseNodesFromCsv(CsvOptions csvOpts, InputStream in) {
-    return TableUtils.toMapped(CsvUtils.readCsv(csvOpts, in)).map(this::mapToNode);
-  }
-
-  private Node mapToNode(GraphId graphId, Map<String, String> row) {
-    NodeId nodeId = NodeId.of(
+    return parseNodesFromCsv(csvOpts, in, row -> NodeId.of(
         MoreObjects.firstNonNull(UUIDs.fromString(row.get("id")), UUID.randomUUID()),
         requireNonNull(row.get("type.id")),
-        graphId.getId());
-    return mapToNode(nodeId, row);
+        requireNonNull(UUIDs.fromString(row.get("type.graph.id")))));
   }
 
-  private Node mapToNode(TypeId typeId, Map<String, String> row) {
-    NodeId nodeId = NodeId.of(
-        MoreObjects.firstNonNull(UUIDs.fromString(row.get("id")), UUID.randomUUID()),
-        typeId);
-    return mapToNode(nodeId, row);
+  private Stream<Node> parseNodesFromCsv(CsvOptions csvOpts, InputStream in,
+      Function<Map<String, String>, NodeId> rowToNodeId) {
+    Stream<Map<String, String>> rows = TableUtils.toMapped(CsvUtils.readCsv(csvOpts, in));
+
+    ImportedKeys importedKeys = new ImportedKeys(maxImportedKeysInMemory);
+
+    Iterator<List<Node>> nodeChunks = Iterators.transform(
+        Iterators.partition(rows.iterator(), batchSize),
+        chunk -> {
+          if (importedKeys.kinds == null) {
+            importedKeys.kinds = keyKinds(chunk.get(0).keySet());
+          }
+          return mapToNodes(chunk, rowToNodeId, importedKeys);
+        });
+
+    return Streams.stream(nodeChunks)
+        .flatMap(List::stream)
+        .onClose(rows::close)
+        .onClose(importedKeys::close);
   }
 
-  private Node mapToNode(Map<String, String> row) {
-    NodeId nodeId = NodeId.of(
-        MoreObjects.firstNonNull(UUIDs.fromString(row.get("id")), UUID.randomUUID()),
-        requireNonNull(row.get("type.id")),
-        requireNonNull(UUIDs.fromString(row.get("type.graph.id"))));
-    return mapToNode(nodeId, row);
+  // all key kinds that given columns may refer to, with any type as the referring type
+  private Set<KeyKind> keyKinds(Set<String> columns) {
+    Set<KeyKind> kinds = new HashSet<>();
+
+    for (String column : columns) {
+      Matcher codeOrUriMatcher = REFERENCE_CODE_OR_URI_KEY.matcher(column);
+      Matcher propertyMatcher = REFERENCE_PROPERTY_KEY.matcher(column);
+
+      String refAttrId;
+      Function<TypeId, KeyKind> keyKind;
+
+      if (codeOrUriMatcher.matches()) {
+        refAttrId = codeOrUriMatcher.group(2);
+        String field = codeOrUriMatcher.group(3);
+        keyKind = range -> new KeyKind(range, field, null, null);
+      } else if (propertyMatcher.matches()) {
+        refAttrId = propertyMatcher.group(2);
+        String textAttrId = propertyMatcher.group(4);
+        String lang = nullToEmpty(propertyMatcher.group(6));
+        keyKind = range -> new KeyKind(range, "properties", textAttrId, lang);
+      } else {
+        continue;
+      }
+
+      typeReferenceAttributeRangeIndex.values().stream()
+          .map(ranges -> ranges.get(refAttrId))
+          .filter(Objects::nonNull)
+          .forEach(range -> kinds.add(keyKind.apply(range)));
+    }
+
+    return kinds;
   }
 
-  private Node mapToNode(NodeId nodeId, Map<String, String> row) {
+  private List<Node> mapToNodes(List<Map<String, String>> rows,
+      Function<Map<String, String>, NodeId> rowToNodeId, ImportedKeys importedKeys) {
+
+    List<ParsedRow> parsedRows = new ArrayList<>(rows.size());
+    for (Map<String, String> row : rows) {
+      parsedRows.add(mapToNode(rowToNodeId.apply(row), row, importedKeys));
+    }
+
+    Map<ReferenceKey, Optional<NodeId>> resolved = resolve(parsedRows.stream()
+        .flatMap(r -> r.keyedReferences.stream())
+        .filter(r -> r.importedId == null)
+        .map(r -> r.key)
+        .collect(toSet()));
+
+    List<Node> nodes = new ArrayList<>(parsedRows.size());
+
+    for (ParsedRow parsedRow : parsedRows) {
+      for (KeyedReference ref : parsedRow.keyedReferences) {
+        Optional<NodeId> refId = ref.importedId != null
+            ? Optional.of(ref.importedId)
+            : resolved.getOrDefault(ref.key, Optional.empty());
+        refId.ifPresent(id -> parsedRow.builder.addReference(ref.attributeId, id));
+      }
+      nodes.add(parsedRow.builder.build());
+    }
+
+    return nodes;
+  }
+
+  private ParsedRow mapToNode(NodeId nodeId, Map<String, String> row,
+      ImportedKeys importedKeys) {
+    String code = emptyToNull(row.get("code"));
+    String uri = emptyToNull(row.get("uri"));
+
     Node.Builder builder = Node.builder()
         .id(nodeId)
-        .code(emptyToNull(row.get("code")))
-        .uri(emptyToNull(row.get("uri")))
+        .code(code)
+        .uri(uri)
         .number(emptyToNull(row.get("number")) != null ? Long.valueOf(row.get("number")) : null);
 
+    Multimap<String, StrictLangValue> properties = ArrayListMultimap.create();
+
     row.forEach((k, vs) -> {
       Matcher m = PROPERTY_KEY.matcher(k);
       if (m.matches()) {
         String attrId = m.group(2);
         String lang = nullToEmpty(m.group(4));
-        fromInlineCsv(vs)
-            .forEach(v -> builder.addProperty(attrId, new StrictLangValue(lang, v)));
+        fromInlineCsv(vs).forEach(v -> properties.put(attrId, new StrictLangValue(lang, v)));
       }
     });
 
+    properties.asMap().forEach(builder::addProperty);
+
     row.forEach((k, vs) -> {
       Matcher m = REFERENCE_KEY.matcher(k);
       if (m.matches()) {
@@ -140,35 +276,81 @@ public final class CsvToNodes {
       }
     });
 
-    // if there are cols matching REFERENCE_PROPERTY_KEY, try to resolve them to ref IDs.
+    // collect references identified by code, uri or property value, resolved later for the chunk
+    List<KeyedReference> keyedReferences = new ArrayList<>();
+
     row.forEach((k, vs) -> {
-      Matcher m = REFERENCE_PROPERTY_KEY.matcher(k);
-      if (m.matches()) {
-        String refAttrId = m.group(2);
-        String textAttrId = m.group(4);
-        String lang = nullToEmpty(m.group(6));
-
-        TypeId attributeRangeId =
-            typeReferenceAttributeRangeIndex
-                .getOrDefault(nodeId.getType(), emptyMap())
-                .get(refAttrId);
-
-        if (attributeRangeId != null) {
-          fromInlineCsv(vs).forEach(v -> {
-            Specification<NodeId, Node> refValueSpec = and(
-                new NodesByGraphId(attributeRangeId.getGraphId()),
-                new NodesByTypeId(attributeRangeId.getId()),
-                new NodesByPropertyString(textAttrId, lang, v));
-
-            Optional<NodeId> resolvedReferenceId = referenceIdResolver.apply(refValueSpec);
-
-            resolvedReferenceId.ifPresent(refId -> builder.addReference(refAttrId, refId));
-          });
+      Matcher codeOrUriMatcher = REFERENCE_CODE_OR_URI_KEY.matcher(k);
+      Matcher propertyMatcher = REFERENCE_PROPERTY_KEY.matcher(k);
+
+      String refAttrId;
+      Function<TypeId, KeyKind> keyKind;
+
+      if (codeOrUriMatcher.matches()) {
+        refAttrId = codeOrUriMatcher.group(2);
+        String field = codeOrUriMatcher.group(3);
+        keyKind = range -> new KeyKind(range, field, null, null);
+      } else if (propertyMatcher.matches()) {
+        refAttrId = propertyMatcher.group(2);
+        String textAttrId = propertyMatcher.group(4);
+        String lang = nullToEmpty(propertyMatcher.group(6));
+        keyKind = range -> new KeyKind(range, "properties", textAttrId, lang);
+      } else {
+        return;
+      }
+
+      TypeId attributeRangeId = typeReferenceAttributeRangeIndex
+          .getOrDefault(nodeId.getType(), emptyMap())
+          .get(refAttrId);
+
+      if (attributeRangeId != null) {
+        KeyKind kind = keyKind.apply(attributeRangeId);
+        fromInlineCsv(vs).forEach(v -> {
+          ReferenceKey key = new ReferenceKey(kind, v);
+          keyedReferences.add(
+              new KeyedReference(refAttrId, key, importedKeys.get(key)));
+        });
+      }
+    });
+
+    // remember keys of this row that may be referenced by later rows
+    for (KeyKind kind : importedKeys.kinds) {
+      if (kind.range.equals(nodeId.getType())) {
+        for (String value : kind.values(code, uri, properties)) {
+          importedKeys.putIfAbsent(new ReferenceKey(kind, value), nodeId);
         }
       }
+    }
+
+    return new ParsedRow(builder, keyedReferences);
+  }
+
+  // resolves given keys using cache and one query per key kind for keys not in cache
+  private Map<ReferenceKey, Optional<NodeId>> resolve(Set<ReferenceKey> keys) {
+    Map<ReferenceKey, Optional<NodeId>> resolved = new HashMap<>(referenceCache.getAllPresent(keys));
+
+    Map<KeyKind, Set<String>> missingValuesByKind = keys.stream()
+        .filter(key -> !resolved.containsKey(key))
+        .collect(groupingBy(key -> key.kind, mapping(key -> key.value, toSet())));
+
+    missingValuesByKind.forEach((kind, values) -> {
+      Map<ReferenceKey, Optional<NodeId>> queried = new HashMap<>();
+      values.forEach(v -> queried.put(new ReferenceKey(kind, v), Optional.empty()));
+
+      forEachAndClose(nodeProvider.apply(new Query<>(
+              singletonList(kind.select()), kind.specification(values), emptyList(), -1)),
+          node -> kind.values(node).forEach(v -> {
+            ReferenceKey key = new ReferenceKey(kind, v);
+            if (queried.containsKey(key) && !queried.get(key).isPresent()) {
+              queried.put(key, Optional.of(node.identifier()));
+            }
+          }));
+
+      referenceCache.putAll(queried);
+      resolved.putAll(queried);
     });
 
-    return builder.build();
+    return resolved;
   }
 
   private List<String> fromInlineCsv(String csvRow) {
@@ -190,4 +372,229 @@ public final class CsvToNodes {
     }
   }
 
+  /**
+   * Reference key kinds of one import and keys of already parsed rows. First keys are kept in
+   * memory, rest are spilled into a temporary file backed map.
+   */
+  private static class ImportedKeys implements AutoCloseable {
+
+    private final int maxInMemory;
+
+    private Set<KeyKind> kinds;
+    private final Map<ReferenceKey, NodeId> keys = new HashMap<>();
+
+    private Path spillFile;
+    private MVStore spillStore;
+    private MVMap<String, String> spilledKeys;
+
+    ImportedKeys(int maxInMemory) {
+      this.maxInMemory = maxInMemory;
+    }
+
+    NodeId get(ReferenceKey key) {
+      NodeId id = keys.get(key);
+      if (id == null && spilledKeys != null) {
+        String spilledId = spilledKeys.get(key.toString());
+        return spilledId != null ? NodeId.fromString(spilledId) : null;
+      }
+      return id;
+    }
+
+    void putIfAbsent(ReferenceKey key, NodeId id) {
+      if (keys.containsKey(key)) {
+        return;
+      }
+
+      // keys are spilled only after memory is full, so a key in memory is never spilled
+      if (keys.size() < maxInMemory) {
+        keys.put(key, id);
+        return;
+      }
+
+      if (spilledKeys == null) {
+        try {
+          spillFile = Files.createTempFile("termed-csv-import-keys-", ".mv");
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+        spillStore = new MVStore.Builder()
+            .fileName(spillFile.toString())
+            .cacheSize(SPILL_CACHE_SIZE_MB)
+            .open();
+        spilledKeys = spillStore.openMap("keys");
+      }
+
+      spilledKeys.putIfAbsent(key.toString(), id.toString());
+    }
+
+    @Override
+    public void close() {
+      keys.clear();
+
+      if (spillStore != null) {
+        try {
+          spillStore.closeImmediately();
+          Files.deleteIfExists(spillFile);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        } finally {
+          spillStore = null;
+          spilledKeys = null;
+          spillFile = null;
+        }
+      }
+    }
+
+  }
+
+  private static class ParsedRow {
+
+    private final Node.Builder builder;
+    private final List<KeyedReference> keyedReferences;
+
+    ParsedRow(Node.Builder builder, List<KeyedReference> keyedReferences) {
+      this.builder = builder;
+      this.keyedReferences = keyedReferences;
+    }
+
+  }
+
+  private static class KeyedReference {
+
+    private final String attributeId;
+    private final ReferenceKey key;
+    // id of a node defined earlier in the same import, null if key is to be queried
+    private final NodeId importedId;
+
+    KeyedReference(String attributeId, ReferenceKey key, NodeId importedId) {
+      this.attributeId = attributeId;
+      this.key = key;
+      this.importedId = importedId;
+    }
+
+  }
+
+  /**
+   * Identifies how referenced node is looked up: by code or uri, or by value of given property
+   * in given language (empty lang matches any language), among nodes of range type.
+   */
+  private static class KeyKind {
+
+    private final TypeId range;
+    private final String field;
+    private final String textAttributeId;
+    private final String lang;
+
+    KeyKind(TypeId range, String field, String textAttributeId, String lang) {
+      this.range = range;
+      this.field = field;
+      this.textAttributeId = textAttributeId;
+      this.lang = lang;
+    }
+
+    Specification<NodeId, Node> specification(Set<String> values) {
+      Specification<NodeId, Node> valueSpec;
+      switch (field) {
+        case "code":
+          valueSpec = NodesByFieldValues.codes(values);
+          break;
+        case "uri":
+          valueSpec = NodesByFieldValues.uris(values);
+          break;
+        default:
+          valueSpec = new NodesByPropertyStrings(textAttributeId, lang, values);
+      }
+      return and(
+          new NodesByGraphId(range.getGraphId()),
+          new NodesByTypeId(range.getId()),
+          valueSpec);
+    }
+
+    Select select() {
+      return field.equals("properties")
+          ? new SelectTypeQualifiedProperty(new TextAttributeId(range, textAttributeId))
+          : Selects.field(field);
+    }
+
+    List<String> values(Node node) {
+      return values(node.getCode().orElse(null), node.getUri().orElse(null),
+          node.getProperties());
+    }
+
+    List<String> values(String code, String uri,
+        Multimap<String, StrictLangValue> properties) {
+      switch (field) {
+        case "code":
+          return code != null ? singletonList(code) : emptyList();
+        case "uri":
+          return uri != null ? singletonList(uri) : emptyList();
+        default:
+          return properties.get(textAttributeId).stream()
+              .filter(v -> lang.isEmpty() || v.getLang().equals(lang))
+              .map(StrictLangValue::getValue)
+              .collect(toList());
+      }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      KeyKind that = (KeyKind) o;
+      return Objects.equals(range, that.range) &&
+          Objects.equals(field, that.field) &&
+          Objects.equals(textAttributeId, that.textAttributeId) &&
+          Objects.equals(lang, that.lang);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(range, field, textAttributeId, lang);
+    }
+
+  }
+
+  private static class ReferenceKey {
+
+    private final KeyKind kind;
+    private final String value;
+
+    ReferenceKey(KeyKind kind, String value) {
+      this.kind = kind;
+      this.value = value;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      ReferenceKey that = (ReferenceKey) o;
+      return Objects.equals(kind, that.kind) &&
+          Objects.equals(value, that.value);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(kind, value);
+    }
+
+    // unambiguous string form used as key of spilled keys
+    @Override
+    public String toString() {
+      return String.join("\0",
+          kind.range.getGraphId().toString(), kind.range.getId(),
+          kind.field, nullToEmpty(kind.textAttributeId), nullToEmpty(kind.lang),
+          value);
+    }
+
+  }
+
 }
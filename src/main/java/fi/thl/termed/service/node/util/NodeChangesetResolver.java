@@ -0,0 +1,128 @@
+package fi.thl.termed.service.node.util;
+
+import static fi.thl.termed.util.collect.StreamUtils.forEachAndClose;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static java.util.Objects.requireNonNull;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.service.node.specification.NodesByFieldValues;
+import fi.thl.termed.util.query.Query;
+import fi.thl.termed.util.query.Selects;
+import fi.thl.termed.util.spring.exception.BadRequestException;
+import fi.thl.termed.util.spring.exception.NotFoundException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Resolves node changesets before they are written. Base nodes of patches are loaded with one
+ * query per chunk (instead of one lookup per patch) and references are checked up front so that
+ * an invalid changeset is rejected before anything is written.
+ */
+public class NodeChangesetResolver {
+
+  private final Function<Query<NodeId, Node>, Stream<Node>> nodeProvider;
+  private final int batchSize;
+
+  public NodeChangesetResolver(Function<Query<NodeId, Node>, Stream<Node>> nodeProvider) {
+    this(nodeProvider, 1000);
+  }
+
+  public NodeChangesetResolver(Function<Query<NodeId, Node>, Stream<Node>> nodeProvider,
+      int batchSize) {
+    this.nodeProvider = nodeProvider;
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * Merges patches with stored nodes. Patch properties and references are appended to the ones
+   * of the stored node, code and uri are replaced if given.
+   *
+   * @throws NotFoundException if any of the patched nodes does not exist
+   */
+  public List<Node> mergePatches(List<Node> patches) {
+    List<Node> merged = new ArrayList<>(patches.size());
+
+    for (List<Node> batch : Lists.partition(patches, batchSize)) {
+      Map<NodeId, Node> baseNodes = new HashMap<>();
+      forEachAndClose(nodeProvider.apply(new Query<>(
+              NodesByFieldValues.ids(batch.stream().map(Node::getId).collect(toList())), emptyList(), -1)),
+          node -> baseNodes.put(node.identifier(), node));
+
+      for (Node patch : batch) {
+        Node base = baseNodes.get(patch.identifier());
+        if (base == null) {
+          throw new NotFoundException(
+              String.format("Node not found for patch %s", patch.identifier()));
+        }
+        merged.add(merge(base, patch));
+      }
+    }
+
+    return merged;
+  }
+
+  private Node merge(Node node, Node patch) {
+    Node.Builder nodeBuilder = Node.builderFromCopyOf(node);
+
+    patch.getCode().ifPresent(nodeBuilder::code);
+    patch.getUri().ifPresent(nodeBuilder::uri);
+    patch.getProperties().forEach(nodeBuilder::addProperty);
+    patch.getReferences().forEach(nodeBuilder::addReference);
+
+    return nodeBuilder.build();
+  }
+
+  /**
+   * Checks that all references given in saves and patches point to nodes that are either saved in
+   * the same changeset or already exist (and are not deleted in the same changeset). References
+   * are compared by node id only as reference types are resolved later from attribute ranges.
+   *
+   * @throws BadRequestException if a referenced node is not found
+   */
+  public void validateReferences(List<Node> saves, List<Node> patches, List<NodeId> deletes) {
+    Set<UUID> saved = saves.stream().map(Node::getId).collect(toSet());
+    Set<UUID> deleted = deletes.stream().map(NodeId::getId).collect(toSet());
+
+    Set<UUID> unresolved = new LinkedHashSet<>();
+    for (Node node : Iterables.concat(saves, patches)) {
+      for (NodeId reference : node.getReferences().values()) {
+        UUID id = requireNonNull(reference.getId());
+        if (deleted.contains(id) && !saved.contains(id)) {
+          throw new BadRequestException(String.format(
+              "Node %s references node %s deleted in the same changeset",
+              node.identifier(), id));
+        }
+        if (!saved.contains(id)) {
+          unresolved.add(id);
+        }
+      }
+    }
+
+    for (List<UUID> batch : Lists.partition(ImmutableList.copyOf(unresolved), batchSize)) {
+      Set<UUID> missing = new LinkedHashSet<>(batch);
+      forEachAndClose(nodeProvider.apply(new Query<>(singletonList(Selects.field("id")),
+              NodesByFieldValues.ids(batch), emptyList(), -1)),
+          node -> missing.remove(node.getId()));
+
+      if (!missing.isEmpty()) {
+        throw new BadRequestException(
+            String.format("Referenced nodes not found: %s", missing));
+      }
+    }
+  }
+
+}
@@ -0,0 +1,165 @@
+package fi.thl.termed.service.node.util;
+
+import static fi.thl.termed.service.node.util.UriResolvers.refAttrUriResolver;
+import static fi.thl.termed.service.node.util.UriResolvers.textAttrUriResolver;
+import static fi.thl.termed.service.node.util.UriResolvers.typeUriResolver;
+import static fi.thl.termed.util.collect.StreamUtils.forEachAndClose;
+import static fi.thl.termed.util.query.AndSpecification.and;
+import static fi.thl.termed.util.query.OrSpecification.or;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static java.util.stream.Collectors.toList;
+
+import com.google.common.collect.Iterators;
+import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.domain.Type;
+import fi.thl.termed.domain.TypeId;
+import fi.thl.termed.service.node.specification.NodesByFieldValues;
+import fi.thl.termed.service.node.specification.NodesByGraphId;
+import fi.thl.termed.service.node.specification.NodesByTypeId;
+import fi.thl.termed.util.query.Query;
+import fi.thl.termed.util.query.Selects;
+import fi.thl.termed.util.query.Specification;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFWriter;
+
+/**
+ * Writes all nodes of given types as RDF.
+ *
+ * Nodes are read as one stream and converted to triples in chunks on given executor. URIs of
+ * nodes referenced by a chunk are loaded with one query per chunk, so references are resolved
+ * without per reference node lookups and without holding URIs of the whole graph in memory. A
+ * bounded number of chunks is in progress at a time and chunks are written in the original node
+ * order.
+ */
+public class NodeRdfExporter {
+
+  private final String defaultNamespace;
+  private final List<Type> types;
+  private final Function<TypeId, Optional<Type>> getType;
+  private final Function<Query<NodeId, Node>, Stream<Node>> nodeProvider;
+  private final ExecutorService executor;
+  private final int chunkSize;
+  private final int maxPendingChunks;
+
+  public NodeRdfExporter(String defaultNamespace, List<Type> types,
+      Function<Query<NodeId, Node>, Stream<Node>> nodeProvider, ExecutorService executor) {
+    this(defaultNamespace, types, nodeProvider, executor, 500,
+        2 * Runtime.getRuntime().availableProcessors());
+  }
+
+  public NodeRdfExporter(String defaultNamespace, List<Type> types,
+      Function<Query<NodeId, Node>, Stream<Node>> nodeProvider, ExecutorService executor,
+      int chunkSize, int maxPendingChunks) {
+    this.defaultNamespace = defaultNamespace;
+    this.types = types;
+    this.nodeProvider = nodeProvider;
+    this.executor = executor;
+    this.chunkSize = chunkSize;
+    this.maxPendingChunks = maxPendingChunks;
+
+    Map<TypeId, Type> typesById = new HashMap<>();
+    types.forEach(t -> typesById.put(t.identifier(), t));
+    this.getType = id -> Optional.ofNullable(typesById.get(id));
+  }
+
+  public void write(OutputStream out, Map<String, String> namespacePrefixes, Lang lang) {
+    StreamRDF rdfStream = StreamRDFWriter.getWriterStream(out, lang);
+    rdfStream.start();
+    namespacePrefixes.forEach(rdfStream::prefix);
+
+    Deque<Future<List<List<Triple>>>> pending = new ArrayDeque<>();
+
+    try (Stream<Node> nodes = nodeProvider.apply(new Query<>(typeNodes(types)))) {
+      Iterator<List<Node>> chunks = Iterators.partition(nodes.iterator(), chunkSize);
+
+      while (chunks.hasNext()) {
+        List<Node> chunk = chunks.next();
+        pending.add(executor.submit(() -> toTriples(chunk)));
+
+        if (pending.size() >= maxPendingChunks) {
+          write(rdfStream, pending.poll());
+        }
+      }
+
+      while (!pending.isEmpty()) {
+        write(rdfStream, pending.poll());
+      }
+    } finally {
+      pending.forEach(f -> f.cancel(true));
+    }
+
+    rdfStream.finish();
+  }
+
+  private void write(StreamRDF rdfStream, Future<List<List<Triple>>> chunk) {
+    try {
+      chunk.get().forEach(nodeTriples -> nodeTriples.forEach(rdfStream::triple));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  private List<List<Triple>> toTriples(List<Node> chunk) {
+    Map<NodeId, String> nodeUris = loadNodeUris(chunk);
+
+    Function<Node, List<Triple>> toTriples = new NodeToTriples(
+        defaultNamespace,
+        typeUriResolver(getType),
+        textAttrUriResolver(getType),
+        refAttrUriResolver(getType),
+        id -> Optional.ofNullable(nodeUris.get(id)));
+
+    return chunk.stream().map(toTriples).collect(toList());
+  }
+
+  // uris of given nodes and nodes referenced by them
+  private Map<NodeId, String> loadNodeUris(List<Node> nodes) {
+    Map<NodeId, String> nodeUris = new HashMap<>();
+    Set<UUID> referenceIds = new HashSet<>();
+
+    for (Node node : nodes) {
+      node.getUri().ifPresent(uri -> nodeUris.put(node.identifier(), uri));
+      node.getReferences().values().forEach(id -> referenceIds.add(id.getId()));
+    }
+
+    if (!referenceIds.isEmpty()) {
+      forEachAndClose(nodeProvider.apply(new Query<>(
+              singletonList(Selects.field("uri")), NodesByFieldValues.ids(referenceIds), emptyList(), -1)),
+          node -> node.getUri().ifPresent(uri -> nodeUris.put(node.identifier(), uri)));
+    }
+
+    return nodeUris;
+  }
+
+  private Specification<NodeId, Node> typeNodes(List<Type> types) {
+    return or(types.stream().map(Type::identifier)
+        .map(typeId -> and(
+            new NodesByGraphId(typeId.getGraphId()),
+            new NodesByTypeId(typeId.getId())))
+        .collect(toList()));
+  }
+
+}
@@ -26,15 +26,21 @@ import fi.thl.termed.service.node.specification.NodesByTypeId;
 import fi.thl.termed.service.node.specification.NodesByUri;
 import fi.thl.termed.util.RegularExpressions;
 import fi.thl.termed.util.UUIDs;
+import fi.thl.termed.util.query.OrSpecification;
 import fi.thl.termed.util.query.Specification;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 import java.util.stream.Stream;
+import org.apache.jena.graph.GraphStatisticsHandler;
 import org.apache.jena.graph.Triple;
 import org.apache.jena.graph.impl.GraphBase;
 import org.apache.jena.util.iterator.ClosableIterator;
@@ -49,18 +55,34 @@ public class NodeRdfGraphWrapper extends GraphBase {
   private Logger log = LoggerFactory.getLogger(getClass());
 
   private Function<Specification<NodeId, Node>, Stream<Node>> nodeProvider;
+  private Function<Specification<NodeId, Node>, Long> nodeCounter;
 
   // caches
   private Map<TypeId, Type> types = new HashMap<>();
   private Map<TextAttributeId, TextAttribute> textAttributes = new HashMap<>();
   private Map<ReferenceAttributeId, ReferenceAttribute> referenceAttributes = new HashMap<>();
 
+  private Specification<NodeId, Node> allNodes;
+  private Map<Triple, Long> statistics = new ConcurrentHashMap<>();
+
   private Function<Node, List<Triple>> toTriples;
 
   public NodeRdfGraphWrapper(
       String defaultNamespace,
       List<Type> typeList,
       Function<Specification<NodeId, Node>, Stream<Node>> nodeProvider) {
+    this(defaultNamespace, typeList, nodeProvider, null);
+  }
+
+  /**
+   * @param nodeCounter used to provide triple pattern statistics for query optimization, can be
+   * null
+   */
+  public NodeRdfGraphWrapper(
+      String defaultNamespace,
+      List<Type> typeList,
+      Function<Specification<NodeId, Node>, Stream<Node>> nodeProvider,
+      Function<Specification<NodeId, Node>, Long> nodeCounter) {
 
     typeList.forEach(type -> {
       types.put(type.identifier(), type);
@@ -69,6 +91,12 @@ public class NodeRdfGraphWrapper extends GraphBase {
     });
 
     this.nodeProvider = nodeProvider;
+    this.nodeCounter = nodeCounter;
+    this.allNodes = or(types.values().stream()
+        .map(type -> and(
+            new NodesByGraphId(type.getGraphId()),
+            new NodesByTypeId(type.getId())))
+        .collect(toList()));
 
     Function<TypeId, Optional<Type>> getType = id -> typeList.stream()
         .filter(t -> t.identifier().equals(id)).findFirst();
@@ -92,52 +120,100 @@ public class NodeRdfGraphWrapper extends GraphBase {
       log.trace("Find {}", match);
     }
 
-    org.apache.jena.graph.Node subject = nullToAny(match.getMatchSubject());
-    org.apache.jena.graph.Node predicate = nullToAny(match.getMatchPredicate());
-    org.apache.jena.graph.Node object = nullToAny(match.getMatchObject());
+    Optional<Specification<NodeId, Node>> nodeSpec = specification(match);
 
-    if (!subject.isURI() && !subject.equals(ANY)) {
+    if (!nodeSpec.isPresent()) {
       return WrappedIterator.emptyIterator();
     }
 
+    return nodeStreamToTriples(nodeProvider.apply(nodeSpec.get())).filterKeep(match::matches);
+  }
+
+  /**
+   * Finds nodes matching all given patterns sharing the same subject with one node query. Returns
+   * all triples of each matching node (or superset of matching nodes), caller is expected to match
+   * patterns against returned triples.
+   */
+  public ExtendedIterator<List<Triple>> findBySubjectPatterns(List<Triple> patterns) {
+    List<Specification<NodeId, Node>> specs = new ArrayList<>();
+
+    for (Triple pattern : patterns) {
+      Optional<Specification<NodeId, Node>> spec = specification(pattern);
+      if (!spec.isPresent()) {
+        return WrappedIterator.emptyIterator();
+      }
+      if (!spec.get().equals(allNodes)) {
+        specs.add(spec.get());
+      }
+    }
+
+    if (specs.isEmpty()) {
+      log.trace("Full scan");
+      specs.add(allNodes);
+    }
+
+    Stream<Node> nodes = nodeProvider.apply(specs.size() == 1 ? specs.get(0) : and(specs));
+    return streamToIterator(nodes.map(toTriples));
+  }
+
+  @Override
+  protected GraphStatisticsHandler createStatisticsHandler() {
+    return nodeCounter != null ? new NodeCountStatisticsHandler() : null;
+  }
+
+  /**
+   * Maps triple pattern to node specification. Returns empty if pattern can't match any triple.
+   * Patterns that can't be narrowed down are mapped to a scan over all types.
+   */
+  private Optional<Specification<NodeId, Node>> specification(Triple match) {
+    org.apache.jena.graph.Node subject = concreteOrAny(match.getSubject());
+    org.apache.jena.graph.Node predicate = concreteOrAny(match.getPredicate());
+    org.apache.jena.graph.Node object = concreteOrAny(match.getObject());
+
+    if (!subject.isURI() && !subject.equals(ANY)) {
+      return Optional.empty();
+    }
+
     if (subject.isURI()) {
-      return findBySubject(subject.getURI()).filterKeep(match::matches);
+      return nonEmpty(bySubject(subject.getURI()));
     }
 
     if (predicate.equals(RDF.type.asNode()) && object.isURI()) {
-      return findByType(object.getURI()).filterKeep(match::matches);
+      return byType(object.getURI());
     }
 
+    String predicateUri = predicate.isURI() ? predicate.getURI() : null;
+
     if (object.isURI()) {
-      String predicateUri = predicate.isURI() ? predicate.getURI() : null;
-      return findByObject(predicateUri, object.getURI()).filterKeep(match::matches);
+      return byObject(predicateUri, object.getURI());
     }
 
     if (object.isLiteral()) {
-      String predicateUri = predicate.isURI() ? predicate.getURI() : null;
-      return findByLiteral(predicateUri, object.getLiteralLexicalForm()).filterKeep(match::matches);
+      return nonEmpty(byLiteral(predicateUri, object.getLiteralLexicalForm()));
     }
 
-    if (log.isTraceEnabled()) {
-      log.trace("Full scan");
+    if (predicateUri != null && !predicate.equals(RDF.type.asNode())) {
+      return byPredicate(predicateUri);
     }
 
-    return findAll().filterKeep(match::matches);
+    return Optional.of(allNodes);
+  }
+
+  private org.apache.jena.graph.Node concreteOrAny(org.apache.jena.graph.Node node) {
+    return node == null || !node.isConcrete() ? ANY : node;
   }
 
-  private org.apache.jena.graph.Node nullToAny(org.apache.jena.graph.Node node) {
-    return node == null ? ANY : node;
+  private Optional<Specification<NodeId, Node>> nonEmpty(OrSpecification<NodeId, Node> spec) {
+    return spec.getSpecifications().isEmpty() ? Optional.empty() : Optional.of(spec);
   }
 
-  private ExtendedIterator<Triple> findBySubject(String subjectUri) {
-    Specification<NodeId, Node> nodeSpec = or(types.values().stream()
+  private OrSpecification<NodeId, Node> bySubject(String subjectUri) {
+    return or(types.values().stream()
         .map(type -> and(
             new NodesByGraphId(type.getGraphId()),
             new NodesByTypeId(type.getId()),
             byUriOrId(subjectUri)))
         .collect(toList()));
-
-    return nodeStreamToTriples(nodeProvider.apply(nodeSpec));
   }
 
   private Specification<NodeId, fi.thl.termed.domain.Node> byUriOrId(String nodeUri) {
@@ -146,46 +222,37 @@ public class NodeRdfGraphWrapper extends GraphBase {
         new NodesByUri(nodeUri);
   }
 
-  private ExtendedIterator<Triple> findByType(String typeUri) {
-    Optional<TypeId> typeOptional = types.values().stream()
+  private Optional<Specification<NodeId, Node>> byType(String typeUri) {
+    return types.values().stream()
         .filter(type -> Objects.equals(type.getUri().orElse(null), typeUri))
-        .map(Type::identifier).findFirst();
-
-    if (!typeOptional.isPresent()) {
-      return WrappedIterator.emptyIterator();
-    }
-
-    Specification<NodeId, Node> nodeSpec = and(
-        new NodesByGraphId(typeOptional.get().getGraphId()),
-        new NodesByTypeId(typeOptional.get().getId()));
-
-    return nodeStreamToTriples(nodeProvider.apply(nodeSpec));
+        .map(Type::identifier).findFirst()
+        .map(typeId -> and(
+            new NodesByGraphId(typeId.getGraphId()),
+            new NodesByTypeId(typeId.getId())));
   }
 
   // predicateUri can be null
-  private ExtendedIterator<Triple> findByObject(String predicateUri, String valueUri) {
+  private Optional<Specification<NodeId, Node>> byObject(String predicateUri, String valueUri) {
     Optional<NodeId> valueOptional = findFirstAndClose(nodeProvider.apply(byUriOrId(valueUri)))
         .map(NodeId::new);
 
     if (!valueOptional.isPresent()) {
-      return WrappedIterator.emptyIterator();
+      return Optional.empty();
     }
 
-    Specification<NodeId, Node> nodeSpec = or(referenceAttributes.values().stream()
+    return nonEmpty(or(referenceAttributes.values().stream()
         .filter(refAttr -> predicateUri == null ||
             Objects.equals(refAttr.getUri().orElse(null), predicateUri))
         .map(refAttr -> and(
             new NodesByGraphId(refAttr.getDomainGraphId()),
             new NodesByTypeId(refAttr.getDomainId()),
             new NodesByReference(refAttr.getId(), valueOptional.get().getId())))
-        .collect(toList()));
-
-    return nodeStreamToTriples(nodeProvider.apply(nodeSpec));
+        .collect(toList())));
   }
 
   // predicateUri can be null
-  private ExtendedIterator<Triple> findByLiteral(String predicateUri, String value) {
-    Specification<NodeId, Node> nodeSpec = or(textAttributes.values().stream()
+  private OrSpecification<NodeId, Node> byLiteral(String predicateUri, String value) {
+    return or(textAttributes.values().stream()
         .filter(textAttr -> predicateUri == null ||
             Objects.equals(textAttr.getUri().orElse(null), predicateUri))
         .map(textAttr -> and(
@@ -193,24 +260,59 @@ public class NodeRdfGraphWrapper extends GraphBase {
             new NodesByTypeId(textAttr.getDomainId()),
             new NodesByPropertyString(textAttr.getId(), value)))
         .collect(toList()));
-
-    return nodeStreamToTriples(nodeProvider.apply(nodeSpec));
   }
 
-  private ExtendedIterator<Triple> findAll() {
-    Specification<NodeId, Node> nodeSpec = or(types.values().stream()
-        .map(type -> and(
-            new NodesByGraphId(type.getGraphId()),
-            new NodesByTypeId(type.getId())))
-        .collect(toList()));
+  // nodes of types that have a text or reference attribute with given predicate uri
+  private Optional<Specification<NodeId, Node>> byPredicate(String predicateUri) {
+    Set<TypeId> domains = new LinkedHashSet<>();
+
+    textAttributes.values().stream()
+        .filter(a -> Objects.equals(a.getUri().orElse(null), predicateUri))
+        .forEach(a -> domains.add(a.getDomain()));
+    referenceAttributes.values().stream()
+        .filter(a -> Objects.equals(a.getUri().orElse(null), predicateUri))
+        .forEach(a -> domains.add(a.getDomain()));
+
+    if (domains.isEmpty()) {
+      return Optional.empty();
+    }
+
+    if (domains.size() == types.size()) {
+      return Optional.of(allNodes);
+    }
 
-    return nodeStreamToTriples(nodeProvider.apply(nodeSpec));
+    return Optional.of(or(domains.stream()
+        .map(typeId -> and(
+            new NodesByGraphId(typeId.getGraphId()),
+            new NodesByTypeId(typeId.getId())))
+        .collect(toList())));
   }
 
   private ExtendedIterator<Triple> nodeStreamToTriples(Stream<Node> stream) {
-    Iterator<Triple> streamIterator = stream.flatMap(n -> toTriples.apply(n).stream()).iterator();
+    return streamToIterator(stream.flatMap(n -> toTriples.apply(n).stream()));
+  }
+
+  /**
+   * Estimates number of triples matching a pattern by counting matching nodes. Counts are cached
+   * for the lifetime of the wrapper, i.e. typically for one query.
+   */
+  private class NodeCountStatisticsHandler implements GraphStatisticsHandler {
+
+    @Override
+    public long getStatistic(org.apache.jena.graph.Node s, org.apache.jena.graph.Node p,
+        org.apache.jena.graph.Node o) {
+      Triple pattern = Triple.createMatch(concreteOrAny(s), concreteOrAny(p), concreteOrAny(o));
+      return statistics.computeIfAbsent(pattern, t -> specification(t)
+          .map(nodeCounter)
+          .orElse(0L));
+    }
+
+  }
+
+  private <T> ExtendedIterator<T> streamToIterator(Stream<T> stream) {
+    Iterator<T> streamIterator = stream.iterator();
 
-    ClosableIterator<Triple> closableStreamIterator = new ClosableIterator<Triple>() {
+    ClosableIterator<T> closableStreamIterator = new ClosableIterator<T>() {
       @Override
       public boolean hasNext() {
         try {
@@ -222,7 +324,7 @@ public class NodeRdfGraphWrapper extends GraphBase {
       }
 
       @Override
-      public Triple next() {
+      public T next() {
         try {
           return streamIterator.next();
         } catch (RuntimeException | Error e) {
@@ -0,0 +1,256 @@
+package fi.thl.termed.service.node.util;
+
+import static org.apache.jena.graph.Node.ANY;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.jena.graph.GraphStatisticsHandler;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.sparql.core.BasicPattern;
+import org.apache.jena.sparql.core.Substitute;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.ExecutionContext;
+import org.apache.jena.sparql.engine.QueryIterator;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.engine.binding.BindingMap;
+import org.apache.jena.sparql.engine.iterator.QueryIter;
+import org.apache.jena.sparql.engine.iterator.QueryIterRepeatApply;
+import org.apache.jena.sparql.engine.main.StageGenerator;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Evaluates basic graph patterns against {@link NodeRdfGraphWrapper}.
+ *
+ * Triple patterns are grouped by subject and each group is pushed down to the wrapper as one
+ * combined node query (e.g. type, property and reference constraints of a SKOS concept). Groups
+ * are evaluated in order of estimated selectivity using wrapper statistics, groups with already
+ * bound subject first. Patterns of other graphs are passed to the given fallback generator.
+ */
+public class NodeRdfStageGenerator implements StageGenerator {
+
+  private Logger log = LoggerFactory.getLogger(getClass());
+
+  private StageGenerator fallback;
+
+  public NodeRdfStageGenerator(StageGenerator fallback) {
+    this.fallback = fallback;
+  }
+
+  @Override
+  public QueryIterator execute(BasicPattern pattern, QueryIterator input,
+      ExecutionContext execCxt) {
+
+    if (!(execCxt.getActiveGraph() instanceof NodeRdfGraphWrapper)) {
+      return fallback.execute(pattern, input, execCxt);
+    }
+
+    NodeRdfGraphWrapper graph = (NodeRdfGraphWrapper) execCxt.getActiveGraph();
+
+    QueryIterator chain = input;
+    for (List<Triple> subjectPatterns : order(groupBySubject(pattern), graph)) {
+      if (log.isTraceEnabled()) {
+        log.trace("Evaluate {}", subjectPatterns);
+      }
+      chain = new SubjectPatternsStage(chain, subjectPatterns, graph, execCxt);
+    }
+    return chain;
+  }
+
+  private List<List<Triple>> groupBySubject(BasicPattern pattern) {
+    Map<Node, List<Triple>> groups = new LinkedHashMap<>();
+    for (Triple triple : pattern) {
+      groups.computeIfAbsent(triple.getSubject(), s -> new ArrayList<>()).add(triple);
+    }
+    return new ArrayList<>(groups.values());
+  }
+
+  // greedy ordering, picks next the group with lowest estimated cardinality
+  private List<List<Triple>> order(List<List<Triple>> groups, NodeRdfGraphWrapper graph) {
+    GraphStatisticsHandler statistics = graph.getStatisticsHandler();
+
+    if (statistics == null || groups.size() < 2) {
+      return groups;
+    }
+
+    List<List<Triple>> remaining = new ArrayList<>(groups);
+    List<List<Triple>> ordered = new ArrayList<>();
+    Set<Node> boundVars = new HashSet<>();
+
+    while (!remaining.isEmpty()) {
+      List<Triple> next = remaining.get(0);
+      long nextEstimate = estimate(next, boundVars, statistics);
+
+      for (List<Triple> candidate : remaining.subList(1, remaining.size())) {
+        long estimate = estimate(candidate, boundVars, statistics);
+        if (estimate < nextEstimate) {
+          next = candidate;
+          nextEstimate = estimate;
+        }
+      }
+
+      remaining.remove(next);
+      ordered.add(next);
+      next.forEach(t -> addVars(t, boundVars));
+    }
+
+    return ordered;
+  }
+
+  private long estimate(List<Triple> subjectPatterns, Set<Node> boundVars,
+      GraphStatisticsHandler statistics) {
+    Node subject = subjectPatterns.get(0).getSubject();
+
+    if (subject.isConcrete() || boundVars.contains(subject)) {
+      return 1;
+    }
+
+    long min = Long.MAX_VALUE;
+    for (Triple t : subjectPatterns) {
+      long count = boundVars.contains(t.getObject()) ? 2 :
+          statistics.getStatistic(ANY, concreteOrAny(t.getPredicate()),
+              concreteOrAny(t.getObject()));
+      min = Math.min(min, count < 0 ? Long.MAX_VALUE : count);
+    }
+    return min;
+  }
+
+  private Node concreteOrAny(Node node) {
+    return node.isConcrete() ? node : ANY;
+  }
+
+  private void addVars(Triple triple, Set<Node> vars) {
+    for (Node node : new Node[]{triple.getSubject(), triple.getPredicate(), triple.getObject()}) {
+      if (node.isVariable()) {
+        vars.add(node);
+      }
+    }
+  }
+
+  /**
+   * For each input binding, finds nodes matching subject patterns and joins patterns with triples
+   * of each node.
+   */
+  private static class SubjectPatternsStage extends QueryIterRepeatApply {
+
+    private final List<Triple> subjectPatterns;
+    private final NodeRdfGraphWrapper graph;
+
+    SubjectPatternsStage(QueryIterator input, List<Triple> subjectPatterns,
+        NodeRdfGraphWrapper graph, ExecutionContext execCxt) {
+      super(input, execCxt);
+      this.subjectPatterns = subjectPatterns;
+      this.graph = graph;
+    }
+
+    @Override
+    protected QueryIterator nextStage(Binding binding) {
+      List<Triple> patterns = new ArrayList<>();
+      subjectPatterns.forEach(t -> patterns.add(Substitute.substitute(t, binding)));
+      return new NodeTriplesJoin(binding, patterns,
+          graph.findBySubjectPatterns(patterns), getExecContext());
+    }
+
+  }
+
+  private static class NodeTriplesJoin extends QueryIter {
+
+    private final Binding parent;
+    private final List<Triple> patterns;
+    private final ExtendedIterator<List<Triple>> nodeTriples;
+
+    private Iterator<Binding> current = Collections.emptyIterator();
+
+    NodeTriplesJoin(Binding parent, List<Triple> patterns,
+        ExtendedIterator<List<Triple>> nodeTriples, ExecutionContext execCxt) {
+      super(execCxt);
+      this.parent = parent;
+      this.patterns = patterns;
+      this.nodeTriples = nodeTriples;
+    }
+
+    @Override
+    protected boolean hasNextBinding() {
+      while (!current.hasNext() && nodeTriples.hasNext()) {
+        current = join(nodeTriples.next()).iterator();
+      }
+      return current.hasNext();
+    }
+
+    @Override
+    protected Binding moveToNextBinding() {
+      return current.next();
+    }
+
+    // nested loop join of patterns and triples of one node
+    private List<Binding> join(List<Triple> triples) {
+      List<Binding> bindings = Collections.singletonList(parent);
+
+      for (Triple pattern : patterns) {
+        List<Binding> joined = new ArrayList<>();
+        for (Binding binding : bindings) {
+          for (Triple triple : triples) {
+            Binding result = bind(binding, pattern, triple);
+            if (result != null) {
+              joined.add(result);
+            }
+          }
+        }
+        if (joined.isEmpty()) {
+          return joined;
+        }
+        bindings = joined;
+      }
+
+      return bindings;
+    }
+
+    // returns null if triple does not match pattern under given binding
+    private Binding bind(Binding binding, Triple pattern, Triple triple) {
+      BindingMap result = BindingFactory.create(binding);
+      if (bind(result, pattern.getSubject(), triple.getSubject()) &&
+          bind(result, pattern.getPredicate(), triple.getPredicate()) &&
+          bind(result, pattern.getObject(), triple.getObject())) {
+        return result;
+      }
+      return null;
+    }
+
+    private boolean bind(BindingMap binding, Node patternNode, Node node) {
+      if (!patternNode.isVariable()) {
+        return patternNode.matches(node);
+      }
+
+      Var var = Var.alloc(patternNode);
+      Node boundValue = binding.get(var);
+
+      if (boundValue == null) {
+        binding.add(var, node);
+        return true;
+      }
+
+      return boundValue.matches(node);
+    }
+
+    @Override
+    protected void closeIterator() {
+      nodeTriples.close();
+    }
+
+    @Override
+    protected void requestCancel() {
+      // iterator is closed after cancellation is noticed on next call to hasNext
+    }
+
+  }
+
+}
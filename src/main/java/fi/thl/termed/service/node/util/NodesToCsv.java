@@ -2,72 +2,355 @@ package fi.thl.termed.service.node.util;
 
 import static com.google.common.collect.Multimaps.filterKeys;
 import static fi.thl.termed.util.TableUtils.toTable;
+import static fi.thl.termed.util.collect.StreamUtils.findFirstAndClose;
+import static fi.thl.termed.util.collect.StreamUtils.forEachAndClose;
 import static fi.thl.termed.util.csv.CsvUtils.writeCsv;
+import static fi.thl.termed.util.query.AndSpecification.and;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
 import static java.util.stream.Collectors.groupingBy;
 import static java.util.stream.Collectors.mapping;
 import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterators;
 import com.google.common.collect.Multimap;
+import com.google.common.collect.Streams;
+import com.opencsv.CSVParserBuilder;
+import com.opencsv.CSVReader;
+import com.opencsv.CSVReaderBuilder;
 import com.opencsv.CSVWriter;
 import fi.thl.termed.domain.Node;
 import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.domain.ReferenceAttribute;
 import fi.thl.termed.domain.StrictLangValue;
+import fi.thl.termed.domain.TextAttribute;
+import fi.thl.termed.domain.TextAttributeId;
+import fi.thl.termed.domain.Type;
+import fi.thl.termed.domain.TypeId;
 import fi.thl.termed.service.node.select.SelectAllProperties;
 import fi.thl.termed.service.node.select.SelectAllReferences;
 import fi.thl.termed.service.node.select.SelectId;
 import fi.thl.termed.service.node.select.SelectProperty;
 import fi.thl.termed.service.node.select.SelectReference;
 import fi.thl.termed.service.node.select.SelectType;
+import fi.thl.termed.service.node.select.SelectTypeQualifiedProperty;
+import fi.thl.termed.service.node.specification.NodesByFieldValues;
+import fi.thl.termed.service.node.specification.NodesByGraphId;
+import fi.thl.termed.service.node.specification.NodesById;
+import fi.thl.termed.service.node.specification.NodesByTypeId;
 import fi.thl.termed.util.UUIDs;
 import fi.thl.termed.util.collect.MapUtils;
 import fi.thl.termed.util.csv.CsvOptions;
+import fi.thl.termed.util.query.Query;
 import fi.thl.termed.util.query.Select;
 import fi.thl.termed.util.query.SelectAll;
 import fi.thl.termed.util.query.Selects;
+import java.io.IOException;
 import java.io.OutputStream;
 import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.function.Function;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
- * Write stream of nodes to OutputStream or Writer as CSV. This operation is not actually streaming
- * as all nodes are first transformed to maps and then to table and finally written in one
- * operation.
+ * Write stream of nodes to OutputStream as CSV.
+ *
+ * If columns can be derived up front from selects and given type definitions, rows are written as
+ * nodes arrive. Property columns are qualified with value languages, so they can be derived only
+ * if languages used in text attribute values of the types can be looked up. Otherwise (or if types
+ * are not known) rows are first spilled to a temporary file while collecting the columns, and then
+ * written from the file with the complete header.
  */
 public final class NodesToCsv {
 
   private boolean useLabeledReferences;
   private String labelProperty;
   private String labelPropertyLang;
-  private Function<NodeId, Optional<Node>> nodeLoader;
+  private Function<Query<NodeId, Node>, Stream<Node>> nodeProvider;
+  private int labelBatchSize;
+
+  // languages of text attribute values by attribute id, null if languages can't be looked up
+  private Function<TypeId, Multimap<String, String>> textAttributeLangs;
+
+  // labels of referenced nodes, empty if node or label is not found
+  private Cache<NodeId, Optional<String>> labelCache;
 
   public NodesToCsv() {
-    this(false, "prefLabel", "", (nodeId) -> Optional.empty());
+    this(false, "prefLabel", "", (query) -> Stream.empty());
+  }
+
+  public NodesToCsv(
+      boolean useLabeledReferences,
+      String labelProperty,
+      String labelPropertyLang,
+      Function<Query<NodeId, Node>, Stream<Node>> nodeProvider) {
+    this(useLabeledReferences, labelProperty, labelPropertyLang, nodeProvider, null);
+  }
+
+  public NodesToCsv(
+      boolean useLabeledReferences,
+      String labelProperty,
+      String labelPropertyLang,
+      Function<Query<NodeId, Node>, Stream<Node>> nodeProvider,
+      Function<TypeId, Multimap<String, String>> textAttributeLangs) {
+    this(useLabeledReferences, labelProperty, labelPropertyLang, nodeProvider, textAttributeLangs,
+        1000, 100_000);
   }
 
+  /**
+   * @param nodeProvider used to load labels of referenced nodes, labels of references of next
+   * labelBatchSize nodes are loaded with one query
+   * @param textAttributeLangs returns languages of text attribute values of a type by attribute
+   * id, used to derive property columns, null if not available
+   */
   public NodesToCsv(
       boolean useLabeledReferences,
       String labelProperty,
       String labelPropertyLang,
-      Function<NodeId, Optional<Node>> nodeLoader) {
+      Function<Query<NodeId, Node>, Stream<Node>> nodeProvider,
+      Function<TypeId, Multimap<String, String>> textAttributeLangs,
+      int labelBatchSize,
+      int labelCacheSize) {
     this.useLabeledReferences = useLabeledReferences;
     this.labelProperty = labelProperty;
     this.labelPropertyLang = labelPropertyLang;
-    this.nodeLoader = nodeLoader;
+    this.nodeProvider = nodeProvider;
+    this.textAttributeLangs = textAttributeLangs;
+    this.labelBatchSize = labelBatchSize;
+    this.labelCache = CacheBuilder.newBuilder().maximumSize(labelCacheSize).build();
   }
 
   public void writeAsCsv(Stream<Node> nodes, List<Select> selects, CsvOptions csvOpts,
       OutputStream out) {
+    writeAsCsv(nodes, null, selects, csvOpts, out);
+  }
+
+  /**
+   * @param types of written nodes, used to derive columns, null if not known
+   */
+  public void writeAsCsv(Stream<Node> nodes, List<Type> types, List<Select> selects,
+      CsvOptions csvOpts, OutputStream out) {
     Set<Select> selectsSet = ImmutableSet.copyOf(selects);
-    writeCsv(out, csvOpts,
-        toTable(nodes.map(n -> nodeToRowMap(n, selectsSet)).collect(toList())).stream());
+
+    Optional<List<String>> columns = columns(types, selectsSet);
+
+    if (columns.isPresent()) {
+      Set<String> knownColumns = new HashSet<>(columns.get());
+      Stream<Map<String, String>> rows = toRowMaps(nodes, selectsSet)
+          .peek(row -> checkAllIn(knownColumns, row));
+      writeCsv(out, csvOpts, toTable(columns.get(), rows));
+    } else {
+      writeAsCsvUsingSpillFile(nodes, selectsSet, csvOpts, out);
+    }
+  }
+
+  // returns empty if columns can't be known before seeing the nodes
+  private Optional<List<String>> columns(List<Type> types, Set<Select> s) {
+    boolean selectAll = s.contains(new SelectAll());
+
+    List<String> columns = new ArrayList<>();
+
+    if (selectAll || s.contains(new SelectId())) {
+      columns.add("id");
+    }
+    if (selectAll || s.contains(new SelectType())) {
+      columns.add("type.id");
+      columns.add("type.graph.id");
+    }
+    for (String field : asList("code", "uri", "number",
+        "createdBy", "createdDate", "lastModifiedBy", "lastModifiedDate")) {
+      if (selectAll || s.contains(Selects.field(field))) {
+        columns.add(field);
+      }
+    }
+
+    boolean anyPropertySelected = selectAll || s.contains(new SelectAllProperties()) ||
+        s.stream().anyMatch(select -> select instanceof SelectProperty);
+    boolean anyReferenceSelected = selectAll || s.contains(new SelectAllReferences()) ||
+        s.stream().anyMatch(select -> select instanceof SelectReference);
+
+    if (types == null) {
+      return anyPropertySelected || anyReferenceSelected
+          ? Optional.empty() : Optional.of(columns);
+    }
+
+    Set<String> propertyColumns = new LinkedHashSet<>();
+    for (Type type : types) {
+      List<String> selectedAttrIds = type.getTextAttributes().stream()
+          .map(TextAttribute::getId)
+          .filter(attrId -> selectAll || s.contains(new SelectAllProperties())
+              || s.contains(new SelectProperty(attrId)))
+          .collect(toList());
+
+      if (selectedAttrIds.isEmpty()) {
+        continue;
+      }
+      // property columns are qualified with value languages
+      if (textAttributeLangs == null) {
+        return Optional.empty();
+      }
+
+      Multimap<String, String> langs = textAttributeLangs.apply(type.identifier());
+      selectedAttrIds.forEach(attrId -> langs.get(attrId).forEach(lang ->
+          propertyColumns.add("properties." + attrId + (lang.isEmpty() ? "" : "." + lang))));
+    }
+    columns.addAll(propertyColumns);
+
+    Set<String> referenceColumns = new LinkedHashSet<>();
+    types.stream()
+        .flatMap(type -> type.getReferenceAttributes().stream())
+        .map(ReferenceAttribute::getId)
+        .filter(attrId -> selectAll || s.contains(new SelectAllReferences())
+            || s.contains(new SelectReference(attrId)))
+        .forEach(attrId -> referenceColumns.add(useLabeledReferences
+            ? labeledReferenceKey(attrId)
+            : "references." + attrId + ".id"));
+    columns.addAll(referenceColumns);
+
+    return Optional.of(columns);
+  }
+
+  // header is already written, so instead of omitting a value in a language added after columns
+  // were derived, export is failed
+  private void checkAllIn(Set<String> knownColumns, Map<String, String> row) {
+    row.forEach((key, value) -> {
+      if (value != null && !knownColumns.contains(key)) {
+        throw new IllegalStateException(
+            "Column " + key + " was not known when writing the CSV header");
+      }
+    });
+  }
+
+  // first pass writes rows as key-value pairs into a file and collects the columns
+  private void writeAsCsvUsingSpillFile(Stream<Node> nodes, Set<Select> s, CsvOptions csvOpts,
+      OutputStream out) {
+    Path spillFile = null;
+
+    try {
+      spillFile = Files.createTempFile("termed-csv-export-", ".csv");
+
+      Set<String> columns = new LinkedHashSet<>();
+
+      try (Stream<Map<String, String>> rowMaps = toRowMaps(nodes, s);
+          CSVWriter spillWriter = new CSVWriter(Files.newBufferedWriter(spillFile, UTF_8),
+              ',', '"', '\\', "\n")) {
+        rowMaps.forEach(row -> {
+          columns.addAll(row.keySet());
+          spillWriter.writeNext(toKeyValueArray(row), true);
+        });
+      }
+
+      CSVReader spillReader = new CSVReaderBuilder(Files.newBufferedReader(spillFile, UTF_8))
+          .withCSVParser(new CSVParserBuilder().withEscapeChar('\\').build())
+          .build();
+
+      try (Stream<String[]> rows = StreamSupport.stream(spillReader.spliterator(), false)
+          .onClose(() -> closeQuietly(spillReader))) {
+        writeCsv(out, csvOpts,
+            toTable(new ArrayList<>(columns), rows.map(this::fromKeyValueArray)));
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } finally {
+      if (spillFile != null) {
+        spillFile.toFile().delete();
+      }
+    }
+  }
+
+  // null values are omitted
+  private String[] toKeyValueArray(Map<String, String> row) {
+    List<String> keyValues = new ArrayList<>();
+    row.forEach((k, v) -> {
+      if (v != null) {
+        keyValues.add(k);
+        keyValues.add(v);
+      }
+    });
+    return keyValues.toArray(new String[0]);
+  }
+
+  private Map<String, String> fromKeyValueArray(String[] keyValues) {
+    Map<String, String> row = new HashMap<>();
+    for (int i = 0; i + 1 < keyValues.length; i += 2) {
+      row.put(keyValues[i], keyValues[i + 1]);
+    }
+    return row;
+  }
+
+  private void closeQuietly(CSVReader reader) {
+    try {
+      reader.close();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private Stream<Map<String, String>> toRowMaps(Stream<Node> nodes, Set<Select> s) {
+    if (!useLabeledReferences) {
+      return nodes.map(n -> nodeToRowMap(n, s));
+    }
+
+    Iterator<List<Node>> chunks = Iterators.partition(nodes.iterator(), labelBatchSize);
+
+    return Streams.stream(chunks)
+        .flatMap(chunk -> {
+          loadLabels(chunk, s);
+          return chunk.stream().map(n -> nodeToRowMap(n, s));
+        })
+        .onClose(nodes::close);
+  }
+
+  // loads labels of nodes referenced by given nodes with one query selecting only the label
+  private void loadLabels(List<Node> nodes, Set<Select> s) {
+    Set<NodeId> ids = new HashSet<>();
+    for (Node node : nodes) {
+      selectedReferences(node.getReferences(), s).values().forEach(ids::add);
+    }
+    ids.removeAll(labelCache.getAllPresent(ids).keySet());
+
+    if (ids.isEmpty()) {
+      return;
+    }
+
+    List<Select> labelSelects = ids.stream()
+        .map(NodeId::getType)
+        .distinct()
+        .map(type -> new SelectTypeQualifiedProperty(new TextAttributeId(type, labelProperty)))
+        .collect(toList());
+
+    Map<NodeId, Optional<String>> labels = new HashMap<>();
+    ids.forEach(id -> labels.put(id, Optional.empty()));
+
+    forEachAndClose(nodeProvider.apply(new Query<>(labelSelects,
+            NodesByFieldValues.ids(ids.stream().map(NodeId::getId).collect(toSet())), emptyList(), -1)),
+        node -> {
+          if (labels.containsKey(node.identifier())) {
+            labels.put(node.identifier(), label(node));
+          }
+        });
+
+    labelCache.putAll(labels);
   }
 
   private Map<String, String> nodeToRowMap(Node node, Set<Select> s) {
@@ -164,10 +447,7 @@ public final class NodesToCsv {
       Multimap<String, NodeId> references,
       Set<Select> s) {
 
-    Multimap<String, NodeId> selectedReferences =
-        filterKeys(references, key -> s.contains(new SelectAll())
-            || s.contains(new SelectAllReferences())
-            || s.contains(new SelectReference(key)));
+    Multimap<String, NodeId> selectedReferences = selectedReferences(references, s);
 
     return selectedReferences.asMap().entrySet().stream()
         .map(entry -> {
@@ -189,18 +469,14 @@ public final class NodesToCsv {
       Multimap<String, NodeId> references,
       Set<Select> s) {
 
-    Multimap<String, NodeId> selectedReferences =
-        filterKeys(references, key -> s.contains(new SelectAll())
-            || s.contains(new SelectAllReferences())
-            || s.contains(new SelectReference(key)));
+    Multimap<String, NodeId> selectedReferences = selectedReferences(references, s);
 
     return selectedReferences.asMap().entrySet().stream()
         .map(entry -> {
           String attrId = entry.getKey();
           Collection<NodeId> referenceIds = entry.getValue();
 
-          String key = "r." + attrId + ".p." + labelProperty +
-              (labelPropertyLang.isEmpty() ? "" : "." + labelPropertyLang);
+          String key = labeledReferenceKey(attrId);
           String value = toInlineCsv(referenceIds.stream()
               .map(this::mapNodeIdToLabel)
               .collect(toList()));
@@ -210,14 +486,43 @@ public final class NodesToCsv {
         .collect(MapUtils.toImmutableMap());
   }
 
+  private Multimap<String, NodeId> selectedReferences(Multimap<String, NodeId> references,
+      Set<Select> s) {
+    return filterKeys(references, key -> s.contains(new SelectAll())
+        || s.contains(new SelectAllReferences())
+        || s.contains(new SelectReference(key)));
+  }
+
+  private String labeledReferenceKey(String attrId) {
+    return "r." + attrId + ".p." + labelProperty +
+        (labelPropertyLang.isEmpty() ? "" : "." + labelPropertyLang);
+  }
+
   private String mapNodeIdToLabel(NodeId nodeId) {
-    return nodeLoader.apply(nodeId)
-        .flatMap(node -> node.getProperties()
-            .get(labelProperty).stream()
-            .filter(v -> labelPropertyLang.isEmpty() || v.getLang().equals(labelPropertyLang))
-            .map(StrictLangValue::getValue)
-            .findFirst())
-        .orElse("<WARNING: LABEL MISSING>");
+    Optional<String> label = labelCache.getIfPresent(nodeId);
+
+    // not loaded or already evicted, load individually
+    if (label == null) {
+      label = findFirstAndClose(nodeProvider.apply(new Query<>(
+          singletonList(new SelectTypeQualifiedProperty(
+              new TextAttributeId(nodeId.getType(), labelProperty))),
+          and(new NodesByGraphId(nodeId.getTypeGraphId()),
+              new NodesByTypeId(nodeId.getTypeId()),
+              new NodesById(nodeId.getId())),
+          emptyList(), -1)))
+          .flatMap(this::label);
+      labelCache.put(nodeId, label);
+    }
+
+    return label.orElse("<WARNING: LABEL MISSING>");
+  }
+
+  private Optional<String> label(Node node) {
+    return node.getProperties()
+        .get(labelProperty).stream()
+        .filter(v -> labelPropertyLang.isEmpty() || v.getLang().equals(labelPropertyLang))
+        .map(StrictLangValue::getValue)
+        .findFirst();
   }
 
   private String toInlineCsv(List<String> row) {
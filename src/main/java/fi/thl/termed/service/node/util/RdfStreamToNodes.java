@@ -0,0 +1,268 @@
+package fi.thl.termed.service.node.util;
+
+import static fi.thl.termed.util.RegularExpressions.URN_UUID;
+import static fi.thl.termed.util.UUIDs.nameUUIDFromString;
+import static fi.thl.termed.util.collect.StreamUtils.toListAndClose;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static java.util.stream.Collectors.toList;
+
+import com.google.common.base.Ascii;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Streams;
+import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.domain.ReferenceAttribute;
+import fi.thl.termed.domain.StrictLangValue;
+import fi.thl.termed.domain.TextAttribute;
+import fi.thl.termed.domain.Type;
+import fi.thl.termed.domain.TypeId;
+import fi.thl.termed.service.node.specification.NodesByFieldValues;
+import fi.thl.termed.util.StringUtils;
+import fi.thl.termed.util.URIs;
+import fi.thl.termed.util.UUIDs;
+import fi.thl.termed.util.jena.SubjectGroupingStreamRDF;
+import fi.thl.termed.util.query.Query;
+import fi.thl.termed.util.query.Selects;
+import fi.thl.termed.util.query.Specification;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.vocabulary.RDF;
+
+/**
+ * Function to transform RDF triples grouped by subject into a lazy stream of nodes conforming to
+ * provided types.
+ *
+ * Subjects are converted in chunks. URIs of each chunk (subjects and referenced objects) are
+ * resolved to existing node ids with one bulk query, results are kept in a bounded cache for the
+ * lifetime of this object (i.e. one import). References to subjects of the same import are
+ * resolved using rdf:type assertions recorded by {@link SubjectGroupingStreamRDF} while parsing,
+ * so groups are read only once and memory use does not depend on number of triples.
+ */
+public class RdfStreamToNodes implements Function<SubjectGroupingStreamRDF, Stream<Node>> {
+
+  private final List<Type> types;
+  private final Function<Query<NodeId, Node>, Stream<Node>> nodeProvider;
+  private final boolean importCodes;
+  private final int batchSize;
+
+  // uri -> ids of existing nodes with that uri, empty if none
+  private final Cache<String, List<NodeId>> uriCache;
+
+  public RdfStreamToNodes(List<Type> types,
+      Function<Query<NodeId, Node>, Stream<Node>> nodeProvider,
+      boolean importCodes) {
+    this(types, nodeProvider, importCodes, 1000, 100_000);
+  }
+
+  public RdfStreamToNodes(List<Type> types,
+      Function<Query<NodeId, Node>, Stream<Node>> nodeProvider,
+      boolean importCodes, int batchSize, int uriCacheSize) {
+    this.types = types.stream().filter(t -> t.getUri().isPresent()).collect(toList());
+    this.nodeProvider = nodeProvider;
+    this.importCodes = importCodes;
+    this.batchSize = batchSize;
+    this.uriCache = CacheBuilder.newBuilder().maximumSize(uriCacheSize).build();
+  }
+
+  /**
+   * Returns lazily converted nodes. Closing the stream closes given triple groups.
+   */
+  @Override
+  public Stream<Node> apply(SubjectGroupingStreamRDF triples) {
+    Iterator<TypedGroup> typedGroups = Iterators.filter(Iterators.transform(
+        triples.subjectGroups(), group -> typeOf(group)
+            .map(type -> new TypedGroup(type, group)).orElse(null)), Objects::nonNull);
+
+    Iterator<List<Node>> nodeChunks = Iterators.transform(
+        Iterators.partition(typedGroups, batchSize),
+        chunk -> toNodes(chunk, triples));
+
+    return Streams.stream(nodeChunks)
+        .flatMap(List::stream)
+        .onClose(triples::close);
+  }
+
+  // if subject has multiple known types, the last one (in type list order) is used
+  private Optional<Type> typeOf(List<Triple> group) {
+    Type result = null;
+
+    for (Type type : types) {
+      String typeUri = type.getUri().orElse(null);
+      for (Triple t : group) {
+        if (t.getPredicate().getURI().equals(RDF.type.getURI()) &&
+            t.getObject().isURI() && t.getObject().getURI().equals(typeUri)) {
+          result = type;
+        }
+      }
+    }
+
+    return Optional.ofNullable(result);
+  }
+
+  // same as typeOf(group) but using recorded rdf:type assertions
+  private boolean isImportedAs(SubjectGroupingStreamRDF triples, TypeId type, String uri) {
+    TypeId result = null;
+
+    for (Type t : types) {
+      if (triples.hasType(uri, t.getUri().orElse(null))) {
+        result = t.identifier();
+      }
+    }
+
+    return type.equals(result);
+  }
+
+  private String subjectUri(List<Triple> group) {
+    return group.get(0).getSubject().getURI();
+  }
+
+  private List<Node> toNodes(List<TypedGroup> chunk, SubjectGroupingStreamRDF triples) {
+    Set<String> uris = new HashSet<>();
+
+    for (TypedGroup group : chunk) {
+      uris.add(subjectUri(group.triples));
+      for (ReferenceAttribute refAttr : group.type.getReferenceAttributes()) {
+        uris.addAll(objectUris(group.triples, refAttr.getUri().orElse(null)));
+      }
+    }
+
+    Map<String, List<NodeId>> existingByUri = resolveUris(uris);
+
+    // objects not found by uri or from this import might still exist by (urn or name based) id
+    Set<UUID> unresolvedObjectIds = new HashSet<>();
+    for (TypedGroup group : chunk) {
+      for (ReferenceAttribute refAttr : group.type.getReferenceAttributes()) {
+        for (String objectUri : objectUris(group.triples, refAttr.getUri().orElse(null))) {
+          if (!findByUri(existingByUri, refAttr.getRange(), objectUri).isPresent() &&
+              !isImportedAs(triples, refAttr.getRange(), objectUri)) {
+            unresolvedObjectIds.add(uuidFor(objectUri));
+          }
+        }
+      }
+    }
+
+    Set<NodeId> existingById = new HashSet<>();
+    if (!unresolvedObjectIds.isEmpty()) {
+      query(NodesByFieldValues.ids(unresolvedObjectIds)).forEach(n -> existingById.add(n.identifier()));
+    }
+
+    List<Node> nodes = new ArrayList<>(chunk.size());
+
+    for (TypedGroup group : chunk) {
+      TypeId type = group.type.identifier();
+      String uri = subjectUri(group.triples);
+
+      Node.Builder node = Node.builder()
+          .id(findByUri(existingByUri, type, uri).orElseGet(() -> NodeId.of(uuidFor(uri), type)))
+          .uri(uri)
+          .code(importCodes ? StringUtils.normalize(URIs.localName(uri)) : null);
+
+      for (TextAttribute textAttr : group.type.getTextAttributes()) {
+        String predicateUri = textAttr.getUri().orElse(null);
+        for (Triple t : group.triples) {
+          if (t.getObject().isLiteral() && t.getPredicate().getURI().equals(predicateUri)) {
+            node.addProperty(textAttr.getId(), new StrictLangValue(
+                Ascii.truncate(t.getObject().getLiteralLanguage(), 2, ""),
+                t.getObject().getLiteralLexicalForm(),
+                textAttr.getRegex()));
+          }
+        }
+      }
+
+      for (ReferenceAttribute refAttr : group.type.getReferenceAttributes()) {
+        TypeId range = refAttr.getRange();
+        for (String objectUri : objectUris(group.triples, refAttr.getUri().orElse(null))) {
+          Optional<NodeId> objectId = findByUri(existingByUri, range, objectUri);
+
+          if (!objectId.isPresent()) {
+            NodeId idForUri = NodeId.of(uuidFor(objectUri), range);
+            if (isImportedAs(triples, range, objectUri) || existingById.contains(idForUri)) {
+              objectId = Optional.of(idForUri);
+            }
+          }
+
+          objectId.ifPresent(o -> node.addReference(refAttr.getId(), o));
+        }
+      }
+
+      nodes.add(node.build());
+    }
+
+    return nodes;
+  }
+
+  private Map<String, List<NodeId>> resolveUris(Set<String> uris) {
+    Map<String, List<NodeId>> resolved = new HashMap<>(uriCache.getAllPresent(uris));
+
+    Set<String> missing = new HashSet<>(uris);
+    missing.removeAll(resolved.keySet());
+
+    if (!missing.isEmpty()) {
+      Map<String, List<NodeId>> queried = new HashMap<>();
+      missing.forEach(uri -> queried.put(uri, new ArrayList<>()));
+      query(NodesByFieldValues.uris(missing)).forEach(node -> node.getUri()
+          .map(queried::get)
+          .ifPresent(ids -> ids.add(node.identifier())));
+      uriCache.putAll(queried);
+      resolved.putAll(queried);
+    }
+
+    return resolved;
+  }
+
+  private List<Node> query(Specification<NodeId, Node> spec) {
+    return toListAndClose(nodeProvider.apply(new Query<>(
+        singletonList(Selects.field("uri")), spec, emptyList(), -1)));
+  }
+
+  private List<String> objectUris(List<Triple> triples, String predicateUri) {
+    List<String> uris = new ArrayList<>();
+    for (Triple t : triples) {
+      if (t.getObject().isURI() && t.getPredicate().getURI().equals(predicateUri)) {
+        uris.add(t.getObject().getURI());
+      }
+    }
+    return uris;
+  }
+
+  private Optional<NodeId> findByUri(Map<String, List<NodeId>> existingByUri, TypeId type,
+      String uri) {
+    return existingByUri.getOrDefault(uri, emptyList()).stream()
+        .filter(id -> id.getType().equals(type))
+        .findFirst();
+  }
+
+  // id used for node with given uri if it is not found by uri
+  private UUID uuidFor(String uri) {
+    return uri.matches(URN_UUID)
+        ? UUIDs.fromString(uri.substring("urn:uuid:".length()))
+        : nameUUIDFromString(uri);
+  }
+
+  private static class TypedGroup {
+
+    private final Type type;
+    private final List<Triple> triples;
+
+    TypedGroup(Type type, List<Triple> triples) {
+      this.type = type;
+      this.triples = triples;
+    }
+
+  }
+
+}
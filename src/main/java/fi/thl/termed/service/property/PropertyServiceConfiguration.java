@@ -1,7 +1,5 @@
 package fi.thl.termed.service.property;
 
-import static fi.thl.termed.util.EventBusUtils.register;
-import static fi.thl.termed.util.dao.CachedSystemDao.cache;
 
 import com.google.common.eventbus.EventBus;
 import fi.thl.termed.domain.AppRole;
@@ -14,6 +12,7 @@ import fi.thl.termed.service.property.internal.JdbcPropertyPropertyDao;
 import fi.thl.termed.service.property.internal.PropertyRepository;
 import fi.thl.termed.util.dao.AuthorizedDao;
 import fi.thl.termed.util.dao.SystemDao;
+import fi.thl.termed.util.dao.SystemDaoCaches;
 import fi.thl.termed.util.permission.PermissionEvaluator;
 import fi.thl.termed.util.service.ReadWriteSynchronizedService;
 import fi.thl.termed.util.service.Service;
@@ -31,14 +30,17 @@ public class PropertyServiceConfiguration {
   @Autowired
   private EventBus eventBus;
 
+  @Autowired
+  private SystemDaoCaches daoCaches;
+
   @Bean
   public Service<String, Property> propertyService(
       DataSource dataSource, PlatformTransactionManager transactionManager) {
 
     SystemDao<String, Property> propertyDao =
-        register(eventBus, cache(new JdbcPropertyDao(dataSource)));
+        daoCaches.cache("properties", new JdbcPropertyDao(dataSource));
     SystemDao<PropertyValueId<String>, LangValue> propertyPropertyDao =
-        register(eventBus, cache(new JdbcPropertyPropertyDao(dataSource)));
+        daoCaches.cache("propertyProperties", new JdbcPropertyPropertyDao(dataSource));
 
     PermissionEvaluator<String> propertyEvaluator =
         (u, o, p) -> u.getAppRole() == AppRole.SUPERUSER || p == Permission.READ;
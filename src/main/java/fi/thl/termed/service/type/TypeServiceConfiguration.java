@@ -1,8 +1,6 @@
 package fi.thl.termed.service.type;
 
 import static fi.thl.termed.util.EventBusUtils.register;
-import static fi.thl.termed.util.dao.CachedSystemDao.cache;
-import static fi.thl.termed.util.spring.jdbc.SpringJdbcUtils.getDatabaseProductName;
 
 import com.google.common.eventbus.EventBus;
 import fi.thl.termed.domain.AppRole;
@@ -32,12 +30,13 @@ import fi.thl.termed.service.type.internal.TypeRepository;
 import fi.thl.termed.util.dao.AuthorizedDao;
 import fi.thl.termed.util.dao.Dao;
 import fi.thl.termed.util.dao.SystemDao;
+import fi.thl.termed.util.dao.SystemDaoCaches;
 import fi.thl.termed.util.permission.DaoPermissionEvaluator;
 import fi.thl.termed.util.permission.DisjunctionPermissionEvaluator;
 import fi.thl.termed.util.permission.PermissionEvaluator;
 import fi.thl.termed.util.service.ProfilingService;
-import fi.thl.termed.util.service.ReadWriteSynchronizedService;
 import fi.thl.termed.util.service.Service;
+import fi.thl.termed.util.service.SnapshotReadService;
 import fi.thl.termed.util.service.TransactionalService;
 import fi.thl.termed.util.service.WriteLoggingService;
 import javax.sql.DataSource;
@@ -58,6 +57,9 @@ public class TypeServiceConfiguration {
   @Autowired
   private EventBus eventBus;
 
+  @Autowired
+  private SystemDaoCaches daoCaches;
+
   // permission system DAO instances are shared internally
   private SystemDao<ObjectRolePermission<TypeId>, GrantedPermission>
       typePermissionSystemDao;
@@ -76,7 +78,7 @@ public class TypeServiceConfiguration {
     service = new ProfilingService<>(service,
         getClass().getPackage().getName() + ".ProfilingService", 500);
     service = new InitializingTypeService(service);
-    service = new ReadWriteSynchronizedService<>(service);
+    service = register(eventBus, new SnapshotReadService<>(service, Type::identifier));
 
     return service;
   }
@@ -107,7 +109,7 @@ public class TypeServiceConfiguration {
         typePropertyDao(),
         textAttributeRepository(),
         referenceAttributeRepository(),
-        getDatabaseProductName(dataSource).equalsIgnoreCase("postgresql") ? 1 : -1);
+        -1);
   }
 
   private Dao<TypeId, Type> typeDao() {
@@ -127,18 +129,19 @@ public class TypeServiceConfiguration {
   }
 
   private SystemDao<TypeId, Type> typeSystemDao() {
-    return register(eventBus, cache(new JdbcTypeDao(dataSource)));
+    return daoCaches.cache("types", new JdbcTypeDao(dataSource));
   }
 
   private SystemDao<ObjectRolePermission<TypeId>, GrantedPermission> typePermissionSystemDao() {
     if (typePermissionSystemDao == null) {
-      typePermissionSystemDao = register(eventBus, cache(new JdbcTypePermissionsDao(dataSource)));
+      typePermissionSystemDao = daoCaches.cache("typePermissions",
+          new JdbcTypePermissionsDao(dataSource));
     }
     return typePermissionSystemDao;
   }
 
   private SystemDao<PropertyValueId<TypeId>, LangValue> typePropertySystemDao() {
-    return register(eventBus, cache(new JdbcTypePropertyDao(dataSource)));
+    return daoCaches.cache("typeProperties", new JdbcTypePropertyDao(dataSource));
   }
 
   // text attributes
@@ -147,7 +150,8 @@ public class TypeServiceConfiguration {
     return new TextAttributeRepository(
         textAttributeDao(),
         textAttributePermissionDao(),
-        textAttributePropertyDao());
+        textAttributePropertyDao(),
+        -1);
   }
 
   private Dao<TextAttributeId, TextAttribute> textAttributeDao() {
@@ -168,19 +172,19 @@ public class TypeServiceConfiguration {
   }
 
   private SystemDao<TextAttributeId, TextAttribute> textAttributeSystemDao() {
-    return register(eventBus, register(eventBus, cache(new JdbcTextAttributeDao(dataSource))));
+    return daoCaches.cache("textAttributes", new JdbcTextAttributeDao(dataSource));
   }
 
   private SystemDao<ObjectRolePermission<TextAttributeId>, GrantedPermission> textAttributePermissionSystemDao() {
     if (textAttributePermissionSystemDao == null) {
-      textAttributePermissionSystemDao = register(eventBus, cache(
-          new JdbcTextAttributePermissionsDao(dataSource)));
+      textAttributePermissionSystemDao = daoCaches.cache("textAttributePermissions",
+          new JdbcTextAttributePermissionsDao(dataSource));
     }
     return textAttributePermissionSystemDao;
   }
 
   private SystemDao<PropertyValueId<TextAttributeId>, LangValue> textAttributePropertySystemDao() {
-    return register(eventBus, cache(new JdbcTextAttributePropertyDao(dataSource)));
+    return daoCaches.cache("textAttributeProperties", new JdbcTextAttributePropertyDao(dataSource));
   }
 
   // reference attributes
@@ -189,7 +193,8 @@ public class TypeServiceConfiguration {
     return new ReferenceAttributeRepository(
         referenceAttributeDao(),
         referenceAttributePermissionDao(),
-        referenceAttributePropertyDao());
+        referenceAttributePropertyDao(),
+        -1);
   }
 
   private Dao<ReferenceAttributeId, ReferenceAttribute> referenceAttributeDao() {
@@ -210,19 +215,20 @@ public class TypeServiceConfiguration {
   }
 
   private SystemDao<ReferenceAttributeId, ReferenceAttribute> referenceAttributeSystemDao() {
-    return register(eventBus, cache(new JdbcReferenceAttributeDao(dataSource)));
+    return daoCaches.cache("referenceAttributes", new JdbcReferenceAttributeDao(dataSource));
   }
 
   private SystemDao<ObjectRolePermission<ReferenceAttributeId>, GrantedPermission> referenceAttributePermissionSystemDao() {
     if (referenceAttributePermissionSystemDao == null) {
-      referenceAttributePermissionSystemDao = register(eventBus, cache(
-          new JdbcReferenceAttributePermissionsDao(dataSource)));
+      referenceAttributePermissionSystemDao = daoCaches.cache("referenceAttributePermissions",
+          new JdbcReferenceAttributePermissionsDao(dataSource));
     }
     return referenceAttributePermissionSystemDao;
   }
 
   private SystemDao<PropertyValueId<ReferenceAttributeId>, LangValue> referenceAttributePropertySystemDao() {
-    return register(eventBus, cache(new JdbcReferenceAttributePropertyDao(dataSource)));
+    return daoCaches.cache("referenceAttributeProperties",
+        new JdbcReferenceAttributePropertyDao(dataSource));
   }
 
   /**
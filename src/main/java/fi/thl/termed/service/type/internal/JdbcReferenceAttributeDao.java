@@ -16,7 +16,7 @@ public class JdbcReferenceAttributeDao
     extends AbstractJdbcDao<ReferenceAttributeId, ReferenceAttribute> {
 
   public JdbcReferenceAttributeDao(DataSource dataSource) {
-    super(dataSource);
+    super(dataSource, true);
   }
 
   @Override
@@ -21,7 +21,7 @@ public class JdbcReferenceAttributePermissionsDao
     extends AbstractJdbcDao<ObjectRolePermission<ReferenceAttributeId>, GrantedPermission> {
 
   public JdbcReferenceAttributePermissionsDao(DataSource dataSource) {
-    super(dataSource);
+    super(dataSource, true);
   }
 
   @Override
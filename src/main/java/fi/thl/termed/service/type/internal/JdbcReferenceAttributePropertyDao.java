@@ -16,7 +16,7 @@ public class JdbcReferenceAttributePropertyDao
     extends AbstractJdbcDao<PropertyValueId<ReferenceAttributeId>, LangValue> {
 
   public JdbcReferenceAttributePropertyDao(DataSource dataSource) {
-    super(dataSource);
+    super(dataSource, true);
   }
 
   @Override
@@ -15,7 +15,7 @@ import org.springframework.jdbc.core.RowMapper;
 public class JdbcTextAttributeDao extends AbstractJdbcDao<TextAttributeId, TextAttribute> {
 
   public JdbcTextAttributeDao(DataSource dataSource) {
-    super(dataSource);
+    super(dataSource, true);
   }
 
   @Override
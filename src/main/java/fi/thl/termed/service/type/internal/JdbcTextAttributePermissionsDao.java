@@ -21,7 +21,7 @@ public class JdbcTextAttributePermissionsDao
     extends AbstractJdbcDao<ObjectRolePermission<TextAttributeId>, GrantedPermission> {
 
   public JdbcTextAttributePermissionsDao(DataSource dataSource) {
-    super(dataSource);
+    super(dataSource, true);
   }
 
   @Override
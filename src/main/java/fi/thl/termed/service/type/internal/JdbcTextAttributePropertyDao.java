@@ -16,7 +16,7 @@ public class JdbcTextAttributePropertyDao
     extends AbstractJdbcDao<PropertyValueId<TextAttributeId>, LangValue> {
 
   public JdbcTextAttributePropertyDao(DataSource dataSource) {
-    super(dataSource);
+    super(dataSource, true);
   }
 
   @Override
@@ -17,7 +17,7 @@ import org.springframework.jdbc.core.RowMapper;
 public class JdbcTypeDao extends AbstractJdbcDao<TypeId, Type> {
 
   public JdbcTypeDao(DataSource dataSource) {
-    super(dataSource);
+    super(dataSource, true);
   }
 
   @Override
@@ -21,7 +21,7 @@ public class JdbcTypePermissionsDao
     extends AbstractJdbcDao<ObjectRolePermission<TypeId>, GrantedPermission> {
 
   public JdbcTypePermissionsDao(DataSource dataSource) {
-    super(dataSource);
+    super(dataSource, true);
   }
 
   @Override
@@ -14,7 +14,7 @@ import org.springframework.jdbc.core.RowMapper;
 public class JdbcTypePropertyDao extends AbstractJdbcDao<PropertyValueId<TypeId>, LangValue> {
 
   public JdbcTypePropertyDao(DataSource dataSource) {
-    super(dataSource);
+    super(dataSource, true);
   }
 
   @Override
@@ -0,0 +1,32 @@
+package fi.thl.termed.service.type.internal;
+
+import fi.thl.termed.domain.GrantedPermission;
+import fi.thl.termed.domain.ObjectRolePermission;
+import fi.thl.termed.domain.ReferenceAttributeId;
+import fi.thl.termed.util.query.AbstractSqlSpecification;
+import fi.thl.termed.util.query.ParametrizedSqlQuery;
+import java.util.Objects;
+import java.util.UUID;
+
+public class ReferenceAttributePermissionsByGraphId
+    extends
+    AbstractSqlSpecification<ObjectRolePermission<ReferenceAttributeId>, GrantedPermission> {
+
+  private UUID graphId;
+
+  ReferenceAttributePermissionsByGraphId(UUID graphId) {
+    this.graphId = graphId;
+  }
+
+  @Override
+  public boolean test(ObjectRolePermission<ReferenceAttributeId> objectRolePermission,
+      GrantedPermission value) {
+    return Objects.equals(objectRolePermission.getObjectId().getDomainId().getGraphId(), graphId);
+  }
+
+  @Override
+  public ParametrizedSqlQuery sql() {
+    return ParametrizedSqlQuery.of("reference_attribute_domain_graph_id = ?", graphId);
+  }
+
+}
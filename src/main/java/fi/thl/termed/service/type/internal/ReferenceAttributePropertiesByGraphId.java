@@ -0,0 +1,30 @@
+package fi.thl.termed.service.type.internal;
+
+import fi.thl.termed.domain.LangValue;
+import fi.thl.termed.domain.PropertyValueId;
+import fi.thl.termed.domain.ReferenceAttributeId;
+import fi.thl.termed.util.query.AbstractSqlSpecification;
+import fi.thl.termed.util.query.ParametrizedSqlQuery;
+import java.util.Objects;
+import java.util.UUID;
+
+public class ReferenceAttributePropertiesByGraphId
+    extends AbstractSqlSpecification<PropertyValueId<ReferenceAttributeId>, LangValue> {
+
+  private UUID graphId;
+
+  ReferenceAttributePropertiesByGraphId(UUID graphId) {
+    this.graphId = graphId;
+  }
+
+  @Override
+  public boolean test(PropertyValueId<ReferenceAttributeId> propertyValueId, LangValue value) {
+    return Objects.equals(propertyValueId.getSubjectId().getDomainId().getGraphId(), graphId);
+  }
+
+  @Override
+  public ParametrizedSqlQuery sql() {
+    return ParametrizedSqlQuery.of("reference_attribute_domain_graph_id = ?", graphId);
+  }
+
+}
@@ -4,7 +4,13 @@ import static fi.thl.termed.util.collect.MapUtils.leftValues;
 import static fi.thl.termed.util.collect.MultimapUtils.toImmutableMultimap;
 import static fi.thl.termed.util.collect.Tuple.entriesAsTuples;
 import static fi.thl.termed.util.collect.Tuple.tuplesToMap;
+import static fi.thl.termed.util.dao.DaoUtils.entries;
+import static fi.thl.termed.util.dao.DaoUtils.saveDiff;
+import static java.util.stream.Collectors.toMap;
+import static java.util.stream.Collectors.toSet;
 
+import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.MapDifference;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
@@ -25,8 +31,11 @@ import fi.thl.termed.util.query.Query;
 import fi.thl.termed.util.query.Select;
 import fi.thl.termed.util.service.AbstractRepository;
 import fi.thl.termed.util.service.WriteOptions;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
 import java.util.stream.Stream;
 
 public class ReferenceAttributeRepository
@@ -39,7 +48,9 @@ public class ReferenceAttributeRepository
   public ReferenceAttributeRepository(
       Dao<ReferenceAttributeId, ReferenceAttribute> referenceAttributeDao,
       Dao<ObjectRolePermission<ReferenceAttributeId>, GrantedPermission> permissionDao,
-      Dao<PropertyValueId<ReferenceAttributeId>, LangValue> propertyDao) {
+      Dao<PropertyValueId<ReferenceAttributeId>, LangValue> propertyDao,
+      int batchSize) {
+    super(batchSize);
     this.referenceAttributeDao = referenceAttributeDao;
     this.permissionDao = permissionDao;
     this.propertyDao = propertyDao;
@@ -126,6 +137,80 @@ public class ReferenceAttributeRepository
         new ReferenceAttributePropertiesByAttributeId(id), user), user);
   }
 
+  @Override
+  protected void insertBatch(List<Tuple2<ReferenceAttributeId, ReferenceAttribute>> attrs, WriteOptions opts,
+      User user) {
+    referenceAttributeDao.insert(attrs.stream(), user);
+    permissionDao.insert(attrs.stream()
+        .flatMap(attr -> permissions(attr._1, attr._2.getPermissions())), user);
+    propertyDao.insert(attrs.stream()
+        .flatMap(attr -> properties(attr._1, attr._2.getProperties())), user);
+  }
+
+  /**
+   * Loads existing attributes of all given attributes with one query per graph for attributes,
+   * permissions and properties each. Only differences are written.
+   */
+  @Override
+  protected void upsertBatch(List<Tuple2<ReferenceAttributeId, ReferenceAttribute>> attrs, WriteOptions opts,
+      User user) {
+    Set<ReferenceAttributeId> ids = attrs.stream().map(attr -> attr._1).collect(toSet());
+    Set<UUID> graphIds = graphIds(ids);
+
+    saveDiff(referenceAttributeDao,
+        attrs.stream().collect(toMap(attr -> attr._1, attr -> withoutDependents(attr._2))),
+        entries(referenceAttributeDao, graphIds.stream().map(ReferenceAttributesByGraphId::new), ids::contains, user),
+        user);
+    saveDiff(permissionDao,
+        tuplesToMap(attrs.stream()
+            .flatMap(attr -> permissions(attr._1, attr._2.getPermissions()))),
+        entries(permissionDao, graphIds.stream().map(ReferenceAttributePermissionsByGraphId::new),
+            permission -> ids.contains(permission.getObjectId()), user),
+        user);
+    saveDiff(propertyDao,
+        tuplesToMap(attrs.stream()
+            .flatMap(attr -> properties(attr._1, attr._2.getProperties()))),
+        entries(propertyDao, graphIds.stream().map(ReferenceAttributePropertiesByGraphId::new),
+            property -> ids.contains(property.getSubjectId()), user),
+        user);
+  }
+
+  @Override
+  protected void deleteBatch(List<ReferenceAttributeId> attrIds, WriteOptions opts, User user) {
+    Set<ReferenceAttributeId> ids = ImmutableSet.copyOf(attrIds);
+    Set<UUID> graphIds = graphIds(ids);
+
+    permissionDao.delete(entries(permissionDao,
+        graphIds.stream().map(ReferenceAttributePermissionsByGraphId::new),
+        permission -> ids.contains(permission.getObjectId()), user).keySet().stream(), user);
+    propertyDao.delete(entries(propertyDao,
+        graphIds.stream().map(ReferenceAttributePropertiesByGraphId::new),
+        property -> ids.contains(property.getSubjectId()), user).keySet().stream(), user);
+    referenceAttributeDao.delete(attrIds.stream(), user);
+  }
+
+  private Set<UUID> graphIds(Set<ReferenceAttributeId> ids) {
+    return ids.stream().map(id -> id.getDomainId().getGraphId()).collect(toSet());
+  }
+
+  private Stream<Tuple2<ObjectRolePermission<ReferenceAttributeId>, GrantedPermission>> permissions(
+      ReferenceAttributeId id, Multimap<String, Permission> permissions) {
+    return new RolePermissionsDtoToModel<>(id.getDomainId().getGraph(), id).apply(permissions);
+  }
+
+  private Stream<Tuple2<PropertyValueId<ReferenceAttributeId>, LangValue>> properties(
+      ReferenceAttributeId id, Multimap<String, LangValue> properties) {
+    return new PropertyValueDtoToModel<>(id).apply(properties);
+  }
+
+  // attribute row as loaded by attribute dao, permissions and properties are stored separately
+  private ReferenceAttribute withoutDependents(ReferenceAttribute attr) {
+    return ReferenceAttribute.builderFromCopyOf(attr)
+        .permissions(ImmutableMultimap.of())
+        .properties(ImmutableMultimap.of())
+        .build();
+  }
+
   @Override
   public boolean exists(ReferenceAttributeId id, User user) {
     return referenceAttributeDao.exists(id, user);
@@ -0,0 +1,29 @@
+package fi.thl.termed.service.type.internal;
+
+import fi.thl.termed.domain.ReferenceAttribute;
+import fi.thl.termed.domain.ReferenceAttributeId;
+import fi.thl.termed.util.query.AbstractSqlSpecification;
+import fi.thl.termed.util.query.ParametrizedSqlQuery;
+import java.util.Objects;
+import java.util.UUID;
+
+public class ReferenceAttributesByGraphId
+    extends AbstractSqlSpecification<ReferenceAttributeId, ReferenceAttribute> {
+
+  private UUID graphId;
+
+  ReferenceAttributesByGraphId(UUID graphId) {
+    this.graphId = graphId;
+  }
+
+  @Override
+  public boolean test(ReferenceAttributeId key, ReferenceAttribute value) {
+    return Objects.equals(key.getDomainId().getGraphId(), graphId);
+  }
+
+  @Override
+  public ParametrizedSqlQuery sql() {
+    return ParametrizedSqlQuery.of("domain_graph_id = ?", graphId);
+  }
+
+}
@@ -18,7 +18,7 @@ public class ReferenceAttributesByRangeId
 
   @Override
   public boolean test(ReferenceAttributeId key, ReferenceAttribute value) {
-    return Objects.equals(key.getDomainId(), typeId);
+    return Objects.equals(value.getRange(), typeId);
   }
 
   @Override
@@ -0,0 +1,31 @@
+package fi.thl.termed.service.type.internal;
+
+import fi.thl.termed.domain.GrantedPermission;
+import fi.thl.termed.domain.ObjectRolePermission;
+import fi.thl.termed.domain.TextAttributeId;
+import fi.thl.termed.util.query.AbstractSqlSpecification;
+import fi.thl.termed.util.query.ParametrizedSqlQuery;
+import java.util.Objects;
+import java.util.UUID;
+
+public class TextAttributePermissionsByGraphId
+    extends AbstractSqlSpecification<ObjectRolePermission<TextAttributeId>, GrantedPermission> {
+
+  private UUID graphId;
+
+  TextAttributePermissionsByGraphId(UUID graphId) {
+    this.graphId = graphId;
+  }
+
+  @Override
+  public boolean test(ObjectRolePermission<TextAttributeId> objectRolePermission,
+      GrantedPermission value) {
+    return Objects.equals(objectRolePermission.getObjectId().getDomainId().getGraphId(), graphId);
+  }
+
+  @Override
+  public ParametrizedSqlQuery sql() {
+    return ParametrizedSqlQuery.of("text_attribute_domain_graph_id = ?", graphId);
+  }
+
+}
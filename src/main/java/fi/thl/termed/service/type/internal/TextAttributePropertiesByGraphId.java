@@ -0,0 +1,30 @@
+package fi.thl.termed.service.type.internal;
+
+import fi.thl.termed.domain.LangValue;
+import fi.thl.termed.domain.PropertyValueId;
+import fi.thl.termed.domain.TextAttributeId;
+import fi.thl.termed.util.query.AbstractSqlSpecification;
+import fi.thl.termed.util.query.ParametrizedSqlQuery;
+import java.util.Objects;
+import java.util.UUID;
+
+public class TextAttributePropertiesByGraphId
+    extends AbstractSqlSpecification<PropertyValueId<TextAttributeId>, LangValue> {
+
+  private UUID graphId;
+
+  TextAttributePropertiesByGraphId(UUID graphId) {
+    this.graphId = graphId;
+  }
+
+  @Override
+  public boolean test(PropertyValueId<TextAttributeId> propertyValueId, LangValue value) {
+    return Objects.equals(propertyValueId.getSubjectId().getDomainId().getGraphId(), graphId);
+  }
+
+  @Override
+  public ParametrizedSqlQuery sql() {
+    return ParametrizedSqlQuery.of("text_attribute_domain_graph_id = ?", graphId);
+  }
+
+}
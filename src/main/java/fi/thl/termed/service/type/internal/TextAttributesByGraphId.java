@@ -0,0 +1,29 @@
+package fi.thl.termed.service.type.internal;
+
+import fi.thl.termed.domain.TextAttribute;
+import fi.thl.termed.domain.TextAttributeId;
+import fi.thl.termed.util.query.AbstractSqlSpecification;
+import fi.thl.termed.util.query.ParametrizedSqlQuery;
+import java.util.Objects;
+import java.util.UUID;
+
+public class TextAttributesByGraphId
+    extends AbstractSqlSpecification<TextAttributeId, TextAttribute> {
+
+  private UUID graphId;
+
+  TextAttributesByGraphId(UUID graphId) {
+    this.graphId = graphId;
+  }
+
+  @Override
+  public boolean test(TextAttributeId key, TextAttribute value) {
+    return Objects.equals(key.getDomainId().getGraphId(), graphId);
+  }
+
+  @Override
+  public ParametrizedSqlQuery sql() {
+    return ParametrizedSqlQuery.of("domain_graph_id = ?", graphId);
+  }
+
+}
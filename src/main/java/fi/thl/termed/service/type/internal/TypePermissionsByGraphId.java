@@ -0,0 +1,30 @@
+package fi.thl.termed.service.type.internal;
+
+import fi.thl.termed.domain.GrantedPermission;
+import fi.thl.termed.domain.ObjectRolePermission;
+import fi.thl.termed.domain.TypeId;
+import fi.thl.termed.util.query.AbstractSqlSpecification;
+import fi.thl.termed.util.query.ParametrizedSqlQuery;
+import java.util.Objects;
+import java.util.UUID;
+
+public class TypePermissionsByGraphId
+    extends AbstractSqlSpecification<ObjectRolePermission<TypeId>, GrantedPermission> {
+
+  private UUID graphId;
+
+  TypePermissionsByGraphId(UUID graphId) {
+    this.graphId = graphId;
+  }
+
+  @Override
+  public boolean test(ObjectRolePermission<TypeId> objectRolePermission, GrantedPermission value) {
+    return Objects.equals(objectRolePermission.getObjectId().getGraphId(), graphId);
+  }
+
+  @Override
+  public ParametrizedSqlQuery sql() {
+    return ParametrizedSqlQuery.of("type_graph_id = ?", graphId);
+  }
+
+}
@@ -0,0 +1,30 @@
+package fi.thl.termed.service.type.internal;
+
+import fi.thl.termed.domain.LangValue;
+import fi.thl.termed.domain.PropertyValueId;
+import fi.thl.termed.domain.TypeId;
+import fi.thl.termed.util.query.AbstractSqlSpecification;
+import fi.thl.termed.util.query.ParametrizedSqlQuery;
+import java.util.Objects;
+import java.util.UUID;
+
+public class TypePropertiesByGraphId
+    extends AbstractSqlSpecification<PropertyValueId<TypeId>, LangValue> {
+
+  private UUID graphId;
+
+  TypePropertiesByGraphId(UUID graphId) {
+    this.graphId = graphId;
+  }
+
+  @Override
+  public boolean test(PropertyValueId<TypeId> propertyValueId, LangValue value) {
+    return Objects.equals(propertyValueId.getSubjectId().getGraphId(), graphId);
+  }
+
+  @Override
+  public ParametrizedSqlQuery sql() {
+    return ParametrizedSqlQuery.of("type_graph_id = ?", graphId);
+  }
+
+}
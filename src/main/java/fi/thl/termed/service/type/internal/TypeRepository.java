@@ -5,11 +5,16 @@ import static fi.thl.termed.util.collect.MapUtils.leftValues;
 import static fi.thl.termed.util.collect.MultimapUtils.toImmutableMultimap;
 import static fi.thl.termed.util.collect.Tuple.entriesAsTuples;
 import static fi.thl.termed.util.collect.Tuple.tuplesToMap;
+import static fi.thl.termed.util.dao.DaoUtils.entries;
+import static fi.thl.termed.util.dao.DaoUtils.saveDiff;
 import static fi.thl.termed.util.service.SaveMode.INSERT;
 import static fi.thl.termed.util.service.SaveMode.UPSERT;
 import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toMap;
 import static java.util.stream.Collectors.toSet;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.MapDifference;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
@@ -27,6 +32,7 @@ import fi.thl.termed.domain.TypeId;
 import fi.thl.termed.domain.User;
 import fi.thl.termed.domain.transform.PropertyValueDtoToModel;
 import fi.thl.termed.domain.transform.RolePermissionsDtoToModel;
+import fi.thl.termed.service.type.specification.TypesByGraphId;
 import fi.thl.termed.util.collect.Tuple2;
 import fi.thl.termed.util.dao.Dao;
 import fi.thl.termed.util.query.Query;
@@ -39,6 +45,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.UUID;
 import java.util.stream.Stream;
 
 public class TypeRepository extends AbstractRepository<TypeId, Type> {
@@ -69,12 +76,83 @@ public class TypeRepository extends AbstractRepository<TypeId, Type> {
   protected void insertBatch(List<Tuple2<TypeId, Type>> types, WriteOptions opts,
       User user) {
     typeDao.insert(types.stream(), user);
-    types.forEach(t -> {
-      insertPermissions(t._1, t._2.getPermissions(), user);
-      insertProperties(t._1, t._2.getProperties(), user);
-      saveTextAttributes(t._1, t._2.getTextAttributes(), INSERT, opts, user);
-      saveReferenceAttributes(t._1, t._2.getReferenceAttributes(), INSERT, opts, user);
-    });
+    typePermissionDao.insert(types.stream()
+        .flatMap(t -> permissions(t._1, t._2.getPermissions())), user);
+    typePropertyDao.insert(types.stream()
+        .flatMap(t -> properties(t._1, t._2.getProperties())), user);
+
+    textAttributeRepository.save(types.stream()
+        .flatMap(t -> t._2.getTextAttributes().stream()), INSERT, opts, user);
+    referenceAttributeRepository.save(types.stream()
+        .flatMap(t -> t._2.getReferenceAttributes().stream()), INSERT, opts, user);
+  }
+
+  /**
+   * Saves all given types at once. Existing rows of affected types are loaded with one query per
+   * graph and table, differences are computed in memory and written with a stream per table.
+   */
+  @Override
+  protected void upsertBatch(List<Tuple2<TypeId, Type>> types, WriteOptions opts,
+      User user) {
+    Set<TypeId> ids = types.stream().map(t -> t._1).collect(toSet());
+    Set<UUID> graphIds = ids.stream().map(TypeId::getGraphId).collect(toSet());
+
+    saveDiff(typeDao,
+        types.stream().collect(toMap(t -> t._1, t -> withoutDependents(t._2))),
+        entries(typeDao, graphIds.stream().map(TypesByGraphId::new), ids::contains, user),
+        user);
+    saveDiff(typePermissionDao,
+        tuplesToMap(types.stream().flatMap(t -> permissions(t._1, t._2.getPermissions()))),
+        entries(typePermissionDao, graphIds.stream().map(TypePermissionsByGraphId::new),
+            permission -> ids.contains(permission.getObjectId()), user),
+        user);
+    saveDiff(typePropertyDao,
+        tuplesToMap(types.stream().flatMap(t -> properties(t._1, t._2.getProperties()))),
+        entries(typePropertyDao, graphIds.stream().map(TypePropertiesByGraphId::new),
+            property -> ids.contains(property.getSubjectId()), user),
+        user);
+
+    List<TextAttribute> textAttributes = types.stream()
+        .flatMap(t -> t._2.getTextAttributes().stream()).collect(toList());
+    Set<TextAttributeId> textAttributeIds = textAttributes.stream()
+        .map(TextAttribute::identifier).collect(toSet());
+    textAttributeRepository.delete(graphIds.stream()
+        .flatMap(graphId -> textAttributeRepository.keys(
+            new Query<>(new TextAttributesByGraphId(graphId)), user))
+        .filter(attrId -> ids.contains(attrId.getDomainId()))
+        .filter(attrId -> !textAttributeIds.contains(attrId)), opts, user);
+    textAttributeRepository.save(textAttributes.stream(), UPSERT, opts, user);
+
+    List<ReferenceAttribute> refAttrs = types.stream()
+        .flatMap(t -> t._2.getReferenceAttributes().stream()).collect(toList());
+    Set<ReferenceAttributeId> refAttrIds = refAttrs.stream()
+        .map(ReferenceAttribute::identifier).collect(toSet());
+    referenceAttributeRepository.delete(graphIds.stream()
+        .flatMap(graphId -> referenceAttributeRepository.keys(
+            new Query<>(new ReferenceAttributesByGraphId(graphId)), user))
+        .filter(attrId -> ids.contains(attrId.getDomainId()))
+        .filter(attrId -> !refAttrIds.contains(attrId)), opts, user);
+    referenceAttributeRepository.save(refAttrs.stream(), UPSERT, opts, user);
+  }
+
+  private Stream<Tuple2<ObjectRolePermission<TypeId>, GrantedPermission>> permissions(
+      TypeId id, Multimap<String, Permission> permissions) {
+    return new RolePermissionsDtoToModel<>(id.getGraph(), id).apply(permissions);
+  }
+
+  private Stream<Tuple2<PropertyValueId<TypeId>, LangValue>> properties(
+      TypeId id, Multimap<String, LangValue> properties) {
+    return new PropertyValueDtoToModel<>(id).apply(properties);
+  }
+
+  // type row as loaded by type dao, other values are stored separately
+  private Type withoutDependents(Type type) {
+    return Type.builderFromCopyOf(type)
+        .permissions(ImmutableMultimap.of())
+        .properties(ImmutableMultimap.of())
+        .textAttributes(ImmutableList.of())
+        .referenceAttributes(ImmutableList.of())
+        .build();
   }
 
   @Override
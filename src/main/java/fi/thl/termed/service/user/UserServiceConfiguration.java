@@ -1,7 +1,5 @@
 package fi.thl.termed.service.user;
 
-import static fi.thl.termed.util.EventBusUtils.register;
-import static fi.thl.termed.util.dao.CachedSystemDao.cache;
 
 import com.google.common.eventbus.EventBus;
 import fi.thl.termed.domain.AppRole;
@@ -11,8 +9,10 @@ import fi.thl.termed.domain.UserGraphRole;
 import fi.thl.termed.service.user.internal.JdbcUserDao;
 import fi.thl.termed.service.user.internal.JdbcUserGraphRoleDao;
 import fi.thl.termed.service.user.internal.UserRepository;
+import fi.thl.termed.service.user.internal.UserWriteEventPostingService;
 import fi.thl.termed.util.dao.AuthorizedDao;
 import fi.thl.termed.util.dao.SystemDao;
+import fi.thl.termed.util.dao.SystemDaoCaches;
 import fi.thl.termed.util.permission.PermissionEvaluator;
 import fi.thl.termed.util.service.ReadWriteSynchronizedService;
 import fi.thl.termed.util.service.Service;
@@ -30,14 +30,17 @@ public class UserServiceConfiguration {
   @Autowired
   private EventBus eventBus;
 
+  @Autowired
+  private SystemDaoCaches daoCaches;
+
   @Bean
   public Service<String, User> userService(
       DataSource dataSource, PlatformTransactionManager transactionManager) {
 
     SystemDao<String, User> userDao =
-        register(eventBus, cache(new JdbcUserDao(dataSource)));
+        daoCaches.cache("users", new JdbcUserDao(dataSource));
     SystemDao<UserGraphRole, Empty> userGraphRoleDao =
-        register(eventBus, cache(new JdbcUserGraphRoleDao(dataSource)));
+        daoCaches.cache("userGraphRoles", new JdbcUserGraphRoleDao(dataSource));
 
     PermissionEvaluator<String> userPermissionEvaluator =
         (u, o, p) -> u.getAppRole() == AppRole.SUPERUSER;
@@ -52,6 +55,7 @@ public class UserServiceConfiguration {
     service = new WriteLoggingService<>(service,
         getClass().getPackage().getName() + ".WriteLoggingService");
     service = new TransactionalService<>(service, transactionManager);
+    service = new UserWriteEventPostingService(service, eventBus);
     service = new ReadWriteSynchronizedService<>(service);
 
     return service;
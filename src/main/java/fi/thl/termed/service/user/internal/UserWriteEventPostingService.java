@@ -0,0 +1,71 @@
+package fi.thl.termed.service.user.internal;
+
+import static java.util.stream.Collectors.toList;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.eventbus.EventBus;
+import fi.thl.termed.domain.User;
+import fi.thl.termed.domain.event.UsersChangedEvent;
+import fi.thl.termed.util.service.ForwardingService;
+import fi.thl.termed.util.service.SaveMode;
+import fi.thl.termed.util.service.Service;
+import fi.thl.termed.util.service.WriteOptions;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Posts {@link UsersChangedEvent} to event bus after each user write.
+ */
+public class UserWriteEventPostingService extends ForwardingService<String, User> {
+
+  private EventBus eventBus;
+
+  public UserWriteEventPostingService(Service<String, User> delegate, EventBus eventBus) {
+    super(delegate);
+    this.eventBus = eventBus;
+  }
+
+  @Override
+  public void save(Stream<User> values, SaveMode mode, WriteOptions opts, User user) {
+    List<User> users = values.collect(toList());
+    super.save(users.stream(), mode, opts, user);
+    eventBus.post(new UsersChangedEvent(usernames(users)));
+  }
+
+  @Override
+  public String save(User value, SaveMode mode, WriteOptions opts, User user) {
+    String username = super.save(value, mode, opts, user);
+    eventBus.post(new UsersChangedEvent(ImmutableList.of(username)));
+    return username;
+  }
+
+  @Override
+  public void delete(Stream<String> ids, WriteOptions opts, User user) {
+    List<String> usernames = ids.collect(toList());
+    super.delete(usernames.stream(), opts, user);
+    eventBus.post(new UsersChangedEvent(usernames));
+  }
+
+  @Override
+  public void delete(String key, WriteOptions opts, User user) {
+    super.delete(key, opts, user);
+    eventBus.post(new UsersChangedEvent(ImmutableList.of(key)));
+  }
+
+  @Override
+  public void saveAndDelete(Stream<User> saves, Stream<String> deletes, SaveMode mode,
+      WriteOptions opts, User user) {
+    List<User> savedUsers = saves.collect(toList());
+    List<String> deletedUsernames = deletes.collect(toList());
+    super.saveAndDelete(savedUsers.stream(), deletedUsernames.stream(), mode, opts, user);
+    eventBus.post(new UsersChangedEvent(ImmutableList.<String>builder()
+        .addAll(usernames(savedUsers))
+        .addAll(deletedUsernames)
+        .build()));
+  }
+
+  private List<String> usernames(List<User> users) {
+    return users.stream().map(User::getUsername).collect(toList());
+  }
+
+}
@@ -1,17 +1,22 @@
 package fi.thl.termed.service.webhook;
 
 import static fi.thl.termed.util.EventBusUtils.register;
-import static fi.thl.termed.util.dao.CachedSystemDao.cache;
+import static fi.thl.termed.util.collect.StreamUtils.toImmutableListAndClose;
 
 import com.google.common.eventbus.EventBus;
 import com.google.gson.Gson;
 import fi.thl.termed.domain.AppRole;
+import fi.thl.termed.domain.User;
 import fi.thl.termed.domain.Webhook;
 import fi.thl.termed.service.webhook.internal.JdbcWebhookDao;
 import fi.thl.termed.service.webhook.internal.NodeEventPostingService;
+import fi.thl.termed.service.webhook.internal.WebhookDispatcher;
+import fi.thl.termed.service.webhook.internal.WebhookWriteEventPostingService;
 import fi.thl.termed.util.dao.AuthorizedDao;
 import fi.thl.termed.util.dao.SystemDao;
+import fi.thl.termed.util.dao.SystemDaoCaches;
 import fi.thl.termed.util.permission.PermissionEvaluator;
+import fi.thl.termed.util.query.Queries;
 import fi.thl.termed.util.service.DaoForwardingRepository;
 import fi.thl.termed.util.service.ReadWriteSynchronizedService;
 import fi.thl.termed.util.service.Service;
@@ -20,6 +25,7 @@ import fi.thl.termed.util.service.WriteLoggingService;
 import java.util.UUID;
 import javax.sql.DataSource;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.transaction.PlatformTransactionManager;
@@ -39,9 +45,29 @@ public class WebhookServiceConfiguration {
   @Autowired
   private EventBus eventBus;
 
+  @Autowired
+  private SystemDaoCaches daoCaches;
+
+  @Value("${fi.thl.termed.webhook.queueCapacity:10000}")
+  private int queueCapacity;
+  @Value("${fi.thl.termed.webhook.maxConcurrency:10}")
+  private int maxConcurrency;
+  @Value("${fi.thl.termed.webhook.maxBatchSize:1000}")
+  private int maxBatchSize;
+  @Value("${fi.thl.termed.webhook.maxRetries:5}")
+  private int maxRetries;
+  @Value("${fi.thl.termed.webhook.retryBackoffMillis:1000}")
+  private long retryBackoffMillis;
+  @Value("${fi.thl.termed.webhook.circuitBreakerThreshold:10}")
+  private int circuitBreakerThreshold;
+  @Value("${fi.thl.termed.webhook.circuitBreakerOpenMillis:60000}")
+  private long circuitBreakerOpenMillis;
+
+  private User eventBroadcaster = new User("httpEventBroadcaster", "", AppRole.SUPERUSER);
+
   @Bean
   public Service<UUID, Webhook> webhookService() {
-    SystemDao<UUID, Webhook> dao = register(eventBus, cache(new JdbcWebhookDao(dataSource)));
+    SystemDao<UUID, Webhook> dao = daoCaches.cache("webhooks", new JdbcWebhookDao(dataSource));
 
     PermissionEvaluator<UUID> permissionEvaluator =
         (u, o, p) -> u.getAppRole() == AppRole.ADMIN || u.getAppRole() == AppRole.SUPERUSER;
@@ -53,13 +79,21 @@ public class WebhookServiceConfiguration {
     service = new WriteLoggingService<>(service,
         getClass().getPackage().getName() + ".WebhookService");
     service = new ReadWriteSynchronizedService<>(service);
+    service = new WebhookWriteEventPostingService(service, eventBus);
 
     return service;
   }
 
   @Bean
   public NodeEventPostingService eventPostingService(Service<UUID, Webhook> webhookService) {
-    NodeEventPostingService service = new NodeEventPostingService(webhookService(), gson);
+    WebhookDispatcher dispatcher = new WebhookDispatcher(
+        () -> toImmutableListAndClose(
+            webhookService.values(Queries.matchAll(), eventBroadcaster)),
+        gson, queueCapacity, maxConcurrency, maxBatchSize,
+        maxRetries, retryBackoffMillis,
+        circuitBreakerThreshold, circuitBreakerOpenMillis);
+
+    NodeEventPostingService service = new NodeEventPostingService(dispatcher);
     eventBus.register(service);
     return service;
   }
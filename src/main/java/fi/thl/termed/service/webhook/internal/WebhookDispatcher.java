@@ -0,0 +1,378 @@
+package fi.thl.termed.service.webhook.internal;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import com.google.common.collect.ImmutableList;
+import com.google.gson.Gson;
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.domain.Webhook;
+import fi.thl.termed.domain.event.NodeDeletedEvent;
+import fi.thl.termed.domain.event.NodeEvent;
+import fi.thl.termed.domain.event.NodeSavedEvent;
+import fi.thl.termed.domain.event.WebEvent;
+import fi.thl.termed.util.concurrent.ExecutorUtils;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Delivers node events to webhooks asynchronously.
+ *
+ * Each hook has its own bounded queue with at most one request in flight, so events reach a hook
+ * in order and a slow hook does not delay the others. Queued events of the same kind and user are
+ * coalesced into one payload. Failed deliveries are retried with exponential backoff. A hook that
+ * keeps failing is skipped for a while (circuit breaker) and its queued events are discarded.
+ * Queued events of a removed hook are discarded too.
+ */
+public class WebhookDispatcher {
+
+  private final Logger log = LoggerFactory.getLogger(getClass());
+
+  private final Supplier<List<Webhook>> hookLoader;
+  private final Gson gson;
+
+  private final int queueCapacity;
+  private final int maxBatchSize;
+  private final int maxRetries;
+  private final long retryBackoffMillis;
+  private final long maxRetryBackoffMillis;
+  private final int circuitBreakerThreshold;
+  private final long circuitBreakerOpenMillis;
+
+  // incremented on each invalidation, hooks loaded before an invalidation are not cached
+  private final AtomicLong hooksVersion = new AtomicLong();
+  private final AtomicReference<CachedHooks> cachedHooks = new AtomicReference<>();
+  private final ConcurrentMap<Webhook, HookQueue> queues = new ConcurrentHashMap<>();
+
+  private final CloseableHttpAsyncClient httpClient;
+  private final ScheduledExecutorService executor;
+
+  public WebhookDispatcher(Supplier<List<Webhook>> hookLoader, Gson gson) {
+    this(hookLoader, gson, 10_000, 10, 1000, 5, 1000, 10, 60_000);
+  }
+
+  /**
+   * @param hookLoader loads current webhooks, results are cached until {@link #invalidateHooks()}
+   * @param queueCapacity max number of events queued per hook, further events are dropped
+   * @param maxConcurrency max number of concurrent requests over all hooks
+   * @param maxBatchSize max number of node ids coalesced into one payload
+   * @param maxRetries number of retries after first failed delivery
+   * @param retryBackoffMillis delay before first retry, doubled for each subsequent retry
+   * @param circuitBreakerThreshold number of consecutive failed deliveries that opens the circuit
+   * @param circuitBreakerOpenMillis how long the hook is skipped after opening the circuit
+   */
+  public WebhookDispatcher(Supplier<List<Webhook>> hookLoader, Gson gson,
+      int queueCapacity, int maxConcurrency, int maxBatchSize,
+      int maxRetries, long retryBackoffMillis,
+      int circuitBreakerThreshold, long circuitBreakerOpenMillis) {
+    this.hookLoader = hookLoader;
+    this.gson = gson;
+    this.queueCapacity = queueCapacity;
+    this.maxBatchSize = maxBatchSize;
+    this.maxRetries = maxRetries;
+    this.retryBackoffMillis = retryBackoffMillis;
+    this.maxRetryBackoffMillis = Math.max(retryBackoffMillis, 60_000);
+    this.circuitBreakerThreshold = circuitBreakerThreshold;
+    this.circuitBreakerOpenMillis = circuitBreakerOpenMillis;
+
+    this.httpClient = HttpAsyncClients.custom()
+        .setMaxConnTotal(maxConcurrency)
+        .setMaxConnPerRoute(maxConcurrency)
+        .setDefaultRequestConfig(RequestConfig.custom()
+            .setConnectTimeout(10_000)
+            .setSocketTimeout(30_000)
+            .build())
+        .build();
+    this.httpClient.start();
+    this.executor = ExecutorUtils.newScheduledThreadPool(1);
+  }
+
+  /**
+   * Queues event for each hook. Returned future completes when event has been delivered, or
+   * delivery has been given up, for all hooks.
+   */
+  public CompletableFuture<Void> dispatch(NodeEvent event) {
+    List<CompletableFuture<Void>> deliveries = new ArrayList<>();
+
+    for (Webhook hook : hooks()) {
+      HookQueue queue = queues.computeIfAbsent(hook, HookQueue::new);
+
+      if (queue.isCircuitOpen()) {
+        log.debug("Skipping {}, circuit is open", hook);
+        continue;
+      }
+
+      PendingEvent pending = new PendingEvent(event);
+
+      if (queue.events.offer(pending)) {
+        deliveries.add(pending.delivered);
+        drain(queue);
+      } else {
+        log.warn("Event queue of {} is full, dropping {}", hook,
+            event.getClass().getSimpleName());
+      }
+    }
+
+    return CompletableFuture.allOf(deliveries.toArray(new CompletableFuture[0]));
+  }
+
+  public List<Webhook> hooks() {
+    long version = hooksVersion.get();
+
+    CachedHooks cached = cachedHooks.get();
+    if (cached != null && cached.version == version) {
+      return cached.hooks;
+    }
+
+    List<Webhook> hooks = ImmutableList.copyOf(hookLoader.get());
+
+    if (hooksVersion.get() == version) {
+      cachedHooks.set(new CachedHooks(version, hooks));
+      removeQueuesNotIn(hooks);
+    }
+
+    return hooks;
+  }
+
+  public void invalidateHooks() {
+    hooksVersion.incrementAndGet();
+  }
+
+  private void removeQueuesNotIn(List<Webhook> hooks) {
+    queues.values().removeIf(queue -> {
+      if (hooks.contains(queue.hook)) {
+        return false;
+      }
+      queue.removed = true;
+      // events in flight complete on response, events offered later are discarded on drain
+      discardAll(queue);
+      return true;
+    });
+  }
+
+  public void close() {
+    executor.shutdown();
+    try {
+      httpClient.close();
+    } catch (IOException e) {
+      log.warn(e.getMessage());
+    }
+  }
+
+  private void drain(HookQueue queue) {
+    if (!queue.draining.compareAndSet(false, true)) {
+      return;
+    }
+
+    if (queue.removed || queue.isCircuitOpen()) {
+      discardAll(queue);
+      release(queue);
+      return;
+    }
+
+    List<PendingEvent> batch = pollBatch(queue.events);
+
+    if (batch.isEmpty()) {
+      release(queue);
+    } else {
+      post(queue, batch, coalesce(batch), 0);
+    }
+  }
+
+  // releases drain ownership and re-drains if events were added concurrently
+  private void release(HookQueue queue) {
+    queue.draining.set(false);
+    if (!queue.events.isEmpty()) {
+      executor.execute(() -> drain(queue));
+    }
+  }
+
+  private void discardAll(HookQueue queue) {
+    List<PendingEvent> discarded = new ArrayList<>();
+    queue.events.drainTo(discarded);
+    if (!discarded.isEmpty()) {
+      log.warn("Discarded {} events of {}, {}", discarded.size(), queue.hook,
+          queue.removed ? "hook is removed" : "circuit is open");
+    }
+    discarded.forEach(PendingEvent::complete);
+  }
+
+  // takes the head event and following events that can be coalesced with it
+  private List<PendingEvent> pollBatch(BlockingQueue<PendingEvent> events) {
+    List<PendingEvent> batch = new ArrayList<>();
+
+    PendingEvent first = events.poll();
+    if (first == null) {
+      return batch;
+    }
+    batch.add(first);
+
+    int nodeCount = first.event.getNodes().size();
+    PendingEvent next = events.peek();
+
+    while (next != null && canCoalesce(first.event, next.event)
+        && nodeCount + next.event.getNodes().size() <= maxBatchSize) {
+      batch.add(events.poll());
+      nodeCount += next.event.getNodes().size();
+      next = events.peek();
+    }
+
+    return batch;
+  }
+
+  private boolean canCoalesce(NodeEvent e1, NodeEvent e2) {
+    return e1.getClass() == e2.getClass() && Objects.equals(e1.getUser(), e2.getUser());
+  }
+
+  private NodeEvent coalesce(List<PendingEvent> batch) {
+    if (batch.size() == 1) {
+      return batch.get(0).event;
+    }
+
+    NodeEvent first = batch.get(0).event;
+    LocalDateTime date = batch.get(batch.size() - 1).event.getDate();
+    boolean sync = batch.stream().anyMatch(p -> p.event.isSync());
+    List<NodeId> nodes = new ArrayList<>();
+    batch.forEach(p -> nodes.addAll(p.event.getNodes()));
+
+    return first instanceof NodeDeletedEvent
+        ? new NodeDeletedEvent(first.getUser(), date, sync, nodes)
+        : new NodeSavedEvent(first.getUser(), date, sync, nodes);
+  }
+
+  private void post(HookQueue queue, List<PendingEvent> batch, NodeEvent event, int attempt) {
+    HttpPost request = new HttpPost(queue.hook.getUrl());
+    request.addHeader("Content-Type", "application/json");
+    request.setEntity(new StringEntity(gson.toJson(new WebEvent(event)), UTF_8));
+
+    FutureCallback<HttpResponse> callback = new FutureCallback<HttpResponse>() {
+      @Override
+      public void completed(HttpResponse response) {
+        int status = response.getStatusLine().getStatusCode();
+        EntityUtils.consumeQuietly(response.getEntity());
+        if (status >= 200 && status < 300) {
+          delivered(queue, batch);
+        } else {
+          failed(new IOException("Unexpected response status " + status));
+        }
+      }
+
+      @Override
+      public void failed(Exception e) {
+        executor.execute(() -> retryOrGiveUp(queue, batch, event, attempt, e));
+      }
+
+      @Override
+      public void cancelled() {
+        failed(new IOException("Request cancelled"));
+      }
+    };
+
+    try {
+      httpClient.execute(request, callback);
+    } catch (RuntimeException e) {
+      callback.failed(e);
+    }
+  }
+
+  private void delivered(HookQueue queue, List<PendingEvent> batch) {
+    queue.consecutiveFailures = 0;
+    batch.forEach(PendingEvent::complete);
+    release(queue);
+  }
+
+  private void retryOrGiveUp(HookQueue queue, List<PendingEvent> batch, NodeEvent event,
+      int attempt, Exception e) {
+    if (attempt < maxRetries && !executor.isShutdown() && !queue.removed) {
+      long backoff = Math.min(retryBackoffMillis << Math.min(attempt, 30), maxRetryBackoffMillis);
+      log.debug("Failed to post to {} ({}), retrying in {} ms", queue.hook, e.getMessage(), backoff);
+      executor.schedule(() -> post(queue, batch, event, attempt + 1), backoff, MILLISECONDS);
+      return;
+    }
+
+    log.warn("Failed to post {} node ids to {} ({})",
+        event.getNodes().size(), queue.hook, e.getMessage());
+
+    if (++queue.consecutiveFailures >= circuitBreakerThreshold) {
+      log.warn("Opening circuit of {} for {} ms", queue.hook, circuitBreakerOpenMillis);
+      queue.circuitOpenUntil = System.currentTimeMillis() + circuitBreakerOpenMillis;
+    }
+
+    batch.forEach(PendingEvent::complete);
+    release(queue);
+  }
+
+  private class HookQueue {
+
+    private final Webhook hook;
+    private final BlockingQueue<PendingEvent> events;
+    private final AtomicBoolean draining = new AtomicBoolean();
+
+    // written only by the current drain owner
+    private volatile int consecutiveFailures;
+    private volatile long circuitOpenUntil;
+
+    private volatile boolean removed;
+
+    HookQueue(Webhook hook) {
+      this.hook = hook;
+      this.events = new LinkedBlockingQueue<>(queueCapacity);
+    }
+
+    boolean isCircuitOpen() {
+      return System.currentTimeMillis() < circuitOpenUntil;
+    }
+
+  }
+
+  private static class CachedHooks {
+
+    private final long version;
+    private final List<Webhook> hooks;
+
+    CachedHooks(long version, List<Webhook> hooks) {
+      this.version = version;
+      this.hooks = hooks;
+    }
+
+  }
+
+  private static class PendingEvent {
+
+    private final NodeEvent event;
+    private final CompletableFuture<Void> delivered = new CompletableFuture<>();
+
+    PendingEvent(NodeEvent event) {
+      this.event = event;
+    }
+
+    void complete() {
+      delivered.complete(null);
+    }
+
+  }
+
+}
@@ -0,0 +1,58 @@
+package fi.thl.termed.service.webhook.internal;
+
+import com.google.common.eventbus.EventBus;
+import fi.thl.termed.domain.User;
+import fi.thl.termed.domain.Webhook;
+import fi.thl.termed.domain.event.WebhooksChangedEvent;
+import fi.thl.termed.util.service.ForwardingService;
+import fi.thl.termed.util.service.SaveMode;
+import fi.thl.termed.util.service.Service;
+import fi.thl.termed.util.service.WriteOptions;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Posts {@link WebhooksChangedEvent} to event bus after each webhook write.
+ */
+public class WebhookWriteEventPostingService extends ForwardingService<UUID, Webhook> {
+
+  private EventBus eventBus;
+
+  public WebhookWriteEventPostingService(Service<UUID, Webhook> delegate, EventBus eventBus) {
+    super(delegate);
+    this.eventBus = eventBus;
+  }
+
+  @Override
+  public void save(Stream<Webhook> values, SaveMode mode, WriteOptions opts, User user) {
+    super.save(values, mode, opts, user);
+    eventBus.post(new WebhooksChangedEvent());
+  }
+
+  @Override
+  public UUID save(Webhook value, SaveMode mode, WriteOptions opts, User user) {
+    UUID id = super.save(value, mode, opts, user);
+    eventBus.post(new WebhooksChangedEvent());
+    return id;
+  }
+
+  @Override
+  public void delete(Stream<UUID> ids, WriteOptions opts, User user) {
+    super.delete(ids, opts, user);
+    eventBus.post(new WebhooksChangedEvent());
+  }
+
+  @Override
+  public void delete(UUID key, WriteOptions opts, User user) {
+    super.delete(key, opts, user);
+    eventBus.post(new WebhooksChangedEvent());
+  }
+
+  @Override
+  public void saveAndDelete(Stream<Webhook> saves, Stream<UUID> deletes, SaveMode mode,
+      WriteOptions opts, User user) {
+    super.saveAndDelete(saves, deletes, mode, opts, user);
+    eventBus.post(new WebhooksChangedEvent());
+  }
+
+}
@@ -1,5 +1,8 @@
 package fi.thl.termed.util.concurrent;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 
@@ -17,4 +20,13 @@ public final class ExecutorUtils {
     return executor;
   }
 
+  /**
+   * Creates fixed size {@link ExecutorService} with named daemon threads (e.g. "rdf-export-%d"),
+   * so that the pool needs no shutdown on application exit.
+   */
+  public static ExecutorService newFixedDaemonThreadPool(int nThreads, String nameFormat) {
+    return Executors.newFixedThreadPool(nThreads,
+        new ThreadFactoryBuilder().setNameFormat(nameFormat).setDaemon(true).build());
+  }
+
 }
@@ -29,8 +29,20 @@ public abstract class AbstractJdbcDao<K extends Serializable, V> implements Syst
   private RowMapper<V> valueMapper;
   private RowMapper<Tuple2<K, V>> entryMapper;
 
+  // if true, stream writes are executed as JDBC batches
+  private boolean batchWrites;
+
   public AbstractJdbcDao(DataSource dataSource) {
+    this(dataSource, false);
+  }
+
+  /**
+   * @param batchWrites if true, inserts, updates and deletes of a stream are sent in JDBC batches
+   * instead of one statement at a time. Subclasses using this should write only via jdbcTemplate.
+   */
+  public AbstractJdbcDao(DataSource dataSource, boolean batchWrites) {
     this.jdbcTemplate = new StreamingJdbcTemplate(dataSource);
+    this.batchWrites = batchWrites;
 
     this.keyMapper = buildKeyMapper();
     this.valueMapper = buildValueMapper();
@@ -44,17 +56,25 @@ public abstract class AbstractJdbcDao<K extends Serializable, V> implements Syst
 
   @Override
   public void insert(Stream<Tuple2<K, V>> entries) {
-    forEachAndClose(entries, e -> insert(e._1, e._2));
+    write(() -> forEachAndClose(entries, e -> insert(e._1, e._2)));
   }
 
   @Override
   public void update(Stream<Tuple2<K, V>> entries) {
-    forEachAndClose(entries, e -> update(e._1, e._2));
+    write(() -> forEachAndClose(entries, e -> update(e._1, e._2)));
   }
 
   @Override
   public void delete(Stream<K> keys) {
-    forEachAndClose(keys, this::delete);
+    write(() -> forEachAndClose(keys, this::delete));
+  }
+
+  private void write(Runnable writes) {
+    if (batchWrites) {
+      jdbcTemplate.batchUpdates(writes);
+    } else {
+      writes.run();
+    }
   }
 
   @Override
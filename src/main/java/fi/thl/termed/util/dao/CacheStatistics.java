@@ -0,0 +1,68 @@
+package fi.thl.termed.util.dao;
+
+/**
+ * Snapshot of cache statistics, load and refresh times are averages in milliseconds.
+ */
+public final class CacheStatistics {
+
+  private final long size;
+  private final long hitCount;
+  private final long missCount;
+  private final double hitRate;
+  private final long averageLoadMillis;
+  private final long refreshCount;
+  private final long averageRefreshMillis;
+  private final long evictionCount;
+  private final long invalidationCount;
+
+  public CacheStatistics(long size, long hitCount, long missCount, double hitRate,
+      long averageLoadMillis, long refreshCount, long averageRefreshMillis, long evictionCount,
+      long invalidationCount) {
+    this.size = size;
+    this.hitCount = hitCount;
+    this.missCount = missCount;
+    this.hitRate = hitRate;
+    this.averageLoadMillis = averageLoadMillis;
+    this.refreshCount = refreshCount;
+    this.averageRefreshMillis = averageRefreshMillis;
+    this.evictionCount = evictionCount;
+    this.invalidationCount = invalidationCount;
+  }
+
+  public long getSize() {
+    return size;
+  }
+
+  public long getHitCount() {
+    return hitCount;
+  }
+
+  public long getMissCount() {
+    return missCount;
+  }
+
+  public double getHitRate() {
+    return hitRate;
+  }
+
+  public long getAverageLoadMillis() {
+    return averageLoadMillis;
+  }
+
+  public long getRefreshCount() {
+    return refreshCount;
+  }
+
+  public long getAverageRefreshMillis() {
+    return averageRefreshMillis;
+  }
+
+  public long getEvictionCount() {
+    return evictionCount;
+  }
+
+  public long getInvalidationCount() {
+    return invalidationCount;
+  }
+
+}
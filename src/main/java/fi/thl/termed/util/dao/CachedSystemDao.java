@@ -1,91 +1,225 @@
 package fi.thl.termed.util.dao;
 
-import static fi.thl.termed.util.collect.StreamUtils.toImmutableListAndClose;
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
 
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
-import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.eventbus.Subscribe;
+import com.google.common.util.concurrent.MoreExecutors;
 import fi.thl.termed.domain.event.InvalidateCachesEvent;
 import fi.thl.termed.util.collect.Tuple;
 import fi.thl.termed.util.collect.Tuple2;
+import fi.thl.termed.util.event.SyncSubscriber;
 import fi.thl.termed.util.query.Specification;
 import java.io.Serializable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Stream;
 
+/**
+ * Caches values by key and keys by specification.
+ *
+ * <p>Cached specification results are tagged with the keys they contain. A write invalidates
+ * only results that contain a written key or whose specification matches a saved value, other
+ * results are kept. Very large writes fall back to invalidating all specification results.
+ *
+ * <p>Loads are single-flight and, if refresh interval is given, entries older than the interval
+ * are refreshed asynchronously while the old value is served. Refresh picks up changes made
+ * outside of this DAO (e.g. by database cascades or by other instances).
+ */
+@SyncSubscriber
 public class CachedSystemDao<K extends Serializable, V> implements SystemDao<K, V> {
 
   private static final int DEFAULT_SPECIFICATION_CACHE_SIZE = 100_000;
   private static final int DEFAULT_KEY_VALUE_CACHE_SIZE = 100_000;
 
+  // max number of (entry, specification) tests done for a write before invalidating all
+  private static final long MAX_INVALIDATION_TESTS = 10_000_000;
+
+  private final String name;
   private final SystemDao<K, V> delegate;
+  private final Runnable onWrite;
 
-  private final LoadingCache<Specification<K, V>, ImmutableList<K>> specificationCache;
-  private final LoadingCache<K, Optional<V>> keyValueCache;
+  private final RefreshAheadCache<Specification<K, V>, ImmutableSet<K>> specificationCache;
+  private final RefreshAheadCache<K, Optional<V>> keyValueCache;
 
-  private CachedSystemDao(SystemDao<K, V> delegate) {
-    this(delegate, DEFAULT_SPECIFICATION_CACHE_SIZE, DEFAULT_KEY_VALUE_CACHE_SIZE);
-  }
+  private final WriteSequence writeSequence = new WriteSequence();
+  private final AtomicLong version = new AtomicLong();
 
-  private CachedSystemDao(SystemDao<K, V> delegate, long specCacheSize, long keyValueCacheSize) {
+  private CachedSystemDao(String name, SystemDao<K, V> delegate, Duration refreshAfter,
+      Executor refreshExecutor, Runnable onWrite) {
+    this.name = name;
     this.delegate = delegate;
-    this.specificationCache = CacheBuilder.newBuilder()
-        .maximumSize(specCacheSize)
-        .build(CacheLoader.from(spec -> toImmutableListAndClose(delegate.keys(spec))));
-    this.keyValueCache = CacheBuilder.newBuilder()
-        .maximumSize(keyValueCacheSize)
-        .build(CacheLoader.from(delegate::get));
+    this.onWrite = onWrite;
+    this.specificationCache = new RefreshAheadCache<>(DEFAULT_SPECIFICATION_CACHE_SIZE,
+        this::loadKeys, writeSequence, refreshAfter.toNanos(), refreshExecutor,
+        version::incrementAndGet);
+    this.keyValueCache = new RefreshAheadCache<>(DEFAULT_KEY_VALUE_CACHE_SIZE,
+        delegate::get, writeSequence, refreshAfter.toNanos(), refreshExecutor,
+        version::incrementAndGet);
   }
 
   public static <K extends Serializable, V> CachedSystemDao<K, V> cache(SystemDao<K, V> delegate) {
-    return new CachedSystemDao<>(delegate);
+    return cache(delegate.getClass().getSimpleName(), delegate, Duration.ZERO,
+        MoreExecutors.directExecutor(), () -> {
+        });
+  }
+
+  /**
+   * Creates named cache for delegate. Zero refresh interval disables refresh-ahead. Given
+   * callback is run after each write (e.g. to notify other instances).
+   */
+  public static <K extends Serializable, V> CachedSystemDao<K, V> cache(String name,
+      SystemDao<K, V> delegate, Duration refreshAfter, Executor refreshExecutor,
+      Runnable onWrite) {
+    return new CachedSystemDao<>(name, delegate, refreshAfter, refreshExecutor, onWrite);
+  }
+
+  private ImmutableSet<K> loadKeys(Specification<K, V> specification) {
+    try (Stream<K> keys = delegate.keys(specification)) {
+      return keys.collect(toImmutableSet());
+    }
   }
 
   @Subscribe
   public void clearCachesOn(InvalidateCachesEvent e) {
-    specificationCache.invalidateAll();
-    keyValueCache.invalidateAll();
+    if (!e.invalidates(name)) {
+      return;
+    }
+
+    writeSequence.begin();
+    try {
+      specificationCache.invalidateAll();
+      keyValueCache.invalidateAll();
+    } finally {
+      writeSequence.end();
+      version.incrementAndGet();
+    }
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Returns version of cached data. Version is incremented after each write and cache
+   * invalidation, so values derived from this DAO can be cached by version.
+   */
+  public long getVersion() {
+    return version.get();
+  }
+
+  /**
+   * Returns statistics of specification and value caches.
+   */
+  public ImmutableMap<String, CacheStatistics> getStats() {
+    return ImmutableMap.of(
+        "specifications", specificationCache.stats(),
+        "values", keyValueCache.stats());
   }
 
   @Override
   public void insert(Stream<Tuple2<K, V>> entries) {
-    delegate.insert(entries.peek(e -> keyValueCache.invalidate(e._1)));
-    specificationCache.invalidateAll();
+    List<Tuple2<K, V>> saved = new ArrayList<>();
+    writeSequence.begin();
+    try {
+      delegate.insert(entries.peek(saved::add));
+    } finally {
+      invalidate(saved, ImmutableSet.of());
+    }
   }
 
   @Override
   public void insert(K key, V value) {
-    delegate.insert(key, value);
-    keyValueCache.invalidate(key);
-    specificationCache.invalidateAll();
+    writeSequence.begin();
+    try {
+      delegate.insert(key, value);
+    } finally {
+      invalidate(Tuple.of(key, value));
+    }
   }
 
   @Override
   public void update(Stream<Tuple2<K, V>> entries) {
-    delegate.update(entries.peek(e -> keyValueCache.invalidate(e._1)));
-    specificationCache.invalidateAll();
+    List<Tuple2<K, V>> saved = new ArrayList<>();
+    writeSequence.begin();
+    try {
+      delegate.update(entries.peek(saved::add));
+    } finally {
+      invalidate(saved, ImmutableSet.of());
+    }
   }
 
   @Override
   public void update(K key, V value) {
-    delegate.update(key, value);
-    keyValueCache.invalidate(key);
-    specificationCache.invalidateAll();
+    writeSequence.begin();
+    try {
+      delegate.update(key, value);
+    } finally {
+      invalidate(Tuple.of(key, value));
+    }
   }
 
   @Override
   public void delete(Stream<K> keys) {
-    delegate.delete(keys.peek(keyValueCache::invalidate));
-    specificationCache.invalidateAll();
+    List<K> deleted = new ArrayList<>();
+    writeSequence.begin();
+    try {
+      delegate.delete(keys.peek(deleted::add));
+    } finally {
+      invalidate(ImmutableSet.of(), deleted);
+    }
   }
 
   @Override
   public void delete(K key) {
-    delegate.delete(key);
-    keyValueCache.invalidate(key);
-    specificationCache.invalidateAll();
+    writeSequence.begin();
+    try {
+      delegate.delete(key);
+    } finally {
+      invalidate(ImmutableSet.of(), ImmutableSet.of(key));
+    }
+  }
+
+  private void invalidate(Tuple2<K, V> saved) {
+    invalidate(ImmutableSet.of(saved), ImmutableSet.of());
+  }
+
+  // called after each write, ends the write started by caller
+  private void invalidate(Collection<Tuple2<K, V>> saved, Collection<K> deleted) {
+    try {
+      saved.forEach(e -> keyValueCache.invalidate(e._1));
+      deleted.forEach(keyValueCache::invalidate);
+
+      if ((saved.size() + deleted.size()) * specificationCache.size() > MAX_INVALIDATION_TESTS) {
+        specificationCache.invalidateAll();
+      } else {
+        specificationCache.invalidateIf((spec, keys) ->
+            saved.stream().anyMatch(e -> keys.contains(e._1) || matches(spec, e._1, e._2)) ||
+                deleted.stream().anyMatch(keys::contains));
+      }
+    } finally {
+      writeSequence.end();
+      version.incrementAndGet();
+    }
+
+    if (!saved.isEmpty() || !deleted.isEmpty()) {
+      onWrite.run();
+    }
+  }
+
+  private boolean matches(Specification<K, V> spec, K key, V value) {
+    try {
+      return spec.test(key, value);
+    } catch (RuntimeException e) {
+      // can't tell, invalidate to be safe
+      return true;
+    }
   }
 
   @Override
@@ -95,7 +229,7 @@ public class CachedSystemDao<K extends Serializable, V> implements SystemDao<K,
 
   @Override
   public Stream<K> keys(Specification<K, V> specification) {
-    return specificationCache.getUnchecked(specification).stream();
+    return specificationCache.get(specification).stream();
   }
 
   @Override
@@ -110,7 +244,7 @@ public class CachedSystemDao<K extends Serializable, V> implements SystemDao<K,
 
   @Override
   public Optional<V> get(K key) {
-    return keyValueCache.getUnchecked(key);
+    return keyValueCache.get(key);
   }
 
   @Override
@@ -0,0 +1,53 @@
+package fi.thl.termed.util.dao;
+
+import static fi.thl.termed.util.collect.MapUtils.leftValues;
+import static fi.thl.termed.util.collect.Tuple.entriesAsTuples;
+
+import com.google.common.collect.MapDifference;
+import com.google.common.collect.Maps;
+import fi.thl.termed.domain.User;
+import fi.thl.termed.util.collect.Tuple2;
+import fi.thl.termed.util.query.Specification;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+public final class DaoUtils {
+
+  private DaoUtils() {
+  }
+
+  /**
+   * Loads entries matching any of given specifications and accepted by key filter. Useful for
+   * loading rows of many objects with few broad queries (e.g. one per graph) instead of one query
+   * per object.
+   */
+  public static <K extends Serializable, V> Map<K, V> entries(Dao<K, V> dao,
+      Stream<? extends Specification<K, V>> specifications, Predicate<K> keyFilter, User user) {
+    Map<K, V> entries = new HashMap<>();
+
+    specifications.forEach(specification -> {
+      try (Stream<Tuple2<K, V>> results = dao.entries(specification, user)) {
+        results.filter(e -> keyFilter.test(e._1)).forEach(e -> entries.put(e._1, e._2));
+      }
+    });
+
+    return entries;
+  }
+
+  /**
+   * Writes difference of new and old entries with one delete, update and insert stream each.
+   * Removed entries are deleted first so that changed values can't conflict with them.
+   */
+  public static <K extends Serializable, V> void saveDiff(Dao<K, V> dao, Map<K, V> newEntries,
+      Map<K, V> oldEntries, User user) {
+    MapDifference<K, V> diff = Maps.difference(newEntries, oldEntries);
+
+    dao.delete(diff.entriesOnlyOnRight().keySet().stream(), user);
+    dao.update(entriesAsTuples(leftValues(diff.entriesDiffering())), user);
+    dao.insert(entriesAsTuples(diff.entriesOnlyOnLeft()), user);
+  }
+
+}
@@ -0,0 +1,165 @@
+package fi.thl.termed.util.dao;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded cache with single-flight loading and optional refresh-ahead.
+ *
+ * <p>Concurrent requests for a missing key wait for a single load. If refresh interval is
+ * positive, an entry older than the interval is still served but a single asynchronous reload
+ * is started for it. Loads that overlap a write (as tracked by given write sequence) are served
+ * but not kept, so that a value read before a write can't be cached after the write has
+ * invalidated the key.
+ */
+class RefreshAheadCache<K, T> {
+
+  private final Logger log = LoggerFactory.getLogger(getClass());
+
+  private final Cache<K, Entry<T>> cache;
+  private final Function<K, T> loader;
+
+  private final WriteSequence writeSequence;
+  private final long refreshAfterNanos;
+  private final Executor refreshExecutor;
+  private final Runnable onRefreshChange;
+
+  private final LongAdder refreshes = new LongAdder();
+  private final LongAdder refreshTimeNanos = new LongAdder();
+  private final LongAdder invalidations = new LongAdder();
+
+  RefreshAheadCache(long maxSize, Function<K, T> loader, WriteSequence writeSequence,
+      long refreshAfterNanos, Executor refreshExecutor, Runnable onRefreshChange) {
+    this.cache = CacheBuilder.newBuilder().maximumSize(maxSize).recordStats().build();
+    this.loader = loader;
+    this.writeSequence = writeSequence;
+    this.refreshAfterNanos = refreshAfterNanos;
+    this.refreshExecutor = refreshExecutor;
+    this.onRefreshChange = onRefreshChange;
+  }
+
+  T get(K key) {
+    Entry<T> entry;
+
+    try {
+      entry = cache.get(key, () -> load(key));
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new CacheException(e.getCause());
+    }
+
+    if (!entry.valid) {
+      cache.asMap().remove(key, entry);
+    } else if (refreshAfterNanos > 0 &&
+        System.nanoTime() - entry.loadedNanos > refreshAfterNanos &&
+        entry.refreshing.compareAndSet(false, true)) {
+      refreshAsync(key, entry);
+    }
+
+    return entry.value;
+  }
+
+  private Entry<T> load(K key) {
+    long stamp = writeSequence.stamp();
+    long start = System.nanoTime();
+    T value = Objects.requireNonNull(loader.apply(key));
+    return new Entry<>(value, start, writeSequence.validate(stamp));
+  }
+
+  private void refreshAsync(K key, Entry<T> entry) {
+    try {
+      refreshExecutor.execute(() -> refresh(key, entry));
+    } catch (RejectedExecutionException e) {
+      log.warn("Cache refresh rejected: {}", e.getMessage());
+      entry.refreshing.set(false);
+    }
+  }
+
+  private void refresh(K key, Entry<T> entry) {
+    try {
+      Entry<T> refreshed = load(key);
+
+      refreshes.increment();
+      refreshTimeNanos.add(System.nanoTime() - refreshed.loadedNanos);
+
+      // replaced only if not invalidated (or replaced) meanwhile
+      if (refreshed.valid && cache.asMap().replace(key, entry, refreshed) &&
+          !refreshed.value.equals(entry.value)) {
+        onRefreshChange.run();
+      }
+    } catch (RuntimeException e) {
+      log.warn("Failed to refresh cached value for {}", key, e);
+    } finally {
+      entry.refreshing.set(false);
+    }
+  }
+
+  void invalidate(K key) {
+    cache.invalidate(key);
+    invalidations.increment();
+  }
+
+  void invalidateIf(BiPredicate<K, T> predicate) {
+    cache.asMap().entrySet().removeIf(e -> {
+      if (predicate.test(e.getKey(), e.getValue().value)) {
+        invalidations.increment();
+        return true;
+      }
+      return false;
+    });
+  }
+
+  void invalidateAll() {
+    invalidations.add(cache.size());
+    cache.invalidateAll();
+  }
+
+  long size() {
+    return cache.size();
+  }
+
+  CacheStatistics stats() {
+    CacheStats stats = cache.stats();
+    long refreshCount = refreshes.sum();
+    return new CacheStatistics(
+        cache.size(),
+        stats.hitCount(),
+        stats.missCount(),
+        stats.hitRate(),
+        TimeUnit.NANOSECONDS.toMillis((long) stats.averageLoadPenalty()),
+        refreshCount,
+        refreshCount > 0 ? TimeUnit.NANOSECONDS.toMillis(refreshTimeNanos.sum() / refreshCount) : 0,
+        stats.evictionCount(),
+        invalidations.sum());
+  }
+
+  private static final class Entry<T> {
+
+    private final T value;
+    private final long loadedNanos;
+    private final boolean valid;
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    Entry(T value, long loadedNanos, boolean valid) {
+      this.value = value;
+      this.loadedNanos = loadedNanos;
+      this.valid = valid;
+    }
+
+  }
+
+}
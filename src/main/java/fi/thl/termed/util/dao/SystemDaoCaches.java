@@ -0,0 +1,71 @@
+package fi.thl.termed.util.dao;
+
+import static fi.thl.termed.util.EventBusUtils.register;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.eventbus.EventBus;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import fi.thl.termed.domain.event.CachedDataChangedEvent;
+import java.io.Serializable;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates and keeps track of named {@link CachedSystemDao}s. Caches are registered to event bus
+ * and share refresh settings and a small refresh thread pool. Writes through a cache are posted
+ * as {@link CachedDataChangedEvent}s.
+ */
+public class SystemDaoCaches implements AutoCloseable {
+
+  private static final int REFRESH_THREADS = 2;
+  private static final int REFRESH_QUEUE_SIZE = 10_000;
+
+  private final EventBus eventBus;
+  private final Duration refreshAfter;
+  private final ExecutorService refreshExecutor;
+
+  private final Map<String, CachedSystemDao<?, ?>> caches = new ConcurrentHashMap<>();
+
+  public SystemDaoCaches(EventBus eventBus, Duration refreshAfter) {
+    this.eventBus = eventBus;
+    this.refreshAfter = refreshAfter;
+    this.refreshExecutor = new ThreadPoolExecutor(REFRESH_THREADS, REFRESH_THREADS,
+        0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(REFRESH_QUEUE_SIZE),
+        new ThreadFactoryBuilder().setNameFormat("dao-cache-refresh-%d").setDaemon(true).build());
+  }
+
+  /**
+   * Returns cache with given name, creating it for delegate if not yet created. Name should
+   * identify the delegate (i.e. its table), so that all users of a table share the same cache.
+   */
+  @SuppressWarnings("unchecked")
+  public <K extends Serializable, V> CachedSystemDao<K, V> cache(String name,
+      SystemDao<K, V> delegate) {
+    return (CachedSystemDao<K, V>) caches.computeIfAbsent(name, n -> register(eventBus,
+        CachedSystemDao.cache(n, delegate, refreshAfter, refreshExecutor,
+            () -> eventBus.post(new CachedDataChangedEvent(n)))));
+  }
+
+  /**
+   * Returns statistics of each cache by name.
+   */
+  public ImmutableMap<String, ImmutableMap<String, CacheStatistics>> getStats() {
+    ImmutableMap.Builder<String, ImmutableMap<String, CacheStatistics>> stats =
+        ImmutableMap.builder();
+    caches.entrySet().stream()
+        .sorted(Map.Entry.comparingByKey())
+        .forEach(e -> stats.put(e.getKey(), e.getValue().getStats()));
+    return stats.build();
+  }
+
+  @Override
+  public void close() {
+    refreshExecutor.shutdownNow();
+  }
+
+}
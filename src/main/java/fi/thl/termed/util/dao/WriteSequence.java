@@ -0,0 +1,39 @@
+package fi.thl.termed.util.dao;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks writes so that readers can check whether a read overlapped any write.
+ */
+class WriteSequence {
+
+  private final AtomicLong sequence = new AtomicLong();
+  private final AtomicInteger writesInProgress = new AtomicInteger();
+
+  void begin() {
+    writesInProgress.incrementAndGet();
+    sequence.incrementAndGet();
+  }
+
+  void end() {
+    sequence.incrementAndGet();
+    writesInProgress.decrementAndGet();
+  }
+
+  /**
+   * Returns stamp to be validated after read, or -1 if a write is in progress.
+   */
+  long stamp() {
+    long stamp = sequence.get();
+    return writesInProgress.get() == 0 ? stamp : -1;
+  }
+
+  /**
+   * Returns true if no write has started or been in progress since given stamp was taken.
+   */
+  boolean validate(long stamp) {
+    return stamp != -1 && writesInProgress.get() == 0 && sequence.get() == stamp;
+  }
+
+}
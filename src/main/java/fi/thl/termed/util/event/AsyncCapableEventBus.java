@@ -0,0 +1,296 @@
+package fi.thl.termed.util.event;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Event bus that calls subscribers either on the posting thread (like plain {@link EventBus}) or
+ * on subscriber specific executors.
+ *
+ * Delivery mode is declared with {@link AsyncSubscriber} or {@link SyncSubscriber} on subscriber
+ * class, other subscribers use the bus default. Each async subscriber has one or more single
+ * threaded lanes with bounded queues, events are routed to lanes by partition key so that events
+ * with the same key are delivered in order. If lane queue is full, posting thread blocks until
+ * there is room. Events matching {@code awaitDelivery} are posted asynchronously but post does not
+ * return before they have been handled.
+ *
+ * Events matching {@code broadcast} are delivered to every lane of a subscriber, i.e. handled once
+ * per lane, so that they are ordered with respect to events of all partition keys. Intended for
+ * idempotent control events such as cache invalidations.
+ *
+ * Queue depth of each lane and handler latency of each async subscriber are published to given
+ * {@link MeterRegistry}.
+ */
+public class AsyncCapableEventBus extends EventBus {
+
+  private final Logger log = LoggerFactory.getLogger(getClass());
+
+  private final boolean asyncByDefault;
+  private final Function<Object, Object> partitionKey;
+  private final Predicate<Object> awaitDelivery;
+  private final Predicate<Object> broadcast;
+  private final MeterRegistry meterRegistry;
+
+  private final Map<Object, AsyncSubscription> asyncSubscriptions =
+      Collections.synchronizedMap(new IdentityHashMap<>());
+
+  public AsyncCapableEventBus(boolean asyncByDefault,
+      Function<Object, Object> partitionKey,
+      Predicate<Object> awaitDelivery,
+      MeterRegistry meterRegistry) {
+    this(asyncByDefault, partitionKey, awaitDelivery, e -> false, meterRegistry);
+  }
+
+  public AsyncCapableEventBus(boolean asyncByDefault,
+      Function<Object, Object> partitionKey,
+      Predicate<Object> awaitDelivery,
+      Predicate<Object> broadcast,
+      MeterRegistry meterRegistry) {
+    this.asyncByDefault = asyncByDefault;
+    this.partitionKey = partitionKey;
+    this.awaitDelivery = awaitDelivery;
+    this.broadcast = broadcast;
+    this.meterRegistry = meterRegistry;
+  }
+
+  @Override
+  public void register(Object subscriber) {
+    Class<?> subscriberClass = subscriber.getClass();
+
+    boolean async = subscriberClass.isAnnotationPresent(AsyncSubscriber.class) ||
+        (asyncByDefault && !subscriberClass.isAnnotationPresent(SyncSubscriber.class));
+
+    if (async) {
+      AsyncSubscriber settings = subscriberClass.getAnnotation(AsyncSubscriber.class);
+      asyncSubscriptions.computeIfAbsent(subscriber, s -> new AsyncSubscription(s,
+          settings != null ? settings.lanes() : 1,
+          settings != null ? settings.queueCapacity() : 10_000));
+    } else {
+      super.register(subscriber);
+    }
+  }
+
+  @Override
+  public void unregister(Object subscriber) {
+    AsyncSubscription subscription = asyncSubscriptions.remove(subscriber);
+
+    if (subscription != null) {
+      subscription.shutdown();
+    } else {
+      super.unregister(subscriber);
+    }
+  }
+
+  @Override
+  public void post(Object event) {
+    super.post(event);
+
+    List<AsyncSubscription> subscriptions;
+    synchronized (asyncSubscriptions) {
+      subscriptions = new ArrayList<>(asyncSubscriptions.values());
+    }
+
+    boolean await = awaitDelivery.test(event);
+    boolean toAllLanes = broadcast.test(event);
+    List<Future<?>> deliveries = new ArrayList<>();
+
+    for (AsyncSubscription subscription : subscriptions) {
+      if (subscription.accepts(event)) {
+        if (toAllLanes) {
+          deliveries.addAll(subscription.submitToAll(event));
+        } else {
+          deliveries.add(subscription.submit(event));
+        }
+      }
+    }
+
+    if (await) {
+      deliveries.forEach(this::waitFor);
+    }
+  }
+
+  private void waitFor(Future<?> delivery) {
+    try {
+      delivery.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      log.error("", e.getCause());
+    }
+  }
+
+  /**
+   * Stops all async subscriber lanes after queued events have been delivered. Events posted after
+   * shutdown are delivered to async subscribers on the posting thread, e.g. so that subscribers can
+   * release resources on a shutdown event only after their lanes have been drained.
+   */
+  public void shutdown() {
+    List<AsyncSubscription> subscriptions;
+    synchronized (asyncSubscriptions) {
+      subscriptions = new ArrayList<>(asyncSubscriptions.values());
+    }
+    subscriptions.forEach(AsyncSubscription::shutdown);
+  }
+
+  private class AsyncSubscription {
+
+    private final String name;
+    private final EventBus delegate;
+    private final Set<Class<?>> eventTypes;
+    private final List<Lane> lanes = new ArrayList<>();
+    private final Timer handlerTimer;
+    private volatile boolean shutdown;
+
+    AsyncSubscription(Object subscriber, int laneCount, int queueCapacity) {
+      this.name = subscriber.getClass().getName();
+      this.delegate = new EventBus(name);
+      this.delegate.register(subscriber);
+      this.eventTypes = subscribedEventTypes(subscriber.getClass());
+      this.handlerTimer = meterRegistry.timer("termed.events.handler.latency",
+          "subscriber", name);
+
+      for (int i = 0; i < laneCount; i++) {
+        lanes.add(new Lane(name, i, queueCapacity));
+      }
+    }
+
+    boolean accepts(Object event) {
+      return eventTypes.stream().anyMatch(t -> t.isInstance(event));
+    }
+
+    Future<?> submit(Object event) {
+      Object key = partitionKey.apply(event);
+      return submit(lanes.get(Math.floorMod(Objects.hashCode(key), lanes.size())), event);
+    }
+
+    List<Future<?>> submitToAll(Object event) {
+      if (shutdown) {
+        return Collections.singletonList(submit(lanes.get(0), event));
+      }
+
+      List<Future<?>> deliveries = new ArrayList<>();
+      for (Lane lane : lanes) {
+        deliveries.add(submit(lane, event));
+      }
+      return deliveries;
+    }
+
+    private Future<?> submit(Lane lane, Object event) {
+      Runnable delivery = () -> handlerTimer.record(() -> delegate.post(event));
+
+      if (shutdown) {
+        delivery.run();
+        return CompletableFuture.completedFuture(null);
+      }
+
+      return lane.submit(delivery);
+    }
+
+    // events posted while lanes are drained are delivered on the posting thread
+    void shutdown() {
+      shutdown = true;
+      lanes.forEach(Lane::shutdown);
+    }
+
+  }
+
+  private class Lane {
+
+    private final ThreadPoolExecutor executor;
+    private volatile Thread thread;
+
+    Lane(String subscriberName, int number, int queueCapacity) {
+      String threadName = "event-" + subscriberName.substring(subscriberName.lastIndexOf('.') + 1)
+          + "-" + number + "-%d";
+      this.executor = new ThreadPoolExecutor(1, 1, 0, MILLISECONDS,
+          new LinkedBlockingQueue<>(queueCapacity),
+          r -> {
+            thread = new ThreadFactoryBuilder()
+                .setNameFormat(threadName)
+                .setDaemon(true)
+                .build()
+                .newThread(r);
+            return thread;
+          },
+          (r, e) -> {
+            if (e.isShutdown()) {
+              throw new RejectedExecutionException("Event lane is shut down");
+            }
+            try {
+              e.getQueue().put(r);
+            } catch (InterruptedException ex) {
+              Thread.currentThread().interrupt();
+              throw new RejectedExecutionException(ex);
+            }
+          });
+
+      meterRegistry.gauge("termed.events.queue.depth",
+          Tags.of("subscriber", subscriberName, "lane", String.valueOf(number)),
+          executor, ex -> ex.getQueue().size());
+    }
+
+    Future<?> submit(Runnable task) {
+      // run directly if posted from the lane itself to avoid waiting for own queue
+      if (Thread.currentThread() == thread) {
+        task.run();
+        return CompletableFuture.completedFuture(null);
+      }
+      return executor.submit(task);
+    }
+
+    void shutdown() {
+      executor.shutdown();
+      try {
+        if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+          log.warn("Event lane did not terminate in time, {} events not delivered",
+              executor.getQueue().size());
+          executor.shutdownNow();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        executor.shutdownNow();
+      }
+    }
+
+  }
+
+  // collects parameter types of @Subscribe methods declared in class and its super classes
+  private static Set<Class<?>> subscribedEventTypes(Class<?> subscriberClass) {
+    ImmutableSet.Builder<Class<?>> types = ImmutableSet.builder();
+    for (Class<?> c = subscriberClass; c != null; c = c.getSuperclass()) {
+      for (Method method : c.getDeclaredMethods()) {
+        if (method.isAnnotationPresent(Subscribe.class) && method.getParameterCount() == 1) {
+          types.add(method.getParameterTypes()[0]);
+        }
+      }
+    }
+    return types.build();
+  }
+
+}
@@ -0,0 +1,28 @@
+package fi.thl.termed.util.event;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks event subscriber to be called on its own executor by {@link AsyncCapableEventBus}. Events
+ * with the same partition key are delivered in order.
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface AsyncSubscriber {
+
+  /**
+   * Number of single threaded delivery lanes, events are routed to lanes by partition key.
+   */
+  int lanes() default 1;
+
+  /**
+   * Max number of queued events per lane. When full, posting thread blocks.
+   */
+  int queueCapacity() default 10_000;
+
+}
@@ -0,0 +1,19 @@
+package fi.thl.termed.util.event;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks event subscriber to be always called on the posting thread by {@link
+ * AsyncCapableEventBus}, e.g. when subscriber invalidates caches that must be up to date when post
+ * returns.
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface SyncSubscriber {
+
+}
@@ -0,0 +1,153 @@
+package fi.thl.termed.util.invalidation;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+import fi.thl.termed.domain.event.CachedDataChangedEvent;
+import fi.thl.termed.domain.event.InvalidateCachesEvent;
+import fi.thl.termed.util.event.SyncSubscriber;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Relays cache invalidations between local event bus and other instances.
+ *
+ * <p>Local {@link CachedDataChangedEvent}s and {@link InvalidateCachesEvent}s are published as
+ * numbered messages. Changes made in a transaction are collected and published once after the
+ * transaction commits, so that other instances don't reload data before it's visible to them.
+ *
+ * <p>Messages from other instances are posted locally as remote {@link InvalidateCachesEvent}s
+ * for the named caches. If a sequence gap shows that messages from an instance were missed, or
+ * if broadcaster reports lost messages, all caches are invalidated. The first message received
+ * from an instance is taken as the baseline of its sequence, as messages it sent before this
+ * instance started are not needed.
+ */
+@SyncSubscriber
+public class CacheInvalidationRelay implements InvalidationListener {
+
+  private final Logger log = LoggerFactory.getLogger(getClass());
+
+  private final String instanceId = UUID.randomUUID().toString();
+
+  private final EventBus eventBus;
+  private final InvalidationBroadcaster broadcaster;
+
+  private long sequence = 0;
+  private final Map<String, Long> receivedSequences = new HashMap<>();
+
+  public CacheInvalidationRelay(EventBus eventBus, InvalidationBroadcaster broadcaster) {
+    this.eventBus = eventBus;
+    this.broadcaster = broadcaster;
+    broadcaster.subscribe(this);
+  }
+
+  public String getInstanceId() {
+    return instanceId;
+  }
+
+  @Subscribe
+  public void publishOn(CachedDataChangedEvent e) {
+    publishAfterCommit(ImmutableSet.of(e.getCache()));
+  }
+
+  @Subscribe
+  public void publishOn(InvalidateCachesEvent e) {
+    if (!e.isRemote()) {
+      publishAfterCommit(e.getCaches());
+    }
+  }
+
+  private void publishAfterCommit(Set<String> caches) {
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      publish(caches);
+      return;
+    }
+
+    PublishAfterCommit pending = TransactionSynchronizationManager.getSynchronizations().stream()
+        .filter(s -> s instanceof PublishAfterCommit && ((PublishAfterCommit) s).owner() == this)
+        .map(s -> (PublishAfterCommit) s)
+        .findFirst()
+        .orElseGet(() -> {
+          PublishAfterCommit synchronization = new PublishAfterCommit();
+          TransactionSynchronizationManager.registerSynchronization(synchronization);
+          return synchronization;
+        });
+
+    pending.add(caches);
+  }
+
+  // empty set of caches invalidates all
+  private synchronized void publish(Set<String> caches) {
+    InvalidationMessage message = new InvalidationMessage(instanceId, ++sequence, caches);
+    log.trace("Publish {}", message);
+    broadcaster.publish(message);
+  }
+
+  @Override
+  public void onMessage(InvalidationMessage message) {
+    if (message.getInstanceId().equals(instanceId)) {
+      return;
+    }
+
+    if (isMissingPrevious(message)) {
+      log.info("Missed cache invalidations from {}, invalidating all caches",
+          message.getInstanceId());
+      eventBus.post(new InvalidateCachesEvent(ImmutableSet.of(), true));
+    } else {
+      log.trace("Received {}", message);
+      eventBus.post(new InvalidateCachesEvent(message.getCaches(), true));
+    }
+  }
+
+  private synchronized boolean isMissingPrevious(InvalidationMessage message) {
+    Long previous = receivedSequences.get(message.getInstanceId());
+
+    // a late (reordered) message is still applied but doesn't rewind the sequence
+    if (previous == null || message.getSequence() > previous) {
+      receivedSequences.put(message.getInstanceId(), message.getSequence());
+    }
+
+    return previous != null && message.getSequence() > previous + 1;
+  }
+
+  @Override
+  public void onMessagesMissed() {
+    log.info("Cache invalidations may have been missed, invalidating all caches");
+    eventBus.post(new InvalidateCachesEvent(ImmutableSet.of(), true));
+  }
+
+  private class PublishAfterCommit extends TransactionSynchronizationAdapter {
+
+    // empty means that all caches are invalidated
+    private final Set<String> caches = new LinkedHashSet<>();
+    private boolean all = false;
+
+    CacheInvalidationRelay owner() {
+      return CacheInvalidationRelay.this;
+    }
+
+    void add(Set<String> caches) {
+      if (caches.isEmpty()) {
+        all = true;
+      }
+      this.caches.addAll(caches);
+    }
+
+    @Override
+    public void afterCompletion(int status) {
+      if (status == TransactionSynchronization.STATUS_COMMITTED) {
+        publish(all ? ImmutableSet.of() : caches);
+      }
+    }
+
+  }
+
+}
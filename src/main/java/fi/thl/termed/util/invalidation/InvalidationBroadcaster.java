@@ -0,0 +1,15 @@
+package fi.thl.termed.util.invalidation;
+
+/**
+ * Delivers cache invalidation messages between instances sharing a database.
+ */
+public interface InvalidationBroadcaster extends AutoCloseable {
+
+  void publish(InvalidationMessage message);
+
+  void subscribe(InvalidationListener listener);
+
+  @Override
+  void close();
+
+}
@@ -0,0 +1,9 @@
+package fi.thl.termed.util.invalidation;
+
+public class InvalidationException extends RuntimeException {
+
+  public InvalidationException(String message, Throwable cause) {
+    super(message, cause);
+  }
+
+}
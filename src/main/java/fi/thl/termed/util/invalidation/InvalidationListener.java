@@ -0,0 +1,15 @@
+package fi.thl.termed.util.invalidation;
+
+public interface InvalidationListener {
+
+  /**
+   * Called for each received message, including messages sent by the receiving instance.
+   */
+  void onMessage(InvalidationMessage message);
+
+  /**
+   * Called when broadcaster knows that messages may have been lost (e.g. after reconnect).
+   */
+  void onMessagesMissed();
+
+}
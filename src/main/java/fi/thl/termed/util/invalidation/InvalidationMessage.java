@@ -0,0 +1,99 @@
+package fi.thl.termed.util.invalidation;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Cache invalidation message sent by an instance. Each instance numbers its messages with
+ * consecutive sequence numbers starting from one. Message without cache names invalidates all
+ * caches.
+ */
+public final class InvalidationMessage {
+
+  private static final char SEPARATOR = ';';
+  private static final char CACHE_SEPARATOR = ',';
+
+  private final String instanceId;
+  private final long sequence;
+  private final ImmutableSet<String> caches;
+
+  public InvalidationMessage(String instanceId, long sequence, Set<String> caches) {
+    checkArgument(isValidName(instanceId), "Illegal instance id: %s", instanceId);
+    caches.forEach(c -> checkArgument(isValidName(c), "Illegal cache name: %s", c));
+    this.instanceId = instanceId;
+    this.sequence = sequence;
+    this.caches = ImmutableSet.copyOf(caches);
+  }
+
+  private static boolean isValidName(String name) {
+    return !name.isEmpty() && name.indexOf(SEPARATOR) == -1 && name.indexOf(CACHE_SEPARATOR) == -1;
+  }
+
+  /**
+   * Parses message from format produced by {@link #encode()}.
+   */
+  public static InvalidationMessage decode(String encoded) {
+    List<String> parts = Splitter.on(SEPARATOR).splitToList(encoded);
+    checkArgument(parts.size() == 3, "Illegal invalidation message: %s", encoded);
+    return new InvalidationMessage(parts.get(0), Long.parseLong(parts.get(1)),
+        decodeCaches(parts.get(2)));
+  }
+
+  static ImmutableSet<String> decodeCaches(String encoded) {
+    return ImmutableSet.copyOf(Splitter.on(CACHE_SEPARATOR).omitEmptyStrings().split(encoded));
+  }
+
+  /**
+   * Encodes message as "instanceId;sequence;cache,cache,..."
+   */
+  public String encode() {
+    return instanceId + SEPARATOR + sequence + SEPARATOR + encodeCaches();
+  }
+
+  String encodeCaches() {
+    return Joiner.on(CACHE_SEPARATOR).join(caches);
+  }
+
+  public String getInstanceId() {
+    return instanceId;
+  }
+
+  public long getSequence() {
+    return sequence;
+  }
+
+  public ImmutableSet<String> getCaches() {
+    return caches;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    InvalidationMessage that = (InvalidationMessage) o;
+    return sequence == that.sequence &&
+        Objects.equals(instanceId, that.instanceId) &&
+        Objects.equals(caches, that.caches);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(instanceId, sequence, caches);
+  }
+
+  @Override
+  public String toString() {
+    return encode();
+  }
+
+}
@@ -0,0 +1,29 @@
+package fi.thl.termed.util.invalidation;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Delivers messages synchronously to all subscribers in the same JVM. Useful for tests and for
+ * running several instances (e.g. application contexts) in one process.
+ */
+public class LoopbackInvalidationBroadcaster implements InvalidationBroadcaster {
+
+  private final List<InvalidationListener> listeners = new CopyOnWriteArrayList<>();
+
+  @Override
+  public void publish(InvalidationMessage message) {
+    listeners.forEach(listener -> listener.onMessage(message));
+  }
+
+  @Override
+  public void subscribe(InvalidationListener listener) {
+    listeners.add(listener);
+  }
+
+  @Override
+  public void close() {
+    listeners.clear();
+  }
+
+}
@@ -0,0 +1,184 @@
+package fi.thl.termed.util.invalidation;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import javax.sql.DataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Broadcasts messages through cache_invalidation table that holds the latest message of each
+ * instance. Table is polled with given interval and a message is delivered for each instance
+ * whose sequence has changed since the previous poll. Several messages sent by an instance
+ * between two polls show up as a sequence gap, i.e. as missed messages. The same applies to an
+ * instance that appears after the first poll and has already sent several messages.
+ *
+ * <p>Rows of instances that have not published anything within given expiry are deleted, so that
+ * rows of stopped instances don't accumulate. An instance that publishes again after its row has
+ * expired looks like a new instance.
+ *
+ * <p>Works with any database, intended as a fallback where LISTEN/NOTIFY is not available.
+ * Messages are published on a connection of their own, so callers should publish only after
+ * their changes are committed.
+ */
+public class PollingInvalidationBroadcaster implements InvalidationBroadcaster {
+
+  private final Logger log = LoggerFactory.getLogger(getClass());
+
+  private final DataSource dataSource;
+  private final Duration expiry;
+  private final List<InvalidationListener> listeners = new CopyOnWriteArrayList<>();
+  private final ScheduledExecutorService scheduler;
+
+  // latest seen sequence of each instance, null until the first (baseline) poll
+  private Map<String, Long> sequences;
+  private boolean pollFailed = false;
+
+  public PollingInvalidationBroadcaster(DataSource dataSource, Duration interval) {
+    this(dataSource, interval, Duration.ofDays(7));
+  }
+
+  /**
+   * First (baseline) poll is done before returning.
+   *
+   * @param expiry how long rows of instances that don't publish are kept
+   */
+  public PollingInvalidationBroadcaster(DataSource dataSource, Duration interval,
+      Duration expiry) {
+    this.dataSource = dataSource;
+    this.expiry = expiry;
+    this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+        .setNameFormat("cache-invalidation-poller").setDaemon(true).build());
+    poll();
+    this.scheduler.scheduleWithFixedDelay(this::poll,
+        interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public void publish(InvalidationMessage message) {
+    try (Connection connection = dataSource.getConnection()) {
+      if (update(connection, message) == 0) {
+        insert(connection, message);
+      }
+    } catch (SQLException e) {
+      throw new InvalidationException("Failed to publish " + message, e);
+    }
+  }
+
+  private int update(Connection connection, InvalidationMessage message) throws SQLException {
+    try (PreparedStatement statement = connection.prepareStatement(
+        "UPDATE cache_invalidation SET sequence_number = ?, caches = ?, last_modified = ? " +
+            "WHERE instance_id = ?")) {
+      statement.setLong(1, message.getSequence());
+      statement.setString(2, message.encodeCaches());
+      statement.setTimestamp(3, Timestamp.valueOf(LocalDateTime.now()));
+      statement.setString(4, message.getInstanceId());
+      return statement.executeUpdate();
+    }
+  }
+
+  private void insert(Connection connection, InvalidationMessage message) throws SQLException {
+    try (PreparedStatement statement = connection.prepareStatement(
+        "INSERT INTO cache_invalidation (instance_id, sequence_number, caches, last_modified) " +
+            "VALUES (?, ?, ?, ?)")) {
+      statement.setString(1, message.getInstanceId());
+      statement.setLong(2, message.getSequence());
+      statement.setString(3, message.encodeCaches());
+      statement.setTimestamp(4, Timestamp.valueOf(LocalDateTime.now()));
+      statement.executeUpdate();
+    }
+  }
+
+  @Override
+  public void subscribe(InvalidationListener listener) {
+    listeners.add(listener);
+  }
+
+  // runs in scheduler thread only (or in tests)
+  void poll() {
+    Map<String, InvalidationMessage> latest = new HashMap<>();
+
+    try (Connection connection = dataSource.getConnection()) {
+      deleteExpired(connection);
+
+      try (PreparedStatement statement = connection.prepareStatement(
+          "SELECT instance_id, sequence_number, caches FROM cache_invalidation");
+          ResultSet results = statement.executeQuery()) {
+        while (results.next()) {
+          String instanceId = results.getString("instance_id");
+          latest.put(instanceId, new InvalidationMessage(instanceId,
+              results.getLong("sequence_number"),
+              InvalidationMessage.decodeCaches(results.getString("caches"))));
+        }
+      }
+    } catch (SQLException | RuntimeException e) {
+      log.warn("Failed to poll cache invalidations: {}", e.getMessage());
+      pollFailed = true;
+      return;
+    }
+
+    if (sequences == null) {
+      pollFailed = false;
+      sequences = new HashMap<>();
+      latest.forEach((instanceId, message) -> sequences.put(instanceId, message.getSequence()));
+      return;
+    }
+
+    if (pollFailed) {
+      pollFailed = false;
+      notifyListeners(InvalidationListener::onMessagesMissed);
+    }
+
+    // forget expired instances
+    sequences.keySet().retainAll(latest.keySet());
+
+    latest.forEach((instanceId, message) -> {
+      Long previous = sequences.put(instanceId, message.getSequence());
+      if (previous == null && message.getSequence() > 1) {
+        // new instance has sent messages that were overwritten before this poll
+        notifyListeners(InvalidationListener::onMessagesMissed);
+      }
+      if (previous == null || previous != message.getSequence()) {
+        notifyListeners(listener -> listener.onMessage(message));
+      }
+    });
+  }
+
+  private void deleteExpired(Connection connection) throws SQLException {
+    try (PreparedStatement statement = connection.prepareStatement(
+        "DELETE FROM cache_invalidation WHERE last_modified < ?")) {
+      statement.setTimestamp(1, Timestamp.valueOf(LocalDateTime.now().minus(expiry)));
+      statement.executeUpdate();
+    }
+  }
+
+  private void notifyListeners(Consumer<InvalidationListener> notification) {
+    for (InvalidationListener listener : listeners) {
+      try {
+        notification.accept(listener);
+      } catch (RuntimeException e) {
+        log.error("Failed to handle cache invalidation", e);
+      }
+    }
+  }
+
+  @Override
+  public void close() {
+    scheduler.shutdownNow();
+  }
+
+}
@@ -0,0 +1,139 @@
+package fi.thl.termed.util.invalidation;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Broadcasts messages with PostgreSQL NOTIFY and receives them with LISTEN on a connection held
+ * by a background thread. If the listening connection is lost, listeners are told that messages
+ * may have been missed once listening has been re-established.
+ *
+ * <p>Messages are published on a connection of their own (not on the possibly transaction bound
+ * connection of the caller), so callers should publish only after their changes are committed.
+ */
+public class PostgresInvalidationBroadcaster implements InvalidationBroadcaster {
+
+  private static final String DEFAULT_CHANNEL = "termed_cache_invalidation";
+  private static final int POLL_TIMEOUT_MILLIS = 1000;
+  private static final long RECONNECT_DELAY_MILLIS = 5000;
+
+  private final Logger log = LoggerFactory.getLogger(getClass());
+
+  private final DataSource dataSource;
+  private final String channel;
+
+  private final List<InvalidationListener> listeners = new CopyOnWriteArrayList<>();
+  private final Thread listenerThread;
+  private volatile boolean running = true;
+
+  public PostgresInvalidationBroadcaster(DataSource dataSource) {
+    this(dataSource, DEFAULT_CHANNEL);
+  }
+
+  public PostgresInvalidationBroadcaster(DataSource dataSource, String channel) {
+    checkArgument(channel.matches("[a-z_][a-z0-9_]*"), "Illegal channel name: %s", channel);
+    this.dataSource = dataSource;
+    this.channel = channel;
+    this.listenerThread = new Thread(this::listen, "cache-invalidation-listener");
+    this.listenerThread.setDaemon(true);
+    this.listenerThread.start();
+  }
+
+  @Override
+  public void publish(InvalidationMessage message) {
+    try (Connection connection = dataSource.getConnection();
+        PreparedStatement statement = connection.prepareStatement("SELECT pg_notify(?, ?)")) {
+      statement.setString(1, channel);
+      statement.setString(2, message.encode());
+      statement.execute();
+    } catch (SQLException e) {
+      throw new InvalidationException("Failed to publish " + message, e);
+    }
+  }
+
+  @Override
+  public void subscribe(InvalidationListener listener) {
+    listeners.add(listener);
+  }
+
+  private void listen() {
+    boolean reconnecting = false;
+
+    while (running) {
+      try (Connection connection = dataSource.getConnection()) {
+        try (Statement statement = connection.createStatement()) {
+          statement.execute("LISTEN " + channel);
+        }
+
+        if (reconnecting) {
+          log.info("Re-established listening to {}", channel);
+          listeners.forEach(InvalidationListener::onMessagesMissed);
+        }
+
+        PGConnection pgConnection = connection.unwrap(PGConnection.class);
+
+        while (running) {
+          PGNotification[] notifications = pgConnection.getNotifications(POLL_TIMEOUT_MILLIS);
+          if (notifications != null) {
+            for (PGNotification notification : notifications) {
+              receive(notification.getParameter());
+            }
+          }
+        }
+      } catch (SQLException | RuntimeException e) {
+        if (running) {
+          log.warn("Listening to {} failed, reconnecting: {}", channel, e.getMessage());
+          reconnecting = true;
+          sleepBeforeReconnect();
+        }
+      }
+    }
+  }
+
+  private void receive(String payload) {
+    InvalidationMessage message;
+
+    try {
+      message = InvalidationMessage.decode(payload);
+    } catch (IllegalArgumentException e) {
+      log.warn("Ignoring illegal invalidation message: {}", payload);
+      return;
+    }
+
+    for (InvalidationListener listener : listeners) {
+      try {
+        listener.onMessage(message);
+      } catch (RuntimeException e) {
+        log.error("Failed to handle invalidation message {}", message, e);
+      }
+    }
+  }
+
+  private void sleepBeforeReconnect() {
+    try {
+      TimeUnit.MILLISECONDS.sleep(RECONNECT_DELAY_MILLIS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      running = false;
+    }
+  }
+
+  @Override
+  public void close() {
+    running = false;
+    listenerThread.interrupt();
+  }
+
+}
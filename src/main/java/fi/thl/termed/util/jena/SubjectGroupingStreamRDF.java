@@ -0,0 +1,286 @@
+package fi.thl.termed.util.jena;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.PeekingIterator;
+import com.google.common.hash.Hashing;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFBase;
+import org.apache.jena.riot.system.StreamRDFWriter;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.vocabulary.RDF;
+
+/**
+ * RIOT sink that groups parsed triples by subject with bounded memory.
+ *
+ * Triples are kept in memory until given limit is exceeded. After that, each time the limit is
+ * exceeded, buffered triples are sorted by subject and written into an N-Triples run file. Groups
+ * are then read back by merging the runs, so that at most one group and one triple per run is kept
+ * in memory. If there are more runs than given merge fan-in, runs are first merged into larger
+ * runs. Duplicate triples of a subject are removed. Triples with blank nodes are ignored as blank
+ * node labels are not stable across run files.
+ *
+ * While parsing, rdf:type assertions are recorded as hashes (8 bytes each), so that types of
+ * subjects can be checked without reading the groups.
+ */
+public class SubjectGroupingStreamRDF extends StreamRDFBase implements AutoCloseable {
+
+  private static final Comparator<Triple> BY_SUBJECT =
+      Comparator.comparing(t -> t.getSubject().getURI());
+
+  private final int maxInMemory;
+  private final int mergeFanIn;
+
+  private Map<Node, Set<Triple>> inMemory = new LinkedHashMap<>();
+  private int inMemoryCount;
+
+  private Path spillDir;
+  private List<Path> runFiles;
+  private int runCounter;
+
+  private final List<InputStream> openInputs = new ArrayList<>();
+
+  private long[] typeHashes = new long[1024];
+  private int typeHashCount;
+
+  public SubjectGroupingStreamRDF() {
+    this(100_000, 64);
+  }
+
+  public SubjectGroupingStreamRDF(int maxInMemory, int mergeFanIn) {
+    if (mergeFanIn < 2) {
+      throw new IllegalArgumentException("Merge fan-in must be at least 2");
+    }
+    this.maxInMemory = maxInMemory;
+    this.mergeFanIn = mergeFanIn;
+  }
+
+  @Override
+  public void triple(Triple triple) {
+    if (triple.getSubject().isBlank() || triple.getObject().isBlank()) {
+      return;
+    }
+
+    if (inMemory.computeIfAbsent(triple.getSubject(), s -> new LinkedHashSet<>()).add(triple)) {
+      inMemoryCount++;
+
+      if (triple.getObject().isURI() && triple.getPredicate().getURI().equals(RDF.type.getURI())) {
+        addTypeHash(triple.getSubject().getURI(), triple.getObject().getURI());
+      }
+    }
+
+    if (inMemoryCount > maxInMemory) {
+      spillInMemory();
+    }
+  }
+
+  @Override
+  public void quad(Quad quad) {
+    triple(quad.asTriple());
+  }
+
+  @Override
+  public void finish() {
+    Arrays.sort(typeHashes, 0, typeHashCount);
+
+    if (runFiles != null) {
+      if (inMemoryCount > 0) {
+        spillInMemory();
+      }
+      while (runFiles.size() > mergeFanIn) {
+        List<Path> merged = new ArrayList<>(runFiles.subList(0, mergeFanIn));
+        runFiles.subList(0, mergeFanIn).clear();
+        runFiles.add(writeRun(mergeRuns(merged)));
+        closeInputs();
+        deleteFiles(merged);
+      }
+    }
+  }
+
+  /**
+   * Returns whether parsed triples contain (subject, rdf:type, type). Can be called after parsing
+   * is finished. As hashes are compared, there is a negligible chance of false positives.
+   */
+  public boolean hasType(String subjectUri, String typeUri) {
+    return Arrays.binarySearch(typeHashes, 0, typeHashCount, typeHash(subjectUri, typeUri)) >= 0;
+  }
+
+  private void addTypeHash(String subjectUri, String typeUri) {
+    if (typeHashCount == typeHashes.length) {
+      typeHashes = Arrays.copyOf(typeHashes, typeHashCount * 2);
+    }
+    typeHashes[typeHashCount++] = typeHash(subjectUri, typeUri);
+  }
+
+  private long typeHash(String subjectUri, String typeUri) {
+    return Hashing.murmur3_128().newHasher()
+        .putString(subjectUri, UTF_8)
+        .putString(typeUri, UTF_8)
+        .hash().asLong();
+  }
+
+  private void spillInMemory() {
+    if (runFiles == null) {
+      try {
+        spillDir = Files.createTempDirectory("termed-rdf-import-");
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      runFiles = new ArrayList<>();
+    }
+
+    List<Triple> sorted = new ArrayList<>(inMemoryCount);
+    inMemory.values().forEach(sorted::addAll);
+    sorted.sort(BY_SUBJECT);
+
+    inMemory = new LinkedHashMap<>();
+    inMemoryCount = 0;
+
+    runFiles.add(writeRun(sorted.iterator()));
+  }
+
+  private Path writeRun(Iterator<Triple> triples) {
+    Path file = spillDir.resolve("run-" + runCounter++ + ".nt");
+
+    try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file))) {
+      StreamRDF writer = StreamRDFWriter.getWriterStream(out, Lang.NTRIPLES);
+      writer.start();
+      triples.forEachRemaining(writer::triple);
+      writer.finish();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+
+    return file;
+  }
+
+  // merges runs sorted by subject into one iterator sorted by subject
+  private Iterator<Triple> mergeRuns(List<Path> files) {
+    PriorityQueue<PeekingIterator<Triple>> runs = new PriorityQueue<>(Math.max(files.size(), 1),
+        (a, b) -> BY_SUBJECT.compare(a.peek(), b.peek()));
+
+    for (Path file : files) {
+      PeekingIterator<Triple> run = Iterators.peekingIterator(readRun(file));
+      if (run.hasNext()) {
+        runs.add(run);
+      }
+    }
+
+    return new AbstractIterator<Triple>() {
+      @Override
+      protected Triple computeNext() {
+        PeekingIterator<Triple> run = runs.poll();
+        if (run == null) {
+          return endOfData();
+        }
+        Triple next = run.next();
+        if (run.hasNext()) {
+          runs.add(run);
+        }
+        return next;
+      }
+    };
+  }
+
+  private Iterator<Triple> readRun(Path file) {
+    try {
+      InputStream in = new BufferedInputStream(Files.newInputStream(file));
+      openInputs.add(in);
+      return RDFDataMgr.createIteratorTriples(in, Lang.NTRIPLES, null);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Returns triples grouped by subject. Can be called multiple times after parsing is finished.
+   * If triples were spilled, groups are returned in subject order.
+   */
+  public Iterator<List<Triple>> subjectGroups() {
+    if (runFiles == null) {
+      return inMemory.values().stream().<List<Triple>>map(ArrayList::new).iterator();
+    }
+
+    PeekingIterator<Triple> triples = Iterators.peekingIterator(mergeRuns(runFiles));
+
+    return new AbstractIterator<List<Triple>>() {
+      @Override
+      protected List<Triple> computeNext() {
+        if (!triples.hasNext()) {
+          return endOfData();
+        }
+
+        Node subject = triples.peek().getSubject();
+        Set<Triple> group = new LinkedHashSet<>();
+        while (triples.hasNext() && triples.peek().getSubject().equals(subject)) {
+          group.add(triples.next());
+        }
+        return new ArrayList<>(group);
+      }
+    };
+  }
+
+  private void closeInputs() {
+    try {
+      for (InputStream in : openInputs) {
+        in.close();
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } finally {
+      openInputs.clear();
+    }
+  }
+
+  private void deleteFiles(List<Path> files) {
+    try {
+      for (Path file : files) {
+        Files.deleteIfExists(file);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public void close() {
+    inMemory.clear();
+
+    try {
+      closeInputs();
+      if (runFiles != null) {
+        deleteFiles(runFiles);
+        Files.deleteIfExists(spillDir);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } finally {
+      runFiles = null;
+    }
+  }
+
+}
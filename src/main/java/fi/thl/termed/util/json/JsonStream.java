@@ -23,6 +23,21 @@ public final class JsonStream {
   public static <T> Stream<T> readArray(Gson gson, Class<T> valueType, InputStream in) {
     JsonReader reader = new JsonReader(new InputStreamReader(in, UTF_8));
 
+    return readArray(gson, valueType, reader).onClose(() -> {
+      try {
+        reader.close();
+      } catch (IOException e) {
+        throw new JsonIOException(e);
+      }
+    });
+  }
+
+  /**
+   * Reads lazily an array at the current position of given reader. Closing the stream consumes
+   * the end of the array but does not close the reader, so the reader can be used to read values
+   * after the array.
+   */
+  public static <T> Stream<T> readArray(Gson gson, Class<T> valueType, JsonReader reader) {
     try {
       reader.beginArray();
     } catch (IOException e) {
@@ -46,7 +61,6 @@ public final class JsonStream {
     }).onClose(() -> {
       try {
         reader.endArray();
-        reader.close();
       } catch (IOException e) {
         throw new JsonIOException(e);
       }
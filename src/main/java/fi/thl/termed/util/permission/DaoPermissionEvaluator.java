@@ -1,16 +1,42 @@
 package fi.thl.termed.util.permission;
 
+import static fi.thl.termed.util.collect.StreamUtils.forEachAndClose;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import fi.thl.termed.domain.GrantedPermission;
 import fi.thl.termed.domain.GraphRole;
 import fi.thl.termed.domain.ObjectRolePermission;
 import fi.thl.termed.domain.Permission;
 import fi.thl.termed.domain.User;
+import fi.thl.termed.util.dao.CachedSystemDao;
 import fi.thl.termed.util.dao.SystemDao;
+import fi.thl.termed.util.query.Specifications;
 import java.io.Serializable;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+/**
+ * Evaluates permissions granted to user's graph roles in permission DAO.
+ *
+ * <p>If permission DAO is a {@link CachedSystemDao}, evaluator compiles a permission plan (sets
+ * of permitted objects by permission) for each distinct set of graph roles and answers checks
+ * with a single set lookup. Plans are tied to DAO version and rebuilt after permissions are
+ * written or caches are invalidated. For other DAOs, each check queries the DAO.
+ */
 public class DaoPermissionEvaluator<E extends Serializable> implements PermissionEvaluator<E> {
 
-  private SystemDao<ObjectRolePermission<E>, GrantedPermission> permissionDao;
+  private static final int MAX_PLANS = 10_000;
+
+  private final SystemDao<ObjectRolePermission<E>, GrantedPermission> permissionDao;
+
+  private final Cache<List<GraphRole>, PermissionPlan<E>> plans =
+      CacheBuilder.newBuilder().maximumSize(MAX_PLANS).build();
 
   public DaoPermissionEvaluator(
       SystemDao<ObjectRolePermission<E>, GrantedPermission> permissionDao) {
@@ -19,7 +45,22 @@ public class DaoPermissionEvaluator<E extends Serializable> implements Permissio
 
   @Override
   public boolean hasPermission(User user, E object, Permission permission) {
-    for (GraphRole graphRole : user.getGraphRoles()) {
+    List<GraphRole> graphRoles = user.getGraphRoles();
+
+    if (graphRoles.isEmpty()) {
+      return false;
+    }
+
+    if (!(permissionDao instanceof CachedSystemDao)) {
+      return hasPermissionInDao(graphRoles, object, permission);
+    }
+
+    return plan(graphRoles, ((CachedSystemDao<?, ?>) permissionDao).getVersion())
+        .hasPermission(object, permission);
+  }
+
+  private boolean hasPermissionInDao(List<GraphRole> graphRoles, E object, Permission permission) {
+    for (GraphRole graphRole : graphRoles) {
       if (permissionDao.exists(new ObjectRolePermission<>(object, graphRole, permission))) {
         return true;
       }
@@ -27,4 +68,50 @@ public class DaoPermissionEvaluator<E extends Serializable> implements Permissio
     return false;
   }
 
+  private PermissionPlan<E> plan(List<GraphRole> graphRoles, long version) {
+    // user graph roles are typically already immutable, so no copy is made here
+    List<GraphRole> key = ImmutableList.copyOf(graphRoles);
+    PermissionPlan<E> plan = plans.getIfPresent(key);
+
+    // version is read before plan is built, so a concurrent write only causes a rebuild
+    if (plan == null || plan.version != version) {
+      plan = buildPlan(ImmutableSet.copyOf(key), version);
+      plans.put(key, plan);
+    }
+
+    return plan;
+  }
+
+  private PermissionPlan<E> buildPlan(Set<GraphRole> graphRoles, long version) {
+    Map<Permission, Set<E>> permitted = new EnumMap<>(Permission.class);
+
+    forEachAndClose(permissionDao.keys(Specifications.matchAll()), p -> {
+      if (graphRoles.contains(p.getGraphRole())) {
+        permitted.computeIfAbsent(p.getPermission(), k -> new HashSet<>()).add(p.getObjectId());
+      }
+    });
+
+    return new PermissionPlan<>(version, permitted);
+  }
+
+  private static final class PermissionPlan<E> {
+
+    private final long version;
+    private final Map<Permission, ImmutableSet<E>> permitted =
+        new EnumMap<>(Permission.class);
+
+    PermissionPlan(long version, Map<Permission, Set<E>> permitted) {
+      this.version = version;
+      for (Permission permission : Permission.values()) {
+        this.permitted.put(permission,
+            ImmutableSet.copyOf(permitted.getOrDefault(permission, ImmutableSet.of())));
+      }
+    }
+
+    boolean hasPermission(E object, Permission permission) {
+      return permitted.get(permission).contains(object);
+    }
+
+  }
+
 }
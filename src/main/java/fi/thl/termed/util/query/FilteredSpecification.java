@@ -0,0 +1,78 @@
+package fi.thl.termed.util.query;
+
+import static java.lang.String.format;
+import static java.util.Arrays.asList;
+import static java.util.Arrays.stream;
+
+import java.io.Serializable;
+import java.util.stream.Stream;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Query;
+
+/**
+ * Accepts if both specification and filter accept. Differs from {@link AndSpecification} in
+ * Lucene queries where filter is added as a non-scoring (and cacheable) FILTER clause so that
+ * relevance of results is determined by specification only.
+ */
+public final class FilteredSpecification<K extends Serializable, V> extends
+    CompositeSpecification<K, V> {
+
+  private FilteredSpecification(Specification<K, V> specification, Specification<K, V> filter) {
+    super(asList(specification, filter));
+  }
+
+  public static <K extends Serializable, V> FilteredSpecification<K, V> filter(
+      Specification<K, V> specification, Specification<K, V> filter) {
+    return new FilteredSpecification<>(specification, filter);
+  }
+
+  public Specification<K, V> getSpecification() {
+    return specifications.get(0);
+  }
+
+  public Specification<K, V> getFilter() {
+    return specifications.get(1);
+  }
+
+  @Override
+  public boolean test(K k, V v) {
+    return getSpecification().test(k, v) && getFilter().test(k, v);
+  }
+
+  @Override
+  public Query luceneQuery() {
+    return new BooleanQuery.Builder()
+        .add(((LuceneSpecification<K, V>) getSpecification()).luceneQuery(),
+            BooleanClause.Occur.MUST)
+        .add(((LuceneSpecification<K, V>) getFilter()).luceneQuery(),
+            BooleanClause.Occur.FILTER)
+        .build();
+  }
+
+  @Override
+  public ParametrizedSqlQuery sql() {
+    return ParametrizedSqlQuery.of(sqlQueryTemplate(), sqlQueryParameters());
+  }
+
+  @Override
+  public String sqlQueryTemplate() {
+    return format("(%s) AND (%s)",
+        ((SqlSpecification<K, V>) getSpecification()).sqlQueryTemplate(),
+        ((SqlSpecification<K, V>) getFilter()).sqlQueryTemplate());
+  }
+
+  @Override
+  public Object[] sqlQueryParameters() {
+    return Stream.of(getSpecification(), getFilter())
+        .map(SqlSpecification.class::cast)
+        .flatMap(spec -> stream(spec.sqlQueryParameters()))
+        .toArray(Object[]::new);
+  }
+
+  @Override
+  public String toString() {
+    return format("(%s FILTER %s)", getSpecification(), getFilter());
+  }
+
+}
@@ -0,0 +1,63 @@
+package fi.thl.termed.util.service;
+
+import static fi.thl.termed.domain.Permission.READ;
+import static fi.thl.termed.domain.Permission.UPDATE;
+
+import fi.thl.termed.domain.Permission;
+import fi.thl.termed.domain.User;
+import fi.thl.termed.util.permission.PermissionEvaluator;
+import java.io.Serializable;
+import org.springframework.security.access.AccessDeniedException;
+
+/**
+ * Checks user permissions before forwarding to delegate. Reading a sequence requires read
+ * permission, advancing or setting it requires update permission.
+ */
+public class AuthorizedNamedSequenceService<K extends Serializable> extends
+    ForwardingNamedSequenceService<K> {
+
+  private PermissionEvaluator<K> evaluator;
+
+  public AuthorizedNamedSequenceService(NamedSequenceService<K> delegate,
+      PermissionEvaluator<K> evaluator) {
+    super(delegate);
+    this.evaluator = evaluator;
+  }
+
+  @Override
+  public Long get(K sequenceId, User user) {
+    checkPermission(sequenceId, READ, user);
+    return super.get(sequenceId, user);
+  }
+
+  @Override
+  public Long getAndAdvance(K sequenceId, User user) {
+    checkPermission(sequenceId, UPDATE, user);
+    return super.getAndAdvance(sequenceId, user);
+  }
+
+  @Override
+  public Long getAndAdvance(K sequenceId, Long count, User user) {
+    checkPermission(sequenceId, UPDATE, user);
+    return super.getAndAdvance(sequenceId, count, user);
+  }
+
+  @Override
+  public void set(K sequenceId, Long value, User user) {
+    checkPermission(sequenceId, UPDATE, user);
+    super.set(sequenceId, value, user);
+  }
+
+  @Override
+  public boolean compareAndSet(K sequenceId, Long expected, Long value, User user) {
+    checkPermission(sequenceId, UPDATE, user);
+    return super.compareAndSet(sequenceId, expected, value, user);
+  }
+
+  private void checkPermission(K sequenceId, Permission permission, User user) {
+    if (!evaluator.hasPermission(user, sequenceId, permission)) {
+      throw new AccessDeniedException("Access is denied");
+    }
+  }
+
+}
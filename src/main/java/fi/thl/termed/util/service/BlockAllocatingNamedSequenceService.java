@@ -0,0 +1,162 @@
+package fi.thl.termed.util.service;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import fi.thl.termed.domain.User;
+import java.io.Serializable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serves sequence values from blocks reserved from delegate.
+ *
+ * <p>Each sequence has a block of reserved values and a lock of its own. Values are taken from
+ * the current block with an atomic increment, so allocations from different sequences (or from
+ * the same sequence while its block lasts) don't block each other. A new block, at least block
+ * size values, is reserved from delegate with a single getAndAdvance when current block runs
+ * out. Values left in an exhausted block are skipped so that a multi-value allocation is always
+ * contiguous.
+ *
+ * <p>Delegate is expected to advance atomically, e.g. in a single database statement, so that
+ * several instances can share the same sequences. On close, unused values of each block are
+ * released if no one else has advanced the sequence meanwhile.
+ */
+public class BlockAllocatingNamedSequenceService<K extends Serializable> implements
+    NamedSequenceService<K> {
+
+  private static final long DEFAULT_BLOCK_SIZE = 1000L;
+
+  private final NamedSequenceService<K> delegate;
+  private final long blockSize;
+
+  private final Map<K, Sequence> sequences = new ConcurrentHashMap<>();
+
+  public BlockAllocatingNamedSequenceService(NamedSequenceService<K> delegate) {
+    this(delegate, DEFAULT_BLOCK_SIZE);
+  }
+
+  public BlockAllocatingNamedSequenceService(NamedSequenceService<K> delegate, long blockSize) {
+    checkArgument(blockSize > 0);
+    this.delegate = delegate;
+    this.blockSize = blockSize;
+  }
+
+  @Override
+  public Long get(K sequenceId, User user) {
+    Block block = sequence(sequenceId).block;
+    if (block != null) {
+      long next = block.next.get();
+      if (next < block.limit) {
+        return next;
+      }
+    }
+    return delegate.get(sequenceId, user);
+  }
+
+  @Override
+  public Long getAndAdvance(K sequenceId, User user) {
+    return getAndAdvance(sequenceId, 1L, user);
+  }
+
+  @Override
+  public Long getAndAdvance(K sequenceId, Long count, User user) {
+    checkArgument(count > 0);
+
+    Sequence sequence = sequence(sequenceId);
+
+    Long value = tryAllocate(sequence.block, count);
+    if (value != null) {
+      return value;
+    }
+
+    synchronized (sequence) {
+      // block may have been replaced while waiting for the lock
+      value = tryAllocate(sequence.block, count);
+      if (value != null) {
+        return value;
+      }
+
+      long reserved = Math.max(count, blockSize);
+      long start = delegate.getAndAdvance(sequenceId, reserved, user);
+      sequence.block = new Block(start + count, start + reserved);
+      return start;
+    }
+  }
+
+  private Long tryAllocate(Block block, long count) {
+    if (block == null) {
+      return null;
+    }
+    long start = block.next.getAndAdd(count);
+    return start + count <= block.limit ? start : null;
+  }
+
+  @Override
+  public void set(K sequenceId, Long value, User user) {
+    Sequence sequence = sequence(sequenceId);
+    synchronized (sequence) {
+      discardBlock(sequence);
+      delegate.set(sequenceId, value, user);
+    }
+  }
+
+  @Override
+  public boolean compareAndSet(K sequenceId, Long expected, Long value, User user) {
+    Sequence sequence = sequence(sequenceId);
+    synchronized (sequence) {
+      discardBlock(sequence);
+      return delegate.compareAndSet(sequenceId, expected, value, user);
+    }
+  }
+
+  private void discardBlock(Sequence sequence) {
+    Block block = sequence.block;
+    if (block != null) {
+      // fails concurrent allocations from the block, making them wait for the lock
+      block.next.set(block.limit);
+      sequence.block = null;
+    }
+  }
+
+  private Sequence sequence(K sequenceId) {
+    return sequences.computeIfAbsent(sequenceId, id -> new Sequence());
+  }
+
+  @Override
+  public void close() {
+    User blockReleaser = User.newAdmin("sequence-block-releaser");
+
+    sequences.forEach((sequenceId, sequence) -> {
+      synchronized (sequence) {
+        Block block = sequence.block;
+        if (block != null) {
+          long next = block.next.getAndSet(block.limit);
+          if (next < block.limit) {
+            delegate.compareAndSet(sequenceId, block.limit, next, blockReleaser);
+          }
+          sequence.block = null;
+        }
+      }
+    });
+  }
+
+  private static class Sequence {
+
+    private volatile Block block;
+
+  }
+
+  private static class Block {
+
+    private final AtomicLong next;
+    private final long limit;
+
+    Block(long next, long limit) {
+      this.next = new AtomicLong(next);
+      this.limit = limit;
+    }
+
+  }
+
+}
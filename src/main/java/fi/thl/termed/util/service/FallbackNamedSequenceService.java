@@ -0,0 +1,112 @@
+package fi.thl.termed.util.service;
+
+import fi.thl.termed.domain.User;
+import java.io.Serializable;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Function;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Serves sequences from primary service and switches to fallback service for the rest of the
+ * current transaction if primary fails for a sequence.
+ *
+ * <p>Intended for a primary that works outside of caller's transaction (e.g. on a connection of
+ * its own) and thus can't see data written but not yet committed by the caller, such as a row
+ * that a new sequence refers to. Fallback should work in caller's transaction. Outside of
+ * transactions, failures of primary are thrown.
+ */
+public class FallbackNamedSequenceService<K extends Serializable> implements
+    NamedSequenceService<K> {
+
+  private final Logger log = LoggerFactory.getLogger(getClass());
+
+  private final NamedSequenceService<K> primary;
+  private final NamedSequenceService<K> fallback;
+
+  public FallbackNamedSequenceService(NamedSequenceService<K> primary,
+      NamedSequenceService<K> fallback) {
+    this.primary = primary;
+    this.fallback = fallback;
+  }
+
+  @Override
+  public Long get(K sequenceId, User user) {
+    return call(sequenceId, s -> s.get(sequenceId, user));
+  }
+
+  @Override
+  public Long getAndAdvance(K sequenceId, User user) {
+    return call(sequenceId, s -> s.getAndAdvance(sequenceId, user));
+  }
+
+  @Override
+  public Long getAndAdvance(K sequenceId, Long count, User user) {
+    return call(sequenceId, s -> s.getAndAdvance(sequenceId, count, user));
+  }
+
+  @Override
+  public void set(K sequenceId, Long value, User user) {
+    call(sequenceId, s -> {
+      s.set(sequenceId, value, user);
+      return null;
+    });
+  }
+
+  @Override
+  public boolean compareAndSet(K sequenceId, Long expected, Long value, User user) {
+    return call(sequenceId, s -> s.compareAndSet(sequenceId, expected, value, user));
+  }
+
+  private <E> E call(K sequenceId, Function<NamedSequenceService<K>, E> operation) {
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      return operation.apply(primary);
+    }
+
+    Set<K> fallbackSequences = fallbackSequences();
+
+    if (fallbackSequences.contains(sequenceId)) {
+      return operation.apply(fallback);
+    }
+
+    try {
+      return operation.apply(primary);
+    } catch (DataAccessException e) {
+      log.debug("Using fallback for sequence {} in current transaction ({})",
+          sequenceId, e.getMessage());
+      fallbackSequences.add(sequenceId);
+      return operation.apply(fallback);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private Set<K> fallbackSequences() {
+    Set<K> sequences = (Set<K>) TransactionSynchronizationManager.getResource(this);
+
+    if (sequences == null) {
+      sequences = new HashSet<>();
+      TransactionSynchronizationManager.bindResource(this, sequences);
+      TransactionSynchronizationManager.registerSynchronization(
+          new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCompletion(int status) {
+              TransactionSynchronizationManager
+                  .unbindResourceIfPossible(FallbackNamedSequenceService.this);
+            }
+          });
+    }
+
+    return sequences;
+  }
+
+  @Override
+  public void close() {
+    primary.close();
+    fallback.close();
+  }
+
+}
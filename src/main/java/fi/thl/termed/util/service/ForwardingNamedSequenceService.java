@@ -32,6 +32,11 @@ public class ForwardingNamedSequenceService<K extends Serializable> implements
     delegate.set(sequenceId, value, user);
   }
 
+  @Override
+  public boolean compareAndSet(K sequenceId, Long expected, Long value, User user) {
+    return delegate.compareAndSet(sequenceId, expected, value, user);
+  }
+
   @Override
   public void close() {
     delegate.close();
@@ -16,6 +16,18 @@ public interface NamedSequenceService<K extends Serializable> {
 
   void set(K sequenceId, Long value, User user);
 
+  /**
+   * Sets sequence to given value if its current value is as expected. Returns true if value was
+   * set. Default implementation is not atomic, implementations should override if possible.
+   */
+  default boolean compareAndSet(K sequenceId, Long expected, Long value, User user) {
+    if (get(sequenceId, user).equals(expected)) {
+      set(sequenceId, value, user);
+      return true;
+    }
+    return false;
+  }
+
   default void close() {
   }
 
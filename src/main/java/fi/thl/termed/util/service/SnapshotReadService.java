@@ -0,0 +1,302 @@
+package fi.thl.termed.util.service;
+
+import static fi.thl.termed.util.collect.StreamUtils.toListAndClose;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.eventbus.Subscribe;
+import fi.thl.termed.domain.AppRole;
+import fi.thl.termed.domain.GraphRole;
+import fi.thl.termed.domain.User;
+import fi.thl.termed.domain.event.InvalidateCachesEvent;
+import fi.thl.termed.util.event.SyncSubscriber;
+import fi.thl.termed.util.query.Query;
+import fi.thl.termed.util.query.Select;
+import fi.thl.termed.util.query.Specification;
+import fi.thl.termed.util.query.Specifications;
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Serves reads from an immutable, versioned snapshot that is replaced atomically after each write.
+ * Intended for small and rarely written collections like graphs and types.
+ *
+ * <p>Snapshot contains a view (all values readable by user, in delegate order) for each distinct
+ * combination of app role and graph roles. Views are loaded lazily from delegate. Reads never
+ * block. Writes are serialized with a lock. If a write is part of a transaction, new snapshot is
+ * published after the transaction completes. Until then, other threads are served the previous
+ * snapshot and the writing thread reads from delegate. A view loaded while any write is pending is
+ * not kept, so that no view contains partial or uncommitted writes.
+ *
+ * <p>Queries are answered by testing specifications in memory, sorting and max are ignored (as in
+ * underlying repositories).
+ */
+@SyncSubscriber
+public class SnapshotReadService<K extends Serializable, V> implements Service<K, V> {
+
+  private final Logger log = LoggerFactory.getLogger(getClass());
+
+  private final Service<K, V> delegate;
+  private final Function<V, K> keyFunction;
+
+  private final ReentrantLock writeLock = new ReentrantLock();
+  private final int writeLockTimeoutInSeconds = 10;
+
+  // number of writes started but not yet published
+  private final AtomicInteger pendingWrites = new AtomicInteger();
+  // incremented when a write starts and when a snapshot is published
+  private final AtomicLong generation = new AtomicLong();
+
+  private final AtomicReference<Snapshot<K, V>> snapshot =
+      new AtomicReference<>(new Snapshot<>(0));
+
+  public SnapshotReadService(Service<K, V> delegate, Function<V, K> keyFunction) {
+    this.delegate = delegate;
+    this.keyFunction = keyFunction;
+  }
+
+  /**
+   * Returns version of current snapshot. Version is incremented after each write.
+   */
+  public long getVersion() {
+    return snapshot.get().version;
+  }
+
+  @Subscribe
+  public void invalidateOn(InvalidateCachesEvent e) {
+    generation.incrementAndGet();
+    snapshot.updateAndGet(s -> new Snapshot<>(s.version + 1));
+  }
+
+  @Override
+  public void save(Stream<V> values, SaveMode mode, WriteOptions opts, User user) {
+    write(() -> {
+      delegate.save(values, mode, opts, user);
+      return null;
+    });
+  }
+
+  @Override
+  public K save(V value, SaveMode mode, WriteOptions opts, User user) {
+    return write(() -> delegate.save(value, mode, opts, user));
+  }
+
+  @Override
+  public void delete(Stream<K> keys, WriteOptions opts, User user) {
+    write(() -> {
+      delegate.delete(keys, opts, user);
+      return null;
+    });
+  }
+
+  @Override
+  public void delete(K key, WriteOptions opts, User user) {
+    write(() -> {
+      delegate.delete(key, opts, user);
+      return null;
+    });
+  }
+
+  @Override
+  public void saveAndDelete(Stream<V> saves, Stream<K> deletes, SaveMode mode, WriteOptions opts,
+      User user) {
+    write(() -> {
+      delegate.saveAndDelete(saves, deletes, mode, opts, user);
+      return null;
+    });
+  }
+
+  @Override
+  public Stream<K> keys(Query<K, V> query, User user) {
+    Specification<K, V> spec = query.getWhere();
+    return view(user).entrySet().stream()
+        .filter(e -> spec.test(e.getKey(), e.getValue()))
+        .map(Map.Entry::getKey);
+  }
+
+  @Override
+  public Stream<V> values(Query<K, V> query, User user) {
+    Specification<K, V> spec = query.getWhere();
+    return view(user).entrySet().stream()
+        .filter(e -> spec.test(e.getKey(), e.getValue()))
+        .map(Map.Entry::getValue);
+  }
+
+  @Override
+  public long count(Specification<K, V> spec, User user) {
+    return view(user).entrySet().stream()
+        .filter(e -> spec.test(e.getKey(), e.getValue()))
+        .count();
+  }
+
+  @Override
+  public boolean exists(K key, User user) {
+    return view(user).containsKey(key);
+  }
+
+  @Override
+  public Optional<V> get(K key, User user, Select... selects) {
+    return Optional.ofNullable(view(user).get(key));
+  }
+
+  private ImmutableMap<K, V> view(User user) {
+    // writer sees its own writes, these are never cached
+    if (isWritingThread()) {
+      return load(user);
+    }
+
+    Snapshot<K, V> current = snapshot.get();
+    ViewKey viewKey = new ViewKey(user);
+
+    ImmutableMap<K, V> view = current.views.get(viewKey);
+    if (view != null) {
+      return view;
+    }
+
+    long stamp = generation.get();
+    view = load(user);
+
+    // keep view only if no write was pending or published during load
+    if (pendingWrites.get() == 0 && generation.get() == stamp) {
+      ImmutableMap<K, V> previous = current.views.putIfAbsent(viewKey, view);
+      return previous != null ? previous : view;
+    }
+
+    return view;
+  }
+
+  private ImmutableMap<K, V> load(User user) {
+    ImmutableMap.Builder<K, V> view = ImmutableMap.builder();
+    toListAndClose(delegate.values(new Query<>(Specifications.matchAll()), user))
+        .forEach(v -> view.put(keyFunction.apply(v), v));
+    return view.build();
+  }
+
+  private boolean isWritingThread() {
+    return writeLock.isHeldByCurrentThread() ||
+        (TransactionSynchronizationManager.isSynchronizationActive() &&
+            TransactionSynchronizationManager.hasResource(this));
+  }
+
+  private <E> E write(Supplier<E> writer) {
+    // nested writes (by the same thread) are published by the outermost write
+    if (isWritingThread()) {
+      return lockWrites(writer);
+    }
+
+    pendingWrites.incrementAndGet();
+    generation.incrementAndGet();
+
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.bindResource(this, Boolean.TRUE);
+      TransactionSynchronizationManager.registerSynchronization(new PublishAfterCompletion());
+      return lockWrites(writer);
+    }
+
+    try {
+      return lockWrites(writer);
+    } finally {
+      publish();
+    }
+  }
+
+  private void publish() {
+    snapshot.updateAndGet(s -> new Snapshot<>(s.version + 1));
+    generation.incrementAndGet();
+    pendingWrites.decrementAndGet();
+  }
+
+  private <E> E lockWrites(Supplier<E> supplier) {
+    try {
+      if (!writeLock.tryLock(writeLockTimeoutInSeconds, TimeUnit.SECONDS)) {
+        throw new RuntimeException("Failed to acquire write lock");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Failed to acquire write lock", e);
+    }
+
+    log.trace("Acquire write lock");
+
+    try {
+      return supplier.get();
+    } finally {
+      log.trace("Release write lock");
+      writeLock.unlock();
+    }
+  }
+
+  /**
+   * Publishes new snapshot after commit (or rollback) of the transaction that wrote.
+   */
+  private class PublishAfterCompletion extends TransactionSynchronizationAdapter {
+
+    @Override
+    public void afterCompletion(int status) {
+      TransactionSynchronizationManager.unbindResourceIfPossible(SnapshotReadService.this);
+      publish();
+    }
+
+  }
+
+  private static final class Snapshot<K, V> {
+
+    private final long version;
+    private final Map<ViewKey, ImmutableMap<K, V>> views = new ConcurrentHashMap<>();
+
+    Snapshot(long version) {
+      this.version = version;
+    }
+
+  }
+
+  /**
+   * Read permissions depend only on app role and graph roles of a user.
+   */
+  private static final class ViewKey {
+
+    private final AppRole appRole;
+    private final List<GraphRole> graphRoles;
+
+    ViewKey(User user) {
+      this.appRole = user.getAppRole();
+      this.graphRoles = ImmutableList.copyOf(user.getGraphRoles());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      ViewKey viewKey = (ViewKey) o;
+      return appRole == viewKey.appRole &&
+          Objects.equals(graphRoles, viewKey.graphRoles);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(appRole, graphRoles);
+    }
+
+  }
+
+}
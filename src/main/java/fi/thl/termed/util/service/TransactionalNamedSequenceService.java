@@ -59,6 +59,11 @@ public class TransactionalNamedSequenceService<K extends Serializable> implement
     });
   }
 
+  @Override
+  public boolean compareAndSet(K sequenceId, Long expected, Long value, User user) {
+    return runInTransaction(() -> delegate.compareAndSet(sequenceId, expected, value, user));
+  }
+
   private <E> E runInTransaction(Supplier<E> supplier) {
     TransactionStatus tx = manager.getTransaction(definition);
     E results;
@@ -6,8 +6,15 @@ public final class MediaTypes {
 
   public static final String TEXT_XML_VALUE = "text/xml;charset=UTF-8";
   public static final String TEXT_CSV_VALUE = "text/csv;charset=UTF-8";
+  public static final String TEXT_TSV_VALUE = "text/tab-separated-values;charset=UTF-8";
+  public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+  public static final String APPLICATION_TERMED_DUMP_VALUE = "application/x-termed-dump";
 
   public static final MediaType TEXT_XML = MediaType.valueOf(TEXT_XML_VALUE);
   public static final MediaType TEXT_CSV = MediaType.valueOf(TEXT_CSV_VALUE);
+  public static final MediaType TEXT_TSV = MediaType.valueOf(TEXT_TSV_VALUE);
+  public static final MediaType APPLICATION_NDJSON = MediaType.valueOf(APPLICATION_NDJSON_VALUE);
+  public static final MediaType APPLICATION_TERMED_DUMP =
+      MediaType.valueOf(APPLICATION_TERMED_DUMP_VALUE);
 
 }
@@ -13,6 +13,8 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.stream.Stream;
@@ -29,9 +31,13 @@ import org.springframework.jdbc.support.JdbcUtils;
 public class StreamingJdbcTemplate {
 
   private static final int STREAM_TIMEOUT_IN_MINUTES = 60 * 6;
+  private static final int MAX_BATCH_SIZE = 1000;
 
   private JdbcTemplate jdbcTemplate;
 
+  // updates collected by batchUpdates in current thread, null if not batching
+  private ThreadLocal<PendingUpdates> pendingUpdates = new ThreadLocal<>();
+
   private Logger log = LoggerFactory.getLogger(getClass());
   private ScheduledExecutorService executor;
 
@@ -41,7 +47,40 @@ public class StreamingJdbcTemplate {
   }
 
   public void update(String sql, Object... args) {
-    jdbcTemplate.update(sql, args);
+    PendingUpdates pending = pendingUpdates.get();
+    if (pending != null) {
+      pending.add(sql, args);
+    } else {
+      jdbcTemplate.update(sql, args);
+    }
+  }
+
+  /**
+   * Runs given updates so that consecutive update calls with the same SQL are executed as JDBC
+   * batches. Pending updates are executed before any query, so updates and queries run in the
+   * same order as without batching.
+   */
+  public void batchUpdates(Runnable updates) {
+    if (pendingUpdates.get() != null) {
+      updates.run();
+      return;
+    }
+
+    PendingUpdates pending = new PendingUpdates();
+    pendingUpdates.set(pending);
+    try {
+      updates.run();
+      pending.flush();
+    } finally {
+      pendingUpdates.remove();
+    }
+  }
+
+  private void flushPendingUpdates() {
+    PendingUpdates pending = pendingUpdates.get();
+    if (pending != null) {
+      pending.flush();
+    }
   }
 
   public <T> Stream<T> queryForStream(String sql, RowMapper<T> rowMapper, Object... args)
@@ -52,6 +91,8 @@ public class StreamingJdbcTemplate {
   public <T> Stream<T> queryForStream(String sql, Object[] args, RowMapper<T> rowMapper)
       throws DataAccessException {
 
+    flushPendingUpdates();
+
     DataSource dataSource = requireNonNull(jdbcTemplate.getDataSource());
 
     Connection connection = DataSourceUtils.getConnection(dataSource);
@@ -90,11 +131,36 @@ public class StreamingJdbcTemplate {
   }
 
   public <T> Optional<T> queryForOptional(String sql, Class<T> requiredType, Object... args) {
+    flushPendingUpdates();
     return Optional.ofNullable(jdbcTemplate.queryForObject(sql, requiredType, args));
   }
 
   public <T> Optional<T> queryForFirst(String sql, RowMapper<T> rowMapper, Object... args) {
+    flushPendingUpdates();
     return jdbcTemplate.query(sql, rowMapper, args).stream().findFirst();
   }
 
+  private class PendingUpdates {
+
+    private String sql;
+    private List<Object[]> args = new ArrayList<>();
+
+    void add(String sql, Object[] args) {
+      if (!sql.equals(this.sql) || this.args.size() >= MAX_BATCH_SIZE) {
+        flush();
+        this.sql = sql;
+      }
+      this.args.add(args);
+    }
+
+    void flush() {
+      if (!args.isEmpty()) {
+        log.trace("Executing batch of {} updates: {}", args.size(), sql);
+        jdbcTemplate.batchUpdate(sql, args);
+        args = new ArrayList<>();
+      }
+    }
+
+  }
+
 }
@@ -0,0 +1,199 @@
+package fi.thl.termed.util.spring.security;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.eventbus.Subscribe;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import fi.thl.termed.domain.event.InvalidateCachesEvent;
+import fi.thl.termed.domain.event.UsersChangedEvent;
+import fi.thl.termed.util.event.SyncSubscriber;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.GrantedAuthority;
+
+/**
+ * Caches successful username/password authentications of a delegate provider (typically
+ * user lookup with BCrypt verification) so that repeated requests with same credentials skip
+ * verification.
+ *
+ * <p>Cache key is a HMAC of the credentials with a random secret generated on startup, so
+ * neither plain passwords nor values usable for offline guessing are stored. Only successful
+ * authentications are cached. Entries expire after given TTL and are invalidated immediately on
+ * {@link UsersChangedEvent} (for changed users) and on {@link InvalidateCachesEvent} covering any
+ * of the given user caches (e.g. caches of user DAOs the delegate reads users from). A result
+ * verified while its user was invalidated is not kept, so a changed password stops working
+ * immediately even if a request with the old password is still being verified.
+ *
+ * <p>Cache hits and misses, cache size and verification time of the delegate are published to
+ * given {@link MeterRegistry}.
+ */
+@SyncSubscriber
+public class CachingAuthenticationProvider implements AuthenticationProvider {
+
+  private static final int SECRET_LENGTH = 32;
+
+  private final AuthenticationProvider delegate;
+  private final HashFunction credentialsHmac;
+  private final Cache<HashCode, CachedAuthentication> cache;
+  private final Set<String> userCaches;
+
+  // incremented on each invalidation, user entries are dropped when all users are invalidated
+  private final AtomicLong generation = new AtomicLong();
+  private final Map<String, Long> userInvalidatedAt = new ConcurrentHashMap<>();
+  private volatile long allInvalidatedAt;
+
+  private final Counter hits;
+  private final Counter misses;
+  private final Timer verificationTimer;
+
+  /**
+   * @param userCaches names of caches whose invalidation (by {@link InvalidateCachesEvent})
+   * invalidates all cached authentications
+   */
+  public CachingAuthenticationProvider(AuthenticationProvider delegate, Set<String> userCaches,
+      Duration ttl, long maxSize, MeterRegistry meterRegistry) {
+    this.delegate = delegate;
+    this.userCaches = ImmutableSet.copyOf(userCaches);
+
+    byte[] secret = new byte[SECRET_LENGTH];
+    new SecureRandom().nextBytes(secret);
+    this.credentialsHmac = Hashing.hmacSha256(secret);
+
+    this.cache = CacheBuilder.newBuilder()
+        .expireAfterWrite(ttl.toMillis(), TimeUnit.MILLISECONDS)
+        .maximumSize(maxSize)
+        .build();
+
+    this.hits = meterRegistry.counter("termed.authentication.cache.requests", "result", "hit");
+    this.misses = meterRegistry.counter("termed.authentication.cache.requests", "result", "miss");
+    this.verificationTimer = meterRegistry.timer("termed.authentication.verification");
+    meterRegistry.gauge("termed.authentication.cache.size", cache, Cache::size);
+  }
+
+  @Override
+  public Authentication authenticate(Authentication authentication)
+      throws AuthenticationException {
+
+    if (!(authentication instanceof UsernamePasswordAuthenticationToken) ||
+        authentication.getName() == null || authentication.getCredentials() == null) {
+      return verify(authentication);
+    }
+
+    String username = authentication.getName();
+    HashCode key = hmac(username, authentication.getCredentials().toString());
+
+    CachedAuthentication cached = cache.getIfPresent(key);
+
+    if (cached != null) {
+      hits.increment();
+      return cached.toAuthentication(authentication.getDetails());
+    }
+
+    misses.increment();
+    long stamp = generation.get();
+    Authentication result = verify(authentication);
+
+    if (result != null && result.isAuthenticated()) {
+      cache.put(key, new CachedAuthentication(username, result));
+      // invalidated during verification, an invalidation running now removes the entry itself
+      if (invalidatedAt(username) > stamp) {
+        cache.invalidate(key);
+      }
+    }
+
+    return result;
+  }
+
+  private long invalidatedAt(String username) {
+    return Math.max(allInvalidatedAt, userInvalidatedAt.getOrDefault(username, 0L));
+  }
+
+  private Authentication verify(Authentication authentication) {
+    long start = System.nanoTime();
+    try {
+      return delegate.authenticate(authentication);
+    } finally {
+      verificationTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  // length prefix keeps (username, password) pairs unambiguous
+  private HashCode hmac(String username, String password) {
+    byte[] usernameBytes = username.getBytes(UTF_8);
+    return credentialsHmac.newHasher()
+        .putInt(usernameBytes.length)
+        .putBytes(usernameBytes)
+        .putString(password, UTF_8)
+        .hash();
+  }
+
+  @Override
+  public boolean supports(Class<?> authentication) {
+    return delegate.supports(authentication);
+  }
+
+  @Subscribe
+  public void invalidateUsersOn(UsersChangedEvent e) {
+    Set<String> usernames = new HashSet<>(e.getUsernames());
+    usernames.forEach(username ->
+        userInvalidatedAt.put(username, generation.incrementAndGet()));
+    cache.asMap().values().removeIf(cached -> usernames.contains(cached.username));
+  }
+
+  @Subscribe
+  public void invalidateAllOn(InvalidateCachesEvent e) {
+    if (userCaches.stream().noneMatch(e::invalidates)) {
+      return;
+    }
+
+    long invalidatedAt = generation.incrementAndGet();
+    allInvalidatedAt = invalidatedAt;
+    // covered by allInvalidatedAt, later user invalidations are kept
+    userInvalidatedAt.values().removeIf(userInvalidated -> userInvalidated <= invalidatedAt);
+    cache.invalidateAll();
+  }
+
+  /**
+   * Successful authentication without credentials.
+   */
+  private static final class CachedAuthentication {
+
+    private final String username;
+    private final Object principal;
+    private final Collection<? extends GrantedAuthority> authorities;
+
+    CachedAuthentication(String username, Authentication authentication) {
+      this.username = username;
+      this.principal = authentication.getPrincipal();
+      this.authorities = authentication.getAuthorities();
+    }
+
+    Authentication toAuthentication(Object details) {
+      UsernamePasswordAuthenticationToken authentication =
+          new UsernamePasswordAuthenticationToken(principal, null, authorities);
+      authentication.setDetails(details);
+      return authentication;
+    }
+
+  }
+
+}
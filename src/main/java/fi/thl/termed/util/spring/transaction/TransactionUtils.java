@@ -6,6 +6,8 @@ import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.support.DefaultTransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 public final class TransactionUtils {
 
@@ -38,4 +40,52 @@ public final class TransactionUtils {
     return results;
   }
 
+  /**
+   * Runs operation after current transaction has been committed, in a new transaction of its own.
+   * If current transaction is rolled back, operation is not run. If there is no current
+   * transaction, operation is run immediately.
+   */
+  public static void runAfterCommit(PlatformTransactionManager manager, Runnable operation) {
+    runAfterCommit(manager, operation, () -> {
+    });
+  }
+
+  /**
+   * Runs operation as {@link #runAfterCommit(PlatformTransactionManager, Runnable)}. Cleanup is
+   * always run, after the operation or after rollback.
+   */
+  public static void runAfterCommit(PlatformTransactionManager manager, Runnable operation,
+      Runnable cleanup) {
+
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      try {
+        operation.run();
+      } finally {
+        cleanup.run();
+      }
+      return;
+    }
+
+    TransactionSynchronizationManager.registerSynchronization(
+        new TransactionSynchronizationAdapter() {
+          @Override
+          public void afterCommit() {
+            // resources of the committed transaction are still bound, so use a new transaction
+            runInTransaction(manager,
+                new DefaultTransactionDefinition(TransactionDefinition.PROPAGATION_REQUIRES_NEW),
+                () -> {
+                  operation.run();
+                  return null;
+                },
+                (e) -> {
+                });
+          }
+
+          @Override
+          public void afterCompletion(int status) {
+            cleanup.run();
+          }
+        });
+  }
+
 }
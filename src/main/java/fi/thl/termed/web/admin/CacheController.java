@@ -2,10 +2,15 @@ package fi.thl.termed.web.admin;
 
 import static org.springframework.http.HttpStatus.NO_CONTENT;
 
+import com.google.common.collect.ImmutableMap;
 import com.google.common.eventbus.EventBus;
 import fi.thl.termed.domain.AppRole;
 import fi.thl.termed.domain.User;
 import fi.thl.termed.domain.event.InvalidateCachesEvent;
+import fi.thl.termed.util.dao.CacheStatistics;
+import fi.thl.termed.util.dao.SystemDaoCaches;
+import fi.thl.termed.util.spring.annotation.GetJsonMapping;
+import java.util.Map;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
@@ -20,6 +25,18 @@ public class CacheController {
 
   @Autowired
   private EventBus eventBus;
+  @Autowired
+  private SystemDaoCaches daoCaches;
+
+  @GetJsonMapping("/caches")
+  public Map<String, ImmutableMap<String, CacheStatistics>> getCacheStats(
+      @AuthenticationPrincipal User user) {
+    if (user.getAppRole() == AppRole.SUPERUSER) {
+      return daoCaches.getStats();
+    } else {
+      throw new AccessDeniedException("");
+    }
+  }
 
   @DeleteMapping("/caches")
   @ResponseStatus(NO_CONTENT)
@@ -1,7 +1,13 @@
 package fi.thl.termed.web.dump;
 
 import static fi.thl.termed.util.collect.SetUtils.toImmutableSet;
+import static fi.thl.termed.util.spring.http.MediaTypes.APPLICATION_NDJSON;
+import static fi.thl.termed.util.spring.http.MediaTypes.APPLICATION_NDJSON_VALUE;
+import static fi.thl.termed.util.spring.http.MediaTypes.APPLICATION_TERMED_DUMP;
+import static fi.thl.termed.util.spring.http.MediaTypes.APPLICATION_TERMED_DUMP_VALUE;
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.springframework.http.HttpHeaders.ACCEPT_ENCODING;
+import static org.springframework.http.HttpHeaders.CONTENT_ENCODING;
 import static org.springframework.http.MediaType.APPLICATION_JSON_UTF8_VALUE;
 
 import com.google.gson.Gson;
@@ -13,25 +19,35 @@ import fi.thl.termed.domain.GraphId;
 import fi.thl.termed.domain.Node;
 import fi.thl.termed.domain.Type;
 import fi.thl.termed.domain.User;
+import fi.thl.termed.service.dump.util.BinaryDumpCodec;
+import fi.thl.termed.service.dump.util.DumpCodec;
+import fi.thl.termed.service.dump.util.NdjsonDumpCodec;
 import fi.thl.termed.util.query.MatchAll;
 import fi.thl.termed.util.query.Query;
 import fi.thl.termed.util.service.Service;
 import fi.thl.termed.util.spring.annotation.GetJsonMapping;
 import fi.thl.termed.util.spring.exception.NotFoundException;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.util.Iterator;
 import java.util.List;
 import java.util.UUID;
 import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.HttpMediaTypeNotAcceptableException;
+import org.springframework.web.accept.ContentNegotiationManager;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
 
 @RestController
 @RequestMapping("/api")
@@ -46,6 +62,9 @@ public class DumpReadController {
   @Autowired
   private Gson gson;
 
+  @Autowired
+  private ContentNegotiationManager contentNegotiationManager;
+
   @GetJsonMapping("/dump")
   public void dump(@AuthenticationPrincipal User user, HttpServletResponse response)
       throws IOException {
@@ -110,6 +129,72 @@ public class DumpReadController {
     }
   }
 
+  @GetMapping(path = "/dump",
+      produces = {APPLICATION_NDJSON_VALUE, APPLICATION_TERMED_DUMP_VALUE})
+  public void dumpStreamed(@AuthenticationPrincipal User user,
+      HttpServletRequest request, HttpServletResponse response)
+      throws IOException, HttpMediaTypeNotAcceptableException {
+    try (Stream<GraphId> graphIds = graphService.keys(new Query<>(new MatchAll<>()), user)) {
+      DumpId dumpId = new DumpId(graphIds.collect(toImmutableSet()));
+      writeStreamed(dumpService.get(dumpId, user).orElseThrow(IllegalStateException::new),
+          request, response);
+    }
+  }
+
+  @GetMapping(path = "/dump", params = "graphId",
+      produces = {APPLICATION_NDJSON_VALUE, APPLICATION_TERMED_DUMP_VALUE})
+  public void dumpStreamedByGraphIds(@RequestParam("graphId") List<UUID> ids,
+      @AuthenticationPrincipal User user,
+      HttpServletRequest request, HttpServletResponse response)
+      throws IOException, HttpMediaTypeNotAcceptableException {
+    DumpId dumpId = new DumpId(ids.stream().map(GraphId::new).collect(toImmutableSet()));
+    writeStreamed(dumpService.get(dumpId, user).orElseThrow(IllegalStateException::new),
+        request, response);
+  }
+
+  @GetMapping(path = "/graphs/{graphId}/dump",
+      produces = {APPLICATION_NDJSON_VALUE, APPLICATION_TERMED_DUMP_VALUE})
+  public void dumpStreamedByGraphId(@PathVariable("graphId") UUID graphId,
+      @AuthenticationPrincipal User user,
+      HttpServletRequest request, HttpServletResponse response)
+      throws IOException, HttpMediaTypeNotAcceptableException {
+    Graph graph = graphService.get(new GraphId(graphId), user).orElseThrow(NotFoundException::new);
+    writeStreamed(dumpService.get(new DumpId(graph.identifier()), user)
+        .orElseThrow(IllegalStateException::new), request, response);
+  }
+
+  // writes NDJSON or binary dump (as negotiated from Accept header or format parameter),
+  // compressed on the fly if client accepts gzip
+  private void writeStreamed(Dump dump, HttpServletRequest request,
+      HttpServletResponse response) throws IOException, HttpMediaTypeNotAcceptableException {
+
+    boolean binary = contentNegotiationManager
+        .resolveMediaTypes(new ServletWebRequest(request)).stream()
+        .filter(t -> t.isCompatibleWith(APPLICATION_NDJSON)
+            || t.isCompatibleWith(APPLICATION_TERMED_DUMP))
+        .findFirst()
+        .map(APPLICATION_TERMED_DUMP::isCompatibleWith)
+        .orElse(false);
+
+    DumpCodec codec = binary ? new BinaryDumpCodec(gson) : new NdjsonDumpCodec(gson);
+
+    response.setContentType(binary ? APPLICATION_TERMED_DUMP_VALUE : APPLICATION_NDJSON_VALUE);
+
+    String acceptEncoding = request.getHeader(ACCEPT_ENCODING);
+    boolean gzip = acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
+
+    if (gzip) {
+      response.setHeader(CONTENT_ENCODING, "gzip");
+    }
+
+    try (Dump closeable = dump;
+        OutputStream out = gzip
+            ? new GZIPOutputStream(response.getOutputStream(), 1 << 16)
+            : response.getOutputStream()) {
+      codec.write(closeable, out);
+    }
+  }
+
   // write outer object manually to to get nicely formatted dump, actual data is written with gson
   private void writeJson(Iterator<Graph> graphs, Iterator<Type> types, Iterator<Node> nodes,
       Writer w) throws IOException {
@@ -1,17 +1,47 @@
 package fi.thl.termed.web.dump;
 
+import static fi.thl.termed.util.collect.StreamUtils.toListAndClose;
 import static fi.thl.termed.util.service.SaveMode.saveMode;
 import static fi.thl.termed.util.service.WriteOptions.opts;
+import static fi.thl.termed.util.spring.http.MediaTypes.APPLICATION_NDJSON_VALUE;
+import static fi.thl.termed.util.spring.http.MediaTypes.APPLICATION_TERMED_DUMP;
+import static fi.thl.termed.util.spring.http.MediaTypes.APPLICATION_TERMED_DUMP_VALUE;
+import static fi.thl.termed.util.spring.transaction.TransactionUtils.runInTransaction;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.emptyList;
+import static org.springframework.http.HttpHeaders.CONTENT_ENCODING;
 import static org.springframework.http.HttpStatus.NO_CONTENT;
 
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
 import fi.thl.termed.domain.Dump;
 import fi.thl.termed.domain.DumpId;
+import fi.thl.termed.domain.Graph;
+import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.Type;
 import fi.thl.termed.domain.User;
+import fi.thl.termed.service.dump.util.BinaryDumpCodec;
+import fi.thl.termed.service.dump.util.DumpCodec;
+import fi.thl.termed.service.dump.util.NdjsonDumpCodec;
+import fi.thl.termed.util.json.JsonStream;
+import fi.thl.termed.util.service.SaveMode;
 import fi.thl.termed.util.service.Service;
+import fi.thl.termed.util.service.WriteOptions;
 import fi.thl.termed.util.spring.annotation.PostJsonMapping;
+import fi.thl.termed.util.spring.exception.BadRequestException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import javax.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
-import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
@@ -24,15 +54,124 @@ public class DumpWriteController {
   @Autowired
   private Service<DumpId, Dump> dumpService;
 
+  @Autowired
+  private Gson gson;
+
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+
+  /**
+   * Restores dump read incrementally from request body. Graphs and types are read in memory and
+   * saved first, nodes are then streamed to node service that writes them in batches in one
+   * transaction (so that on Postgres references are checked only at commit and node order in dump
+   * does not matter). Graphs and types are expected before nodes, as written by dump read API.
+   * Whole restore runs in one transaction, so a rejected dump leaves nothing saved. Nodes are
+   * indexed and node events are posted only after the transaction commits.
+   */
   @PostJsonMapping(produces = {})
   @ResponseStatus(NO_CONTENT)
-  public void restore(@RequestBody Dump dump,
+  public void restore(
       @RequestParam(name = "mode", defaultValue = "upsert") String mode,
       @RequestParam(name = "sync", defaultValue = "false") boolean sync,
       @RequestParam(name = "generateCodes", defaultValue = "false") boolean generateCodes,
       @RequestParam(name = "generateUris", defaultValue = "false") boolean generateUris,
-      @AuthenticationPrincipal User user) {
-    dumpService.save(dump, saveMode(mode), opts(sync, generateCodes, generateUris), user);
+      @AuthenticationPrincipal User user,
+      HttpServletRequest request) throws IOException {
+
+    SaveMode saveMode = saveMode(mode);
+    WriteOptions opts = opts(sync, generateCodes, generateUris);
+
+    try (JsonReader reader = new JsonReader(
+        new InputStreamReader(request.getInputStream(), UTF_8))) {
+      runInTransaction(transactionManager, () -> {
+        try {
+          restore(reader, saveMode, opts, user);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+        return null;
+      });
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  private void restore(JsonReader reader, SaveMode saveMode, WriteOptions opts, User user)
+      throws IOException {
+
+    List<Graph> graphs = emptyList();
+    List<Type> types = emptyList();
+    boolean nodesSaved = false;
+
+    reader.beginObject();
+
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+
+      // nodes are already saved, whole restore is rolled back
+      if ((name.equals("graphs") || name.equals("types")) && nodesSaved) {
+        throw new BadRequestException("Dump graphs and types are expected before nodes");
+      }
+
+      switch (name) {
+        case "graphs":
+          graphs = toListAndClose(JsonStream.readArray(gson, Graph.class, reader));
+          break;
+        case "types":
+          types = toListAndClose(JsonStream.readArray(gson, Type.class, reader));
+          break;
+        case "nodes":
+          try (Dump dump = new Dump(graphs.stream(), types.stream(),
+              JsonStream.readArray(gson, Node.class, reader))) {
+            dumpService.save(dump, saveMode, opts, user);
+          }
+          nodesSaved = true;
+          break;
+        default:
+          reader.skipValue();
+      }
+    }
+
+    reader.endObject();
+
+    if (!nodesSaved) {
+      dumpService.save(new Dump(graphs.stream(), types.stream(), Stream.empty()),
+          saveMode, opts, user);
+    }
+  }
+
+  /**
+   * Restores NDJSON or binary dump, chosen by Content-Type. Body may be gzip compressed (with
+   * Content-Encoding: gzip). Nodes are streamed to node service as with JSON dumps, whole restore
+   * runs in one transaction.
+   */
+  @PostMapping(consumes = {APPLICATION_NDJSON_VALUE, APPLICATION_TERMED_DUMP_VALUE})
+  @ResponseStatus(NO_CONTENT)
+  public void restoreStreamed(
+      @RequestParam(name = "mode", defaultValue = "upsert") String mode,
+      @RequestParam(name = "sync", defaultValue = "false") boolean sync,
+      @RequestParam(name = "generateCodes", defaultValue = "false") boolean generateCodes,
+      @RequestParam(name = "generateUris", defaultValue = "false") boolean generateUris,
+      @AuthenticationPrincipal User user,
+      HttpServletRequest request) throws IOException {
+
+    DumpCodec codec = APPLICATION_TERMED_DUMP.isCompatibleWith(
+        MediaType.parseMediaType(request.getContentType()))
+        ? new BinaryDumpCodec(gson)
+        : new NdjsonDumpCodec(gson);
+
+    String contentEncoding = request.getHeader(CONTENT_ENCODING);
+    boolean gzip = contentEncoding != null && contentEncoding.toLowerCase().contains("gzip");
+
+    try (InputStream in = gzip
+        ? new GZIPInputStream(request.getInputStream(), 1 << 16)
+        : request.getInputStream();
+        Dump dump = codec.read(in)) {
+      runInTransaction(transactionManager, () -> {
+        dumpService.save(dump, saveMode(mode), opts(sync, generateCodes, generateUris), user);
+        return null;
+      });
+    }
   }
 
 }
@@ -1,31 +1,51 @@
 package fi.thl.termed.web.dump;
 
+import static fi.thl.termed.util.collect.StreamUtils.toListAndClose;
 import static fi.thl.termed.util.service.SaveMode.saveMode;
+import static fi.thl.termed.util.service.WriteOptions.defaultOpts;
 import static fi.thl.termed.util.service.WriteOptions.opts;
 import static fi.thl.termed.util.spring.SpEL.RANDOM_UUID;
+import static fi.thl.termed.util.spring.transaction.TransactionUtils.runInTransaction;
 import static java.util.stream.Collectors.toList;
 import static org.springframework.http.MediaType.APPLICATION_JSON_UTF8_VALUE;
 
 import com.google.common.collect.Multimaps;
+import com.google.common.eventbus.EventBus;
+import fi.thl.termed.domain.AppRole;
 import fi.thl.termed.domain.Dump;
 import fi.thl.termed.domain.DumpId;
 import fi.thl.termed.domain.Graph;
 import fi.thl.termed.domain.GraphId;
 import fi.thl.termed.domain.LangValue;
 import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.NodeId;
 import fi.thl.termed.domain.ReferenceAttribute;
+import fi.thl.termed.domain.Revision;
 import fi.thl.termed.domain.TextAttribute;
 import fi.thl.termed.domain.Type;
 import fi.thl.termed.domain.TypeId;
 import fi.thl.termed.domain.User;
+import fi.thl.termed.domain.event.ReindexEvent;
+import fi.thl.termed.service.node.internal.JdbcNodeGraphCopyDao;
+import fi.thl.termed.service.node.specification.NodesByGraphId;
+import fi.thl.termed.service.type.specification.TypesByGraphId;
+import fi.thl.termed.util.query.Queries;
+import fi.thl.termed.util.query.Query;
+import fi.thl.termed.util.service.SaveMode;
+import fi.thl.termed.util.service.SequenceService;
 import fi.thl.termed.util.service.Service;
 import fi.thl.termed.util.spring.annotation.PostJsonMapping;
 import fi.thl.termed.util.spring.exception.NotFoundException;
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Objects;
 import java.util.UUID;
 import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
@@ -35,9 +55,35 @@ import org.springframework.web.bind.annotation.RestController;
 @RequestMapping("/api")
 public class DumpWriteCopyController {
 
+  private Logger log = LoggerFactory.getLogger(getClass());
+
   @Autowired
   private Service<DumpId, Dump> dumpService;
 
+  @Autowired
+  private Service<GraphId, Graph> graphService;
+
+  @Autowired
+  private Service<TypeId, Type> typeService;
+
+  @Autowired
+  private Service<NodeId, Node> nodeService;
+
+  @Autowired
+  private SequenceService revisionSeqService;
+
+  @Autowired
+  private Service<Long, Revision> revisionService;
+
+  @Autowired
+  private JdbcNodeGraphCopyDao nodeGraphCopyDao;
+
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+
+  @Autowired
+  private EventBus eventBus;
+
   @PostJsonMapping(path = "/graphs/{graphId}/dump", params = "copy=true",
       produces = APPLICATION_JSON_UTF8_VALUE)
   public GraphId copyDump(
@@ -49,18 +95,59 @@ public class DumpWriteCopyController {
       @RequestParam(name = "generateUris", defaultValue = "false") boolean generateUris,
       @AuthenticationPrincipal User user) {
 
+    SaveMode saveMode = saveMode(mode);
+
+    if (saveMode == SaveMode.INSERT && !generateCodes && !generateUris
+        && (user.getAppRole() == AppRole.ADMIN || user.getAppRole() == AppRole.SUPERUSER)) {
+      copyInDatabase(sourceGraphId, targetGraphId, sync, user);
+      return new GraphId(targetGraphId);
+    }
+
     try (Dump dump = dumpService.get(new DumpId(GraphId.of(sourceGraphId)), user)
         .orElseThrow(NotFoundException::new)) {
       dumpService.save(new Dump(
               dump.getGraphs().map(graph -> mapGraphToGraph(graph, targetGraphId)),
               dump.getTypes().map(type -> mapTypeToGraph(type, targetGraphId)),
-              dump.getNodes().map(node -> mapNodeToGraph(node, targetGraphId))),
-          saveMode(mode), opts(sync, generateCodes, generateUris), user);
+              dump.getNodes().map(node -> mapNodeToGraph(node, sourceGraphId, targetGraphId))),
+          saveMode, opts(sync, generateCodes, generateUris), user);
     }
 
     return new GraphId(targetGraphId);
   }
 
+  /**
+   * Copies graph so that graph and types are saved normally but nodes are copied with set based
+   * SQL in the same transaction, recorded in one revision. Target graph is then reindexed.
+   */
+  private void copyInDatabase(UUID sourceGraphId, UUID targetGraphId, boolean sync, User user) {
+    Graph sourceGraph = graphService.get(GraphId.of(sourceGraphId), user)
+        .orElseThrow(NotFoundException::new);
+    List<Type> sourceTypes = toListAndClose(
+        typeService.values(new Query<>(new TypesByGraphId(sourceGraphId)), user));
+
+    int nodeCount = runInTransaction(transactionManager, () -> {
+      graphService.save(mapGraphToGraph(sourceGraph, targetGraphId),
+          SaveMode.INSERT, opts(sync), user);
+      typeService.save(sourceTypes.stream().map(type -> mapTypeToGraph(type, targetGraphId)),
+          SaveMode.INSERT, opts(sync), user);
+
+      LocalDateTime now = LocalDateTime.now();
+
+      Long revision = revisionService.save(
+          Revision.of(revisionSeqService.getAndAdvance(user), user.getUsername(), now),
+          SaveMode.INSERT, defaultOpts(), user);
+
+      return nodeGraphCopyDao.copy(sourceGraphId, targetGraphId, revision,
+          user.getUsername(), now);
+    });
+
+    log.info("Copied {} nodes from graph {} to {} (user: {})",
+        nodeCount, sourceGraphId, targetGraphId, user.getUsername());
+
+    eventBus.post(new ReindexEvent<>(() -> nodeService.keys(
+        Queries.sqlQuery(new NodesByGraphId(targetGraphId)), user)));
+  }
+
   @PostJsonMapping(path = "/graphs/{graphId}/dump", params = {"copy=true", "typesOnly=true"},
       produces = APPLICATION_JSON_UTF8_VALUE)
   public GraphId copyTypesOnly(
@@ -126,10 +213,14 @@ public class DumpWriteCopyController {
         .build();
   }
 
-  private Node mapNodeToGraph(Node node, UUID graphId) {
+  // references to nodes in the source graph are remapped as in JdbcNodeGraphCopyDao
+  private Node mapNodeToGraph(Node node, UUID sourceGraphId, UUID graphId) {
     return Node.builder()
         .id(node.getId(), node.getTypeId(), graphId)
         .copyOptionalsFrom(node)
+        .references(Multimaps.transformValues(node.getReferences(),
+            r -> Objects.equals(r.getTypeGraphId(), sourceGraphId)
+                ? NodeId.of(r.getId(), r.getTypeId(), graphId) : r))
         .build();
   }
 
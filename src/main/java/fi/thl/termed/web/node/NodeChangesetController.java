@@ -1,8 +1,11 @@
 package fi.thl.termed.web.node;
 
+import static fi.thl.termed.util.DurationUtils.prettyPrintMillis;
 import static fi.thl.termed.util.service.SaveMode.saveMode;
 import static fi.thl.termed.util.service.WriteOptions.opts;
+import static java.lang.System.currentTimeMillis;
 import static java.util.Objects.requireNonNull;
+import static java.util.stream.Collectors.toList;
 import static org.springframework.http.HttpStatus.NO_CONTENT;
 
 import fi.thl.termed.domain.Changeset;
@@ -11,12 +14,18 @@ import fi.thl.termed.domain.Node;
 import fi.thl.termed.domain.NodeId;
 import fi.thl.termed.domain.TypeId;
 import fi.thl.termed.domain.User;
+import fi.thl.termed.service.node.util.NodeChangesetResolver;
+import fi.thl.termed.util.service.SaveMode;
 import fi.thl.termed.util.service.Service;
+import fi.thl.termed.util.service.WriteOptions;
 import fi.thl.termed.util.spring.annotation.PostJsonMapping;
-import fi.thl.termed.util.spring.exception.NotFoundException;
+import java.util.List;
 import java.util.Objects;
 import java.util.UUID;
+import java.util.function.Function;
 import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -30,6 +39,8 @@ import org.springframework.web.bind.annotation.RestController;
 @RequestMapping("/api")
 public class NodeChangesetController {
 
+  private Logger log = LoggerFactory.getLogger(getClass());
+
   @Autowired
   private Service<NodeId, Node> nodeService;
 
@@ -47,25 +58,25 @@ public class NodeChangesetController {
 
     TypeId type = new TypeId(typeId, new GraphId(graphId));
 
-    Stream<Node> saves = Stream.concat(
-        changeset.getSave().stream()
-            .map(node -> Objects.equals(node.getType(), type) ? node : Node.builder()
-                .id(node.getId(), type)
-                .copyOptionalsFrom(node)
-                .build()),
-        changeset.getPatch().stream()
-            .map(patch -> {
-              NodeId id = new NodeId(requireNonNull(patch.getId()), type);
-              Node prev = nodeService.get(id, user).orElseThrow(NotFoundException::new);
-              return merge(prev, patch);
-            }));
-
-    Stream<NodeId> deletes =
-        changeset.getDelete().stream()
-            .map(node -> new NodeId(node.getId(), type));
-
-    nodeService.saveAndDelete(
-        saves, deletes, saveMode(mode), opts(sync, generateCodes, generateUris), user);
+    List<Node> saves = changeset.getSave().stream()
+        .map(node -> Objects.equals(node.getType(), type) ? node : Node.builder()
+            .id(node.getId(), type)
+            .copyOptionalsFrom(node)
+            .build())
+        .collect(toList());
+
+    List<Node> patches = changeset.getPatch().stream()
+        .map(patch -> Objects.equals(patch.getType(), type) ? patch : Node.builder()
+            .id(requireNonNull(patch.getId()), type)
+            .copyOptionalsFrom(patch)
+            .build())
+        .collect(toList());
+
+    List<NodeId> deletes = changeset.getDelete().stream()
+        .map(node -> new NodeId(node.getId(), type))
+        .collect(toList());
+
+    apply(saves, patches, deletes, saveMode(mode), opts(sync, generateCodes, generateUris), user);
   }
 
   @PostJsonMapping(path = "/graphs/{graphId}/nodes", params = "changeset=true", produces = {})
@@ -79,27 +90,21 @@ public class NodeChangesetController {
       @RequestBody Changeset<NodeId, Node> changeset,
       @AuthenticationPrincipal User user) {
 
-    Stream<Node> saves = Stream.concat(
-        changeset.getSave().stream()
-            .map(node -> Objects.equals(node.getType(), TypeId.of(node.getTypeId(), graphId))
-                ? node
-                : Node.builder()
-                    .id(node.getId(), node.getTypeId(), graphId)
-                    .copyOptionalsFrom(node)
-                    .build()),
-        changeset.getPatch().stream()
-            .map(patch -> {
-              NodeId id = new NodeId(requireNonNull(patch.getId()), patch.getTypeId(), graphId);
-              Node prev = nodeService.get(id, user).orElseThrow(NotFoundException::new);
-              return merge(prev, patch);
-            }));
-
-    Stream<NodeId> deletes =
-        changeset.getDelete().stream()
-            .map(node -> new NodeId(node.getId(), node.getTypeId(), graphId));
+    Function<Node, Node> toGraph = node ->
+        Objects.equals(node.getType(), TypeId.of(node.getTypeId(), graphId))
+            ? node
+            : Node.builder()
+                .id(requireNonNull(node.getId()), node.getTypeId(), graphId)
+                .copyOptionalsFrom(node)
+                .build();
 
-    nodeService.saveAndDelete(
-        saves, deletes, saveMode(mode), opts(sync, generateCodes, generateUris), user);
+    List<Node> saves = changeset.getSave().stream().map(toGraph).collect(toList());
+    List<Node> patches = changeset.getPatch().stream().map(toGraph).collect(toList());
+    List<NodeId> deletes = changeset.getDelete().stream()
+        .map(node -> new NodeId(node.getId(), node.getTypeId(), graphId))
+        .collect(toList());
+
+    apply(saves, patches, deletes, saveMode(mode), opts(sync, generateCodes, generateUris), user);
   }
 
   @PostJsonMapping(path = "/nodes", params = "changeset=true", produces = {})
@@ -112,29 +117,35 @@ public class NodeChangesetController {
       @RequestBody Changeset<NodeId, Node> changeset,
       @AuthenticationPrincipal User user) {
 
-    Stream<Node> saves = Stream.concat(
-        changeset.getSave().stream(),
-        changeset.getPatch().stream()
-            .map(patch -> merge(
-                nodeService.get(patch.identifier(), user).orElseThrow(NotFoundException::new),
-                patch)));
-
-    Stream<NodeId> deletes =
-        changeset.getDelete().stream();
-
-    nodeService.saveAndDelete(
-        saves, deletes, saveMode(mode), opts(sync, generateCodes, generateUris), user);
+    apply(changeset.getSave(), changeset.getPatch(), changeset.getDelete(),
+        saveMode(mode), opts(sync, generateCodes, generateUris), user);
   }
 
-  private Node merge(Node node, Node patch) {
-    Node.Builder nodeBuilder = Node.builderFromCopyOf(node);
+  // loads patched nodes in batches and validates the whole changeset before writing anything
+  private void apply(List<Node> saves, List<Node> patches, List<NodeId> deletes,
+      SaveMode mode, WriteOptions opts, User user) {
+
+    NodeChangesetResolver resolver =
+        new NodeChangesetResolver(q -> nodeService.values(q, user));
 
-    patch.getCode().ifPresent(nodeBuilder::code);
-    patch.getUri().ifPresent(nodeBuilder::uri);
-    patch.getProperties().forEach(nodeBuilder::addProperty);
-    patch.getReferences().forEach(nodeBuilder::addReference);
+    long start = currentTimeMillis();
+    List<Node> mergedPatches = resolver.mergePatches(patches);
+    long mergeEnd = currentTimeMillis();
+    resolver.validateReferences(saves, patches, deletes);
+    long validateEnd = currentTimeMillis();
 
-    return nodeBuilder.build();
+    nodeService.saveAndDelete(
+        Stream.concat(saves.stream(), mergedPatches.stream()), deletes.stream(),
+        mode, opts, user);
+    long writeEnd = currentTimeMillis();
+
+    log.info("Applied changeset of {} saves, {} patches and {} deletes "
+            + "(lookup: {}, validate: {}, write: {}) (user: {})",
+        saves.size(), patches.size(), deletes.size(),
+        prettyPrintMillis(mergeEnd - start),
+        prettyPrintMillis(validateEnd - mergeEnd),
+        prettyPrintMillis(writeEnd - validateEnd),
+        user.getUsername());
   }
 
 }
@@ -1,19 +1,16 @@
 package fi.thl.termed.web.node;
 
 import static fi.thl.termed.service.node.specification.NodeSpecifications.specifyByQuery;
-import static fi.thl.termed.util.collect.StreamUtils.toListAndClose;
 import static fi.thl.termed.util.spring.SpEL.EMPTY_LIST;
 
-import fi.thl.termed.domain.Graph;
 import fi.thl.termed.domain.GraphId;
 import fi.thl.termed.domain.Node;
 import fi.thl.termed.domain.NodeId;
 import fi.thl.termed.domain.Type;
 import fi.thl.termed.domain.TypeId;
 import fi.thl.termed.domain.User;
-import fi.thl.termed.service.type.specification.TypesByGraphId;
-import fi.thl.termed.util.query.MatchAll;
-import fi.thl.termed.util.query.Query;
+import fi.thl.termed.service.metamodel.Metamodel;
+import fi.thl.termed.service.metamodel.MetamodelSnapshot;
 import fi.thl.termed.util.service.Service;
 import fi.thl.termed.util.spring.annotation.GetJsonMapping;
 import fi.thl.termed.util.spring.exception.NotFoundException;
@@ -31,9 +28,7 @@ import org.springframework.web.bind.annotation.RestController;
 public class NodeCountController {
 
   @Autowired
-  private Service<GraphId, Graph> graphService;
-  @Autowired
-  private Service<TypeId, Type> typeService;
+  private MetamodelSnapshot metamodelSnapshot;
   @Autowired
   private Service<NodeId, Node> nodeService;
 
@@ -42,10 +37,9 @@ public class NodeCountController {
       @RequestParam(value = "where", defaultValue = EMPTY_LIST) List<String> where,
       @AuthenticationPrincipal User user) {
 
-    List<Graph> graphs = toListAndClose(graphService.values(new Query<>(new MatchAll<>()), user));
-    List<Type> types = toListAndClose(typeService.values(new Query<>(new MatchAll<>()), user));
+    Metamodel metamodel = metamodelSnapshot.get(user);
 
-    return nodeService.count(specifyByQuery(graphs, types, types, where), user);
+    return nodeService.count(specifyByQuery(metamodel, metamodel.getTypes(), where), user);
   }
 
   @GetJsonMapping("/graphs/{graphId}/node-count")
@@ -54,16 +48,15 @@ public class NodeCountController {
       @RequestParam(value = "where", defaultValue = EMPTY_LIST) List<String> where,
       @AuthenticationPrincipal User user) {
 
-    if (!graphService.exists(new GraphId(graphId), user)) {
+    Metamodel metamodel = metamodelSnapshot.get(user);
+
+    if (!metamodel.containsGraph(GraphId.of(graphId))) {
       throw new NotFoundException();
     }
 
-    List<Graph> graphs = toListAndClose(graphService.values(new Query<>(new MatchAll<>()), user));
-    List<Type> types = toListAndClose(typeService.values(new Query<>(new MatchAll<>()), user));
-    List<Type> anyDomain = toListAndClose(
-        typeService.values(new Query<>(new TypesByGraphId(graphId)), user));
+    List<Type> anyDomain = metamodel.getTypes(GraphId.of(graphId));
 
-    return nodeService.count(specifyByQuery(graphs, types, anyDomain, where), user);
+    return nodeService.count(specifyByQuery(metamodel, anyDomain, where), user);
   }
 
   @GetJsonMapping("/graphs/{graphId}/types/{typeId}/node-count")
@@ -73,12 +66,11 @@ public class NodeCountController {
       @RequestParam(value = "where", defaultValue = EMPTY_LIST) List<String> where,
       @AuthenticationPrincipal User user) {
 
-    List<Graph> graphs = toListAndClose(graphService.values(new Query<>(new MatchAll<>()), user));
-    List<Type> types = toListAndClose(typeService.values(new Query<>(new MatchAll<>()), user));
-    Type domain = typeService.get(new TypeId(typeId, graphId), user)
+    Metamodel metamodel = metamodelSnapshot.get(user);
+    Type domain = metamodel.getType(TypeId.of(typeId, graphId))
         .orElseThrow(NotFoundException::new);
 
-    return nodeService.count(specifyByQuery(graphs, types, domain, where), user);
+    return nodeService.count(specifyByQuery(metamodel, domain, where), user);
   }
 
 }
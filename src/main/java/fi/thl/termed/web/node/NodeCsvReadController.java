@@ -16,6 +16,7 @@ import fi.thl.termed.domain.NodeId;
 import fi.thl.termed.domain.Type;
 import fi.thl.termed.domain.TypeId;
 import fi.thl.termed.domain.User;
+import fi.thl.termed.service.node.internal.JdbcNodeTextAttributeLangDao;
 import fi.thl.termed.service.node.select.NodeSelects;
 import fi.thl.termed.service.node.sort.NodeSorts;
 import fi.thl.termed.service.node.specification.NodeSpecifications;
@@ -59,6 +60,8 @@ public class NodeCsvReadController {
   private Service<TypeId, Type> typeService;
   @Autowired
   private Service<NodeId, Node> nodeService;
+  @Autowired
+  private JdbcNodeTextAttributeLangDao nodeTextAttributeLangDao;
 
   @GetCsvMapping("/nodes")
   public void get(
@@ -91,10 +94,13 @@ public class NodeCsvReadController {
     List<Graph> graphs = toImmutableListAndClose(graphService.values(matchAll(), user));
     List<Type> types = toImmutableListAndClose(typeService.values(matchAll(), user));
 
+    // types that the query can match, used to derive CSV columns
+    List<Type> domains = NodeSpecifications.filterDomainsByQuery(graphs, types, types, where);
+
     Specification<NodeId, Node> spec = NodeSpecifications
-        .specifyByQuery(graphs, types, types, where);
+        .specifyByQuery(graphs, types, domains, where);
     List<Select> selects = NodeSelects.parse(select);
-    List<Select> qSelects = NodeSelects.qualify(types, types, selects);
+    List<Select> qSelects = NodeSelects.qualify(types, domains, selects);
     List<Sort> sorts = NodeSorts.parse(sort);
 
     try (Stream<Node> nodes = nodeService
@@ -109,8 +115,8 @@ public class NodeCsvReadController {
           .charset(charset).build();
 
       new NodesToCsv(useLabeledReferences, labelAttribute, labelLang,
-          (id) -> nodeService.get(id, user))
-          .writeAsCsv(nodes, selects, csvOptions, out);
+          (query) -> nodeService.values(query, user), nodeTextAttributeLangDao::getLangs)
+          .writeAsCsv(nodes, domains, selects, csvOptions, out);
     }
   }
 
@@ -149,8 +155,10 @@ public class NodeCsvReadController {
 
     List<Graph> graphs = toImmutableListAndClose(graphService.values(matchAll(), user));
     List<Type> types = toImmutableListAndClose(typeService.values(matchAll(), user));
-    List<Type> domains = toImmutableListAndClose(
-        typeService.values(Queries.query(TypesByGraphId.of(graphId)), user));
+    List<Type> domains = NodeSpecifications.filterDomainsByQuery(graphs, types,
+        toImmutableListAndClose(
+            typeService.values(Queries.query(TypesByGraphId.of(graphId)), user)),
+        where);
 
     Specification<NodeId, Node> spec = NodeSpecifications
         .specifyByQuery(graphs, types, domains, where);
@@ -170,8 +178,8 @@ public class NodeCsvReadController {
           .charset(charset).build();
 
       new NodesToCsv(useLabeledReferences, labelAttribute, labelLang,
-          (id) -> nodeService.get(id, user))
-          .writeAsCsv(nodes, selects, csvOptions, out);
+          (query) -> nodeService.values(query, user), nodeTextAttributeLangDao::getLangs)
+          .writeAsCsv(nodes, domains, selects, csvOptions, out);
     }
   }
 
@@ -232,8 +240,8 @@ public class NodeCsvReadController {
           .charset(charset).build();
 
       new NodesToCsv(useLabeledReferences, labelAttribute, labelLang,
-          (id) -> nodeService.get(id, user))
-          .writeAsCsv(nodes, selects, csvOptions, out);
+          (query) -> nodeService.values(query, user), nodeTextAttributeLangDao::getLangs)
+          .writeAsCsv(nodes, of(domain), selects, csvOptions, out);
     }
   }
 
@@ -1,22 +1,19 @@
 package fi.thl.termed.web.node;
 
-import static fi.thl.termed.util.collect.StreamUtils.findFirstAndClose;
-import static fi.thl.termed.util.collect.StreamUtils.toImmutableListAndClose;
-
-import fi.thl.termed.domain.Graph;
 import fi.thl.termed.domain.GraphId;
 import fi.thl.termed.domain.Node;
 import fi.thl.termed.domain.NodeId;
 import fi.thl.termed.domain.Type;
 import fi.thl.termed.domain.TypeId;
 import fi.thl.termed.domain.User;
+import fi.thl.termed.service.metamodel.Metamodel;
+import fi.thl.termed.service.metamodel.MetamodelSnapshot;
 import fi.thl.termed.service.node.util.CsvToNodes;
 import fi.thl.termed.util.csv.CsvDelimiter;
 import fi.thl.termed.util.csv.CsvLineBreak;
 import fi.thl.termed.util.csv.CsvOptions;
 import fi.thl.termed.util.csv.CsvQuoteChar;
-import fi.thl.termed.util.query.Queries;
-import fi.thl.termed.util.query.Specification;
+import fi.thl.termed.util.query.Query;
 import fi.thl.termed.util.service.SaveMode;
 import fi.thl.termed.util.service.Service;
 import fi.thl.termed.util.service.WriteOptions;
@@ -26,7 +23,6 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.Charset;
 import java.util.List;
-import java.util.Optional;
 import java.util.UUID;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -46,9 +42,7 @@ import org.springframework.web.bind.annotation.RestController;
 public class NodeCsvSaveController {
 
   @Autowired
-  private Service<GraphId, Graph> graphService;
-  @Autowired
-  private Service<TypeId, Type> typeService;
+  private MetamodelSnapshot metamodelSnapshot;
   @Autowired
   private Service<NodeId, Node> nodeService;
 
@@ -67,22 +61,20 @@ public class NodeCsvSaveController {
       @AuthenticationPrincipal User user,
       HttpServletRequest request) throws IOException {
 
-    List<Type> types = toImmutableListAndClose(typeService.values(Queries.matchAll(), user));
-    Function<Specification<NodeId, Node>, Optional<NodeId>> referenceIdResolver =
-        specification -> findFirstAndClose(nodeService.keys(Queries.query(specification), user));
-
-    try (InputStream input = request.getInputStream()) {
-      Stream<Node> nodes = new CsvToNodes(types, referenceIdResolver).parseNodesFromCsv(
-          CsvOptions.builder()
-              .delimiter(delimiter)
-              .quoteChar(quoteChar)
-              .escapeChar(quoteChar.value())
-              .recordSeparator(lineBreak)
-              .charset(charset)
-              .quoteAll(quoteAll)
-              .build(),
-          input);
-
+    List<Type> types = metamodelSnapshot.get(user).getTypes();
+    Function<Query<NodeId, Node>, Stream<Node>> nodeProvider = q -> nodeService.values(q, user);
+
+    try (InputStream input = request.getInputStream();
+        Stream<Node> nodes = new CsvToNodes(types, nodeProvider).parseNodesFromCsv(
+            CsvOptions.builder()
+                .delimiter(delimiter)
+                .quoteChar(quoteChar)
+                .escapeChar(quoteChar.value())
+                .recordSeparator(lineBreak)
+                .charset(charset)
+                .quoteAll(quoteAll)
+                .build(),
+            input)) {
       nodeService.save(
           nodes,
           SaveMode.saveMode(mode),
@@ -107,27 +99,27 @@ public class NodeCsvSaveController {
       @AuthenticationPrincipal User user,
       HttpServletRequest request) throws IOException {
 
-    if (!graphService.exists(GraphId.of(graphId), user)) {
+    Metamodel metamodel = metamodelSnapshot.get(user);
+
+    if (!metamodel.containsGraph(GraphId.of(graphId))) {
       throw new NotFoundException();
     }
 
-    List<Type> types = toImmutableListAndClose(typeService.values(Queries.matchAll(), user));
-    Function<Specification<NodeId, Node>, Optional<NodeId>> referenceIdResolver =
-        specification -> findFirstAndClose(nodeService.keys(Queries.query(specification), user));
-
-    try (InputStream input = request.getInputStream()) {
-      Stream<Node> nodes = new CsvToNodes(types, referenceIdResolver).parseNodesFromCsv(
-          GraphId.of(graphId),
-          CsvOptions.builder()
-              .delimiter(delimiter)
-              .quoteChar(quoteChar)
-              .escapeChar(quoteChar.value())
-              .recordSeparator(lineBreak)
-              .charset(charset)
-              .quoteAll(quoteAll)
-              .build(),
-          input);
-
+    List<Type> types = metamodel.getTypes();
+    Function<Query<NodeId, Node>, Stream<Node>> nodeProvider = q -> nodeService.values(q, user);
+
+    try (InputStream input = request.getInputStream();
+        Stream<Node> nodes = new CsvToNodes(types, nodeProvider).parseNodesFromCsv(
+            GraphId.of(graphId),
+            CsvOptions.builder()
+                .delimiter(delimiter)
+                .quoteChar(quoteChar)
+                .escapeChar(quoteChar.value())
+                .recordSeparator(lineBreak)
+                .charset(charset)
+                .quoteAll(quoteAll)
+                .build(),
+            input)) {
       nodeService.save(
           nodes.map(node -> TypeId.of(node.getTypeId(), graphId).equals(node.getType())
               ? node
@@ -160,27 +152,27 @@ public class NodeCsvSaveController {
 
     TypeId type = TypeId.of(typeId, graphId);
 
-    if (!typeService.exists(type, user)) {
+    Metamodel metamodel = metamodelSnapshot.get(user);
+
+    if (!metamodel.containsType(type)) {
       throw new NotFoundException();
     }
 
-    List<Type> types = toImmutableListAndClose(typeService.values(Queries.matchAll(), user));
-    Function<Specification<NodeId, Node>, Optional<NodeId>> referenceIdResolver =
-        specification -> findFirstAndClose(nodeService.keys(Queries.query(specification), user));
-
-    try (InputStream input = request.getInputStream()) {
-      Stream<Node> nodes = new CsvToNodes(types, referenceIdResolver).parseNodesFromCsv(
-          type,
-          CsvOptions.builder()
-              .delimiter(delimiter)
-              .quoteChar(quoteChar)
-              .escapeChar(quoteChar.value())
-              .recordSeparator(lineBreak)
-              .charset(charset)
-              .quoteAll(quoteAll)
-              .build(),
-          input);
-
+    List<Type> types = metamodel.getTypes();
+    Function<Query<NodeId, Node>, Stream<Node>> nodeProvider = q -> nodeService.values(q, user);
+
+    try (InputStream input = request.getInputStream();
+        Stream<Node> nodes = new CsvToNodes(types, nodeProvider).parseNodesFromCsv(
+            type,
+            CsvOptions.builder()
+                .delimiter(delimiter)
+                .quoteChar(quoteChar)
+                .escapeChar(quoteChar.value())
+                .recordSeparator(lineBreak)
+                .charset(charset)
+                .quoteAll(quoteAll)
+                .build(),
+            input)) {
       nodeService.save(
           nodes.map(node -> type.equals(node.getType())
               ? node
@@ -11,22 +11,21 @@ import fi.thl.termed.domain.NodeId;
 import fi.thl.termed.domain.Type;
 import fi.thl.termed.domain.TypeId;
 import fi.thl.termed.domain.User;
-import fi.thl.termed.service.node.util.NodeRdfGraphWrapper;
+import fi.thl.termed.service.node.util.NodeRdfExporter;
 import fi.thl.termed.service.type.specification.TypesByGraphId;
-import fi.thl.termed.util.jena.StreamRDFWriterUtils;
+import fi.thl.termed.util.concurrent.ExecutorUtils;
 import fi.thl.termed.util.query.Query;
-import fi.thl.termed.util.query.Specification;
 import fi.thl.termed.util.rdf.RdfMediaTypes;
 import fi.thl.termed.util.service.Service;
 import fi.thl.termed.util.spring.exception.NotFoundException;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.time.LocalDate;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
-import java.util.function.Function;
-import java.util.stream.Stream;
+import java.util.concurrent.ExecutorService;
 import javax.servlet.http.HttpServletResponse;
 import org.apache.jena.riot.Lang;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -57,6 +56,10 @@ public class NodeRdfStreamReadController {
   @Value("${fi.thl.termed.defaultNamespace:}")
   private String defaultNamespace;
 
+  // converts nodes to triples, shared by all exports
+  private ExecutorService exportExecutor = ExecutorUtils.newFixedDaemonThreadPool(
+      Runtime.getRuntime().availableProcessors(), "rdf-export-%d");
+
   @GetMapping(produces = RdfMediaTypes.N_TRIPLES_VALUE)
   public void streamNTriples(
       @PathVariable(name = "graphId") UUID graphId,
@@ -75,17 +78,7 @@ public class NodeRdfStreamReadController {
     response.setContentType(RdfMediaTypes.N_TRIPLES_VALUE);
     response.setCharacterEncoding(UTF_8.toString());
 
-    try (OutputStream out = response.getOutputStream()) {
-      List<Type> types = toListAndClose(
-          typeService.values(new Query<>(new TypesByGraphId(graphId)), user));
-      Function<Specification<NodeId, Node>, Stream<Node>> nodes =
-          s -> nodeService.values(new Query<>(s), user);
-
-      StreamRDFWriterUtils.writeAndCloseIterator(out,
-          defaultNamespacePrefixes,
-          new NodeRdfGraphWrapper(defaultNamespace, types, nodes).find(null, null, null),
-          Lang.NTRIPLES);
-    }
+    export(graphId, user, response, Lang.NTRIPLES);
   }
 
   @GetMapping(produces = RdfMediaTypes.TURTLE_VALUE)
@@ -106,16 +99,17 @@ public class NodeRdfStreamReadController {
     response.setContentType(RdfMediaTypes.TURTLE_VALUE);
     response.setCharacterEncoding(UTF_8.toString());
 
-    try (OutputStream out = response.getOutputStream()) {
-      List<Type> types = toListAndClose(
-          typeService.values(new Query<>(new TypesByGraphId(graphId)), user));
-      Function<Specification<NodeId, Node>, Stream<Node>> nodes =
-          s -> nodeService.values(new Query<>(s), user);
+    export(graphId, user, response, Lang.TURTLE);
+  }
+
+  private void export(UUID graphId, User user, HttpServletResponse response, Lang lang)
+      throws IOException {
+    List<Type> types = toListAndClose(
+        typeService.values(new Query<>(new TypesByGraphId(graphId)), user));
 
-      StreamRDFWriterUtils.writeAndCloseIterator(out,
-          defaultNamespacePrefixes,
-          new NodeRdfGraphWrapper(defaultNamespace, types, nodes).find(null, null, null),
-          Lang.TURTLE);
+    try (OutputStream out = new BufferedOutputStream(response.getOutputStream())) {
+      new NodeRdfExporter(defaultNamespace, types, q -> nodeService.values(q, user), exportExecutor)
+          .write(out, defaultNamespacePrefixes, lang);
     }
   }
 
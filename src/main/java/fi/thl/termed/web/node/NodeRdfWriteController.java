@@ -1,8 +1,13 @@
 package fi.thl.termed.web.node;
 
+import static fi.thl.termed.util.collect.StreamUtils.forEachAndClose;
+import static fi.thl.termed.util.collect.StreamUtils.partitionedMap;
 import static fi.thl.termed.util.collect.StreamUtils.toImmutableListAndClose;
+import static fi.thl.termed.util.query.AndSpecification.and;
 import static fi.thl.termed.util.service.SaveMode.saveMode;
 import static fi.thl.termed.util.service.WriteOptions.opts;
+import static java.util.Collections.emptyList;
+import static java.util.stream.Collectors.toList;
 import static org.springframework.http.HttpStatus.NO_CONTENT;
 
 import fi.thl.termed.domain.Graph;
@@ -12,27 +17,35 @@ import fi.thl.termed.domain.NodeId;
 import fi.thl.termed.domain.Type;
 import fi.thl.termed.domain.TypeId;
 import fi.thl.termed.domain.User;
-import fi.thl.termed.service.node.util.RdfModelToNodes;
+import fi.thl.termed.service.node.specification.NodesByFieldValues;
+import fi.thl.termed.service.node.specification.NodesByGraphId;
+import fi.thl.termed.service.node.util.RdfStreamToNodes;
 import fi.thl.termed.service.type.specification.TypesByGraphId;
-import fi.thl.termed.util.collect.Tuple;
-import fi.thl.termed.util.jena.JenaRdfModel;
+import fi.thl.termed.util.jena.SubjectGroupingStreamRDF;
 import fi.thl.termed.util.query.Queries;
+import fi.thl.termed.util.query.Query;
 import fi.thl.termed.util.service.Service;
 import fi.thl.termed.util.spring.annotation.PatchRdfMapping;
 import fi.thl.termed.util.spring.annotation.PostRdfMapping;
 import fi.thl.termed.util.spring.exception.NotFoundException;
 import fi.thl.termed.util.spring.http.HttpPreconditions;
+import java.io.IOException;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.stream.Stream;
-import org.apache.jena.rdf.model.Model;
+import javax.servlet.http.HttpServletRequest;
+import org.apache.jena.atlas.web.ContentType;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFLanguages;
+import org.apache.jena.riot.RDFParser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.PathVariable;
-import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
@@ -42,6 +55,8 @@ import org.springframework.web.bind.annotation.RestController;
 @RequestMapping("/api/graphs/{graphId}/nodes")
 public class NodeRdfWriteController {
 
+  private static final int PATCH_BATCH_SIZE = 1000;
+
   private Logger log = LoggerFactory.getLogger(getClass());
 
   @Autowired
@@ -62,8 +77,8 @@ public class NodeRdfWriteController {
       @RequestParam(name = "sync", defaultValue = "false") boolean sync,
       @RequestParam(name = "generateCodes", defaultValue = "false") boolean generateCodes,
       @RequestParam(name = "generateUris", defaultValue = "false") boolean generateUris,
-      @RequestBody Model model,
-      @AuthenticationPrincipal User user) {
+      @AuthenticationPrincipal User user,
+      HttpServletRequest request) throws IOException {
 
     HttpPreconditions.checkFound(
         graphService.exists(GraphId.of(graphId), user),
@@ -73,10 +88,27 @@ public class NodeRdfWriteController {
 
     List<Type> types = toImmutableListAndClose(
         typeService.values(Queries.query(TypesByGraphId.of(graphId)), user));
-    List<Node> nodes = new RdfModelToNodes(types, q -> nodeService.keys(q, user), importCodes)
-        .apply(new JenaRdfModel(model));
 
-    nodeService.save(nodes.stream(), saveMode(mode), opts(sync, generateCodes, generateUris), user);
+    SubjectGroupingStreamRDF triples = new SubjectGroupingStreamRDF();
+
+    try (Stream<Node> nodes = new RdfStreamToNodes(types, q -> nodeService.values(q, user),
+        importCodes).apply(parse(request, triples))) {
+      nodeService.save(nodes, saveMode(mode), opts(sync, generateCodes, generateUris), user);
+    } finally {
+      triples.close();
+    }
+  }
+
+  private SubjectGroupingStreamRDF parse(HttpServletRequest request,
+      SubjectGroupingStreamRDF triples) throws IOException {
+    Lang lang = Optional.ofNullable(request.getContentType())
+        .map(ContentType::create)
+        .map(RDFLanguages::contentTypeToLang)
+        .orElse(Lang.RDFXML);
+
+    RDFParser.source(request.getInputStream()).lang(lang).parse(triples);
+
+    return triples;
   }
 
   @PatchRdfMapping(produces = {})
@@ -87,8 +119,8 @@ public class NodeRdfWriteController {
       @RequestParam(name = "sync", defaultValue = "false") boolean sync,
       @RequestParam(name = "append", defaultValue = "true") boolean append,
       @RequestParam(name = "lenient", defaultValue = "false") boolean lenient,
-      @RequestBody Model model,
-      @AuthenticationPrincipal User user) {
+      @AuthenticationPrincipal User user,
+      HttpServletRequest request) throws IOException {
 
     HttpPreconditions.checkRequestParam(
         mode.matches("update|upsert"),
@@ -102,16 +134,34 @@ public class NodeRdfWriteController {
 
     List<Type> types = toImmutableListAndClose(
         typeService.values(Queries.query(TypesByGraphId.of(graphId)), user));
-    List<Node> nodes = new RdfModelToNodes(types, q -> nodeService.keys(q, user), false)
-        .apply(new JenaRdfModel(model));
 
-    Stream<Node> patchedNodesStream = nodes.stream()
-        .map(patch -> Tuple.of(patch, nodeService.get(patch.identifier(), user)))
-        .filter(patchAndBaseNode -> {
-          Node patch = patchAndBaseNode._1;
-          Optional<Node> optionalBaseNode = patchAndBaseNode._2;
+    SubjectGroupingStreamRDF triples = new SubjectGroupingStreamRDF();
+
+    try (Stream<Node> patches = new RdfStreamToNodes(types, q -> nodeService.values(q, user),
+        false).apply(parse(request, triples))) {
 
-          if (optionalBaseNode.isPresent()) {
+      Stream<Node> patchedNodesStream = partitionedMap(patches, PATCH_BATCH_SIZE,
+          batch -> applyPatches(graphId, batch, append, lenient, user));
+
+      nodeService.save(patchedNodesStream, saveMode(mode), opts(sync), user);
+    } finally {
+      triples.close();
+    }
+  }
+
+  // fetches base nodes of the whole batch with one query
+  private Stream<Node> applyPatches(UUID graphId, List<Node> patches, boolean append,
+      boolean lenient, User user) {
+
+    Map<NodeId, Node> baseNodes = new HashMap<>();
+    forEachAndClose(nodeService.values(new Query<>(and(
+        NodesByGraphId.of(graphId),
+        NodesByFieldValues.ids(patches.stream().map(Node::getId).collect(toList()))),
+        emptyList(), -1), user), n -> baseNodes.put(n.identifier(), n));
+
+    return patches.stream()
+        .filter(patch -> {
+          if (baseNodes.containsKey(patch.identifier())) {
             return true;
           } else if (lenient) {
             log.warn("Skipping patch for {} (user: {})", patch.identifier(), user.getUsername());
@@ -121,11 +171,8 @@ public class NodeRdfWriteController {
                 "Node not found for patch %s (user: %s)", patch.identifier(), user.getUsername()));
           }
         })
-        .map(patchAndBaseNode -> {
-          Node patch = patchAndBaseNode._1;
-          Node baseNode = patchAndBaseNode._2.orElseThrow(IllegalStateException::new);
-
-          Node.Builder result = Node.builderFromCopyOf(baseNode);
+        .map(patch -> {
+          Node.Builder result = Node.builderFromCopyOf(baseNodes.get(patch.identifier()));
 
           if (append) {
             patch.getProperties().forEach(result::addUniqueProperty);
@@ -137,8 +184,6 @@ public class NodeRdfWriteController {
 
           return result.build();
         });
-
-    nodeService.save(patchedNodesStream, saveMode(mode), opts(sync), user);
   }
 
 }
@@ -1,20 +1,19 @@
 package fi.thl.termed.web.node;
 
 import static fi.thl.termed.service.node.specification.NodeSpecifications.specifyByAnyPropertyPrefix;
-import static fi.thl.termed.util.collect.StreamUtils.toListAndClose;
 import static fi.thl.termed.util.query.OrSpecification.or;
 import static fi.thl.termed.util.spring.SpEL.EMPTY_LIST;
+import static java.util.stream.Collectors.toList;
 
-import fi.thl.termed.domain.Graph;
 import fi.thl.termed.domain.GraphId;
 import fi.thl.termed.domain.Node;
 import fi.thl.termed.domain.NodeId;
 import fi.thl.termed.domain.Type;
 import fi.thl.termed.domain.TypeId;
 import fi.thl.termed.domain.User;
+import fi.thl.termed.service.metamodel.Metamodel;
+import fi.thl.termed.service.metamodel.MetamodelSnapshot;
 import fi.thl.termed.service.node.sort.NodeSorts;
-import fi.thl.termed.service.type.specification.TypesByGraphId;
-import fi.thl.termed.util.query.MatchAll;
 import fi.thl.termed.util.query.Query;
 import fi.thl.termed.util.query.Sort;
 import fi.thl.termed.util.query.Specification;
@@ -36,9 +35,7 @@ import org.springframework.web.bind.annotation.RestController;
 public class NodeReadController {
 
   @Autowired
-  private Service<GraphId, Graph> graphService;
-  @Autowired
-  private Service<TypeId, Type> typeService;
+  private MetamodelSnapshot metamodelSnapshot;
   @Autowired
   private Service<NodeId, Node> nodeService;
 
@@ -49,9 +46,9 @@ public class NodeReadController {
       @RequestParam(value = "max", defaultValue = "50") int max,
       @AuthenticationPrincipal User user) {
 
-    Specification<NodeId, Node> spec = or(toListAndClose(
-        typeService.values(new Query<>(new MatchAll<>()), user)
-            .map(type -> specifyByAnyPropertyPrefix(type, query))));
+    Specification<NodeId, Node> spec = or(metamodelSnapshot.get(user).getTypes().stream()
+        .map(type -> specifyByAnyPropertyPrefix(type, query))
+        .collect(toList()));
     List<Sort> sorts = NodeSorts.parse(sort);
 
     return nodeService.values(new Query<>(spec, sorts, max), user);
@@ -65,13 +62,15 @@ public class NodeReadController {
       @RequestParam(value = "max", defaultValue = "50") int max,
       @AuthenticationPrincipal User user) {
 
-    if (!graphService.exists(new GraphId(graphId), user)) {
+    Metamodel metamodel = metamodelSnapshot.get(user);
+
+    if (!metamodel.containsGraph(GraphId.of(graphId))) {
       throw new NotFoundException();
     }
 
-    Specification<NodeId, Node> spec = or(toListAndClose(
-        typeService.values(new Query<>(new TypesByGraphId(graphId)), user)
-            .map(type -> specifyByAnyPropertyPrefix(type, query))));
+    Specification<NodeId, Node> spec = or(metamodel.getTypes(GraphId.of(graphId)).stream()
+        .map(type -> specifyByAnyPropertyPrefix(type, query))
+        .collect(toList()));
     List<Sort> sorts = NodeSorts.parse(sort);
 
     return nodeService.values(new Query<>(spec, sorts, max), user);
@@ -86,7 +85,7 @@ public class NodeReadController {
       @RequestParam(value = "max", defaultValue = "50") int max,
       @AuthenticationPrincipal User user) {
 
-    Type type = typeService.get(TypeId.of(typeId, graphId), user)
+    Type type = metamodelSnapshot.get(user).getType(TypeId.of(typeId, graphId))
         .orElseThrow(NotFoundException::new);
 
     Specification<NodeId, Node> spec = specifyByAnyPropertyPrefix(type, query);
@@ -4,7 +4,6 @@ import static fi.thl.termed.util.collect.StreamUtils.toListAndClose;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Collections.emptyList;
 import static org.apache.jena.rdf.model.ModelFactory.createModelForGraph;
-import static org.apache.jena.riot.Lang.TURTLE;
 
 import fi.thl.termed.domain.Graph;
 import fi.thl.termed.domain.GraphId;
@@ -14,6 +13,7 @@ import fi.thl.termed.domain.Type;
 import fi.thl.termed.domain.TypeId;
 import fi.thl.termed.domain.User;
 import fi.thl.termed.service.node.util.NodeRdfGraphWrapper;
+import fi.thl.termed.service.node.util.NodeRdfStageGenerator;
 import fi.thl.termed.service.type.specification.TypesByGraphId;
 import fi.thl.termed.util.query.Query;
 import fi.thl.termed.util.query.Specification;
@@ -21,24 +21,27 @@ import fi.thl.termed.util.rdf.RdfMediaTypes;
 import fi.thl.termed.util.service.Service;
 import fi.thl.termed.util.spring.exception.NotFoundException;
 import fi.thl.termed.util.spring.http.MediaTypes;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.Iterator;
 import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.stream.Stream;
 import javax.servlet.http.HttpServletResponse;
+import org.apache.jena.graph.Triple;
 import org.apache.jena.query.QueryCancelledException;
 import org.apache.jena.query.QueryExecution;
 import org.apache.jena.query.QueryExecutionFactory;
 import org.apache.jena.query.QueryFactory;
-import org.apache.jena.query.ResultSet;
 import org.apache.jena.query.ResultSetFormatter;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.system.StreamRDF;
 import org.apache.jena.riot.system.StreamRDFWriter;
+import org.apache.jena.sparql.engine.main.StageBuilder;
 import org.apache.jena.update.UpdateAction;
 import org.apache.jena.update.UpdateFactory;
 import org.slf4j.Logger;
@@ -47,7 +50,6 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -83,55 +85,148 @@ public class NodeSparqlReadController {
         typeService.values(new Query<>(new TypesByGraphId(graphId)), user));
     Function<Specification<NodeId, Node>, Stream<Node>> nodes =
         s -> nodeService.values(new Query<>(s, emptyList(), -1), user);
-    return createModelForGraph(new NodeRdfGraphWrapper(defaultNamespace, types, nodes));
+    Function<Specification<NodeId, Node>, Long> counter = s -> nodeService.count(s, user);
+    return createModelForGraph(new NodeRdfGraphWrapper(defaultNamespace, types, nodes, counter));
   }
 
-  @PostMapping(produces = MediaType.TEXT_PLAIN_VALUE)
-  public ResponseEntity<String> queryText(
-      @PathVariable("graphId") UUID graphId,
-      @RequestParam(value = "timeout", defaultValue = "10") int timeout,
-      @RequestBody String sparqlSelect,
-      @AuthenticationPrincipal User user)
+  private QueryExecution buildQueryExecution(String queryString, Model model, int timeout) {
+    QueryExecution qe = QueryExecutionFactory.create(QueryFactory.create(queryString), model);
+    qe.setTimeout(timeout, TimeUnit.SECONDS);
+    StageBuilder.setGenerator(qe.getContext(), new NodeRdfStageGenerator(
+        StageBuilder.chooseStageGenerator(qe.getContext())));
+    return qe;
+  }
+
+  /**
+   * Executes query and streams results directly to response. Closing the query execution (also on
+   * client disconnect) closes all open node streams. If query is cancelled due to timeout before
+   * anything is written, responds with 408.
+   */
+  private void executeAndWrite(UUID graphId, int timeout, String queryString, User user,
+      HttpServletResponse response, String contentType, ResultWriter resultWriter)
       throws IOException {
 
     Model model = buildModelWrapper(graphId, user);
 
-    QueryExecution qe = QueryExecutionFactory.create(QueryFactory.create(sparqlSelect), model);
-    qe.setTimeout(timeout, TimeUnit.SECONDS);
-    ResultSet results = qe.execSelect();
-
-    try {
-      ByteArrayOutputStream out = new ByteArrayOutputStream();
-      ResultSetFormatter.out(out, results);
-      return new ResponseEntity<>(out.toString(UTF_8.name()), HttpStatus.OK);
-    } catch (QueryCancelledException e) {
-      log.error("Query timeout occured", e);
-      return new ResponseEntity<>(HttpStatus.REQUEST_TIMEOUT);
+    try (QueryExecution qe = buildQueryExecution(queryString, model, timeout)) {
+      response.setContentType(contentType);
+      response.setCharacterEncoding(UTF_8.toString());
+
+      try {
+        OutputStream out = response.getOutputStream();
+        resultWriter.write(qe, out);
+        out.flush();
+      } catch (QueryCancelledException e) {
+        log.warn("Query timeout occurred");
+        if (!response.isCommitted()) {
+          response.reset();
+          response.setStatus(HttpStatus.REQUEST_TIMEOUT.value());
+        }
+      }
     }
   }
 
+  @PostMapping(produces = MediaType.TEXT_PLAIN_VALUE)
+  public void queryText(
+      @PathVariable("graphId") UUID graphId,
+      @RequestParam(value = "timeout", defaultValue = "10") int timeout,
+      @RequestBody String sparqlSelect,
+      @AuthenticationPrincipal User user,
+      HttpServletResponse response) throws IOException {
+    // text table needs all rows to compute column widths, use other formats for large results
+    executeAndWrite(graphId, timeout, sparqlSelect, user, response, MediaType.TEXT_PLAIN_VALUE,
+        (qe, out) -> ResultSetFormatter.out(out, qe.execSelect()));
+  }
+
   @PostMapping(produces = MediaTypes.TEXT_CSV_VALUE)
-  public ResponseEntity<String> queryCsv(
+  public void queryCsv(
       @PathVariable("graphId") UUID graphId,
       @RequestParam(value = "timeout", defaultValue = "10") int timeout,
       @RequestBody String sparqlSelect,
-      @AuthenticationPrincipal User user)
-      throws IOException {
+      @AuthenticationPrincipal User user,
+      HttpServletResponse response) throws IOException {
+    executeAndWrite(graphId, timeout, sparqlSelect, user, response, MediaTypes.TEXT_CSV_VALUE,
+        (qe, out) -> ResultSetFormatter.outputAsCSV(out, qe.execSelect()));
+  }
 
-    Model model = buildModelWrapper(graphId, user);
+  @PostMapping(produces = MediaTypes.TEXT_TSV_VALUE)
+  public void queryTsv(
+      @PathVariable("graphId") UUID graphId,
+      @RequestParam(value = "timeout", defaultValue = "10") int timeout,
+      @RequestBody String sparqlSelect,
+      @AuthenticationPrincipal User user,
+      HttpServletResponse response) throws IOException {
+    executeAndWrite(graphId, timeout, sparqlSelect, user, response, MediaTypes.TEXT_TSV_VALUE,
+        (qe, out) -> ResultSetFormatter.outputAsTSV(out, qe.execSelect()));
+  }
 
-    QueryExecution qe = QueryExecutionFactory.create(QueryFactory.create(sparqlSelect), model);
-    qe.setTimeout(timeout, TimeUnit.SECONDS);
-    ResultSet results = qe.execSelect();
-
-    try {
-      ByteArrayOutputStream out = new ByteArrayOutputStream();
-      ResultSetFormatter.outputAsCSV(out, results);
-      return new ResponseEntity<>(out.toString(UTF_8.name()), HttpStatus.OK);
-    } catch (QueryCancelledException e) {
-      log.error("Query timeout occured", e);
-      return new ResponseEntity<>(HttpStatus.REQUEST_TIMEOUT);
-    }
+  @PostMapping(produces = RdfMediaTypes.SPARQL_RESULTS_JSON_VALUE)
+  public void queryJson(
+      @PathVariable("graphId") UUID graphId,
+      @RequestParam(value = "timeout", defaultValue = "10") int timeout,
+      @RequestBody String sparqlSelect,
+      @AuthenticationPrincipal User user,
+      HttpServletResponse response) throws IOException {
+    executeAndWrite(graphId, timeout, sparqlSelect, user, response,
+        RdfMediaTypes.SPARQL_RESULTS_JSON_VALUE,
+        (qe, out) -> {
+          if (qe.getQuery().isAskType()) {
+            ResultSetFormatter.outputAsJSON(out, qe.execAsk());
+          } else {
+            ResultSetFormatter.outputAsJSON(out, qe.execSelect());
+          }
+        });
+  }
+
+  @PostMapping(produces = RdfMediaTypes.SPARQL_RESULTS_XML_VALUE)
+  public void queryXml(
+      @PathVariable("graphId") UUID graphId,
+      @RequestParam(value = "timeout", defaultValue = "10") int timeout,
+      @RequestBody String sparqlSelect,
+      @AuthenticationPrincipal User user,
+      HttpServletResponse response) throws IOException {
+    executeAndWrite(graphId, timeout, sparqlSelect, user, response,
+        RdfMediaTypes.SPARQL_RESULTS_XML_VALUE,
+        (qe, out) -> {
+          if (qe.getQuery().isAskType()) {
+            ResultSetFormatter.outputAsXML(out, qe.execAsk());
+          } else {
+            ResultSetFormatter.outputAsXML(out, qe.execSelect());
+          }
+        });
+  }
+
+  @PostMapping(params = "postProcess!=true", produces = RdfMediaTypes.N_TRIPLES_VALUE)
+  public void constructNTriples(
+      @PathVariable("graphId") UUID graphId,
+      @RequestParam(value = "timeout", defaultValue = "10") int timeout,
+      @RequestBody String sparqlConstruct,
+      @AuthenticationPrincipal User user,
+      HttpServletResponse response) throws IOException {
+    executeAndWrite(graphId, timeout, sparqlConstruct, user, response,
+        RdfMediaTypes.N_TRIPLES_VALUE, (qe, out) -> writeTriples(qe, out, Lang.NTRIPLES));
+  }
+
+  @PostMapping(params = "postProcess!=true", produces = RdfMediaTypes.TURTLE_VALUE)
+  public void constructTurtle(
+      @PathVariable("graphId") UUID graphId,
+      @RequestParam(value = "timeout", defaultValue = "10") int timeout,
+      @RequestBody String sparqlConstruct,
+      @AuthenticationPrincipal User user,
+      HttpServletResponse response) throws IOException {
+    executeAndWrite(graphId, timeout, sparqlConstruct, user, response,
+        RdfMediaTypes.TURTLE_VALUE, (qe, out) -> writeTriples(qe, out, Lang.TURTLE));
+  }
+
+  private void writeTriples(QueryExecution qe, OutputStream out, Lang lang) {
+    Iterator<Triple> triples = qe.getQuery().isDescribeType() ?
+        qe.execDescribeTriples() : qe.execConstructTriples();
+
+    StreamRDF rdfStream = StreamRDFWriter.getWriterStream(out, lang);
+    rdfStream.start();
+    qe.getQuery().getPrefixMapping().getNsPrefixMap().forEach(rdfStream::prefix);
+    triples.forEachRemaining(rdfStream::triple);
+    rdfStream.finish();
   }
 
   @PostMapping(params = "postProcess=true", produces = RdfMediaTypes.TURTLE_VALUE)
@@ -149,8 +244,14 @@ public class NodeSparqlReadController {
       response.setContentType(RdfMediaTypes.TURTLE_VALUE);
       response.setCharacterEncoding(UTF_8.toString());
 
-      StreamRDFWriter.write(out, model.getGraph(), TURTLE);
+      StreamRDFWriter.write(out, model.getGraph(), Lang.TURTLE);
     }
   }
 
+  private interface ResultWriter {
+
+    void write(QueryExecution qe, OutputStream out) throws IOException;
+
+  }
+
 }
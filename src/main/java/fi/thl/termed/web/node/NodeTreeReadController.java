@@ -4,9 +4,7 @@ import static com.google.common.collect.ImmutableList.of;
 import static fi.thl.termed.service.node.select.NodeSelects.parse;
 import static fi.thl.termed.service.node.select.NodeSelects.qualify;
 import static fi.thl.termed.service.node.specification.NodeSpecifications.specifyByQuery;
-import static fi.thl.termed.util.collect.StreamUtils.toImmutableListAndClose;
 import static fi.thl.termed.util.query.AndSpecification.and;
-import static fi.thl.termed.util.query.Queries.matchAll;
 import static fi.thl.termed.util.spring.SpEL.EMPTY_LIST;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.springframework.http.MediaType.APPLICATION_JSON_UTF8_VALUE;
@@ -17,7 +15,6 @@ import com.google.common.collect.ImmutableSet;
 import com.google.gson.stream.JsonWriter;
 import fi.thl.termed.domain.DepthLimitedNodeTree;
 import fi.thl.termed.domain.FilteredNodeTree;
-import fi.thl.termed.domain.Graph;
 import fi.thl.termed.domain.GraphId;
 import fi.thl.termed.domain.LazyLoadingNodeTree;
 import fi.thl.termed.domain.Node;
@@ -26,6 +23,8 @@ import fi.thl.termed.domain.NodeTree;
 import fi.thl.termed.domain.Type;
 import fi.thl.termed.domain.TypeId;
 import fi.thl.termed.domain.User;
+import fi.thl.termed.service.metamodel.Metamodel;
+import fi.thl.termed.service.metamodel.MetamodelSnapshot;
 import fi.thl.termed.service.node.select.NodeSelects;
 import fi.thl.termed.service.node.sort.NodeSorts;
 import fi.thl.termed.service.node.specification.NodesByGraphId;
@@ -34,9 +33,7 @@ import fi.thl.termed.service.node.specification.NodesByTypeId;
 import fi.thl.termed.service.node.util.IndexedReferenceLoader;
 import fi.thl.termed.service.node.util.IndexedReferrerLoader;
 import fi.thl.termed.service.node.util.NodeTreeToJsonStream;
-import fi.thl.termed.service.type.specification.TypesByGraphId;
 import fi.thl.termed.util.json.JsonWriters;
-import fi.thl.termed.util.query.Queries;
 import fi.thl.termed.util.query.Query;
 import fi.thl.termed.util.query.Select;
 import fi.thl.termed.util.query.Sort;
@@ -63,9 +60,7 @@ import org.springframework.web.bind.annotation.RestController;
 public class NodeTreeReadController {
 
   @Autowired
-  private Service<GraphId, Graph> graphService;
-  @Autowired
-  private Service<TypeId, Type> typeService;
+  private MetamodelSnapshot metamodelSnapshot;
   @Autowired
   private Service<NodeId, Node> nodeService;
 
@@ -80,11 +75,11 @@ public class NodeTreeReadController {
       @AuthenticationPrincipal User user,
       HttpServletResponse resp) throws IOException {
 
-    List<Graph> graphs = toImmutableListAndClose(graphService.values(matchAll(), user));
-    List<Type> types = toImmutableListAndClose(typeService.values(matchAll(), user));
+    Metamodel metamodel = metamodelSnapshot.get(user);
+    List<Type> types = metamodel.getTypes();
 
-    Specification<NodeId, Node> spec = specifyByQuery(graphs, types, types, where);
-    List<Select> selects = qualify(types, types, parse(select));
+    Specification<NodeId, Node> spec = specifyByQuery(metamodel, types, where);
+    List<Select> selects = qualify(metamodel, types, parse(select));
     List<Sort> sorts = NodeSorts.parse(sort);
 
     resp.setContentType(APPLICATION_JSON_UTF8_VALUE);
@@ -108,17 +103,16 @@ public class NodeTreeReadController {
       @AuthenticationPrincipal User user,
       HttpServletResponse resp) throws IOException {
 
-    if (!graphService.exists(new GraphId(graphId), user)) {
+    Metamodel metamodel = metamodelSnapshot.get(user);
+
+    if (!metamodel.containsGraph(GraphId.of(graphId))) {
       throw new NotFoundException();
     }
 
-    List<Graph> graphs = toImmutableListAndClose(graphService.values(matchAll(), user));
-    List<Type> types = toImmutableListAndClose(typeService.values(matchAll(), user));
-    List<Type> domains = toImmutableListAndClose(
-        typeService.values(Queries.query(TypesByGraphId.of(graphId)), user));
+    List<Type> domains = metamodel.getTypes(GraphId.of(graphId));
 
-    Specification<NodeId, Node> spec = specifyByQuery(graphs, types, domains, where);
-    List<Select> selects = qualify(types, domains, parse(select));
+    Specification<NodeId, Node> spec = specifyByQuery(metamodel, domains, where);
+    List<Select> selects = qualify(metamodel, domains, parse(select));
     List<Sort> sorts = NodeSorts.parse(sort);
 
     resp.setContentType(APPLICATION_JSON_UTF8_VALUE);
@@ -143,13 +137,12 @@ public class NodeTreeReadController {
       @AuthenticationPrincipal User user,
       HttpServletResponse resp) throws IOException {
 
-    List<Graph> graphs = toImmutableListAndClose(graphService.values(matchAll(), user));
-    List<Type> types = toImmutableListAndClose(typeService.values(matchAll(), user));
-    Type domain = typeService.get(TypeId.of(typeId, graphId), user)
+    Metamodel metamodel = metamodelSnapshot.get(user);
+    Type domain = metamodel.getType(TypeId.of(typeId, graphId))
         .orElseThrow(NotFoundException::new);
 
-    Specification<NodeId, Node> spec = specifyByQuery(graphs, types, domain, where);
-    List<Select> selects = qualify(types, of(domain), parse(select));
+    Specification<NodeId, Node> spec = specifyByQuery(metamodel, domain, where);
+    List<Select> selects = qualify(metamodel, of(domain), parse(select));
     List<Sort> sorts = NodeSorts.parse(sort);
 
     resp.setContentType(APPLICATION_JSON_UTF8_VALUE);
@@ -172,8 +165,8 @@ public class NodeTreeReadController {
       @AuthenticationPrincipal User user,
       HttpServletResponse resp) throws IOException {
 
-    List<Type> types = toImmutableListAndClose(typeService.values(matchAll(), user));
-    Type domain = typeService.get(TypeId.of(typeId, graphId), user)
+    Metamodel metamodel = metamodelSnapshot.get(user);
+    Type domain = metamodel.getType(TypeId.of(typeId, graphId))
         .orElseThrow(NotFoundException::new);
 
     Specification<NodeId, Node> spec = and(
@@ -185,7 +178,7 @@ public class NodeTreeReadController {
       throw new NotFoundException();
     }
 
-    List<Select> selects = qualify(types, of(domain), parse(select));
+    List<Select> selects = qualify(metamodel, of(domain), parse(select));
 
     resp.setContentType(APPLICATION_JSON_UTF8_VALUE);
     resp.setCharacterEncoding(UTF_8.toString());
@@ -0,0 +1,12 @@
+--
+-- Table for broadcasting cache invalidations between instances, holds the latest
+-- invalidation message of each instance
+--
+
+CREATE TABLE cache_invalidation (
+  instance_id varchar(36),
+  sequence_number bigint NOT NULL,
+  caches varchar(4000) NOT NULL,
+  last_modified timestamp NOT NULL,
+  CONSTRAINT cache_invalidation_pkey PRIMARY KEY (instance_id)
+);
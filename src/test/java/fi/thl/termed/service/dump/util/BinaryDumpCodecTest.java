@@ -0,0 +1,112 @@
+package fi.thl.termed.service.dump.util;
+
+import static fi.thl.termed.util.collect.StreamUtils.toListAndClose;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.google.common.collect.ImmutableList;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import fi.thl.termed.domain.Dump;
+import fi.thl.termed.domain.Graph;
+import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.domain.StrictLangValue;
+import fi.thl.termed.domain.Type;
+import fi.thl.termed.domain.TypeId;
+import fi.thl.termed.util.json.ImmutableListDeserializer;
+import fi.thl.termed.util.json.ImmutableMultimapTypeAdapterFactory;
+import fi.thl.termed.util.json.LocalDateTimeAsZonedTypeAdapter;
+import fi.thl.termed.util.json.MultimapTypeAdapterFactory;
+import fi.thl.termed.util.spring.exception.BadRequestException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+
+class BinaryDumpCodecTest {
+
+  private Gson gson = new GsonBuilder()
+      .registerTypeAdapter(LocalDateTime.class, new LocalDateTimeAsZonedTypeAdapter().nullSafe())
+      .registerTypeAdapter(ImmutableList.class, new ImmutableListDeserializer())
+      .registerTypeAdapterFactory(new MultimapTypeAdapterFactory())
+      .registerTypeAdapterFactory(new ImmutableMultimapTypeAdapterFactory())
+      .create();
+
+  private DumpCodec codec = new BinaryDumpCodec(gson);
+
+  @Test
+  void shouldWriteAndReadDump() throws IOException {
+    Graph graph = Graph.builder().id(UUID.randomUUID()).code("g").build();
+    TypeId typeId = TypeId.of("Concept", graph.identifier());
+    Type type = Type.builder().id(typeId).build();
+
+    NodeId id0 = NodeId.random(typeId);
+    NodeId id1 = NodeId.random(typeId);
+
+    Node node0 = Node.builder().id(id0)
+        .code("n0")
+        .uri("http://example.org/n0")
+        .number(1L)
+        .createdBy("admin")
+        .createdDate(LocalDateTime.of(2018, 1, 2, 3, 4, 5, 6000))
+        .lastModifiedBy("admin")
+        .lastModifiedDate(LocalDateTime.of(2019, 1, 2, 3, 4, 5))
+        .addProperty("prefLabel", "fi", "Koira")
+        .addProperty("prefLabel", "en", "Dog")
+        .addProperty("note", new StrictLangValue("", "Line\nbreak", "^.*$"))
+        .addReference("related", id1)
+        .build();
+    Node node1 = Node.builder().id(id1)
+        .addProperty("prefLabel", "en", "Cat")
+        .addReferrer("related", ImmutableList.of(id0))
+        .build();
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    codec.write(new Dump(
+        ImmutableList.of(graph).stream(),
+        ImmutableList.of(type).stream(),
+        ImmutableList.of(node0, node1).stream()), out);
+
+    try (Dump dump = codec.read(new ByteArrayInputStream(out.toByteArray()))) {
+      assertEquals(ImmutableList.of(graph), toListAndClose(dump.getGraphs()));
+      assertEquals(ImmutableList.of(type), toListAndClose(dump.getTypes()));
+
+      List<Node> nodes = toListAndClose(dump.getNodes());
+      assertEquals(ImmutableList.of(node0, node1), nodes);
+      assertEquals(node0.getCreatedDate(), nodes.get(0).getCreatedDate());
+      assertEquals(node1.getReferrers(), nodes.get(1).getReferrers());
+    }
+  }
+
+  @Test
+  void shouldRejectNonBinaryInput() {
+    assertThrows(BadRequestException.class,
+        () -> codec.read(new ByteArrayInputStream("{\"graphs\":[]}".getBytes())));
+  }
+
+  @Test
+  void shouldRejectStringLengthOverLimitBeforeAllocating() {
+    // magic, version 1, graph record with declared length of 2^32 - 1 bytes and no data
+    byte[] bytes = {'T', 'D', 'M', 'P', 1, 1,
+        (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F};
+
+    assertThrows(BadRequestException.class,
+        () -> codec.read(new ByteArrayInputStream(bytes)));
+  }
+
+  @Test
+  void shouldFailOnTruncatedLongString() {
+    // graph record declaring 1 MB string followed by only a few bytes
+    byte[] bytes = {'T', 'D', 'M', 'P', 1, 1,
+        (byte) 0x80, (byte) 0x80, 0x40, '{', '}'};
+
+    assertThrows(EOFException.class,
+        () -> codec.read(new ByteArrayInputStream(bytes)));
+  }
+
+}
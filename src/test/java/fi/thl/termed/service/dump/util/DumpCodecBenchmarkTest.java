@@ -0,0 +1,153 @@
+package fi.thl.termed.service.dump.util;
+
+import static fi.thl.termed.util.collect.StreamUtils.toListAndClose;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+import fi.thl.termed.Application;
+import fi.thl.termed.domain.Dump;
+import fi.thl.termed.domain.Graph;
+import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.domain.Type;
+import fi.thl.termed.domain.TypeId;
+import fi.thl.termed.util.json.JsonStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compares size and write/read throughput of dump formats. Results are logged, assertions only
+ * check relative sizes and that each format reads back all nodes. Excluded from the default test
+ * run, run with: mvn test -Dtest=DumpCodecBenchmarkTest -DexcludedGroups=none
+ */
+@Tag("benchmark")
+class DumpCodecBenchmarkTest {
+
+  private static final int NODE_COUNT = 20_000;
+
+  private Logger log = LoggerFactory.getLogger(getClass());
+
+  private Gson gson = new Application().gson();
+
+  private Graph graph = Graph.builder().id(UUID.randomUUID()).code("benchmark").build();
+  private TypeId typeId = TypeId.of("Concept", graph.identifier());
+  private Type type = Type.builder().id(typeId).build();
+  private List<Node> nodes = new ArrayList<>();
+
+  @BeforeEach
+  void setUp() {
+    LocalDateTime now = LocalDateTime.now();
+    NodeId previous = null;
+
+    for (int i = 0; i < NODE_COUNT; i++) {
+      NodeId id = NodeId.random(typeId);
+      Node.Builder node = Node.builder().id(id)
+          .code("concept-" + i)
+          .uri("http://example.org/concepts/" + i)
+          .number((long) i)
+          .createdBy("admin").createdDate(now)
+          .lastModifiedBy("admin").lastModifiedDate(now)
+          .addProperty("prefLabel", "fi", "Käsite " + i)
+          .addProperty("prefLabel", "en", "Concept " + i)
+          .addProperty("definition", "en", "Definition of concept number " + i);
+      if (previous != null) {
+        node.addReference("broader", previous);
+      }
+      nodes.add(node.build());
+      previous = id;
+    }
+  }
+
+  @Test
+  void compareDumpFormats() throws IOException {
+    long json = benchmark("json", false, new JsonDumpCodec());
+    long ndjson = benchmark("ndjson", false, new NdjsonDumpCodec(gson));
+    long ndjsonGzip = benchmark("ndjson+gzip", true, new NdjsonDumpCodec(gson));
+    long binary = benchmark("binary", false, new BinaryDumpCodec(gson));
+    long binaryGzip = benchmark("binary+gzip", true, new BinaryDumpCodec(gson));
+
+    assertTrue(binary < json / 2);
+    assertTrue(ndjsonGzip < ndjson / 2);
+    assertTrue(binaryGzip < binary);
+  }
+
+  private long benchmark(String name, boolean gzip, DumpCodec codec) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+    Stopwatch writeTime = Stopwatch.createStarted();
+    try (OutputStream out = gzip ? new GZIPOutputStream(bytes, 1 << 16) : bytes) {
+      codec.write(new Dump(ImmutableList.of(graph).stream(), ImmutableList.of(type).stream(),
+          nodes.stream()), out);
+    }
+    writeTime.stop();
+
+    Stopwatch readTime = Stopwatch.createStarted();
+    List<Node> readNodes;
+    try (InputStream in = gzip
+        ? new GZIPInputStream(new ByteArrayInputStream(bytes.toByteArray()), 1 << 16)
+        : new ByteArrayInputStream(bytes.toByteArray());
+        Dump dump = codec.read(in)) {
+      readNodes = toListAndClose(dump.getNodes());
+    }
+    readTime.stop();
+
+    assertEquals(NODE_COUNT, readNodes.size());
+    assertEquals(nodes.get(NODE_COUNT - 1), readNodes.get(NODE_COUNT - 1));
+
+    log.info("{}: {} bytes ({} bytes/node), write {} nodes/s, read {} nodes/s",
+        name, bytes.size(), bytes.size() / NODE_COUNT,
+        perSecond(writeTime), perSecond(readTime));
+
+    return bytes.size();
+  }
+
+  private long perSecond(Stopwatch stopwatch) {
+    return NODE_COUNT * 1000L / Math.max(1, stopwatch.elapsed(TimeUnit.MILLISECONDS));
+  }
+
+  // current dump format as written by dump read api (nodes only, for comparison)
+  private class JsonDumpCodec implements DumpCodec {
+
+    @Override
+    public void write(Dump dump, OutputStream out) throws IOException {
+      Writer writer = new OutputStreamWriter(out, UTF_8);
+      JsonWriter jsonWriter = new JsonWriter(writer);
+      jsonWriter.beginArray();
+      for (Node node : toListAndClose(dump.getNodes())) {
+        gson.toJson(node, Node.class, jsonWriter);
+      }
+      jsonWriter.endArray();
+      jsonWriter.flush();
+    }
+
+    @Override
+    public Dump read(InputStream in) {
+      return new Dump(ImmutableList.<Graph>of().stream(), ImmutableList.<Type>of().stream(),
+          JsonStream.readArray(gson, Node.class, in));
+    }
+
+  }
+
+}
@@ -0,0 +1,81 @@
+package fi.thl.termed.service.dump.util;
+
+import static fi.thl.termed.util.collect.StreamUtils.toListAndClose;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.google.common.collect.ImmutableList;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import fi.thl.termed.domain.Dump;
+import fi.thl.termed.domain.Graph;
+import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.domain.Type;
+import fi.thl.termed.domain.TypeId;
+import fi.thl.termed.util.json.ImmutableListDeserializer;
+import fi.thl.termed.util.json.ImmutableMultimapTypeAdapterFactory;
+import fi.thl.termed.util.json.LocalDateTimeAsZonedTypeAdapter;
+import fi.thl.termed.util.json.MultimapTypeAdapterFactory;
+import fi.thl.termed.util.spring.exception.BadRequestException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+
+class NdjsonDumpCodecTest {
+
+  private Gson gson = new GsonBuilder().setPrettyPrinting()
+      .registerTypeAdapter(LocalDateTime.class, new LocalDateTimeAsZonedTypeAdapter().nullSafe())
+      .registerTypeAdapter(ImmutableList.class, new ImmutableListDeserializer())
+      .registerTypeAdapterFactory(new MultimapTypeAdapterFactory())
+      .registerTypeAdapterFactory(new ImmutableMultimapTypeAdapterFactory())
+      .create();
+
+  private DumpCodec codec = new NdjsonDumpCodec(gson);
+
+  private Graph graph = Graph.builder().id(UUID.randomUUID()).build();
+  private TypeId typeId = TypeId.of("Concept", graph.identifier());
+  private Type type = Type.builder().id(typeId).build();
+
+  @Test
+  void shouldWriteOneRecordPerLine() throws IOException {
+    NodeId nodeId = NodeId.random(typeId);
+    Node node = Node.builder().id(nodeId)
+        .addProperty("prefLabel", "en", "Multi\nline")
+        .addReference("related", nodeId)
+        .build();
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    codec.write(new Dump(
+        ImmutableList.of(graph).stream(),
+        ImmutableList.of(type).stream(),
+        ImmutableList.of(node, node).stream()), out);
+
+    String[] lines = new String(out.toByteArray(), UTF_8).split("\n");
+    assertEquals(4, lines.length);
+    assertEquals("{\"graph\":{", lines[0].substring(0, 10));
+    assertEquals("{\"type\":{", lines[1].substring(0, 9));
+    assertEquals("{\"node\":{", lines[2].substring(0, 9));
+
+    try (Dump dump = codec.read(new ByteArrayInputStream(out.toByteArray()))) {
+      assertEquals(ImmutableList.of(graph), toListAndClose(dump.getGraphs()));
+      assertEquals(ImmutableList.of(type), toListAndClose(dump.getTypes()));
+      assertEquals(ImmutableList.of(node, node), toListAndClose(dump.getNodes()));
+    }
+  }
+
+  @Test
+  void shouldRejectTypesAfterNodes() throws IOException {
+    String ndjson = "{\"node\":" + gson.toJson(Node.builder().random(typeId).build()) + "}\n"
+        + "{\"type\":" + gson.toJson(type) + "}\n";
+
+    try (Dump dump = codec.read(new ByteArrayInputStream(ndjson.getBytes(UTF_8)))) {
+      assertThrows(BadRequestException.class, () -> toListAndClose(dump.getNodes()));
+    }
+  }
+
+}
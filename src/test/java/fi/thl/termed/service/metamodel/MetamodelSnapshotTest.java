@@ -0,0 +1,96 @@
+package fi.thl.termed.service.metamodel;
+
+import static fi.thl.termed.util.service.SaveMode.UPSERT;
+import static fi.thl.termed.util.service.WriteOptions.defaultOpts;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import fi.thl.termed.domain.AppRole;
+import fi.thl.termed.domain.Graph;
+import fi.thl.termed.domain.GraphId;
+import fi.thl.termed.domain.ReferenceAttribute;
+import fi.thl.termed.domain.Type;
+import fi.thl.termed.domain.TypeId;
+import fi.thl.termed.domain.User;
+import fi.thl.termed.util.dao.AuthorizedDao;
+import fi.thl.termed.util.dao.MemoryBasedSystemDao;
+import fi.thl.termed.util.service.DaoForwardingRepository;
+import fi.thl.termed.util.service.Service;
+import fi.thl.termed.util.service.SnapshotReadService;
+import java.util.UUID;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class MetamodelSnapshotTest {
+
+  private User admin = new User("admin", "", AppRole.ADMIN);
+  private User user = new User("user", "", AppRole.USER);
+
+  private GraphId graphId = GraphId.random();
+  private TypeId personId = TypeId.of("Person", graphId);
+  private TypeId secretId = TypeId.of("Secret", graphId);
+
+  private Service<GraphId, Graph> graphService;
+  private Service<TypeId, Type> typeService;
+  private MetamodelSnapshot metamodelSnapshot;
+
+  @BeforeEach
+  void setUp() {
+    graphService = new SnapshotReadService<>(new DaoForwardingRepository<>(
+        new AuthorizedDao<>(new MemoryBasedSystemDao<>(), (u, k, p) -> true)),
+        Graph::identifier);
+
+    // users can't read secret type
+    typeService = new SnapshotReadService<>(new DaoForwardingRepository<>(new AuthorizedDao<>(
+        new MemoryBasedSystemDao<>(),
+        (u, k, p) -> u.getAppRole() == AppRole.ADMIN || !k.equals(secretId))),
+        Type::identifier);
+
+    graphService.save(Graph.builder().id(graphId).code("people").build(),
+        UPSERT, defaultOpts(), admin);
+    typeService.save(Type.builder().id(personId)
+            .referenceAttributes(ReferenceAttribute.builder()
+                .id("knows", personId).range(personId).build())
+            .build(),
+        UPSERT, defaultOpts(), admin);
+    typeService.save(Type.builder().id(secretId)
+            .referenceAttributes(ReferenceAttribute.builder()
+                .id("knows", secretId).range(personId).build())
+            .build(),
+        UPSERT, defaultOpts(), admin);
+
+    metamodelSnapshot = new MetamodelSnapshot(graphService, typeService);
+  }
+
+  @Test
+  void shouldIndexReadableGraphsAndTypes() {
+    Metamodel metamodel = metamodelSnapshot.get(user);
+
+    assertEquals(1, metamodel.getGraphsByCode("people").size());
+    assertTrue(metamodel.containsType(personId));
+    assertFalse(metamodel.containsType(secretId));
+    assertEquals(1, metamodel.getTypes(graphId).size());
+    assertEquals(1, metamodel.getReferenceAttributesByRange(personId).size());
+
+    assertEquals(2, metamodelSnapshot.get(admin).getReferenceAttributesByRange(personId).size());
+  }
+
+  @Test
+  void shouldReuseMetamodelUntilGraphsOrTypesChange() {
+    Metamodel metamodel = metamodelSnapshot.get(user);
+    assertSame(metamodel, metamodelSnapshot.get(new User("other", "", AppRole.USER)));
+
+    typeService.save(Type.builder().id(TypeId.of("Group", graphId)).build(),
+        UPSERT, defaultOpts(), admin);
+
+    Metamodel updated = metamodelSnapshot.get(user);
+    assertNotSame(metamodel, updated);
+    assertEquals(ImmutableList.of(personId, TypeId.of("Group", graphId)),
+        updated.getTypes().stream().map(Type::identifier).collect(ImmutableList.toImmutableList()));
+  }
+
+}
@@ -0,0 +1,75 @@
+package fi.thl.termed.service.node;
+
+import static fi.thl.termed.util.collect.StreamUtils.toListAndClose;
+import static fi.thl.termed.util.query.Specifications.asLucene;
+import static fi.thl.termed.util.query.Specifications.asSql;
+import static fi.thl.termed.util.service.SaveMode.INSERT;
+import static fi.thl.termed.util.service.SaveMode.UPDATE;
+import static fi.thl.termed.util.service.WriteOptions.defaultOpts;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMultimap;
+import fi.thl.termed.domain.AppRole;
+import fi.thl.termed.domain.Graph;
+import fi.thl.termed.domain.GraphId;
+import fi.thl.termed.domain.GraphRole;
+import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.domain.Permission;
+import fi.thl.termed.domain.Type;
+import fi.thl.termed.domain.TypeId;
+import fi.thl.termed.domain.User;
+import fi.thl.termed.service.node.specification.NodesByGraphId;
+import fi.thl.termed.util.query.Queries;
+import fi.thl.termed.util.query.Query;
+import fi.thl.termed.util.query.SortRelevance;
+import java.util.List;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+class NodeReadAuthorizationIntegrationTest extends BaseNodeServiceIntegrationTest {
+
+  @Test
+  void shouldReturnOnlyReadableNodesWithCorrectMaxAndCount() {
+    // graph role "reader" can read persons but not groups
+    graphService.save(Graph.builderFromCopyOf(
+        graphService.get(GraphId.of(graphId), user).orElseThrow(AssertionError::new))
+        .roles(ImmutableList.of("reader"))
+        .build(), UPDATE, defaultOpts(), user);
+
+    TypeId personId = TypeId.of("Person", graphId);
+    Type person = typeService.get(personId, user).orElseThrow(AssertionError::new);
+    typeService.save(Type.builderFromCopyOf(person)
+        .permissions(ImmutableMultimap.of("reader", Permission.READ))
+        .build(), UPDATE, defaultOpts(), user);
+
+    // insert groups first so that unfiltered relevance order would start with groups
+    nodeService.save(IntStream.range(0, 5)
+            .mapToObj(i -> Node.builder().id(NodeId.random("Group", graphId)).build()),
+        INSERT, defaultOpts(), user);
+    nodeService.save(IntStream.range(0, 3)
+            .mapToObj(i -> Node.builder().id(NodeId.random("Person", graphId)).build()),
+        INSERT, defaultOpts(), user);
+
+    User reader = new User("reader", "", AppRole.USER,
+        ImmutableList.of(new GraphRole(GraphId.of(graphId), "reader")));
+
+    NodesByGraphId nodesByGraphId = new NodesByGraphId(graphId);
+
+    List<Node> indexNodes = toListAndClose(nodeService.values(
+        Queries.query(asLucene(nodesByGraphId), new SortRelevance(), 2), reader));
+    assertEquals(2, indexNodes.size());
+    assertTrue(indexNodes.stream().allMatch(n -> n.getType().equals(personId)));
+
+    assertEquals(3, nodeService.count(asLucene(nodesByGraphId), reader));
+    assertEquals(3, toListAndClose(nodeService.keys(
+        new Query<>(asLucene(nodesByGraphId)), reader)).size());
+    assertEquals(3, toListAndClose(nodeService.values(
+        new Query<>(asSql(nodesByGraphId)), reader)).size());
+
+    assertEquals(8, nodeService.count(asLucene(nodesByGraphId), user));
+  }
+
+}
@@ -0,0 +1,38 @@
+package fi.thl.termed.service.node.internal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import fi.thl.termed.domain.NodeId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+
+class NodeIdBufferTest {
+
+  @Test
+  void shouldReturnIdsInInsertionOrderInBatches() {
+    List<NodeId> ids = new ArrayList<>();
+    UUID graphId = UUID.randomUUID();
+    for (int i = 0; i < 25; i++) {
+      ids.add(NodeId.random(i % 2 == 0 ? "Concept" : "Term", graphId));
+    }
+
+    List<List<NodeId>> batches = new ArrayList<>();
+
+    try (NodeIdBuffer buffer = new NodeIdBuffer(10)) {
+      ids.forEach(buffer::add);
+      assertEquals(25, buffer.size());
+      buffer.forEachBatch(7, batches::add);
+    }
+
+    assertEquals(4, batches.size());
+    assertEquals(7, batches.get(0).size());
+    assertEquals(4, batches.get(3).size());
+
+    List<NodeId> flattened = new ArrayList<>();
+    batches.forEach(flattened::addAll);
+    assertEquals(ids, flattened);
+  }
+
+}
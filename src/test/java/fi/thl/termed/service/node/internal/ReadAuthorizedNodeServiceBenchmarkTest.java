@@ -0,0 +1,154 @@
+package fi.thl.termed.service.node.internal;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Multimaps;
+import com.google.gson.Gson;
+import fi.thl.termed.Application;
+import fi.thl.termed.domain.AppRole;
+import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.domain.Permission;
+import fi.thl.termed.domain.ReferenceAttributeId;
+import fi.thl.termed.domain.TextAttributeId;
+import fi.thl.termed.domain.TypeId;
+import fi.thl.termed.domain.User;
+import fi.thl.termed.util.permission.PermissionEvaluator;
+import fi.thl.termed.util.query.Query;
+import fi.thl.termed.util.query.Specifications;
+import fi.thl.termed.util.service.Service;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compares cost of read authorization and serialization of nodes using view based attribute
+ * filtering (as previously implemented) and current filtering. Results are logged. Excluded from
+ * the default test run, run with:
+ * mvn test -Dtest=ReadAuthorizedNodeServiceBenchmarkTest -DexcludedGroups=none
+ */
+@Tag("benchmark")
+class ReadAuthorizedNodeServiceBenchmarkTest {
+
+  private static final int NODE_COUNT = 20_000;
+  private static final int ROUNDS = 3;
+
+  private Logger log = LoggerFactory.getLogger(getClass());
+
+  private Gson gson = new Application().gson();
+
+  private TypeId typeId = TypeId.of("Concept", UUID.randomUUID());
+  private List<Node> nodes = new ArrayList<>();
+
+  private User admin = new User("admin", "", AppRole.ADMIN);
+  private User user = new User("user", "", AppRole.USER);
+
+  // admin can read everything, user can't read definitions
+  private PermissionEvaluator<TypeId> typeEvaluator = (u, t, p) -> true;
+  private PermissionEvaluator<TextAttributeId> textAttrEvaluator =
+      (u, a, p) -> u.getAppRole() == AppRole.ADMIN || !a.getId().equals("definition");
+  private PermissionEvaluator<ReferenceAttributeId> refAttrEvaluator = (u, a, p) -> true;
+
+  private Service<NodeId, Node> service;
+
+  @BeforeEach
+  @SuppressWarnings("unchecked")
+  void setUp() {
+    LocalDateTime now = LocalDateTime.now();
+    NodeId previous = null;
+
+    for (int i = 0; i < NODE_COUNT; i++) {
+      NodeId id = NodeId.random(typeId);
+      Node.Builder node = Node.builder().id(id)
+          .code("concept-" + i)
+          .number((long) i)
+          .createdBy("admin").createdDate(now)
+          .lastModifiedBy("admin").lastModifiedDate(now)
+          .addProperty("prefLabel", "fi", "Käsite " + i)
+          .addProperty("prefLabel", "en", "Concept " + i)
+          .addProperty("definition", "en", "Definition of concept number " + i);
+      if (previous != null) {
+        node.addReference("broader", previous);
+        node.addReferrer("narrower", ImmutableList.of(previous));
+      }
+      nodes.add(node.build());
+      previous = id;
+    }
+
+    Service<NodeId, Node> delegate = mock(Service.class);
+    when(delegate.values(any(), any())).thenAnswer(invocation -> nodes.stream());
+
+    service = new ReadAuthorizedNodeService(delegate,
+        typeEvaluator, textAttrEvaluator, refAttrEvaluator, () -> Stream.of(typeId));
+  }
+
+  @Test
+  void compareFilteringAndSerializationCost() {
+    for (int round = 0; round < ROUNDS; round++) {
+      benchmark("view filter (all permitted)", () -> nodes.stream().map(new ViewFilter(admin)));
+      benchmark("service (all permitted)", () -> service.values(query(), admin));
+      benchmark("view filter (restricted)", () -> nodes.stream().map(new ViewFilter(user)));
+      benchmark("service (restricted)", () -> service.values(query(), user));
+    }
+  }
+
+  private void benchmark(String name, Supplier<Stream<Node>> values) {
+    StringBuilder out = new StringBuilder();
+
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    try (Stream<Node> stream = values.get()) {
+      stream.forEach(node -> gson.toJson(node, Node.class, out));
+    }
+    stopwatch.stop();
+
+    log.info("{}: {} nodes/s ({} chars)", name,
+        NODE_COUNT * 1000L / Math.max(1, stopwatch.elapsed(TimeUnit.MILLISECONDS)),
+        out.length());
+  }
+
+  private Query<NodeId, Node> query() {
+    return new Query<>(Specifications.matchAll());
+  }
+
+  // previous implementation, copies each node via filtering multimap views
+  private class ViewFilter implements Function<Node, Node> {
+
+    private User user;
+
+    ViewFilter(User user) {
+      this.user = user;
+    }
+
+    @Override
+    public Node apply(Node node) {
+      TypeId type = node.getType();
+      return Node.builderFromCopyOf(node)
+          .properties(Multimaps.filterKeys(node.getProperties(), a -> textAttrEvaluator
+              .hasPermission(user, new TextAttributeId(type, a), Permission.READ)))
+          .references(Multimaps.filterEntries(node.getReferences(), e -> refAttrEvaluator
+              .hasPermission(user, new ReferenceAttributeId(type, e.getKey()), Permission.READ)
+              && typeEvaluator.hasPermission(user, e.getValue().getType(), Permission.READ)))
+          .referrers(Multimaps.filterEntries(node.getReferrers(), e -> refAttrEvaluator
+              .hasPermission(user, new ReferenceAttributeId(e.getValue().getType(), e.getKey()),
+                  Permission.READ)
+              && typeEvaluator.hasPermission(user, e.getValue().getType(), Permission.READ)))
+          .build();
+    }
+
+  }
+
+}
@@ -0,0 +1,126 @@
+package fi.thl.termed.service.node.internal;
+
+import static fi.thl.termed.util.collect.StreamUtils.toListAndClose;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import fi.thl.termed.domain.AppRole;
+import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.domain.ReferenceAttributeId;
+import fi.thl.termed.domain.TextAttributeId;
+import fi.thl.termed.domain.TypeId;
+import fi.thl.termed.domain.User;
+import fi.thl.termed.util.permission.PermissionEvaluator;
+import fi.thl.termed.util.query.Query;
+import fi.thl.termed.util.query.Specifications;
+import fi.thl.termed.util.service.Service;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ReadAuthorizedNodeServiceTest {
+
+  private static final int NODE_COUNT = 10;
+
+  private TypeId typeId = TypeId.of("Concept", UUID.randomUUID());
+  private List<Node> nodes = new ArrayList<>();
+
+  private User admin = new User("admin", "", AppRole.ADMIN);
+  private User user = new User("user", "", AppRole.USER);
+
+  private AtomicInteger textAttrEvaluations = new AtomicInteger();
+
+  // admin can read everything, user can't read definitions
+  private PermissionEvaluator<TypeId> typeEvaluator = (u, t, p) -> true;
+  private PermissionEvaluator<TextAttributeId> textAttrEvaluator = (u, a, p) -> {
+    textAttrEvaluations.incrementAndGet();
+    return u.getAppRole() == AppRole.ADMIN || !a.getId().equals("definition");
+  };
+  private PermissionEvaluator<ReferenceAttributeId> refAttrEvaluator = (u, a, p) -> true;
+
+  private Service<NodeId, Node> service;
+
+  @BeforeEach
+  @SuppressWarnings("unchecked")
+  void setUp() {
+    NodeId previous = null;
+
+    for (int i = 0; i < NODE_COUNT; i++) {
+      NodeId id = NodeId.random(typeId);
+      Node.Builder node = Node.builder().id(id)
+          .addProperty("prefLabel", "en", "Concept " + i)
+          .addProperty("definition", "en", "Definition of concept " + i);
+      if (previous != null) {
+        node.addReference("broader", previous);
+        node.addReferrer("narrower", ImmutableList.of(previous));
+      }
+      nodes.add(node.build());
+      previous = id;
+    }
+
+    Service<NodeId, Node> delegate = mock(Service.class);
+    when(delegate.values(any(), any())).thenAnswer(invocation -> nodes.stream());
+
+    service = new ReadAuthorizedNodeService(delegate,
+        typeEvaluator, textAttrEvaluator, refAttrEvaluator, () -> Stream.of(typeId));
+  }
+
+  @Test
+  void shouldReturnFullyPermittedNodesWithoutCopying() {
+    List<Node> results = read(admin);
+
+    assertEquals(NODE_COUNT, results.size());
+    for (int i = 0; i < NODE_COUNT; i++) {
+      assertSame(nodes.get(i), results.get(i));
+    }
+  }
+
+  @Test
+  void shouldFilterOnlyRestrictedAttributes() {
+    List<Node> results = read(user);
+
+    assertEquals(NODE_COUNT, results.size());
+    for (int i = 0; i < NODE_COUNT; i++) {
+      Node node = nodes.get(i);
+      Node result = results.get(i);
+
+      assertNotSame(node, result);
+      assertEquals(ImmutableSet.of("prefLabel"), result.getProperties().keySet());
+      assertEquals(node.getProperties().get("prefLabel"), result.getProperties().get("prefLabel"));
+      assertEquals(node.getReferences(), result.getReferences());
+      assertEquals(node.getReferrers(), result.getReferrers());
+      assertTrue(result.getProperties().get("definition").isEmpty());
+    }
+  }
+
+  @Test
+  void shouldEvaluateEachAttributePermissionOncePerQuery() {
+    read(user);
+    // prefLabel and definition
+    assertEquals(2, textAttrEvaluations.get());
+
+    read(user);
+    assertEquals(4, textAttrEvaluations.get());
+  }
+
+  private List<Node> read(User user) {
+    return toListAndClose(service.values(query(), user));
+  }
+
+  private Query<NodeId, Node> query() {
+    return new Query<>(Specifications.matchAll());
+  }
+
+}
@@ -14,20 +14,23 @@ import fi.thl.termed.domain.ReferenceAttribute;
 import fi.thl.termed.domain.StrictLangValue;
 import fi.thl.termed.domain.Type;
 import fi.thl.termed.domain.TypeId;
+import fi.thl.termed.service.node.specification.NodesByFieldValues;
 import fi.thl.termed.service.node.specification.NodesByGraphId;
-import fi.thl.termed.service.node.specification.NodesByPropertyString;
+import fi.thl.termed.service.node.specification.NodesByPropertyStrings;
 import fi.thl.termed.service.node.specification.NodesByTypeId;
 import fi.thl.termed.util.csv.CsvOptions;
+import fi.thl.termed.util.query.Query;
 import fi.thl.termed.util.query.SelectAll;
 import fi.thl.termed.util.query.Specification;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Optional;
 import java.util.UUID;
 import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import org.junit.jupiter.api.Test;
 
 class CsvToNodesTest {
@@ -146,28 +149,23 @@ class CsvToNodesTest {
                 .build())
         .build();
 
-    Function<Specification<NodeId, Node>, Optional<NodeId>> nodeIdResolver = (specification) -> {
-      if (specification.equals(and(
-          new NodesByGraphId(graphId),
-          new NodesByTypeId(typeId),
-          new NodesByPropertyString("name", "John")
-      ))) {
-        return Optional.of(NodeId.of(node1Id, personTypeId));
-      }
-      if (specification.equals(and(
-          new NodesByGraphId(graphId),
-          new NodesByTypeId(typeId),
-          new NodesByPropertyString("name", "Mary")
-      ))) {
-        return Optional.of(NodeId.of(node2Id, personTypeId));
-      }
-      throw new AssertionError("Can't resolve: " + specification);
+    // Mary is resolved from index, John from the first row of the same file
+    List<Specification<NodeId, Node>> queried = new ArrayList<>();
+    Function<Query<NodeId, Node>, Stream<Node>> nodeProvider = (query) -> {
+      queried.add(query.getWhere());
+      return Stream.of(Node.builder().id(node2Id, personTypeId).addProperty("name", "Mary").build())
+          .filter(n -> query.getWhere().test(n.identifier(), n));
     };
 
-    List<Node> nodes = new CsvToNodes(of(personType), nodeIdResolver)
+    List<Node> nodes = new CsvToNodes(of(personType), nodeProvider)
         .parseNodesFromCsv(CsvOptions.builder().build(), csv)
         .collect(toList());
 
+    assertEquals(of(and(
+        new NodesByGraphId(graphId),
+        new NodesByTypeId(typeId),
+        new NodesByPropertyStrings("name", "", of("Mary")))), queried);
+
     Node node1 = nodes.get(0);
     assertEquals(node1Id, node1.getId());
     assertEquals(typeId, node1.getTypeId());
@@ -189,6 +187,148 @@ class CsvToNodesTest {
         .orElse(null));
   }
 
+  @Test
+  void shouldResolveReferencesByCodeInBatches() {
+    UUID graphId = UUID.randomUUID();
+    TypeId personTypeId = TypeId.of("Person", graphId);
+    Type personType = Type.builder().id(personTypeId)
+        .referenceAttributes(
+            ReferenceAttribute.builder()
+                .id("knows", personTypeId)
+                .range(personTypeId)
+                .build())
+        .build();
+
+    NodeId existingId = NodeId.random(personTypeId);
+
+    String csv = String.join("\n",
+        "type.id,type.graph.id,code,r.knows.code",
+        "Person," + graphId + ",a,existing|b",
+        "Person," + graphId + ",b,existing|a|missing",
+        "Person," + graphId + ",c,existing|missing");
+
+    List<Specification<NodeId, Node>> queried = new ArrayList<>();
+    Function<Query<NodeId, Node>, Stream<Node>> nodeProvider = (query) -> {
+      queried.add(query.getWhere());
+      return Stream.of(Node.builder().id(existingId).code("existing").build())
+          .filter(n -> query.getWhere().test(n.identifier(), n));
+    };
+
+    List<Node> nodes = new CsvToNodes(of(personType), nodeProvider, 2, 100)
+        .parseNodesFromCsv(CsvOptions.builder().build(),
+            new ByteArrayInputStream(csv.getBytes(Charsets.UTF_8)))
+        .collect(toList());
+
+    // one query per chunk, second chunk finds existing and missing from cache
+    assertEquals(of(and(
+        new NodesByGraphId(graphId),
+        new NodesByTypeId("Person"),
+        NodesByFieldValues.codes(of("existing", "b", "missing")))), queried);
+
+    Node a = nodes.get(0);
+    Node b = nodes.get(1);
+    Node c = nodes.get(2);
+
+    // b is defined on a later row so a's reference is looked up from index and dropped
+    assertEquals(of(existingId), a.getReferences().get("knows"));
+    assertEquals(of(existingId, a.identifier()), b.getReferences().get("knows"));
+    assertEquals(of(existingId), c.getReferences().get("knows"));
+  }
+
+  @Test
+  void shouldResolveReferencesByUri() {
+    UUID graphId = UUID.randomUUID();
+    TypeId personTypeId = TypeId.of("Person", graphId);
+    Type personType = Type.builder().id(personTypeId)
+        .referenceAttributes(
+            ReferenceAttribute.builder()
+                .id("knows", personTypeId)
+                .range(personTypeId)
+                .build())
+        .build();
+
+    NodeId existingId = NodeId.random(personTypeId);
+
+    String csv = String.join("\n",
+        "type.id,type.graph.id,uri,r.knows.uri",
+        "Person," + graphId + ",http://example.org/a,http://example.org/existing",
+        "Person," + graphId + ",http://example.org/b,http://example.org/a|http://example.org/x");
+
+    List<Specification<NodeId, Node>> queried = new ArrayList<>();
+    Function<Query<NodeId, Node>, Stream<Node>> nodeProvider = (query) -> {
+      queried.add(query.getWhere());
+      return Stream.of(Node.builder().id(existingId).uri("http://example.org/existing").build())
+          .filter(n -> query.getWhere().test(n.identifier(), n));
+    };
+
+    List<Node> nodes = new CsvToNodes(of(personType), nodeProvider, 2, 100)
+        .parseNodesFromCsv(CsvOptions.builder().build(),
+            new ByteArrayInputStream(csv.getBytes(Charsets.UTF_8)))
+        .collect(toList());
+
+    // a is defined on an earlier row of the same file and is not queried
+    assertEquals(of(and(
+        new NodesByGraphId(graphId),
+        new NodesByTypeId("Person"),
+        NodesByFieldValues.uris(of("http://example.org/existing", "http://example.org/x")))),
+        queried);
+
+    assertEquals(of(existingId), nodes.get(0).getReferences().get("knows"));
+    assertEquals(of(nodes.get(0).identifier()), nodes.get(1).getReferences().get("knows"));
+  }
+
+  @Test
+  void shouldResolveReferencesToEarlierRowsOfOtherTypes() {
+    assertReferencesToEarlierRowsOfOtherTypes(100_000);
+  }
+
+  @Test
+  void shouldResolveReferencesToEarlierRowsUsingSpilledKeys() {
+    assertReferencesToEarlierRowsOfOtherTypes(1);
+  }
+
+  private void assertReferencesToEarlierRowsOfOtherTypes(int maxImportedKeysInMemory) {
+    UUID graphId = UUID.randomUUID();
+    TypeId groupTypeId = TypeId.of("Group", graphId);
+    TypeId personTypeId = TypeId.of("Person", graphId);
+    Type groupType = Type.builder().id(groupTypeId).build();
+    Type personType = Type.builder().id(personTypeId)
+        .referenceAttributes(
+            ReferenceAttribute.builder()
+                .id("memberOf", personTypeId)
+                .range(groupTypeId)
+                .build())
+        .build();
+
+    // groups are defined before any row refers to them
+    String csv = String.join("\n",
+        "type.id,type.graph.id,code,r.memberOf.code",
+        "Group," + graphId + ",admins,",
+        "Group," + graphId + ",users,",
+        "Person," + graphId + ",alice,admins|users",
+        "Person," + graphId + ",bob,users");
+
+    List<Specification<NodeId, Node>> queried = new ArrayList<>();
+    Function<Query<NodeId, Node>, Stream<Node>> nodeProvider = (query) -> {
+      queried.add(query.getWhere());
+      return Stream.empty();
+    };
+
+    List<Node> nodes = new CsvToNodes(of(groupType, personType), nodeProvider, 2, 100,
+        maxImportedKeysInMemory)
+        .parseNodesFromCsv(CsvOptions.builder().build(),
+            new ByteArrayInputStream(csv.getBytes(Charsets.UTF_8)))
+        .collect(toList());
+
+    Node admins = nodes.get(0);
+    Node users = nodes.get(1);
+
+    assertEquals(of(admins.identifier(), users.identifier()),
+        nodes.get(2).getReferences().get("memberOf"));
+    assertEquals(of(users.identifier()), nodes.get(3).getReferences().get("memberOf"));
+    assertEquals(of(), queried);
+  }
+
   private void assertNodesAreEqualAfterConvertingCsvAndBack(List<Node> nodes) {
     ByteArrayOutputStream out = new ByteArrayOutputStream();
     new NodesToCsv()
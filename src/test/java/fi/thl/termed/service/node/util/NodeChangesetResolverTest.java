@@ -0,0 +1,119 @@
+package fi.thl.termed.service.node.util;
+
+import static fi.thl.termed.util.UUIDs.nameUUIDFromString;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.google.common.collect.ImmutableList;
+import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.domain.StrictLangValue;
+import fi.thl.termed.domain.TypeId;
+import fi.thl.termed.util.dao.MemoryBasedSystemDao;
+import fi.thl.termed.util.dao.SystemDao;
+import fi.thl.termed.util.spring.exception.BadRequestException;
+import fi.thl.termed.util.spring.exception.NotFoundException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class NodeChangesetResolverTest {
+
+  private UUID graphId = nameUUIDFromString("test-graph");
+  private TypeId conceptId = new TypeId("Concept", graphId);
+
+  private SystemDao<NodeId, Node> nodeDao = new MemoryBasedSystemDao<>();
+  private List<NodeId> nodeIds = new ArrayList<>();
+
+  private AtomicInteger queryCount = new AtomicInteger();
+  private NodeChangesetResolver resolver = new NodeChangesetResolver(q -> {
+    queryCount.incrementAndGet();
+    return nodeDao.values(q.getWhere());
+  }, 2);
+
+  @BeforeEach
+  void setUp() {
+    for (int i = 0; i < 5; i++) {
+      NodeId id = NodeId.random(conceptId);
+      nodeDao.insert(id, Node.builder().id(id)
+          .code("c" + i)
+          .addProperty("prefLabel", "Concept " + i)
+          .build());
+      nodeIds.add(id);
+    }
+  }
+
+  @Test
+  void shouldMergePatchesWithOneQueryPerBatch() {
+    List<Node> patches = new ArrayList<>();
+    for (NodeId id : nodeIds) {
+      patches.add(Node.builder().id(id).addProperty("altLabel", "Alt " + id.getId()).build());
+    }
+
+    List<Node> merged = resolver.mergePatches(patches);
+
+    assertEquals(3, queryCount.get());
+    assertEquals(5, merged.size());
+    for (int i = 0; i < 5; i++) {
+      Node node = merged.get(i);
+      assertEquals(nodeIds.get(i), node.identifier());
+      assertEquals("c" + i, node.getCode().orElse(null));
+      assertEquals(ImmutableList.of(new StrictLangValue("Concept " + i)),
+          node.getProperties().get("prefLabel"));
+      assertEquals(ImmutableList.of(new StrictLangValue("Alt " + nodeIds.get(i).getId())),
+          node.getProperties().get("altLabel"));
+    }
+  }
+
+  @Test
+  void shouldFailMergeIfPatchedNodeIsMissing() {
+    List<Node> patches = ImmutableList.of(
+        Node.builder().id(nodeIds.get(0)).build(),
+        Node.builder().id(NodeId.random(conceptId)).build());
+
+    assertThrows(NotFoundException.class, () -> resolver.mergePatches(patches));
+  }
+
+  @Test
+  void shouldAcceptReferencesToExistingAndNewNodes() {
+    NodeId newId = NodeId.random(conceptId);
+
+    List<Node> saves = ImmutableList.of(
+        Node.builder().id(newId).addReference("broader", nodeIds.get(0)).build());
+    List<Node> patches = ImmutableList.of(
+        Node.builder().id(nodeIds.get(1)).addReference("broader", newId).build(),
+        Node.builder().id(nodeIds.get(2)).addReference("broader", nodeIds.get(3)).build(),
+        Node.builder().id(nodeIds.get(3)).addReference("broader", nodeIds.get(4)).build());
+
+    resolver.validateReferences(saves, patches, emptyList());
+
+    // new node is resolved without querying, existing ones in batches of two
+    assertEquals(2, queryCount.get());
+  }
+
+  @Test
+  void shouldRejectReferencesToMissingNodes() {
+    List<Node> saves = ImmutableList.of(Node.builder().id(NodeId.random(conceptId))
+        .addReference("broader", NodeId.random(conceptId))
+        .build());
+
+    assertThrows(BadRequestException.class,
+        () -> resolver.validateReferences(saves, emptyList(), emptyList()));
+  }
+
+  @Test
+  void shouldRejectReferencesToDeletedNodes() {
+    List<Node> patches = ImmutableList.of(Node.builder().id(nodeIds.get(0))
+        .addReference("broader", nodeIds.get(1))
+        .build());
+
+    assertThrows(BadRequestException.class,
+        () -> resolver.validateReferences(emptyList(), patches, singletonList(nodeIds.get(1))));
+  }
+
+}
@@ -0,0 +1,105 @@
+package fi.thl.termed.service.node.util;
+
+import static fi.thl.termed.util.UUIDs.nameUUIDFromString;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.emptyMap;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.domain.ReferenceAttribute;
+import fi.thl.termed.domain.TextAttribute;
+import fi.thl.termed.domain.Type;
+import fi.thl.termed.domain.TypeId;
+import fi.thl.termed.util.dao.MemoryBasedSystemDao;
+import fi.thl.termed.util.dao.SystemDao;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.vocabulary.SKOS;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class NodeRdfExporterTest {
+
+  private UUID graphId = nameUUIDFromString("test-graph");
+  private TypeId conceptId = new TypeId("Concept", graphId);
+  private List<Type> types;
+
+  private SystemDao<NodeId, Node> nodeDao = new MemoryBasedSystemDao<>();
+  private List<NodeId> nodeIds = new ArrayList<>();
+
+  private ExecutorService executor = Executors.newFixedThreadPool(4);
+
+  @BeforeEach
+  void setUp() {
+    types = ImmutableList.of(Type.builder().id(conceptId)
+        .uri(SKOS.Concept.getURI())
+        .textAttributes(TextAttribute.builder().id("prefLabel", conceptId)
+            .regexAll().uri(SKOS.prefLabel.getURI()).build())
+        .referenceAttributes(ReferenceAttribute.builder().id("broader", conceptId)
+            .range(conceptId).uri(SKOS.broader.getURI()).build())
+        .build());
+
+    NodeId previous = null;
+    for (int i = 0; i < 50; i++) {
+      NodeId id = NodeId.random(conceptId);
+      Node.Builder node = Node.builder().id(id)
+          .uri("http://example.org/" + i)
+          .addProperty("prefLabel", "Concept " + i);
+      if (previous != null) {
+        node.addReference("broader", previous);
+      }
+      nodeDao.insert(id, node.build());
+      nodeIds.add(id);
+      previous = id;
+    }
+  }
+
+  @AfterEach
+  void tearDown() {
+    executor.shutdown();
+  }
+
+  @Test
+  void shouldWriteNodesInOrderWithResolvedReferenceUris() {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    new NodeRdfExporter("http://termed.thl.fi/", types, q -> nodeDao.values(q.getWhere()),
+        executor, 3, 2).write(out, emptyMap(), Lang.NTRIPLES);
+
+    String nTriples = new String(out.toByteArray(), UTF_8);
+
+    Set<String> subjects = new LinkedHashSet<>();
+    for (String line : nTriples.split("\n")) {
+      subjects.add(line.substring(0, line.indexOf(' ')));
+    }
+    List<String> expectedSubjects = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      expectedSubjects.add("<http://example.org/" + i + ">");
+    }
+    assertEquals(expectedSubjects, new ArrayList<>(subjects));
+
+    Model model = ModelFactory.createDefaultModel()
+        .read(new StringReader(nTriples), null, "N-TRIPLES");
+
+    assertTrue(model.contains(
+        model.createResource("http://example.org/2"),
+        SKOS.broader,
+        model.createResource("http://example.org/1")));
+    assertEquals(49, model.listStatements(null, SKOS.broader, (String) null).toList().size());
+  }
+
+}
@@ -1,6 +1,8 @@
 package fi.thl.termed.service.node.util;
 
 import static fi.thl.termed.util.UUIDs.nameUUIDFromString;
+import static fi.thl.termed.util.query.AndSpecification.and;
+import static fi.thl.termed.util.query.OrSpecification.or;
 import static org.apache.jena.rdf.model.ResourceFactory.createLangLiteral;
 import static org.apache.jena.rdf.model.ResourceFactory.createResource;
 import static org.apache.jena.rdf.model.ResourceFactory.createStatement;
@@ -16,16 +18,24 @@ import fi.thl.termed.domain.StrictLangValue;
 import fi.thl.termed.domain.TextAttribute;
 import fi.thl.termed.domain.Type;
 import fi.thl.termed.domain.TypeId;
+import fi.thl.termed.service.node.specification.NodesByGraphId;
+import fi.thl.termed.service.node.specification.NodesByPropertyString;
+import fi.thl.termed.service.node.specification.NodesByTypeId;
 import fi.thl.termed.util.dao.MemoryBasedSystemDao;
 import fi.thl.termed.util.dao.SystemDao;
+import fi.thl.termed.util.query.Specification;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 import java.util.UUID;
 import org.apache.jena.graph.impl.GraphBase;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.QueryExecutionFactory;
+import org.apache.jena.query.QuerySolution;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.ModelFactory;
 import org.apache.jena.rdf.model.Statement;
+import org.apache.jena.sparql.engine.main.StageBuilder;
 import org.apache.jena.util.iterator.ExtendedIterator;
 import org.apache.jena.vocabulary.RDF;
 import org.apache.jena.vocabulary.SKOS;
@@ -34,15 +44,15 @@ import org.junit.jupiter.api.Test;
 
 class NodeRdfGraphWrapperTest {
 
+  private UUID graphId = nameUUIDFromString("test-graph");
   private Model model;
+  private List<Specification<NodeId, Node>> queriedSpecs = new ArrayList<>();
 
   @BeforeEach
   void setUp() {
     List<Type> types = new ArrayList<>();
     SystemDao<NodeId, Node> nodeDao = new MemoryBasedSystemDao<>();
 
-    UUID graphId = nameUUIDFromString("test-graph");
-
     TypeId conceptId = new TypeId("Concept", graphId);
     Type concept = Type.builder().id(conceptId)
         .uri(SKOS.Concept.getURI())
@@ -71,7 +81,12 @@ class NodeRdfGraphWrapperTest {
         .build();
     nodeDao.insert(concept2Id, concept2);
 
-    GraphBase graphBase = new NodeRdfGraphWrapper("http://example.org/", types, nodeDao::values);
+    GraphBase graphBase = new NodeRdfGraphWrapper("http://example.org/", types,
+        spec -> {
+          queriedSpecs.add(spec);
+          return nodeDao.values(spec);
+        },
+        spec -> nodeDao.values(spec).count());
 
     model = ModelFactory.createModelForGraph(graphBase);
   }
@@ -116,4 +131,36 @@ class NodeRdfGraphWrapperTest {
     assertFalse(iterator.hasNext());
   }
 
-}
\ No newline at end of file
+  @Test
+  void shouldEvaluateMostSelectiveSubjectPatternsFirst() {
+    String query = "PREFIX skos: <http://www.w3.org/2004/02/skos/core#> "
+        + "SELECT ?label WHERE { "
+        + "  ?broader skos:prefLabel ?label . "
+        + "  ?concept skos:broader ?broader . "
+        + "  ?concept skos:prefLabel 'Concept 2'@en . "
+        + "}";
+
+    QueryExecution qe = QueryExecutionFactory.create(query, model);
+    StageBuilder.setGenerator(qe.getContext(),
+        new NodeRdfStageGenerator(StageBuilder.chooseStageGenerator(qe.getContext())));
+
+    List<QuerySolution> results = new ArrayList<>();
+    qe.execSelect().forEachRemaining(results::add);
+    qe.close();
+
+    assertEquals(1, results.size());
+    assertEquals(createLangLiteral("Concept 1", "en"), results.get(0).getLiteral("label"));
+
+    Specification<NodeId, Node> conceptsByLabel = or(and(
+        new NodesByGraphId(graphId),
+        new NodesByTypeId("Concept"),
+        new NodesByPropertyString("prefLabel", "Concept 2")));
+    Specification<NodeId, Node> allConcepts = or(and(
+        new NodesByGraphId(graphId),
+        new NodesByTypeId("Concept")));
+
+    assertEquals(conceptsByLabel, queriedSpecs.get(0));
+    assertFalse(queriedSpecs.contains(allConcepts));
+  }
+
+}
@@ -1,16 +1,31 @@
 package fi.thl.termed.service.node.util;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.Multimap;
 import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.domain.ReferenceAttribute;
+import fi.thl.termed.domain.TextAttribute;
+import fi.thl.termed.domain.TextAttributeId;
+import fi.thl.termed.domain.Type;
 import fi.thl.termed.domain.TypeId;
+import fi.thl.termed.service.node.select.SelectAllReferences;
 import fi.thl.termed.service.node.select.SelectProperty;
+import fi.thl.termed.service.node.select.SelectReference;
+import fi.thl.termed.service.node.select.SelectTypeQualifiedProperty;
 import fi.thl.termed.util.csv.CsvOptions;
+import fi.thl.termed.util.query.Query;
 import fi.thl.termed.util.query.Selects;
 import java.io.ByteArrayOutputStream;
 import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
+import java.util.function.Function;
 import java.util.stream.Stream;
 import org.junit.jupiter.api.Test;
 
@@ -50,4 +65,183 @@ class NodesToCsvTest {
     assertEquals(expectedCsv, csv);
   }
 
-}
\ No newline at end of file
+  @Test
+  void shouldStreamNodesToCsvUsingColumnsFromTypes() throws UnsupportedEncodingException {
+    UUID graphId = UUID.randomUUID();
+    TypeId typeId = TypeId.of("Person", graphId);
+    Type type = Type.builder().id(typeId)
+        .textAttributes(TextAttribute.builder().id("name", typeId).regexAll().build())
+        .referenceAttributes(
+            ReferenceAttribute.builder().id("knows", typeId).range(typeId).build(),
+            ReferenceAttribute.builder().id("likes", typeId).range(typeId).build())
+        .build();
+
+    Node node2 = Node.builder().random(typeId).code("example-node-2").build();
+    Node node1 = Node.builder().random(typeId)
+        .code("example-node-1")
+        .addReference("knows", node2.identifier())
+        .build();
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    new NodesToCsv().writeAsCsv(Stream.of(node1, node2),
+        ImmutableList.of(type),
+        ImmutableList.of(Selects.field("code"), new SelectAllReferences()),
+        CsvOptions.builder().build(),
+        out);
+
+    // columns come from type, including reference not used by any node
+    String expectedCsv =
+        "code,references.knows.id,references.likes.id\n"
+            + "example-node-1," + node2.getId() + ",\n"
+            + "example-node-2,,\n";
+
+    assertEquals(expectedCsv, out.toString("UTF-8"));
+  }
+
+  @Test
+  void shouldWriteLanguageVariantsToCsv() throws UnsupportedEncodingException {
+    UUID graphId = UUID.randomUUID();
+    TypeId typeId = TypeId.of("Concept", graphId);
+    Type type = Type.builder().id(typeId)
+        .textAttributes(TextAttribute.builder().id("prefLabel", typeId).regexAll().build())
+        .build();
+
+    Node node1 = Node.builder().random(typeId)
+        .addProperty("prefLabel", "en", "Cat")
+        .build();
+    Node node2 = Node.builder().random(typeId)
+        .addProperty("prefLabel", "fi", "Koira, \"hauva\"\nrivi")
+        .addProperty("prefLabel", "en", "Dog")
+        .build();
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    new NodesToCsv().writeAsCsv(Stream.of(node1, node2),
+        ImmutableList.of(type),
+        ImmutableList.of(new SelectProperty("prefLabel")),
+        CsvOptions.builder().build(),
+        out);
+
+    String expectedCsv =
+        "properties.prefLabel.en,properties.prefLabel.fi\n"
+            + "Cat,\n"
+            + "Dog,\"'Koira, \"\"hauva\"\"\nrivi'\"\n";
+
+    assertEquals(expectedCsv, out.toString("UTF-8"));
+  }
+
+  @Test
+  void shouldStreamLanguageVariantsUsingColumnsFromLangs() throws UnsupportedEncodingException {
+    UUID graphId = UUID.randomUUID();
+    TypeId typeId = TypeId.of("Concept", graphId);
+    Type type = Type.builder().id(typeId)
+        .textAttributes(
+            TextAttribute.builder().id("prefLabel", typeId).regexAll().build(),
+            TextAttribute.builder().id("note", typeId).regexAll().build())
+        .build();
+
+    Node node1 = Node.builder().random(typeId)
+        .addProperty("prefLabel", "fi", "Kissa")
+        .addProperty("prefLabel", "en", "Cat")
+        .addProperty("note", "Note")
+        .build();
+
+    Multimap<String, String> langs = LinkedHashMultimap.create();
+    langs.putAll("prefLabel", ImmutableList.of("en", "fi", "sv"));
+    langs.put("note", "");
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    new NodesToCsv(false, "prefLabel", "", query -> Stream.empty(), t -> langs)
+        .writeAsCsv(Stream.of(node1),
+            ImmutableList.of(type),
+            ImmutableList.of(new SelectProperty("prefLabel"), new SelectProperty("note")),
+            CsvOptions.builder().build(),
+            out);
+
+    // columns come from langs in type order, including language not used by any node
+    String expectedCsv =
+        "properties.prefLabel.en,properties.prefLabel.fi,properties.prefLabel.sv,properties.note\n"
+            + "Cat,Kissa,,Note\n";
+
+    assertEquals(expectedCsv, out.toString("UTF-8"));
+  }
+
+  @Test
+  void shouldFailInsteadOfOmittingValuesInLanguageNotKnownUpFront() {
+    UUID graphId = UUID.randomUUID();
+    TypeId typeId = TypeId.of("Concept", graphId);
+    Type type = Type.builder().id(typeId)
+        .textAttributes(TextAttribute.builder().id("prefLabel", typeId).regexAll().build())
+        .build();
+
+    // language added after languages were looked up
+    Node node = Node.builder().random(typeId)
+        .addProperty("prefLabel", "sv", "Katt")
+        .build();
+
+    Multimap<String, String> langs = LinkedHashMultimap.create();
+    langs.put("prefLabel", "en");
+
+    assertThrows(IllegalStateException.class, () ->
+        new NodesToCsv(false, "prefLabel", "", query -> Stream.empty(), t -> langs)
+            .writeAsCsv(Stream.of(node),
+                ImmutableList.of(type),
+                ImmutableList.of(new SelectProperty("prefLabel")),
+                CsvOptions.builder().build(),
+                new ByteArrayOutputStream()));
+  }
+
+  @Test
+  void shouldLoadReferenceLabelsInBatches() throws UnsupportedEncodingException {
+    UUID graphId = UUID.randomUUID();
+    TypeId typeId = TypeId.of("Concept", graphId);
+
+    Node animal = Node.builder().random(typeId).code("animal")
+        .addProperty("prefLabel", "en", "Animal")
+        .addProperty("prefLabel", "fi", "Eläin")
+        .build();
+    Node mammal = Node.builder().random(typeId).code("mammal")
+        .addProperty("prefLabel", "en", "Mammal")
+        .addReference("broader", animal.identifier())
+        .build();
+    Node cat = Node.builder().random(typeId).code("cat")
+        .addReference("broader", mammal.identifier())
+        .addReference("related", animal.identifier())
+        .build();
+    Node dog = Node.builder().random(typeId).code("dog")
+        .addReference("broader", mammal.identifier())
+        .build();
+
+    List<Query<NodeId, Node>> queries = new ArrayList<>();
+    Function<Query<NodeId, Node>, Stream<Node>> nodeProvider = query -> {
+      queries.add(query);
+      return Stream.of(animal, mammal, cat, dog)
+          .filter(n -> query.getWhere().test(n.identifier(), n));
+    };
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    new NodesToCsv(true, "prefLabel", "en", nodeProvider, null, 3, 100)
+        .writeAsCsv(Stream.of(animal, mammal, cat, dog),
+            ImmutableList.of(Selects.field("code"), new SelectReference("broader")),
+            CsvOptions.builder().build(),
+            out);
+
+    String expectedCsv =
+        "code,r.broader.p.prefLabel.en\n"
+            + "animal,\n"
+            + "mammal,Animal\n"
+            + "cat,Mammal\n"
+            + "dog,Mammal\n";
+
+    assertEquals(expectedCsv, out.toString("UTF-8"));
+
+    // one query for the first batch of three nodes, second batch finds mammal from cache
+    assertEquals(1, queries.size());
+    assertEquals(ImmutableList.of(new SelectTypeQualifiedProperty(
+        new TextAttributeId(typeId, "prefLabel"))), queries.get(0).getSelect());
+  }
+
+}
@@ -0,0 +1,115 @@
+package fi.thl.termed.service.node.util;
+
+import static fi.thl.termed.util.UUIDs.nameUUIDFromString;
+import static fi.thl.termed.util.collect.StreamUtils.toListAndClose;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import fi.thl.termed.domain.Node;
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.domain.ReferenceAttribute;
+import fi.thl.termed.domain.StrictLangValue;
+import fi.thl.termed.domain.TextAttribute;
+import fi.thl.termed.domain.Type;
+import fi.thl.termed.domain.TypeId;
+import fi.thl.termed.util.dao.MemoryBasedSystemDao;
+import fi.thl.termed.util.dao.SystemDao;
+import fi.thl.termed.util.jena.SubjectGroupingStreamRDF;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFParser;
+import org.apache.jena.vocabulary.SKOS;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class RdfStreamToNodesTest {
+
+  private UUID graphId = nameUUIDFromString("test-graph");
+  private TypeId conceptId = new TypeId("Concept", graphId);
+  private List<Type> types;
+
+  private SystemDao<NodeId, Node> nodeDao = new MemoryBasedSystemDao<>();
+  private NodeId existingId = new NodeId(UUID.randomUUID(), conceptId);
+
+  private String rdf = ""
+      + "@prefix skos: <http://www.w3.org/2004/02/skos/core#> .\n"
+      + "<http://example.org/cat> a skos:Concept ;\n"
+      + "  skos:prefLabel \"Cat\"@en ;\n"
+      + "  skos:broader <http://example.org/mammal> .\n"
+      + "<http://example.org/animal> a skos:Concept ;\n"
+      + "  skos:prefLabel \"Animal\"@en .\n"
+      + "<http://example.org/mammal> a skos:Concept ;\n"
+      + "  skos:prefLabel \"Mammal\"@en ;\n"
+      + "  skos:broader <http://example.org/animal> ;\n"
+      + "  skos:related <http://example.org/unknown> .\n"
+      + "<http://example.org/cat> skos:prefLabel \"Kissa\"@fi .\n";
+
+  @BeforeEach
+  void setUp() {
+    types = ImmutableList.of(Type.builder().id(conceptId)
+        .uri(SKOS.Concept.getURI())
+        .textAttributes(TextAttribute.builder().id("prefLabel", conceptId)
+            .regexAll().uri(SKOS.prefLabel.getURI()).build())
+        .referenceAttributes(
+            ReferenceAttribute.builder().id("broader", conceptId)
+                .range(conceptId).uri(SKOS.broader.getURI()).build(),
+            ReferenceAttribute.builder().id("related", conceptId)
+                .range(conceptId).uri(SKOS.related.getURI()).build())
+        .build());
+
+    nodeDao.insert(existingId, Node.builder()
+        .id(existingId)
+        .uri("http://example.org/animal")
+        .build());
+  }
+
+  @Test
+  void shouldConvertTriplesToNodesInMemory() {
+    assertNodes(new SubjectGroupingStreamRDF());
+  }
+
+  @Test
+  void shouldConvertTriplesToNodesUsingSpillFiles() {
+    assertNodes(new SubjectGroupingStreamRDF(2, 3));
+  }
+
+  private void assertNodes(SubjectGroupingStreamRDF triples) {
+    RDFParser.fromString(rdf).lang(Lang.TURTLE).parse(triples);
+
+    RdfStreamToNodes toNodes =
+        new RdfStreamToNodes(types, q -> nodeDao.values(q.getWhere()), true, 2, 10);
+
+    Map<String, Node> nodes = toListAndClose(toNodes.apply(triples)).stream()
+        .collect(Collectors.toMap(n -> n.getUri().orElse(null), Function.identity()));
+
+    assertEquals(3, nodes.size());
+
+    Node cat = nodes.get("http://example.org/cat");
+    Node mammal = nodes.get("http://example.org/mammal");
+    Node animal = nodes.get("http://example.org/animal");
+
+    assertEquals(nameUUIDFromString("http://example.org/cat"), cat.getId());
+    assertEquals("cat", cat.getCode().orElse(null));
+    assertEquals(2, cat.getProperties().get("prefLabel").size());
+    assertTrue(cat.getProperties().get("prefLabel")
+        .contains(new StrictLangValue("fi", "Kissa")));
+
+    // reference to node later in the same import
+    assertEquals(ImmutableList.of(mammal.identifier()), cat.getReferences().get("broader"));
+
+    // existing node is found by uri
+    assertEquals(existingId, animal.identifier());
+    assertEquals(ImmutableList.of(existingId), mammal.getReferences().get("broader"));
+
+    // references to unknown nodes are dropped
+    assertTrue(mammal.getReferences().get("related").isEmpty());
+
+    triples.close();
+  }
+
+}
@@ -429,6 +429,59 @@ class TypeServiceIntegrationTest {
     typeService.delete(typeId, defaultOpts(), user);
   }
 
+  @Test
+  void shouldUpsertTypesWithAttributesInBulk() {
+    TypeId typeId0 = TypeId.of("TestType0", graphs[0].identifier());
+    TypeId typeId1 = TypeId.of("TestType1", graphs[0].identifier());
+
+    Type type0 = Type.builder().id(typeId0)
+        .properties("label", LangValue.of("Type 0"))
+        .textAttributes(
+            TextAttribute.builder().id("label", typeId0).regexAll()
+                .properties("label", LangValue.of("Label")).build(),
+            TextAttribute.builder().id("note", typeId0).regexAll().build())
+        .referenceAttributes(
+            ReferenceAttribute.builder().id("related", typeId0).range(typeId1).build())
+        .build();
+    Type type1 = Type.builder().id(typeId1)
+        .textAttributes(TextAttribute.builder().id("label", typeId1).regexAll().build())
+        .build();
+
+    typeService.save(Stream.of(type0, type1), INSERT, defaultOpts(), user);
+
+    assertEquals(asList("label", "note"),
+        attributeIds(typeService.get(typeId0, user).orElseThrow(AssertionError::new)
+            .getTextAttributes()));
+
+    // update properties of type and attribute, remove one attribute from each type
+    Type updatedType0 = Type.builderFromCopyOf(type0)
+        .properties("label", LangValue.of("Updated type 0"))
+        .textAttributes(
+            TextAttribute.builder().id("label", typeId0).regexAll()
+                .properties("label", LangValue.of("Updated label")).build())
+        .build();
+    Type updatedType1 = Type.builderFromCopyOf(type1)
+        .textAttributes(emptyList())
+        .build();
+
+    typeService.save(Stream.of(updatedType0, updatedType1), UPSERT, defaultOpts(), user);
+
+    Type savedType0 = typeService.get(typeId0, user).orElseThrow(AssertionError::new);
+    Type savedType1 = typeService.get(typeId1, user).orElseThrow(AssertionError::new);
+
+    assertEquals(
+        singletonList(LangValue.of("Updated type 0")),
+        savedType0.getProperties().get("label"));
+    assertEquals(singletonList("label"), attributeIds(savedType0.getTextAttributes()));
+    assertEquals(
+        singletonList(LangValue.of("Updated label")),
+        savedType0.getTextAttributes().get(0).getProperties().get("label"));
+    assertEquals(singletonList("related"), attributeIds(savedType0.getReferenceAttributes()));
+    assertEquals(emptyList(), attributeIds(savedType1.getTextAttributes()));
+
+    typeService.delete(Stream.of(typeId0, typeId1), defaultOpts(), user);
+  }
+
   @Test
   void shouldCascadeCrossReferencingAttributes() {
     TypeId graph0TypeId = TypeId.of("TestType", graphs[0].identifier());
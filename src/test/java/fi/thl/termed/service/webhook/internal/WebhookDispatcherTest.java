@@ -0,0 +1,228 @@
+package fi.thl.termed.service.webhook.internal;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.common.io.ByteStreams;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpServer;
+import fi.thl.termed.domain.NodeId;
+import fi.thl.termed.domain.Webhook;
+import fi.thl.termed.domain.event.NodeSavedEvent;
+import fi.thl.termed.util.json.FastUUIDTypeAdapter;
+import fi.thl.termed.util.json.LocalDateTimeAsZonedTypeAdapter;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntUnaryOperator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class WebhookDispatcherTest {
+
+  private Gson gson = new GsonBuilder()
+      .registerTypeAdapter(UUID.class, new FastUUIDTypeAdapter().nullSafe())
+      .registerTypeAdapter(LocalDateTime.class, new LocalDateTimeAsZonedTypeAdapter().nullSafe())
+      .create();
+
+  private HttpServer server;
+  private List<JsonObject> received = new CopyOnWriteArrayList<>();
+
+  // maps request number (starting from 0) to response status
+  private volatile IntUnaryOperator responseStatus = i -> 200;
+  private volatile CountDownLatch firstRequestLatch = new CountDownLatch(0);
+
+  private Webhook hook;
+
+  @BeforeEach
+  void startServer() throws IOException {
+    AtomicInteger requestNumber = new AtomicInteger();
+
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/hook", exchange -> {
+      int i = requestNumber.getAndIncrement();
+      if (i == 0) {
+        awaitUninterruptibly(firstRequestLatch);
+      }
+      String body = new String(ByteStreams.toByteArray(exchange.getRequestBody()), UTF_8);
+      received.add(new JsonParser().parse(body).getAsJsonObject());
+      exchange.sendResponseHeaders(responseStatus.applyAsInt(i), -1);
+      exchange.close();
+    });
+    server.start();
+
+    hook = new Webhook(UUID.randomUUID(), URI.create(
+        "http://localhost:" + server.getAddress().getPort() + "/hook"));
+  }
+
+  @AfterEach
+  void stopServer() {
+    server.stop(0);
+  }
+
+  @Test
+  void shouldCoalesceQueuedEventsIntoBatchedPayload() throws Exception {
+    WebhookDispatcher dispatcher = new WebhookDispatcher(
+        () -> singletonList(hook), gson, 100, 1, 1000, 0, 10, 10, 60_000);
+
+    firstRequestLatch = new CountDownLatch(1);
+
+    CompletableFuture<Void> first = dispatcher.dispatch(savedEvent(1));
+    CompletableFuture<?>[] rest = new CompletableFuture[9];
+    for (int i = 0; i < rest.length; i++) {
+      rest[i] = dispatcher.dispatch(savedEvent(2));
+    }
+    firstRequestLatch.countDown();
+
+    first.get(10, TimeUnit.SECONDS);
+    CompletableFuture.allOf(rest).get(10, TimeUnit.SECONDS);
+
+    assertEquals(2, received.size());
+    assertEquals("NodeSavedEvent", received.get(0).get("type").getAsString());
+    assertEquals(1, nodeCount(received.get(0)));
+    assertEquals(18, nodeCount(received.get(1)));
+
+    dispatcher.close();
+  }
+
+  @Test
+  void shouldRetryFailedDeliveries() throws Exception {
+    WebhookDispatcher dispatcher = new WebhookDispatcher(
+        () -> singletonList(hook), gson, 100, 1, 1000, 3, 10, 10, 60_000);
+
+    responseStatus = i -> i < 2 ? 500 : 200;
+
+    dispatcher.dispatch(savedEvent(5)).get(10, TimeUnit.SECONDS);
+
+    assertEquals(3, received.size());
+    received.forEach(payload -> assertEquals(5, nodeCount(payload)));
+
+    dispatcher.close();
+  }
+
+  @Test
+  void shouldOpenCircuitForFailingHook() throws Exception {
+    WebhookDispatcher dispatcher = new WebhookDispatcher(
+        () -> singletonList(hook), gson, 100, 1, 1000, 1, 10, 2, 60_000);
+
+    responseStatus = i -> 500;
+
+    dispatcher.dispatch(savedEvent(1)).get(10, TimeUnit.SECONDS);
+    dispatcher.dispatch(savedEvent(1)).get(10, TimeUnit.SECONDS);
+    assertEquals(4, received.size());
+
+    // circuit is now open, event should not be posted
+    dispatcher.dispatch(savedEvent(1)).get(10, TimeUnit.SECONDS);
+    assertEquals(4, received.size());
+
+    dispatcher.close();
+  }
+
+  @Test
+  void shouldReloadHooksOnlyAfterInvalidation() {
+    AtomicInteger loads = new AtomicInteger();
+
+    WebhookDispatcher dispatcher = new WebhookDispatcher(() -> {
+      loads.incrementAndGet();
+      return singletonList(hook);
+    }, gson);
+
+    dispatcher.hooks();
+    dispatcher.hooks();
+    assertEquals(1, loads.get());
+
+    dispatcher.invalidateHooks();
+    assertTrue(dispatcher.hooks().contains(hook));
+    assertEquals(2, loads.get());
+
+    dispatcher.close();
+  }
+
+  @Test
+  void shouldNotCacheHooksLoadedWhileInvalidated() {
+    AtomicInteger loads = new AtomicInteger();
+    AtomicReference<WebhookDispatcher> dispatcher = new AtomicReference<>();
+
+    dispatcher.set(new WebhookDispatcher(() -> {
+      if (loads.getAndIncrement() == 0) {
+        // hook is removed while the first load is running
+        dispatcher.get().invalidateHooks();
+        return singletonList(hook);
+      }
+      return emptyList();
+    }, gson));
+
+    assertEquals(singletonList(hook), dispatcher.get().hooks());
+    assertEquals(emptyList(), dispatcher.get().hooks());
+    assertEquals(emptyList(), dispatcher.get().hooks());
+    assertEquals(2, loads.get());
+
+    dispatcher.get().close();
+  }
+
+  @Test
+  void shouldCompleteQueuedEventsOfRemovedHook() throws Exception {
+    AtomicReference<List<Webhook>> hooks = new AtomicReference<>(singletonList(hook));
+    WebhookDispatcher dispatcher = new WebhookDispatcher(
+        hooks::get, gson, 100, 1, 1, 0, 10, 10, 60_000);
+
+    firstRequestLatch = new CountDownLatch(1);
+
+    CompletableFuture<Void> inFlight = dispatcher.dispatch(savedEvent(1));
+    CompletableFuture<Void> queued = dispatcher.dispatch(savedEvent(1));
+
+    hooks.set(emptyList());
+    dispatcher.invalidateHooks();
+    dispatcher.hooks();
+
+    // queued event is discarded without waiting for the request in flight
+    queued.get(5, TimeUnit.SECONDS);
+    assertFalse(inFlight.isDone());
+
+    firstRequestLatch.countDown();
+    inFlight.get(10, TimeUnit.SECONDS);
+    assertEquals(1, received.size());
+
+    dispatcher.close();
+  }
+
+  private NodeSavedEvent savedEvent(int nodeCount) {
+    NodeId[] ids = new NodeId[nodeCount];
+    for (int i = 0; i < nodeCount; i++) {
+      ids[i] = NodeId.random("Concept", UUID.randomUUID());
+    }
+    return new NodeSavedEvent("test", LocalDateTime.now(), false,
+        Arrays.asList(ids));
+  }
+
+  private int nodeCount(JsonObject payload) {
+    return payload.getAsJsonObject("body").getAsJsonArray("nodes").size();
+  }
+
+  private static void awaitUninterruptibly(CountDownLatch latch) {
+    try {
+      latch.await(10, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+}
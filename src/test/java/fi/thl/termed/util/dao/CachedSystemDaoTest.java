@@ -1,15 +1,24 @@
 package fi.thl.termed.util.dao;
 
+import static fi.thl.termed.util.collect.StreamUtils.toListAndClose;
 import static fi.thl.termed.util.dao.CachedSystemDao.cache;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.eventbus.EventBus;
 import fi.thl.termed.domain.event.InvalidateCachesEvent;
+import fi.thl.termed.util.query.Specification;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
 import org.junit.jupiter.api.Test;
 
 class CachedSystemDaoTest {
@@ -67,4 +76,87 @@ class CachedSystemDaoTest {
     verify(dao, times(4)).get("foo");
   }
 
-}
\ No newline at end of file
+  @Test
+  void shouldInvalidateOnlyAffectedSpecificationResults() {
+    CountingDao dao = new CountingDao();
+    dao.insert("a1", "apple");
+    dao.insert("b1", "banana");
+
+    CachedSystemDao<String, String> cachedDao = cache(dao);
+
+    Specification<String, String> apples = (k, v) -> v.startsWith("apple");
+    Specification<String, String> bananas = (k, v) -> v.startsWith("banana");
+
+    assertEquals(ImmutableList.of("a1"), keys(cachedDao, apples));
+    assertEquals(ImmutableList.of("b1"), keys(cachedDao, bananas));
+    assertEquals(2, dao.keyQueries.get());
+
+    // unrelated write keeps both results
+    cachedDao.insert("c1", "cherry");
+    assertEquals(ImmutableList.of("a1"), keys(cachedDao, apples));
+    assertEquals(ImmutableList.of("b1"), keys(cachedDao, bananas));
+    assertEquals(2, dao.keyQueries.get());
+
+    // new matching value invalidates only apples
+    cachedDao.insert("a2", "apple pie");
+    assertEquals(ImmutableList.of("a1", "a2"), keys(cachedDao, apples));
+    assertEquals(ImmutableList.of("b1"), keys(cachedDao, bananas));
+    assertEquals(3, dao.keyQueries.get());
+
+    // update and delete of a contained key invalidate results tagged with the key
+    cachedDao.update("b1", "blueberry");
+    assertEquals(ImmutableList.of(), keys(cachedDao, bananas));
+    cachedDao.delete("a1");
+    assertEquals(ImmutableList.of("a2"), keys(cachedDao, apples));
+    assertEquals(5, dao.keyQueries.get());
+  }
+
+  @Test
+  void shouldRefreshStaleEntriesOnceInBackground() {
+    CountingDao dao = new CountingDao();
+    dao.insert("a1", "apple");
+
+    List<Runnable> refreshes = new ArrayList<>();
+    CachedSystemDao<String, String> cachedDao =
+        cache("test", dao, Duration.ofNanos(1), refreshes::add, () -> {
+        });
+
+    assertEquals(Optional.of("apple"), cachedDao.get("a1"));
+    long version = cachedDao.getVersion();
+
+    // changed outside of cached dao
+    dao.update("a1", "apricot");
+
+    // stale value is served while a single refresh is pending
+    assertEquals(Optional.of("apple"), cachedDao.get("a1"));
+    assertEquals(Optional.of("apple"), cachedDao.get("a1"));
+    assertEquals(1, refreshes.size());
+
+    refreshes.forEach(Runnable::run);
+
+    assertEquals(Optional.of("apricot"), cachedDao.get("a1"));
+    assertTrue(cachedDao.getVersion() > version);
+
+    CacheStatistics stats = cachedDao.getStats().get("values");
+    assertEquals(1, stats.getMissCount());
+    assertEquals(3, stats.getHitCount());
+    assertEquals(1, stats.getRefreshCount());
+  }
+
+  private List<String> keys(SystemDao<String, String> dao, Specification<String, String> spec) {
+    return toListAndClose(dao.keys(spec));
+  }
+
+  private static class CountingDao extends MemoryBasedSystemDao<String, String> {
+
+    private AtomicInteger keyQueries = new AtomicInteger();
+
+    @Override
+    public Stream<String> keys(Specification<String, String> specification) {
+      keyQueries.incrementAndGet();
+      return super.keys(specification).sorted();
+    }
+
+  }
+
+}
@@ -0,0 +1,193 @@
+package fi.thl.termed.util.event;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.eventbus.Subscribe;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class AsyncCapableEventBusTest {
+
+  private SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+  @Test
+  void shouldCallSyncSubscribersOnPostingThread() {
+    AsyncCapableEventBus eventBus = new AsyncCapableEventBus(
+        true, e -> null, e -> false, meterRegistry);
+
+    SyncListener listener = new SyncListener();
+    eventBus.register(listener);
+
+    eventBus.post("foo");
+
+    assertEquals(1, listener.threads.size());
+    assertEquals(Thread.currentThread(), listener.threads.get(0));
+
+    eventBus.shutdown();
+  }
+
+  @Test
+  void shouldCallAsyncSubscribersInOrderOnOwnThread() throws InterruptedException {
+    AsyncCapableEventBus eventBus = new AsyncCapableEventBus(
+        false, e -> null, e -> false, meterRegistry);
+
+    AsyncListener listener = new AsyncListener(100);
+    eventBus.register(listener);
+
+    for (int i = 0; i < 100; i++) {
+      eventBus.post(String.valueOf(i));
+    }
+
+    assertTrue(listener.latch.await(10, TimeUnit.SECONDS));
+
+    for (int i = 0; i < 100; i++) {
+      assertEquals(String.valueOf(i), listener.events.get(i));
+      assertNotEquals(Thread.currentThread(), listener.threads.get(i));
+    }
+
+    // latency of the last event is recorded after handler returns, wait for lanes to finish
+    eventBus.shutdown();
+
+    assertEquals(100, meterRegistry.get("termed.events.handler.latency").timer().count());
+  }
+
+  @Test
+  void shouldWaitForAsyncDeliveryOfAwaitedEvents() {
+    AsyncCapableEventBus eventBus = new AsyncCapableEventBus(
+        false, e -> null, "sync"::equals, meterRegistry);
+
+    AsyncListener listener = new AsyncListener(1);
+    eventBus.register(listener);
+
+    eventBus.post("sync");
+
+    assertEquals(1, listener.events.size());
+    assertNotEquals(Thread.currentThread(), listener.threads.get(0));
+
+    eventBus.shutdown();
+  }
+
+  @Test
+  void shouldNotQueueEventsNotSubscribedTo() {
+    AsyncCapableEventBus eventBus = new AsyncCapableEventBus(
+        false, e -> null, e -> true, meterRegistry);
+
+    AsyncListener listener = new AsyncListener(1);
+    eventBus.register(listener);
+
+    eventBus.post(1);
+
+    assertTrue(listener.events.isEmpty());
+    assertEquals(0, meterRegistry.get("termed.events.handler.latency").timer().count());
+
+    eventBus.shutdown();
+  }
+
+  @Test
+  void shouldDeliverBroadcastEventsToAllLanes() throws InterruptedException {
+    AsyncCapableEventBus eventBus = new AsyncCapableEventBus(
+        false, e -> e, e -> false, "invalidate"::equals, meterRegistry);
+
+    MultiLaneListener listener = new MultiLaneListener(4 + 4);
+    eventBus.register(listener);
+
+    for (int i = 0; i < 4; i++) {
+      eventBus.post(String.valueOf(i));
+    }
+    eventBus.post("invalidate");
+
+    assertTrue(listener.latch.await(10, TimeUnit.SECONDS));
+
+    // each lane gets the broadcast event after the events previously routed to it
+    assertEquals(4, listener.events.stream().filter("invalidate"::equals).count());
+    listener.eventsByThread.values().forEach(events ->
+        assertEquals("invalidate", events.get(events.size() - 1)));
+
+    eventBus.shutdown();
+  }
+
+  @Test
+  void shouldDeliverEventsPostedAfterShutdownOnPostingThreadAfterQueuedEvents() {
+    AsyncCapableEventBus eventBus = new AsyncCapableEventBus(
+        false, e -> e, e -> false, "invalidate"::equals, meterRegistry);
+
+    MultiLaneListener listener = new MultiLaneListener(0);
+    eventBus.register(listener);
+
+    for (int i = 0; i < 100; i++) {
+      eventBus.post(String.valueOf(i));
+    }
+
+    eventBus.shutdown();
+    eventBus.post("close");
+    eventBus.post("invalidate");
+
+    assertEquals(102, listener.events.size());
+    assertEquals("close", listener.events.get(100));
+    assertEquals(ImmutableList.of("close", "invalidate"),
+        listener.eventsByThread.get(Thread.currentThread()));
+  }
+
+  @SyncSubscriber
+  public static class SyncListener {
+
+    private List<Thread> threads = new CopyOnWriteArrayList<>();
+
+    @Subscribe
+    public void on(String event) {
+      threads.add(Thread.currentThread());
+    }
+
+  }
+
+  @AsyncSubscriber
+  public static class AsyncListener {
+
+    private List<String> events = new CopyOnWriteArrayList<>();
+    private List<Thread> threads = new CopyOnWriteArrayList<>();
+    private CountDownLatch latch;
+
+    AsyncListener(int expectedEvents) {
+      this.latch = new CountDownLatch(expectedEvents);
+    }
+
+    @Subscribe
+    public void on(String event) {
+      events.add(event);
+      threads.add(Thread.currentThread());
+      latch.countDown();
+    }
+
+  }
+
+  @AsyncSubscriber(lanes = 4)
+  public static class MultiLaneListener {
+
+    private List<String> events = new CopyOnWriteArrayList<>();
+    private Map<Thread, List<String>> eventsByThread = new ConcurrentHashMap<>();
+    private CountDownLatch latch;
+
+    MultiLaneListener(int expectedEvents) {
+      this.latch = new CountDownLatch(expectedEvents);
+    }
+
+    @Subscribe
+    public void on(String event) {
+      events.add(event);
+      eventsByThread.computeIfAbsent(Thread.currentThread(), t -> new CopyOnWriteArrayList<>())
+          .add(event);
+      latch.countDown();
+    }
+
+  }
+
+}
@@ -0,0 +1,124 @@
+package fi.thl.termed.util.invalidation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+import fi.thl.termed.domain.event.CachedDataChangedEvent;
+import fi.thl.termed.domain.event.InvalidateCachesEvent;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+class CacheInvalidationRelayTest {
+
+  private LoopbackInvalidationBroadcaster broadcaster = new LoopbackInvalidationBroadcaster();
+
+  private EventBus firstEventBus = new EventBus();
+  private EventBus secondEventBus = new EventBus();
+
+  private CacheInvalidationRelay first;
+  private List<InvalidateCachesEvent> secondReceived = new ArrayList<>();
+
+  @BeforeEach
+  void setUp() {
+    first = new CacheInvalidationRelay(firstEventBus, broadcaster);
+    firstEventBus.register(first);
+    secondEventBus.register(new CacheInvalidationRelay(secondEventBus, broadcaster));
+    secondEventBus.register(new Object() {
+      @Subscribe
+      public void receive(InvalidateCachesEvent e) {
+        secondReceived.add(e);
+      }
+    });
+  }
+
+  @Test
+  void shouldPropagateChangedCacheToOtherInstance() {
+    firstEventBus.post(new CachedDataChangedEvent("types"));
+
+    assertEquals(1, secondReceived.size());
+    assertTrue(secondReceived.get(0).isRemote());
+    assertTrue(secondReceived.get(0).invalidates("types"));
+    assertFalse(secondReceived.get(0).invalidates("graphs"));
+  }
+
+  @Test
+  void shouldNotRebroadcastRemoteInvalidations() {
+    List<InvalidationMessage> published = new ArrayList<>();
+    broadcaster.subscribe(new InvalidationListener() {
+      @Override
+      public void onMessage(InvalidationMessage message) {
+        published.add(message);
+      }
+
+      @Override
+      public void onMessagesMissed() {
+      }
+    });
+
+    firstEventBus.post(new InvalidateCachesEvent());
+
+    assertEquals(1, published.size());
+    assertEquals(first.getInstanceId(), published.get(0).getInstanceId());
+    assertEquals(1, secondReceived.size());
+    assertTrue(secondReceived.get(0).invalidates("any"));
+  }
+
+  @Test
+  void shouldInvalidateAllOnSequenceGap() {
+    broadcaster.publish(new InvalidationMessage("other", 1, ImmutableSet.of("types")));
+    broadcaster.publish(new InvalidationMessage("other", 3, ImmutableSet.of("types")));
+
+    assertEquals(2, secondReceived.size());
+    assertFalse(secondReceived.get(0).invalidates("graphs"));
+    assertTrue(secondReceived.get(1).invalidates("graphs"));
+  }
+
+  @Test
+  void shouldTakeFirstMessageOfInstanceAsBaseline() {
+    // instance started before the receiver
+    broadcaster.publish(new InvalidationMessage("other", 42, ImmutableSet.of("types")));
+    broadcaster.publish(new InvalidationMessage("other", 43, ImmutableSet.of("types")));
+
+    assertEquals(2, secondReceived.size());
+    assertFalse(secondReceived.get(0).invalidates("graphs"));
+    assertFalse(secondReceived.get(1).invalidates("graphs"));
+  }
+
+  @Test
+  void shouldPublishOnceAfterCommit() {
+    TransactionSynchronizationManager.initSynchronization();
+    try {
+      firstEventBus.post(new CachedDataChangedEvent("types"));
+      firstEventBus.post(new CachedDataChangedEvent("graphs"));
+      assertTrue(secondReceived.isEmpty());
+
+      TransactionSynchronizationManager.getSynchronizations()
+          .forEach(s -> s.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+    } finally {
+      TransactionSynchronizationManager.clearSynchronization();
+    }
+
+    assertEquals(1, secondReceived.size());
+    assertTrue(secondReceived.get(0).invalidates("types"));
+    assertTrue(secondReceived.get(0).invalidates("graphs"));
+    assertFalse(secondReceived.get(0).invalidates("users"));
+  }
+
+  @Test
+  void shouldEncodeAndDecodeMessages() {
+    InvalidationMessage message = new InvalidationMessage("a", 7, ImmutableSet.of("x", "y"));
+    assertEquals(message, InvalidationMessage.decode(message.encode()));
+
+    InvalidationMessage all = new InvalidationMessage("a", 8, ImmutableSet.of());
+    assertEquals(all, InvalidationMessage.decode(all.encode()));
+  }
+
+}
@@ -0,0 +1,105 @@
+package fi.thl.termed.util.invalidation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.google.common.collect.ImmutableSet;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+class PollingInvalidationBroadcasterTest {
+
+  private JdbcDataSource dataSource = new JdbcDataSource();
+  private JdbcTemplate jdbcTemplate;
+
+  private PollingInvalidationBroadcaster broadcaster;
+
+  private List<InvalidationMessage> received = new ArrayList<>();
+  private int missed = 0;
+
+  @BeforeEach
+  void setUp() {
+    dataSource.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+    jdbcTemplate = new JdbcTemplate(dataSource);
+    jdbcTemplate.execute("CREATE TABLE cache_invalidation ("
+        + "instance_id varchar(36) PRIMARY KEY, sequence_number bigint NOT NULL, "
+        + "caches varchar(4000) NOT NULL, last_modified timestamp NOT NULL)");
+
+    // instance that was running before the broadcaster was started
+    publish("old", 5);
+
+    // polled only by tests after the baseline
+    broadcaster = new PollingInvalidationBroadcaster(dataSource,
+        Duration.ofHours(1), Duration.ofDays(1));
+    broadcaster.subscribe(new InvalidationListener() {
+      @Override
+      public void onMessage(InvalidationMessage message) {
+        received.add(message);
+      }
+
+      @Override
+      public void onMessagesMissed() {
+        missed++;
+      }
+    });
+  }
+
+  @AfterEach
+  void tearDown() {
+    broadcaster.close();
+    jdbcTemplate.execute("DROP TABLE cache_invalidation");
+  }
+
+  @Test
+  void shouldDeliverChangedMessagesAfterBaseline() {
+    broadcaster.poll();
+    assertEquals(0, received.size());
+
+    publish("old", 6);
+    publish("new", 1);
+    broadcaster.poll();
+
+    assertEquals(2, received.size());
+    assertEquals(0, missed);
+  }
+
+  @Test
+  void shouldReportMissedMessagesOfNewInstance() {
+    publish("new", 1);
+    publish("new", 2);
+    broadcaster.poll();
+
+    assertEquals(1, received.size());
+    assertEquals(1, missed);
+  }
+
+  @Test
+  void shouldDeleteExpiredInstances() {
+    jdbcTemplate.update("UPDATE cache_invalidation SET last_modified = ? WHERE instance_id = ?",
+        Timestamp.valueOf(LocalDateTime.now().minusDays(2)), "old");
+    publish("new", 1);
+
+    broadcaster.poll();
+
+    assertEquals(ImmutableSet.of("new"), ImmutableSet.copyOf(jdbcTemplate.queryForList(
+        "SELECT instance_id FROM cache_invalidation", String.class)));
+  }
+
+  private void publish(String instanceId, long sequence) {
+    if (broadcaster != null) {
+      broadcaster.publish(new InvalidationMessage(instanceId, sequence, ImmutableSet.of("types")));
+    } else {
+      jdbcTemplate.update("INSERT INTO cache_invalidation VALUES (?, ?, ?, ?)",
+          instanceId, sequence, "types", Timestamp.valueOf(LocalDateTime.now()));
+    }
+  }
+
+}
@@ -0,0 +1,63 @@
+package fi.thl.termed.util.jena;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.vocabulary.RDF;
+import org.apache.jena.vocabulary.RDFS;
+import org.junit.jupiter.api.Test;
+
+class SubjectGroupingStreamRDFTest {
+
+  private static final String NS = "http://example.org/";
+
+  @Test
+  void shouldGroupTriplesBySubjectInMemory() {
+    assertGroups(new SubjectGroupingStreamRDF());
+  }
+
+  @Test
+  void shouldGroupTriplesBySubjectUsingMergedRuns() {
+    // many more runs than merge fan-in
+    assertGroups(new SubjectGroupingStreamRDF(3, 2));
+  }
+
+  private void assertGroups(SubjectGroupingStreamRDF triples) {
+    try (SubjectGroupingStreamRDF t = triples) {
+      t.start();
+      for (int round = 0; round < 3; round++) {
+        for (int i = 0; i < 20; i++) {
+          t.triple(triple("s" + i, RDFS.label.getURI(), "label" + round));
+          t.triple(triple("s" + i, RDF.type.getURI(), "Concept"));
+        }
+      }
+      t.finish();
+
+      Map<String, List<Triple>> groups = new HashMap<>();
+      t.subjectGroups().forEachRemaining(
+          group -> groups.put(group.get(0).getSubject().getURI(), group));
+
+      assertEquals(20, groups.size());
+      // three labels and one deduplicated type for each subject
+      groups.values().forEach(group -> assertEquals(4, group.size()));
+
+      assertTrue(t.hasType(NS + "s0", NS + "Concept"));
+      assertFalse(t.hasType(NS + "s0", NS + "Collection"));
+      assertFalse(t.hasType(NS + "s20", NS + "Concept"));
+    }
+  }
+
+  private Triple triple(String subject, String predicate, String object) {
+    return Triple.create(
+        NodeFactory.createURI(NS + subject),
+        NodeFactory.createURI(predicate),
+        NodeFactory.createURI(NS + object));
+  }
+
+}
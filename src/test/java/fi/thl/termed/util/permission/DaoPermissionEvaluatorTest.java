@@ -0,0 +1,96 @@
+package fi.thl.termed.util.permission;
+
+import static fi.thl.termed.domain.Permission.READ;
+import static fi.thl.termed.domain.Permission.UPDATE;
+import static fi.thl.termed.util.dao.CachedSystemDao.cache;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.eventbus.EventBus;
+import fi.thl.termed.domain.AppRole;
+import fi.thl.termed.domain.GrantedPermission;
+import fi.thl.termed.domain.GraphId;
+import fi.thl.termed.domain.GraphRole;
+import fi.thl.termed.domain.ObjectRolePermission;
+import fi.thl.termed.domain.User;
+import fi.thl.termed.domain.event.InvalidateCachesEvent;
+import fi.thl.termed.util.dao.CachedSystemDao;
+import fi.thl.termed.util.dao.MemoryBasedSystemDao;
+import fi.thl.termed.util.dao.SystemDao;
+import java.util.Collections;
+import org.junit.jupiter.api.Test;
+
+class DaoPermissionEvaluatorTest {
+
+  private GraphRole reader = new GraphRole(GraphId.random(), "reader");
+  private GraphRole editor = new GraphRole(GraphId.random(), "editor");
+
+  private User readerUser = new User("reader", "", AppRole.USER, ImmutableList.of(reader));
+  private User editorUser = new User("editor", "", AppRole.USER, ImmutableList.of(editor));
+
+  @Test
+  void shouldEvaluatePermissionsOfUserGraphRoles() {
+    SystemDao<ObjectRolePermission<String>, GrantedPermission> dao =
+        cache(new MemoryBasedSystemDao<>());
+    dao.insert(new ObjectRolePermission<>("a", reader, READ), GrantedPermission.INSTANCE);
+    dao.insert(new ObjectRolePermission<>("a", editor, UPDATE), GrantedPermission.INSTANCE);
+
+    PermissionEvaluator<String> evaluator = new DaoPermissionEvaluator<>(dao);
+
+    assertTrue(evaluator.hasPermission(readerUser, "a", READ));
+    assertFalse(evaluator.hasPermission(readerUser, "a", UPDATE));
+    assertFalse(evaluator.hasPermission(readerUser, "b", READ));
+    assertTrue(evaluator.hasPermission(editorUser, "a", UPDATE));
+    assertFalse(evaluator.hasPermission(editorUser, "a", READ));
+    assertFalse(evaluator.hasPermission(
+        new User("guest", "", AppRole.USER, Collections.emptyList()), "a", READ));
+  }
+
+  @Test
+  void shouldRebuildPlanWhenPermissionsAreWritten() {
+    SystemDao<ObjectRolePermission<String>, GrantedPermission> dao =
+        cache(new MemoryBasedSystemDao<>());
+    PermissionEvaluator<String> evaluator = new DaoPermissionEvaluator<>(dao);
+
+    assertFalse(evaluator.hasPermission(readerUser, "a", READ));
+
+    dao.insert(new ObjectRolePermission<>("a", reader, READ), GrantedPermission.INSTANCE);
+    assertTrue(evaluator.hasPermission(readerUser, "a", READ));
+
+    dao.delete(new ObjectRolePermission<>("a", reader, READ));
+    assertFalse(evaluator.hasPermission(readerUser, "a", READ));
+  }
+
+  @Test
+  void shouldRebuildPlanOnInvalidateCachesEvent() {
+    SystemDao<ObjectRolePermission<String>, GrantedPermission> delegate =
+        new MemoryBasedSystemDao<>();
+    CachedSystemDao<ObjectRolePermission<String>, GrantedPermission> dao = cache(delegate);
+
+    EventBus eventBus = new EventBus();
+    eventBus.register(dao);
+
+    PermissionEvaluator<String> evaluator = new DaoPermissionEvaluator<>(dao);
+    assertFalse(evaluator.hasPermission(readerUser, "a", READ));
+
+    // write bypassing cache is seen only after invalidation
+    delegate.insert(new ObjectRolePermission<>("a", reader, READ), GrantedPermission.INSTANCE);
+    assertFalse(evaluator.hasPermission(readerUser, "a", READ));
+
+    eventBus.post(new InvalidateCachesEvent());
+    assertTrue(evaluator.hasPermission(readerUser, "a", READ));
+  }
+
+  @Test
+  void shouldQueryUncachedDaoDirectly() {
+    SystemDao<ObjectRolePermission<String>, GrantedPermission> dao =
+        new MemoryBasedSystemDao<>();
+    PermissionEvaluator<String> evaluator = new DaoPermissionEvaluator<>(dao);
+
+    assertFalse(evaluator.hasPermission(readerUser, "a", READ));
+    dao.insert(new ObjectRolePermission<>("a", reader, READ), GrantedPermission.INSTANCE);
+    assertTrue(evaluator.hasPermission(readerUser, "a", READ));
+  }
+
+}
@@ -0,0 +1,132 @@
+package fi.thl.termed.util.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import fi.thl.termed.domain.User;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class BlockAllocatingNamedSequenceServiceTest {
+
+  private User user = User.newUser("example");
+
+  private AtomicInteger advances = new AtomicInteger();
+
+  // memory based sequence is not thread safe, all access is synchronized
+  private NamedSequenceService<String> actualSeq =
+      new ForwardingNamedSequenceService<String>(new MemoryBasedNamedSequence<>()) {
+        @Override
+        public synchronized Long get(String sequenceId, User user) {
+          return super.get(sequenceId, user);
+        }
+
+        @Override
+        public synchronized Long getAndAdvance(String sequenceId, Long count, User user) {
+          advances.incrementAndGet();
+          return super.getAndAdvance(sequenceId, count, user);
+        }
+
+        @Override
+        public synchronized void set(String sequenceId, Long value, User user) {
+          super.set(sequenceId, value, user);
+        }
+
+        @Override
+        public synchronized boolean compareAndSet(String sequenceId, Long expected, Long value,
+            User user) {
+          return super.compareAndSet(sequenceId, expected, value, user);
+        }
+      };
+
+  @Test
+  void shouldAllocateFromReservedBlocks() {
+    BlockAllocatingNamedSequenceService<String> seq =
+        new BlockAllocatingNamedSequenceService<>(actualSeq, 10);
+
+    assertEquals((Long) 0L, seq.getAndAdvance("A", user));
+    assertEquals((Long) 1L, seq.getAndAdvance("A", 5L, user));
+    assertEquals((Long) 6L, seq.get("A", user));
+    assertEquals((Long) 10L, actualSeq.get("A", user));
+    assertEquals(1, advances.get());
+
+    // does not fit to the current block, rest of the block is skipped
+    assertEquals((Long) 10L, seq.getAndAdvance("A", 5L, user));
+    assertEquals((Long) 20L, actualSeq.get("A", user));
+
+    // larger than block size
+    assertEquals((Long) 20L, seq.getAndAdvance("A", 25L, user));
+    assertEquals((Long) 45L, actualSeq.get("A", user));
+    assertEquals(3, advances.get());
+
+    // other sequences have blocks of their own
+    assertEquals((Long) 0L, seq.getAndAdvance("B", user));
+    assertEquals(4, advances.get());
+  }
+
+  @Test
+  void shouldReleaseUnusedValuesOnCloseIfSequenceIsUnchanged() {
+    BlockAllocatingNamedSequenceService<String> seq =
+        new BlockAllocatingNamedSequenceService<>(actualSeq, 10);
+
+    seq.getAndAdvance("A", 3L, user);
+    seq.getAndAdvance("B", 3L, user);
+
+    // e.g. other instance advances B
+    actualSeq.getAndAdvance("B", 10L, user);
+
+    seq.close();
+
+    assertEquals((Long) 3L, actualSeq.get("A", user));
+    assertEquals((Long) 20L, actualSeq.get("B", user));
+  }
+
+  @Test
+  void shouldDiscardBlockOnSet() {
+    BlockAllocatingNamedSequenceService<String> seq =
+        new BlockAllocatingNamedSequenceService<>(actualSeq, 10);
+
+    seq.getAndAdvance("A", user);
+    seq.set("A", 100L, user);
+
+    assertEquals((Long) 100L, seq.getAndAdvance("A", user));
+    assertEquals((Long) 110L, actualSeq.get("A", user));
+  }
+
+  @Test
+  void shouldAllocateUniqueValuesConcurrently() throws Exception {
+    BlockAllocatingNamedSequenceService<String> seq =
+        new BlockAllocatingNamedSequenceService<>(actualSeq, 7);
+
+    Set<Long> values = ConcurrentHashMap.newKeySet();
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        futures.add(executor.submit(() -> {
+          for (int j = 0; j < 1000; j++) {
+            long start = seq.getAndAdvance("A", 3L, user);
+            for (long v = start; v < start + 3; v++) {
+              values.add(v);
+            }
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertEquals(8 * 1000 * 3, values.size());
+  }
+
+}
@@ -0,0 +1,67 @@
+package fi.thl.termed.util.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import fi.thl.termed.domain.User;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+class FallbackNamedSequenceServiceTest {
+
+  private User user = User.newUser("example");
+
+  private AtomicInteger primaryCalls = new AtomicInteger();
+
+  // primary can't see sequence "new"
+  private NamedSequenceService<String> primary =
+      new ForwardingNamedSequenceService<String>(new MemoryBasedNamedSequence<>()) {
+        @Override
+        public Long getAndAdvance(String sequenceId, Long count, User user) {
+          primaryCalls.incrementAndGet();
+          if (sequenceId.equals("new")) {
+            throw new DataIntegrityViolationException("Not found: " + sequenceId);
+          }
+          return super.getAndAdvance(sequenceId, count, user);
+        }
+      };
+
+  private NamedSequenceService<String> fallback = new MemoryBasedNamedSequence<>();
+
+  private FallbackNamedSequenceService<String> seq =
+      new FallbackNamedSequenceService<>(primary, fallback);
+
+  @Test
+  void shouldThrowPrimaryFailuresOutsideOfTransactions() {
+    assertEquals((Long) 0L, seq.getAndAdvance("A", 5L, user));
+    assertThrows(DataIntegrityViolationException.class,
+        () -> seq.getAndAdvance("new", 5L, user));
+  }
+
+  @Test
+  void shouldUseFallbackForRestOfTransactionAfterPrimaryFails() {
+    TransactionSynchronizationManager.initSynchronization();
+    try {
+      assertEquals((Long) 0L, seq.getAndAdvance("A", 5L, user));
+      assertEquals((Long) 0L, seq.getAndAdvance("new", 5L, user));
+      assertEquals((Long) 5L, seq.getAndAdvance("new", 5L, user));
+      assertEquals((Long) 5L, seq.getAndAdvance("A", 5L, user));
+
+      // failed once for "new", after that only fallback is used
+      assertEquals(3, primaryCalls.get());
+      assertEquals((Long) 10L, fallback.get("new", user));
+
+      TransactionSynchronizationManager.getSynchronizations()
+          .forEach(s -> s.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+    } finally {
+      TransactionSynchronizationManager.clearSynchronization();
+    }
+
+    assertThrows(DataIntegrityViolationException.class,
+        () -> seq.getAndAdvance("new", 5L, user));
+  }
+
+}
@@ -0,0 +1,208 @@
+package fi.thl.termed.util.service;
+
+import static fi.thl.termed.util.collect.StreamUtils.toListAndClose;
+import static fi.thl.termed.util.service.SaveMode.UPSERT;
+import static fi.thl.termed.util.service.WriteOptions.defaultOpts;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.eventbus.EventBus;
+import fi.thl.termed.domain.AppRole;
+import fi.thl.termed.domain.Graph;
+import fi.thl.termed.domain.GraphId;
+import fi.thl.termed.domain.User;
+import fi.thl.termed.domain.event.InvalidateCachesEvent;
+import fi.thl.termed.util.dao.AuthorizedDao;
+import fi.thl.termed.util.dao.MemoryBasedSystemDao;
+import fi.thl.termed.util.query.Query;
+import fi.thl.termed.util.query.Specifications;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+class SnapshotReadServiceTest {
+
+  private User admin = new User("admin", "", AppRole.ADMIN);
+  private User user = new User("user", "", AppRole.USER);
+
+  private Graph publicGraph = Graph.builder().id(UUID.randomUUID()).code("public").build();
+  private Graph privateGraph = Graph.builder().id(UUID.randomUUID()).code("private").build();
+
+  private AtomicInteger loads = new AtomicInteger();
+  private CountDownLatch writeStarted = new CountDownLatch(1);
+  private CountDownLatch writeReleased = new CountDownLatch(0);
+
+  private ExecutorService executor = Executors.newSingleThreadExecutor();
+
+  private SnapshotReadService<GraphId, Graph> service;
+
+  @BeforeEach
+  void setUp() {
+    // users can read only public graph
+    Set<GraphId> publicGraphs = ImmutableSet.of(publicGraph.identifier());
+
+    Service<GraphId, Graph> repository = new DaoForwardingRepository<>(new AuthorizedDao<>(
+        new MemoryBasedSystemDao<>(),
+        (u, k, p) -> u.getAppRole() == AppRole.ADMIN || publicGraphs.contains(k)));
+
+    Service<GraphId, Graph> delegate = new ForwardingService<GraphId, Graph>(repository) {
+      @Override
+      public GraphId save(Graph value, SaveMode mode, WriteOptions opts, User user) {
+        GraphId id = super.save(value, mode, opts, user);
+        writeStarted.countDown();
+        try {
+          writeReleased.await();
+        } catch (InterruptedException e) {
+          throw new RuntimeException(e);
+        }
+        return id;
+      }
+
+      @Override
+      public Stream<Graph> values(Query<GraphId, Graph> query, User user) {
+        loads.incrementAndGet();
+        return super.values(query, user);
+      }
+    };
+
+    service = new SnapshotReadService<>(delegate, Graph::identifier);
+    service.save(publicGraph, UPSERT, defaultOpts(), admin);
+    service.save(privateGraph, UPSERT, defaultOpts(), admin);
+  }
+
+  @AfterEach
+  void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  void shouldLoadViewOncePerSnapshotAndRoles() {
+    long version = service.getVersion();
+
+    assertEquals(2, values(admin).size());
+    assertEquals(2, service.count(Specifications.matchAll(), admin));
+    assertTrue(service.get(privateGraph.identifier(), admin).isPresent());
+    assertEquals(1, loads.get());
+
+    assertEquals(1, values(user).size());
+    assertFalse(service.exists(privateGraph.identifier(), user));
+    assertFalse(service.get(privateGraph.identifier(), user).isPresent());
+    assertEquals(2, loads.get());
+
+    assertEquals(version, service.getVersion());
+  }
+
+  @Test
+  void shouldReplaceSnapshotAfterWrite() {
+    assertEquals(2, values(admin).size());
+    long version = service.getVersion();
+
+    service.save(Graph.builder().id(UUID.randomUUID()).build(), UPSERT, defaultOpts(), admin);
+
+    assertTrue(service.getVersion() > version);
+    assertEquals(3, values(admin).size());
+    assertEquals(2, loads.get());
+  }
+
+  @Test
+  void shouldReplaceSnapshotOnInvalidateCachesEvent() {
+    EventBus eventBus = new EventBus();
+    eventBus.register(service);
+
+    assertEquals(2, values(admin).size());
+    eventBus.post(new InvalidateCachesEvent());
+    assertEquals(2, values(admin).size());
+
+    assertEquals(2, loads.get());
+  }
+
+  @Test
+  void shouldNotBlockReadsDuringWrite() throws Exception {
+    assertEquals(2, values(admin).size());
+
+    writeStarted = new CountDownLatch(1);
+    writeReleased = new CountDownLatch(1);
+    Graph newGraph = Graph.builder().id(UUID.randomUUID()).build();
+    Future<GraphId> write = executor.submit(
+        () -> service.save(newGraph, UPSERT, defaultOpts(), admin));
+    writeStarted.await();
+
+    // snapshot taken before write is served while write is in progress
+    assertTimeoutPreemptively(Duration.ofSeconds(5),
+        () -> assertEquals(2, values(admin).size()));
+
+    writeReleased.countDown();
+    write.get();
+
+    assertEquals(3, values(admin).size());
+  }
+
+  @Test
+  void shouldNotBlockUncachedReadsOrInvalidationDuringWrite() throws Exception {
+    writeStarted = new CountDownLatch(1);
+    writeReleased = new CountDownLatch(1);
+    Graph newGraph = Graph.builder().id(UUID.randomUUID()).build();
+    Future<GraphId> write = executor.submit(
+        () -> service.save(newGraph, UPSERT, defaultOpts(), admin));
+    writeStarted.await();
+
+    // views not yet loaded are read from delegate without waiting for the writer
+    assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+      assertEquals(1, values(user).size());
+      service.invalidateOn(new InvalidateCachesEvent());
+      assertEquals(1, values(user).size());
+    });
+
+    writeReleased.countDown();
+    write.get();
+
+    // views loaded during write were not kept
+    int loadsAfterWrite = loads.get();
+    assertEquals(1, values(user).size());
+    assertEquals(loadsAfterWrite + 1, loads.get());
+  }
+
+  @Test
+  void shouldPublishSnapshotAfterTransactionCompletes() throws Exception {
+    assertEquals(2, values(admin).size());
+    long version = service.getVersion();
+
+    TransactionSynchronizationManager.initSynchronization();
+    try {
+      service.save(Graph.builder().id(UUID.randomUUID()).build(), UPSERT, defaultOpts(), admin);
+
+      // writer sees its own write, others are served the previous snapshot
+      assertEquals(3, values(admin).size());
+      assertEquals(2, (int) executor.submit(() -> values(admin).size()).get());
+      assertEquals(version, service.getVersion());
+
+      TransactionSynchronizationManager.getSynchronizations()
+          .forEach(s -> s.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+    } finally {
+      TransactionSynchronizationManager.clearSynchronization();
+    }
+
+    assertTrue(service.getVersion() > version);
+    assertEquals(3, (int) executor.submit(() -> values(admin).size()).get());
+  }
+
+  private List<Graph> values(User user) {
+    return toListAndClose(service.values(new Query<>(Specifications.matchAll()), user));
+  }
+
+}
@@ -0,0 +1,171 @@
+package fi.thl.termed.util.spring.security;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.eventbus.EventBus;
+import fi.thl.termed.domain.event.InvalidateCachesEvent;
+import fi.thl.termed.domain.event.UsersChangedEvent;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+class CachingAuthenticationProviderTest {
+
+  private Map<String, String> passwords = new HashMap<>();
+  private AtomicInteger verifications = new AtomicInteger();
+  private Runnable duringVerification = () -> {
+  };
+
+  private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private EventBus eventBus = new EventBus();
+  private CachingAuthenticationProvider provider;
+
+  @BeforeEach
+  void setUp() {
+    passwords.put("alice", "secret");
+    passwords.put("bob", "hunter2");
+
+    AuthenticationProvider delegate = new AuthenticationProvider() {
+      @Override
+      public Authentication authenticate(Authentication authentication) {
+        verifications.incrementAndGet();
+        duringVerification.run();
+        if (!authentication.getCredentials().equals(passwords.get(authentication.getName()))) {
+          throw new BadCredentialsException("Bad credentials");
+        }
+        return new UsernamePasswordAuthenticationToken(authentication.getName(),
+            authentication.getCredentials(), ImmutableList.of(new SimpleGrantedAuthority("USER")));
+      }
+
+      @Override
+      public boolean supports(Class<?> authentication) {
+        return true;
+      }
+    };
+
+    provider = new CachingAuthenticationProvider(
+        delegate, ImmutableSet.of("users"), Duration.ofMinutes(5), 100, meterRegistry);
+    eventBus.register(provider);
+  }
+
+  @Test
+  void shouldVerifyRepeatedCredentialsOnlyOnce() {
+    for (int i = 0; i < 10; i++) {
+      Authentication result = provider.authenticate(token("alice", "secret"));
+      assertTrue(result.isAuthenticated());
+      assertEquals("alice", result.getPrincipal());
+      assertEquals(ImmutableList.of(new SimpleGrantedAuthority("USER")),
+          ImmutableList.copyOf(result.getAuthorities()));
+    }
+
+    assertEquals(1, verifications.get());
+    assertEquals(9, meterRegistry.get("termed.authentication.cache.requests")
+        .tag("result", "hit").counter().count());
+    assertEquals(1, meterRegistry.get("termed.authentication.cache.requests")
+        .tag("result", "miss").counter().count());
+    assertEquals(1, meterRegistry.get("termed.authentication.verification").timer().count());
+  }
+
+  @Test
+  void shouldNotCacheAuthenticationVerifiedWhileUserChanged() {
+    // password is changed while the old one is being verified
+    duringVerification = () -> {
+      duringVerification = () -> {
+      };
+      eventBus.post(new UsersChangedEvent(ImmutableList.of("alice")));
+    };
+
+    assertTrue(provider.authenticate(token("alice", "secret")).isAuthenticated());
+    passwords.put("alice", "changed");
+
+    assertThrows(BadCredentialsException.class,
+        () -> provider.authenticate(token("alice", "secret")));
+    assertEquals(2, verifications.get());
+  }
+
+  @Test
+  void shouldNotCacheCredentialsOrFailures() {
+    provider.authenticate(token("alice", "secret"));
+
+    assertThrows(BadCredentialsException.class,
+        () -> provider.authenticate(token("alice", "wrong")));
+    assertThrows(BadCredentialsException.class,
+        () -> provider.authenticate(token("alice", "wrong")));
+    assertEquals(3, verifications.get());
+
+    assertEquals(null, provider.authenticate(token("alice", "secret")).getCredentials());
+  }
+
+  @Test
+  void shouldInvalidateChangedUsers() {
+    provider.authenticate(token("alice", "secret"));
+    provider.authenticate(token("bob", "hunter2"));
+    assertEquals(2, verifications.get());
+
+    passwords.put("alice", "changed");
+    eventBus.post(new UsersChangedEvent(ImmutableList.of("alice")));
+
+    assertThrows(BadCredentialsException.class,
+        () -> provider.authenticate(token("alice", "secret")));
+    provider.authenticate(token("bob", "hunter2"));
+    assertEquals(3, verifications.get());
+  }
+
+  @Test
+  void shouldInvalidateAllOnInvalidateCachesEvent() {
+    provider.authenticate(token("alice", "secret"));
+    provider.authenticate(token("bob", "hunter2"));
+
+    eventBus.post(new InvalidateCachesEvent());
+
+    provider.authenticate(token("alice", "secret"));
+    provider.authenticate(token("bob", "hunter2"));
+    assertEquals(4, verifications.get());
+  }
+
+  @Test
+  void shouldInvalidateOnlyOnInvalidateCachesEventCoveringUserCaches() {
+    provider.authenticate(token("alice", "secret"));
+
+    eventBus.post(new InvalidateCachesEvent(ImmutableSet.of("types"), false));
+    provider.authenticate(token("alice", "secret"));
+    assertEquals(1, verifications.get());
+
+    eventBus.post(new InvalidateCachesEvent(ImmutableSet.of("types", "users"), true));
+    provider.authenticate(token("alice", "secret"));
+    assertEquals(2, verifications.get());
+  }
+
+  @Test
+  void shouldNotCacheAuthenticationVerifiedWhileUserChangedAfterAllWereInvalidated() {
+    duringVerification = () -> {
+      duringVerification = () -> {
+      };
+      eventBus.post(new UsersChangedEvent(ImmutableList.of("alice")));
+      eventBus.post(new InvalidateCachesEvent());
+    };
+
+    provider.authenticate(token("alice", "secret"));
+    provider.authenticate(token("alice", "secret"));
+    assertEquals(2, verifications.get());
+  }
+
+  private Authentication token(String username, String password) {
+    return new UsernamePasswordAuthenticationToken(username, password);
+  }
+
+}
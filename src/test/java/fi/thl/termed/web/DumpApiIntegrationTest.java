@@ -4,11 +4,20 @@ import static fi.thl.termed.util.json.JsonElementFactory.array;
 import static fi.thl.termed.util.json.JsonElementFactory.object;
 import static fi.thl.termed.util.json.JsonElementFactory.primitive;
 import static io.restassured.RestAssured.given;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.springframework.http.MediaType.APPLICATION_JSON_UTF8_VALUE;
 import static uk.co.datumedge.hamcrest.json.SameJSONAs.sameJSONAs;
 
 import com.google.gson.JsonObject;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.util.UUID;
+import java.util.zip.GZIPOutputStream;
 import org.apache.http.HttpStatus;
 import org.junit.jupiter.api.Test;
 
@@ -69,4 +78,399 @@ class DumpApiIntegrationTest extends BaseApiIntegrationTest {
     given(adminAuthorizedRequest).delete("/api/graphs/" + graphId);
   }
 
+  @Test
+  void shouldRestoreDumpWithForwardReferences() {
+    String graphId = UUID.randomUUID().toString();
+    String typeId = "Concept";
+    String node0Id = UUID.randomUUID().toString();
+    String node1Id = UUID.randomUUID().toString();
+
+    JsonObject graphIdObject = object("id", primitive(graphId));
+    JsonObject typeIdObject = object("id", primitive(typeId), "graph", graphIdObject);
+    JsonObject typeObject = object(
+        "id", primitive(typeId),
+        "graph", graphIdObject,
+        "referenceAttributes", array(object(
+            "id", primitive("related"),
+            "domain", typeIdObject,
+            "range", typeIdObject)));
+    JsonObject node1IdObject = object("id", primitive(node1Id), "type", typeIdObject);
+    JsonObject node0Object = object(
+        "id", primitive(node0Id),
+        "type", typeIdObject,
+        "references", object("related", array(node1IdObject)));
+
+    // node0 refers to node1 that is restored after it
+    JsonObject dump = object(
+        "graphs", array(graphIdObject),
+        "types", array(typeObject),
+        "nodes", array(node0Object, node1IdObject),
+        "unknown", primitive("ignored"));
+
+    given(adminAuthorizedJsonSaveRequest)
+        .body(dump.toString())
+        .post("/api/restore?mode=insert")
+        .then()
+        .statusCode(HttpStatus.SC_NO_CONTENT);
+
+    given(adminAuthorizedJsonGetRequest)
+        .get("/api/graphs/" + graphId + "/types/" + typeId + "/nodes/" + node0Id)
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .body(sameJSONAs(object("references", object("related", array(node1IdObject)))
+            .toString()).allowingExtraUnexpectedFields());
+
+    given(adminAuthorizedRequest).delete("/api/graphs/" + graphId + "/nodes");
+    given(adminAuthorizedRequest).delete("/api/graphs/" + graphId + "/types");
+    given(adminAuthorizedRequest).delete("/api/graphs/" + graphId);
+  }
+
+  @Test
+  void shouldRejectDumpWithGraphsAfterNodes() {
+    String graphId = UUID.randomUUID().toString();
+
+    JsonObject dump = object(
+        "graphs", array(object("id", primitive(graphId))),
+        "nodes", array(),
+        "types", array());
+
+    given(adminAuthorizedJsonSaveRequest)
+        .body(dump.toString())
+        .post("/api/restore?mode=insert")
+        .then()
+        .statusCode(HttpStatus.SC_BAD_REQUEST);
+
+    // graph saved with nodes is rolled back
+    given(adminAuthorizedJsonGetRequest)
+        .get("/api/graphs/" + graphId)
+        .then()
+        .statusCode(HttpStatus.SC_NOT_FOUND);
+  }
+
+  @Test
+  void shouldNotIndexNodesOfRejectedDump() {
+    String graphId = UUID.randomUUID().toString();
+
+    JsonObject graphIdObject = object("id", primitive(graphId));
+    JsonObject typeIdObject = object("id", primitive("Concept"), "graph", graphIdObject);
+    JsonObject nodeObject = object(
+        "id", primitive(UUID.randomUUID().toString()),
+        "type", typeIdObject);
+
+    given(adminAuthorizedJsonSaveRequest)
+        // second graphs key after nodes is rejected
+        .body("{\"graphs\":" + array(graphIdObject)
+            + ",\"types\":" + array(typeIdObject)
+            + ",\"nodes\":" + array(nodeObject)
+            + ",\"graphs\":[]}")
+        .post("/api/restore?mode=insert")
+        .then()
+        .statusCode(HttpStatus.SC_BAD_REQUEST);
+
+    given(adminAuthorizedJsonSaveRequest)
+        .body(object(
+            "graphs", array(graphIdObject),
+            "types", array(typeIdObject)).toString())
+        .post("/api/restore?mode=insert")
+        .then()
+        .statusCode(HttpStatus.SC_NO_CONTENT);
+
+    // rolled back node is not found from the index either
+    given(adminAuthorizedJsonGetRequest)
+        .get("/api/graphs/" + graphId + "/types/Concept/nodes")
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .body("size()", equalTo(0));
+
+    given(adminAuthorizedRequest).delete("/api/graphs/" + graphId + "/types");
+    given(adminAuthorizedRequest).delete("/api/graphs/" + graphId);
+  }
+
+  @Test
+  void shouldGetAndRestoreBinaryDump() {
+    String graphId = UUID.randomUUID().toString();
+    String nodeId = postTrivialDump(graphId);
+
+    byte[] dump = given(adminAuthorizedRequest)
+        .get("/api/graphs/" + graphId + "/dump?format=binary")
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .contentType(startsWith("application/x-termed-dump"))
+        .extract().asByteArray();
+
+    given(adminAuthorizedRequest).delete("/api/graphs/" + graphId + "/nodes");
+
+    given(adminAuthorizedRequest)
+        .contentType("application/x-termed-dump")
+        .body(dump)
+        .post("/api/restore")
+        .then()
+        .statusCode(HttpStatus.SC_NO_CONTENT);
+
+    given(adminAuthorizedJsonGetRequest)
+        .get("/api/graphs/" + graphId + "/types/Concept/nodes/" + nodeId)
+        .then()
+        .statusCode(HttpStatus.SC_OK);
+
+    given(adminAuthorizedRequest).delete("/api/graphs/" + graphId + "/nodes");
+    given(adminAuthorizedRequest).delete("/api/graphs/" + graphId + "/types");
+    given(adminAuthorizedRequest).delete("/api/graphs/" + graphId);
+  }
+
+  @Test
+  void shouldGetAndRestoreGzippedNdjsonDump() throws IOException {
+    String graphId = UUID.randomUUID().toString();
+    String nodeId = postTrivialDump(graphId);
+
+    String dump = given(adminAuthorizedRequest)
+        .accept("application/x-ndjson")
+        .get("/api/dump?graphId=" + graphId)
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .header("Content-Encoding", "gzip")
+        .contentType(startsWith("application/x-ndjson"))
+        .extract().asString();
+
+    assertEquals(3, dump.split("\n").length);
+
+    given(adminAuthorizedRequest).delete("/api/graphs/" + graphId + "/nodes");
+
+    ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+    try (GZIPOutputStream out = new GZIPOutputStream(gzipped)) {
+      out.write(dump.getBytes(UTF_8));
+    }
+
+    given(adminAuthorizedRequest)
+        .contentType("application/x-ndjson")
+        .header("Content-Encoding", "gzip")
+        .body(gzipped.toByteArray())
+        .post("/api/restore")
+        .then()
+        .statusCode(HttpStatus.SC_NO_CONTENT);
+
+    given(adminAuthorizedJsonGetRequest)
+        .get("/api/graphs/" + graphId + "/types/Concept/nodes/" + nodeId)
+        .then()
+        .statusCode(HttpStatus.SC_OK);
+
+    given(adminAuthorizedRequest).delete("/api/graphs/" + graphId + "/nodes");
+    given(adminAuthorizedRequest).delete("/api/graphs/" + graphId + "/types");
+    given(adminAuthorizedRequest).delete("/api/graphs/" + graphId);
+  }
+
+  @Test
+  void shouldCopyGraphWithNodesAndReferences() {
+    String sourceGraphId = UUID.randomUUID().toString();
+    String targetGraphId = UUID.randomUUID().toString();
+    String node0Id = UUID.randomUUID().toString();
+    String node1Id = UUID.randomUUID().toString();
+
+    JsonObject graphIdObject = object("id", primitive(sourceGraphId));
+    JsonObject typeIdObject = object("id", primitive("Concept"), "graph", graphIdObject);
+    JsonObject typeObject = object(
+        "id", primitive("Concept"),
+        "graph", graphIdObject,
+        "textAttributes", array(object(
+            "id", primitive("prefLabel"),
+            "domain", typeIdObject,
+            "regex", primitive("(?s)^.*$"))),
+        "referenceAttributes", array(object(
+            "id", primitive("broader"),
+            "domain", typeIdObject,
+            "range", typeIdObject)));
+    JsonObject node1IdObject = object("id", primitive(node1Id), "type", typeIdObject);
+
+    given(adminAuthorizedJsonSaveRequest)
+        .body(object(
+            "graphs", array(graphIdObject),
+            "types", array(typeObject),
+            "nodes", array(
+                object("id", primitive(node0Id), "type", typeIdObject,
+                    "properties", object("prefLabel", array(object(
+                        "lang", primitive("en"), "value", primitive("Cat")))),
+                    "references", object("broader", array(node1IdObject))),
+                object("id", primitive(node1Id), "type", typeIdObject,
+                    "code", primitive("n1"),
+                    "properties", object("prefLabel", array(object(
+                        "lang", primitive("en"), "value", primitive("Animal"))))))).toString())
+        .post("/api/dump?mode=insert")
+        .then()
+        .statusCode(HttpStatus.SC_NO_CONTENT);
+
+    given(adminAuthorizedJsonSaveRequest)
+        .post("/api/graphs/" + sourceGraphId + "/dump?copy=true&targetGraphId=" + targetGraphId)
+        .then()
+        .statusCode(HttpStatus.SC_OK);
+
+    JsonObject targetTypeIdObject = object(
+        "id", primitive("Concept"),
+        "graph", object("id", primitive(targetGraphId)));
+
+    // query nodes from index to check that target graph is indexed
+    given(adminAuthorizedJsonGetRequest)
+        .get("/api/graphs/" + targetGraphId + "/nodes?select=*")
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .body(sameJSONAs(array(
+            object(
+                "id", primitive(node0Id),
+                "type", targetTypeIdObject,
+                "properties", object("prefLabel", array(object(
+                    "lang", primitive("en"), "value", primitive("Cat")))),
+                "references", object("broader", array(object(
+                    "id", primitive(node1Id),
+                    "type", targetTypeIdObject)))),
+            object(
+                "id", primitive(node1Id),
+                "type", targetTypeIdObject,
+                "code", primitive("n1"),
+                "referrers", object("broader", array(object(
+                    "id", primitive(node0Id),
+                    "type", targetTypeIdObject))))).toString())
+            .allowingExtraUnexpectedFields()
+            .allowingAnyArrayOrdering());
+
+    // one revision for all copied nodes
+    given(adminAuthorizedJsonGetRequest)
+        .get("/api/graphs/" + targetGraphId + "/types/Concept/nodes/" + node0Id + "/revisions")
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .body("size()", is(1));
+
+    for (String graphId : new String[]{targetGraphId, sourceGraphId}) {
+      given(adminAuthorizedRequest).delete("/api/graphs/" + graphId + "/nodes");
+      given(adminAuthorizedRequest).delete("/api/graphs/" + graphId + "/types");
+      given(adminAuthorizedRequest).delete("/api/graphs/" + graphId);
+    }
+  }
+
+  @Test
+  void shouldRemapReferencesSameWayInDatabaseAndServiceCopy() {
+    String sourceGraphId = UUID.randomUUID().toString();
+    String externalGraphId = UUID.randomUUID().toString();
+    String sqlTargetGraphId = UUID.randomUUID().toString();
+    String serviceTargetGraphId = UUID.randomUUID().toString();
+    String node0Id = UUID.randomUUID().toString();
+    String node1Id = UUID.randomUUID().toString();
+    String externalNodeId = UUID.randomUUID().toString();
+
+    JsonObject graphIdObject = object("id", primitive(sourceGraphId));
+    JsonObject externalGraphIdObject = object("id", primitive(externalGraphId));
+    JsonObject typeIdObject = object("id", primitive("Concept"), "graph", graphIdObject);
+    JsonObject externalTypeIdObject = object(
+        "id", primitive("Term"), "graph", externalGraphIdObject);
+
+    given(adminAuthorizedJsonSaveRequest)
+        .body(object(
+            "graphs", array(graphIdObject, externalGraphIdObject),
+            "types", array(
+                externalTypeIdObject,
+                object(
+                    "id", primitive("Concept"),
+                    "graph", graphIdObject,
+                    "referenceAttributes", array(
+                        object("id", primitive("broader"),
+                            "domain", typeIdObject,
+                            "range", typeIdObject),
+                        object("id", primitive("term"),
+                            "domain", typeIdObject,
+                            "range", externalTypeIdObject)))),
+            "nodes", array(
+                object("id", primitive(externalNodeId), "type", externalTypeIdObject),
+                object("id", primitive(node1Id), "type", typeIdObject),
+                object("id", primitive(node0Id), "type", typeIdObject,
+                    "references", object(
+                        "broader", array(object(
+                            "id", primitive(node1Id), "type", typeIdObject)),
+                        "term", array(object(
+                            "id", primitive(externalNodeId), "type", externalTypeIdObject))))))
+            .toString())
+        .post("/api/dump?mode=insert")
+        .then()
+        .statusCode(HttpStatus.SC_NO_CONTENT);
+
+    // plain insert is copied in database, upsert through the node service
+    given(adminAuthorizedJsonSaveRequest)
+        .post("/api/graphs/" + sourceGraphId + "/dump?copy=true&targetGraphId=" + sqlTargetGraphId)
+        .then()
+        .statusCode(HttpStatus.SC_OK);
+    given(adminAuthorizedJsonSaveRequest)
+        .post("/api/graphs/" + sourceGraphId + "/dump?copy=true&mode=upsert&targetGraphId="
+            + serviceTargetGraphId)
+        .then()
+        .statusCode(HttpStatus.SC_OK);
+
+    String sqlCopyTypes = getCopied(sqlTargetGraphId, "/types");
+    String sqlCopyNodes = getCopied(sqlTargetGraphId,
+        "/nodes?select=id,type,references.*,referrers.*");
+
+    assertThat(sqlCopyNodes, sameJSONAs(array(
+        object("id", primitive(node0Id),
+            "type", object("id", primitive("Concept"),
+                "graph", object("id", primitive(sqlTargetGraphId))),
+            "references", object(
+                "broader", array(object(
+                    "id", primitive(node1Id),
+                    "type", object("id", primitive("Concept"),
+                        "graph", object("id", primitive(sqlTargetGraphId))))),
+                "term", array(object(
+                    "id", primitive(externalNodeId), "type", externalTypeIdObject)))),
+        object("id", primitive(node1Id),
+            "type", object("id", primitive("Concept"),
+                "graph", object("id", primitive(sqlTargetGraphId))),
+            "referrers", object(
+                "broader", array(object(
+                    "id", primitive(node0Id),
+                    "type", object("id", primitive("Concept"),
+                        "graph", object("id", primitive(sqlTargetGraphId)))))))).toString())
+        .allowingExtraUnexpectedFields()
+        .allowingAnyArrayOrdering());
+
+    assertThat(
+        getCopied(serviceTargetGraphId, "/types")
+            .replace(serviceTargetGraphId, sqlTargetGraphId),
+        sameJSONAs(sqlCopyTypes).allowingAnyArrayOrdering());
+    assertThat(
+        getCopied(serviceTargetGraphId, "/nodes?select=id,type,references.*,referrers.*")
+            .replace(serviceTargetGraphId, sqlTargetGraphId),
+        sameJSONAs(sqlCopyNodes).allowingAnyArrayOrdering());
+
+    for (String graphId : new String[]{sqlTargetGraphId, serviceTargetGraphId, sourceGraphId,
+        externalGraphId}) {
+      given(adminAuthorizedRequest).delete("/api/graphs/" + graphId + "/nodes");
+      given(adminAuthorizedRequest).delete("/api/graphs/" + graphId + "/types");
+      given(adminAuthorizedRequest).delete("/api/graphs/" + graphId);
+    }
+  }
+
+  private String getCopied(String graphId, String path) {
+    return given(adminAuthorizedJsonGetRequest)
+        .get("/api/graphs/" + graphId + path)
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .extract().asString();
+  }
+
+  private String postTrivialDump(String graphId) {
+    String nodeId = UUID.randomUUID().toString();
+
+    JsonObject graphIdObject = object("id", primitive(graphId));
+    JsonObject typeIdObject = object("id", primitive("Concept"), "graph", graphIdObject);
+    JsonObject nodeObject = object(
+        "id", primitive(nodeId),
+        "type", typeIdObject,
+        "code", primitive("example"));
+
+    given(adminAuthorizedJsonSaveRequest)
+        .body(object(
+            "graphs", array(graphIdObject),
+            "types", array(typeIdObject),
+            "nodes", array(nodeObject)).toString())
+        .post("/api/dump?mode=insert")
+        .then()
+        .statusCode(HttpStatus.SC_NO_CONTENT);
+
+    return nodeId;
+  }
+
 }
@@ -146,4 +146,77 @@ class NodeChangesetApiIntegrationTest extends BaseApiIntegrationTest {
     given(adminAuthorizedRequest).delete("/api/graphs/" + graphId);
   }
 
+  @Test
+  void shouldPatchNodesReferringToNodesSavedInSameChangeset() {
+    String graphId = UUID.randomUUID().toString();
+
+    String firstNodeId = UUID.randomUUID().toString();
+    String secondNodeId = UUID.randomUUID().toString();
+
+    JsonObject typeIdObject = object("id", primitive("Concept"),
+        "graph", object("id", primitive(graphId)));
+
+    // save graph and type with a reference attribute
+    given(adminAuthorizedJsonSaveRequest)
+        .body("{'id':'" + graphId + "'}")
+        .post("/api/graphs?mode=insert");
+    given(adminAuthorizedJsonSaveRequest)
+        .body(object(
+            "id", primitive("Concept"),
+            "referenceAttributes", array(object(
+                "id", primitive("related"),
+                "range", typeIdObject))).toString())
+        .post("/api/graphs/" + graphId + "/types");
+
+    given(adminAuthorizedJsonSaveRequest)
+        .body("{'id':'" + firstNodeId + "', 'code':'first'}")
+        .post("/api/graphs/" + graphId + "/types/Concept/nodes")
+        .then()
+        .statusCode(HttpStatus.SC_OK);
+
+    // patch first node to refer to a second node created in the same changeset
+    JsonObject secondNodeIdObject = object("id", primitive(secondNodeId), "type", typeIdObject);
+    JsonObject changeset = object(
+        "save", array(object("id", primitive(secondNodeId))),
+        "patch", array(object(
+            "id", primitive(firstNodeId),
+            "references", object("related", array(secondNodeIdObject)))));
+    given(adminAuthorizedJsonSaveRequest)
+        .body(changeset.toString())
+        .post("/api/graphs/" + graphId + "/types/Concept/nodes?changeset=true")
+        .then()
+        .statusCode(HttpStatus.SC_NO_CONTENT);
+
+    given(adminAuthorizedJsonGetRequest)
+        .get("/api/graphs/" + graphId + "/types/Concept/nodes/" + firstNodeId)
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .body("code", equalTo("first"))
+        .body("references.related[0].id", equalTo(secondNodeId));
+
+    // patch referring to missing node is rejected
+    JsonObject illegalChangeset = object(
+        "delete", array(object("id", primitive(secondNodeId))),
+        "patch", array(object(
+            "id", primitive(firstNodeId),
+            "references", object("related", array(object(
+                "id", primitive(UUID.randomUUID().toString()),
+                "type", typeIdObject))))));
+    given(adminAuthorizedJsonSaveRequest)
+        .body(illegalChangeset.toString())
+        .post("/api/graphs/" + graphId + "/types/Concept/nodes?changeset=true")
+        .then()
+        .statusCode(HttpStatus.SC_BAD_REQUEST);
+
+    given(adminAuthorizedJsonGetRequest)
+        .get("/api/graphs/" + graphId + "/types/Concept/nodes/" + secondNodeId)
+        .then()
+        .statusCode(HttpStatus.SC_OK);
+
+    // clean up
+    given(adminAuthorizedRequest).delete("/api/graphs/" + graphId + "/nodes");
+    given(adminAuthorizedRequest).delete("/api/graphs/" + graphId + "/types");
+    given(adminAuthorizedRequest).delete("/api/graphs/" + graphId);
+  }
+
 }
@@ -55,6 +55,36 @@ class NodeCsvApiIntegrationTest extends BaseApiIntegrationTest {
     given(adminAuthorizedRequest).delete("/api/graphs/" + graphId);
   }
 
+  @Test
+  void shouldGetCsvColumnsOfQueriedTypesOnly() {
+    String graphId = UUID.randomUUID().toString();
+
+    given(adminAuthorizedJsonSaveRequest)
+        .body("{'id':'" + graphId + "'}")
+        .post("/api/graphs?mode=insert");
+    given(adminAuthorizedJsonSaveRequest)
+        .body("[{'id':'Concept','textAttributes':[{'id':'prefLabel','regex':'(?s)^.*$'}]},"
+            + "{'id':'Term','textAttributes':[{'id':'note','regex':'(?s)^.*$'}]}]")
+        .post("/api/graphs/" + graphId + "/types?batch=true&mode=insert");
+    given(adminAuthorizedJsonSaveRequest)
+        .body("{'properties':{'prefLabel':[{'lang':'en','value':'Cat'}]}}")
+        .post("/api/graphs/" + graphId + "/types/Concept/nodes?mode=insert");
+    given(adminAuthorizedJsonSaveRequest)
+        .body("{'properties':{'note':[{'lang':'fi','value':'Huom'}]}}")
+        .post("/api/graphs/" + graphId + "/types/Term/nodes?mode=insert");
+
+    given(adminAuthorizedRequest)
+        .get("/api/graphs/" + graphId
+            + "/nodes.csv?select=properties.*&where=type.id:Concept&download=false")
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .body(equalTo("properties.prefLabel.en\nCat\n"));
+
+    given(adminAuthorizedRequest).delete("/api/graphs/" + graphId + "/nodes");
+    given(adminAuthorizedRequest).delete("/api/graphs/" + graphId + "/types");
+    given(adminAuthorizedRequest).delete("/api/graphs/" + graphId);
+  }
+
   @Test
   void shouldSaveNodesFromCsv() {
     given(adminAuthorizedJsonSaveRequest)
@@ -0,0 +1,97 @@
+package fi.thl.termed.web;
+
+import static io.restassured.RestAssured.given;
+import static org.apache.jena.rdf.model.ResourceFactory.createPlainLiteral;
+import static org.apache.jena.rdf.model.ResourceFactory.createResource;
+import static org.apache.jena.rdf.model.ResourceFactory.createStatement;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import fi.thl.termed.util.json.JsonUtils;
+import fi.thl.termed.util.rdf.JenaUtils;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.UUID;
+import org.apache.http.HttpStatus;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.vocabulary.RDF;
+import org.apache.jena.vocabulary.SKOS;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class NodeSparqlApiIntegrationTest extends BaseApiIntegrationTest {
+
+  private String graphId = UUID.randomUUID().toString();
+
+  private Resource cat = createResource("http://example.org/cat");
+  private Resource animal = createResource("http://example.org/animal");
+
+  @BeforeEach
+  void saveTestData() throws IOException {
+    given(adminAuthorizedJsonSaveRequest)
+        .body(JsonUtils.getJsonResource("examples/skos/example-skos-graph.json").toString())
+        .put("/api/graphs/" + graphId + "?mode=insert");
+    given(adminAuthorizedJsonSaveRequest)
+        .body(JsonUtils.getJsonResource("examples/skos/example-skos-types.json").toString())
+        .post("/api/graphs/" + graphId + "/types?batch=true");
+
+    Model model = ModelFactory.createDefaultModel();
+    model.add(createStatement(animal, RDF.type, SKOS.Concept));
+    model.add(createStatement(animal, SKOS.prefLabel, createPlainLiteral("Animal")));
+    model.add(createStatement(cat, RDF.type, SKOS.Concept));
+    model.add(createStatement(cat, SKOS.prefLabel, createPlainLiteral("Cat")));
+    model.add(createStatement(cat, SKOS.broader, animal));
+
+    given(adminAuthorizedRequest)
+        .contentType("application/rdf+xml")
+        .body(JenaUtils.toRdfXmlString(model))
+        .post("/api/graphs/" + graphId + "/nodes")
+        .then()
+        .statusCode(HttpStatus.SC_NO_CONTENT);
+  }
+
+  @AfterEach
+  void deleteTestData() {
+    given(adminAuthorizedRequest).delete("/api/graphs/" + graphId + "/nodes");
+    given(adminAuthorizedRequest).delete("/api/graphs/" + graphId + "/types");
+    given(adminAuthorizedRequest).delete("/api/graphs/" + graphId);
+  }
+
+  @Test
+  void shouldStreamSelectResultsAsJson() {
+    given(adminAuthorizedRequest)
+        .accept("application/sparql-results+json")
+        .body("PREFIX skos: <http://www.w3.org/2004/02/skos/core#>\n"
+            + "SELECT ?label WHERE {\n"
+            + "  ?c skos:broader ?b .\n"
+            + "  ?b skos:prefLabel ?label .\n"
+            + "}")
+        .post("/api/graphs/" + graphId + "/nodes/sparql")
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .contentType(containsString("application/sparql-results+json"))
+        .body("results.bindings[0].label.value", equalTo("Animal"));
+  }
+
+  @Test
+  void shouldStreamConstructResultsAsNTriples() {
+    String response = given(adminAuthorizedRequest)
+        .accept("application/n-triples")
+        .body("PREFIX skos: <http://www.w3.org/2004/02/skos/core#>\n"
+            + "CONSTRUCT { ?c skos:related ?b } WHERE { ?c skos:broader ?b }")
+        .post("/api/graphs/" + graphId + "/nodes/sparql")
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .extract().asString();
+
+    Model model = ModelFactory.createDefaultModel()
+        .read(new StringReader(response), null, "N-TRIPLES");
+
+    assertTrue(model.contains(cat, SKOS.related, animal));
+  }
+
+}
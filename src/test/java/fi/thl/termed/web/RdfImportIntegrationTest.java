@@ -1,5 +1,6 @@
 package fi.thl.termed.web;
 
+import static fi.thl.termed.util.UUIDs.nameUUIDFromString;
 import static io.restassured.RestAssured.given;
 import static org.apache.jena.rdf.model.ResourceFactory.createPlainLiteral;
 import static org.apache.jena.rdf.model.ResourceFactory.createResource;
@@ -101,4 +102,72 @@ class RdfImportIntegrationTest extends BaseApiIntegrationTest {
     given(adminAuthorizedRequest).delete("/api/graphs/" + graphId);
   }
 
+  @Test
+  void shouldPatchNodesWithRdf() throws IOException {
+    String graphId = UUID.randomUUID().toString();
+
+    given(adminAuthorizedJsonSaveRequest)
+        .body(JsonUtils.getJsonResource("examples/skos/example-skos-graph.json").toString())
+        .put("/api/graphs/" + graphId + "?mode=insert");
+    given(adminAuthorizedJsonSaveRequest)
+        .body(JsonUtils.getJsonResource("examples/skos/example-skos-types.json").toString())
+        .post("/api/graphs/" + graphId + "/types?batch=true");
+
+    Resource cat = createResource("http://example.org/cat");
+
+    Model model = ModelFactory.createDefaultModel();
+    model.add(createStatement(cat, RDF.type, SKOS.Concept));
+    model.add(createStatement(cat, SKOS.prefLabel, createPlainLiteral("Cat")));
+
+    given(adminAuthorizedRequest)
+        .contentType("application/rdf+xml")
+        .body(JenaUtils.toRdfXmlString(model))
+        .post("/api/graphs/" + graphId + "/nodes")
+        .then()
+        .statusCode(HttpStatus.SC_NO_CONTENT);
+
+    Model patch = ModelFactory.createDefaultModel();
+    patch.add(createStatement(cat, RDF.type, SKOS.Concept));
+    patch.add(createStatement(cat, SKOS.altLabel, createPlainLiteral("Kitty")));
+
+    given(adminAuthorizedRequest)
+        .contentType("application/rdf+xml")
+        .body(JenaUtils.toRdfXmlString(patch))
+        .patch("/api/graphs/" + graphId + "/nodes")
+        .then()
+        .statusCode(HttpStatus.SC_NO_CONTENT);
+
+    given(adminAuthorizedJsonGetRequest)
+        .get("/api/graphs/" + graphId + "/types/Concept/nodes/"
+            + nameUUIDFromString("http://example.org/cat"))
+        .then()
+        .statusCode(HttpStatus.SC_OK)
+        .body("properties.prefLabel[0].value", equalTo("Cat"))
+        .body("properties.altLabel[0].value", equalTo("Kitty"));
+
+    // patching missing node fails unless lenient
+    Model missingPatch = ModelFactory.createDefaultModel();
+    Resource dog = createResource("http://example.org/dog");
+    missingPatch.add(createStatement(dog, RDF.type, SKOS.Concept));
+    missingPatch.add(createStatement(dog, SKOS.altLabel, createPlainLiteral("Doggy")));
+
+    given(adminAuthorizedRequest)
+        .contentType("application/rdf+xml")
+        .body(JenaUtils.toRdfXmlString(missingPatch))
+        .patch("/api/graphs/" + graphId + "/nodes")
+        .then()
+        .statusCode(HttpStatus.SC_NOT_FOUND);
+    given(adminAuthorizedRequest)
+        .contentType("application/rdf+xml")
+        .body(JenaUtils.toRdfXmlString(missingPatch))
+        .patch("/api/graphs/" + graphId + "/nodes?lenient=true")
+        .then()
+        .statusCode(HttpStatus.SC_NO_CONTENT);
+
+    // clean up
+    given(adminAuthorizedRequest).delete("/api/graphs/" + graphId + "/nodes");
+    given(adminAuthorizedRequest).delete("/api/graphs/" + graphId + "/types");
+    given(adminAuthorizedRequest).delete("/api/graphs/" + graphId);
+  }
+
 }
@@ -61,9 +61,12 @@ class NodeRdfApiDocumentingIntegrationTest extends BaseNodeApiDocumentingIntegra
             operationIntro(
                 "Returns a CSV table corresponding to given SPARQL query. In background Termed "
                     + "index is used as a triple store. Performance might not be on par with "
-                    + "native triple stores. Supported output formats are `text/csv` and "
-                    + "`text/plain`. Plain text should be used only for small result sets as it's "
-                    + "slower to render."),
+                    + "native triple stores. Supported output formats for SELECT queries are "
+                    + "`text/csv`, `text/tab-separated-values`, "
+                    + "`application/sparql-results+json`, `application/sparql-results+xml` and "
+                    + "`text/plain`. Results are streamed except for plain text which should be "
+                    + "used only for small result sets. CONSTRUCT and DESCRIBE query results are "
+                    + "streamed as `application/n-triples` or `text/turtle`."),
             requestParameters(
                 parameterWithName("timeout").optional()
                     .description("Optional integer parameter to specify query timeout in seconds. "